@@ -61,8 +61,11 @@ import hudson.util.FileVisitor;
 import hudson.util.FormValidation;
 import hudson.util.IOUtils;
 import hudson.util.NamingThreadFactory;
+import hudson.util.ParallelGzipInputStream;
+import hudson.util.ParallelGzipOutputStream;
 import hudson.util.io.Archiver;
 import hudson.util.io.ArchiverFactory;
+import hudson.util.io.DeltaSync;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
@@ -879,6 +882,23 @@ public final class FilePath implements SerializableOnlyOverRemoting {
             public OutputStream compress(OutputStream out) throws IOException {
                 return new GZIPOutputStream(new BufferedOutputStream(out));
             }
+        },
+        /**
+         * Like {@link #GZIP}, but compressing chunks of the stream on several threads,
+         * for when a single thread compressing cannot keep up with the network.
+         * Not readable as a plain gzip stream.
+         * @since TODO
+         */
+        GZIP_PARALLEL {
+            @Override
+            public InputStream extract(InputStream in) throws IOException {
+                return new ParallelGzipInputStream(new BufferedInputStream(in));
+            }
+
+            @Override
+            public OutputStream compress(OutputStream out) throws IOException {
+                return new ParallelGzipOutputStream(out);
+            }
         };
 
         public abstract InputStream extract(InputStream in) throws IOException;
@@ -2853,6 +2873,23 @@ public final class FilePath implements SerializableOnlyOverRemoting {
         }
     }
 
+    /**
+     * Copies files according to a specified scanner to a target node, sending only what differs from the files already there,
+     * like {@code rsync}: files of the same size and modification time are skipped,
+     * and only the blocks of the others which are not found anywhere in the old copy are sent.
+     * Worthwhile when much of the content is already at the target, such as when refreshing a cache of dependencies.
+     * Files at the target that are not at the source are kept.
+     * Between two directories of the same machine, this is the same as {@link #copyRecursiveTo(DirScanner, FilePath, String)}.
+     * @param scanner a way of enumerating some files (must be serializable for possible delivery to remote side)
+     * @param target the destination basedir
+     * @param description a description of the fileset, for logging purposes
+     * @return what was transferred
+     * @since TODO
+     */
+    public DeltaSync.Result syncRecursiveTo(final DirScanner scanner, final FilePath target, final String description) throws IOException, InterruptedException {
+        return DeltaSync.sync(this, scanner, target, description);
+    }
+
     private IOException ioWithCause(ExecutionException e) {
         Throwable cause = e.getCause();
         if (cause == null) cause = e;
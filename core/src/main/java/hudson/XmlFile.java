@@ -30,6 +30,12 @@ import com.thoughtworks.xstream.converters.DataHolder;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier;
+import com.thoughtworks.xstream.io.xml.XppDomReader;
+import com.thoughtworks.xstream.io.xml.XppDomWriter;
+import com.thoughtworks.xstream.io.xml.xppdom.XppDom;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.diagnosis.OldDataMonitor;
 import hudson.model.Descriptor;
 import hudson.util.AtomicFileWriter;
@@ -47,16 +53,25 @@ import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
+import jenkins.util.SystemProperties;
+import net.jcip.annotations.GuardedBy;
 import org.apache.commons.io.IOUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
@@ -161,6 +176,14 @@ public final class XmlFile {
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("Reading " + file);
         }
+        XppDom parsed = ParseCache.get(file);
+        if (parsed != null) {
+            try {
+                return xs.unmarshal(new XppDomReader(parsed));
+            } catch (RuntimeException | Error e) {
+                throw new IOException("Unable to read " + file, e);
+            }
+        }
         try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
             return xs.fromXML(in);
         } catch (RuntimeException | Error e) {
@@ -188,18 +211,30 @@ public final class XmlFile {
     }
 
     private Object unmarshal(Object o, boolean nullOut) throws IOException {
+        XppDom parsed = ParseCache.get(file);
+        if (parsed != null) {
+            try {
+                return unmarshal(new XppDomReader(parsed), o, nullOut);
+            } catch (RuntimeException | Error e) {
+                throw new IOException("Unable to read " + file, e);
+            }
+        }
         try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
             // TODO: expose XStream the driver from XStream
-            if (nullOut) {
-                return ((XStream2) xs).unmarshal(DEFAULT_DRIVER.createReader(in), o, null, true);
-            } else {
-                return xs.unmarshal(DEFAULT_DRIVER.createReader(in), o);
-            }
+            return unmarshal(DEFAULT_DRIVER.createReader(in), o, nullOut);
         } catch (RuntimeException | Error e) {
             throw new IOException("Unable to read " + file, e);
         }
     }
 
+    private Object unmarshal(HierarchicalStreamReader reader, Object o, boolean nullOut) {
+        if (nullOut) {
+            return ((XStream2) xs).unmarshal(reader, o, null, true);
+        } else {
+            return xs.unmarshal(reader, o);
+        }
+    }
+
     public void write(Object o) throws IOException {
         if (LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.log(Level.FINEST, new Throwable(), () -> "Writing " + file);
@@ -223,6 +258,7 @@ public final class XmlFile {
             throw new IOException(e);
         } finally {
             w.abort();
+            ParseCache.invalidate(file);
         }
     }
 
@@ -253,6 +289,7 @@ public final class XmlFile {
 
     public void delete() throws IOException {
         Files.deleteIfExists(Util.fileToPath(file));
+        ParseCache.invalidate(file);
     }
 
     public void mkdirs() throws IOException {
@@ -376,6 +413,98 @@ public final class XmlFile {
         }
     }
 
+    /**
+     * Maximum total size, in bytes, of the files whose parsed form is kept in memory,
+     * so that {@link #read} and {@link #unmarshal(Object)} of a file that did not change skip the XML parser.
+     * 0, the default, disables the cache.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ long PARSE_CACHE_BYTES = SystemProperties.getLong(XmlFile.class.getName() + ".parseCacheBytes", 0L);
+
+    /**
+     * Parsed files, least recently used first, with {@link #PARSE_CACHE_BYTES} as the limit.
+     * A file is only reused as long as it has the same identity, modification time and size,
+     * so changes made behind the back of {@link #write} are picked up as well.
+     */
+    private static final class ParseCache {
+        private record Entry(Object fileKey, FileTime lastModified, long size, XppDom dom) {}
+
+        @GuardedBy("entries")
+        private static final Map<File, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        @GuardedBy("entries")
+        private static long bytes;
+
+        /**
+         * @return null if the cache is disabled, or the file is missing, too big or malformed,
+         *      in which case the caller should read it as usual and report the error if any
+         */
+        static @CheckForNull XppDom get(File file) {
+            long max = PARSE_CACHE_BYTES;
+            if (max <= 0) {
+                return null;
+            }
+            BasicFileAttributes attrs = attributes(file);
+            if (attrs == null || attrs.size() > max) {
+                return null;
+            }
+            synchronized (entries) {
+                Entry e = entries.get(file);
+                if (e != null && matches(e, attrs)) {
+                    return e.dom;
+                }
+            }
+
+            XppDom dom;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+                XppDomWriter w = new XppDomWriter();
+                new HierarchicalStreamCopier().copy(DEFAULT_DRIVER.createReader(in), w);
+                dom = w.getConfiguration();
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+            if (!matches(new Entry(attrs.fileKey(), attrs.lastModifiedTime(), attrs.size(), dom), attributes(file))) {
+                return dom; // changed while being parsed, so it is not clear which version this is
+            }
+
+            synchronized (entries) {
+                Entry old = entries.put(file, new Entry(attrs.fileKey(), attrs.lastModifiedTime(), attrs.size(), dom));
+                if (old != null) {
+                    bytes -= old.size;
+                }
+                bytes += attrs.size();
+                Iterator<Entry> it = entries.values().iterator();
+                while (bytes > max && it.hasNext()) {
+                    bytes -= it.next().size;
+                    it.remove();
+                }
+            }
+            return dom;
+        }
+
+        static void invalidate(File file) {
+            synchronized (entries) {
+                Entry old = entries.remove(file);
+                if (old != null) {
+                    bytes -= old.size;
+                }
+            }
+        }
+
+        private static @CheckForNull BasicFileAttributes attributes(File file) {
+            try {
+                return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            } catch (IOException | InvalidPathException e) {
+                return null;
+            }
+        }
+
+        private static boolean matches(Entry e, @CheckForNull BasicFileAttributes attrs) {
+            return attrs != null && Objects.equals(e.fileKey, attrs.fileKey()) && e.lastModified.equals(attrs.lastModifiedTime()) && e.size == attrs.size();
+        }
+    }
+
     /**
      * {@link XStream} instance is supposed to be thread-safe.
      */
@@ -28,18 +28,24 @@ package hudson.console;
 
 import static java.lang.Math.abs;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.CheckReturnValue;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Util;
 import hudson.remoting.ObjectInputStreamEx;
+import hudson.util.io.BlockGzipFile;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
@@ -53,13 +59,18 @@ import jenkins.model.Jenkins;
 import jenkins.security.CryptoConfidentialKey;
 import jenkins.security.stapler.StaplerNotDispatchable;
 import org.jenkinsci.remoting.util.AnonymousClassWarnings;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerRequest2;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.StaplerResponse2;
 import org.kohsuke.stapler.framework.io.ByteBuffer;
+import org.kohsuke.stapler.framework.io.CharSpool;
 import org.kohsuke.stapler.framework.io.LargeText;
+import org.kohsuke.stapler.framework.io.LineEndNormalizingWriter;
+import org.kohsuke.stapler.framework.io.WriterOutputStream;
 
 /**
  * Extension to {@link LargeText} that handles annotations by {@link ConsoleAnnotator}.
@@ -84,14 +95,126 @@ public class AnnotatedLargeText<T> extends LargeText {
      */
     private T context;
 
+    /**
+     * Set when following a log still being written.
+     */
+    private final @CheckForNull FollowedLog followed;
+
+    /**
+     * Request attribute set once a request waited for more output, so that it is answered when dispatched again.
+     */
+    private static final String WAITED = AnnotatedLargeText.class.getName() + ".waited";
+
+    /**
+     * Set when reading a block compressed log, see {@link BlockGzipFile}.
+     */
+    private final @CheckForNull File blockCompressed;
+
+    private long blockCompressedLength = -1;
+
     public AnnotatedLargeText(File file, Charset charset, boolean completed, T context) {
+        this(file, charset, completed, context, null);
+    }
+
+    private AnnotatedLargeText(File file, Charset charset, boolean completed, T context, FollowedLog followed) {
         super(file, charset, completed, true);
         this.context = context;
+        this.followed = followed;
+        this.blockCompressed = completed && file.getName().endsWith(".gz") && BlockGzipFile.isBlockCompressed(file) ? file : null;
+    }
+
+    /**
+     * Creates an instance for a log still being written, which shares the file with other readers of the same log
+     * rather than opening it on every request, see {@link FollowedLog}.
+     */
+    @Restricted(NoExternalUse.class)
+    public static <T> AnnotatedLargeText<T> following(File file, Charset charset, T context) {
+        return new AnnotatedLargeText<>(file, charset, false, context, FollowedLog.of(file));
     }
 
     public AnnotatedLargeText(ByteBuffer memory, Charset charset, boolean completed, T context) {
         super(memory, charset, completed);
         this.context = context;
+        this.followed = null;
+        this.blockCompressed = null;
+    }
+
+    /**
+     * The uncompressed length of a block compressed log,
+     * for which the gzip trailer {@link LargeText} would otherwise rely on only holds the size of the last block.
+     */
+    @Override
+    public long length() {
+        if (blockCompressed != null) {
+            if (blockCompressedLength < 0) {
+                try (BlockGzipFile blocks = new BlockGzipFile(blockCompressed)) {
+                    blockCompressedLength = blocks.length();
+                } catch (IOException e) {
+                    return super.length();
+                }
+            }
+            return blockCompressedLength;
+        }
+        return super.length();
+    }
+
+    /**
+     * When following a log, waits for a little while for more output if there is none yet,
+     * so that the client gets it as soon as it is there rather than on its next request.
+     * The request is suspended meanwhile, see {@link AsyncContext}, so that no thread is held,
+     * and dispatched again once there is more output or {@link FollowedLog#WAIT} is over.
+     *
+     * @since TODO
+     */
+    @Override
+    public void doProgressText(StaplerRequest2 req, StaplerResponse2 rsp) throws IOException {
+        String start = req.getParameter("start");
+        if (followed != null && !isComplete() && start != null && FollowedLog.WAIT > 0
+                && req.isAsyncSupported() && req.getAttribute(WAITED) == null) {
+            long position;
+            try {
+                position = Long.parseLong(start);
+            } catch (NumberFormatException e) {
+                position = -1; // reported as usual below
+            }
+            if (position >= 0 && !followed.hasMore(position)) {
+                req.setAttribute(WAITED, true);
+                AsyncContext async = req.startAsync();
+                async.setTimeout(0); // FollowedLog calls back after FollowedLog.WAIT at the latest
+                followed.onMore(position, FollowedLog.WAIT, async::dispatch);
+                return;
+            }
+        }
+        if (blockCompressed != null) {
+            doBlockCompressedProgressText(req, rsp);
+            return;
+        }
+        super.doProgressText(req, rsp);
+    }
+
+    /**
+     * Same as {@link LargeText#doProgressText} but with the actual {@link #length()}.
+     */
+    private void doBlockCompressedProgressText(StaplerRequest2 req, StaplerResponse2 rsp) throws IOException {
+        setContentType(rsp);
+        rsp.setStatus(HttpServletResponse.SC_OK);
+        long start = 0;
+        String s = req.getParameter("start");
+        if (s != null) {
+            start = Long.parseLong(s);
+        }
+        if (length() < start) {
+            start = 0;
+        }
+        CharSpool spool = new CharSpool();
+        long r = writeLogTo(start, spool);
+        rsp.addHeader("X-Text-Size", String.valueOf(r));
+        if (!isComplete()) {
+            rsp.addHeader("X-More-Data", "true");
+        }
+        Writer w = rsp.getWriter();
+        spool.writeTo(new LineEndNormalizingWriter(w));
+        w.flush();
     }
 
     /**
@@ -203,10 +326,39 @@ public class AnnotatedLargeText<T> extends LargeText {
     public long writeLogTo(long start, Writer w) throws IOException {
         if (isHtml())
             return writeHtmlTo(start, w);
-        else
+        else if (followed != null || blockCompressed != null) {
+            WriterOutputStream out = new WriterOutputStream(w, charset);
+            long r = writeBytesTo(start, out);
+            out.flush();
+            return r;
+        } else
             return super.writeLogTo(start, w);
     }
 
+    /**
+     * Writes the log as is, from the shared mapping if following it,
+     * or from the block holding {@code start} onwards if block compressed.
+     */
+    private long writeBytesTo(long start, OutputStream out) throws IOException {
+        if (blockCompressed != null) {
+            try (InputStream in = BlockGzipFile.open(blockCompressed, start)) {
+                long r = start + in.transferTo(out);
+                out.flush();
+                return r;
+            }
+        }
+        if (followed != null) {
+            try {
+                long r = followed.writeTo(start, out, isComplete());
+                out.flush();
+                return r;
+            } catch (ClosedChannelException e) {
+                // closed as idle, truncated or replaced right after we got it; read the file as usual
+            }
+        }
+        return super.writeLogTo(start, out);
+    }
+
     /**
      * Strips annotations using a {@link PlainTextConsoleOutputStream}.
      * {@inheritDoc}
@@ -214,7 +366,7 @@ public class AnnotatedLargeText<T> extends LargeText {
     @CheckReturnValue
     @Override
     public long writeLogTo(long start, OutputStream out) throws IOException {
-        return super.writeLogTo(start, new PlainTextConsoleOutputStream(out));
+        return writeBytesTo(start, new PlainTextConsoleOutputStream(out));
     }
 
     /**
@@ -223,14 +375,14 @@ public class AnnotatedLargeText<T> extends LargeText {
      */
     @CheckReturnValue
     public long writeRawLogTo(long start, OutputStream out) throws IOException {
-        return super.writeLogTo(start, out);
+        return writeBytesTo(start, out);
     }
 
     @CheckReturnValue
     public long writeHtmlTo(long start, Writer w) throws IOException {
         ConsoleAnnotationOutputStream<T> caw = new ConsoleAnnotationOutputStream<>(
                 w, createAnnotator(Stapler.getCurrentRequest2()), context, charset);
-        long r = super.writeLogTo(start, caw);
+        long r = writeBytesTo(start, caw);
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         Cipher sym = PASSING_ANNOTATOR.encrypt();
@@ -0,0 +1,266 @@
+package hudson.console;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Writes a build log from a ring buffer on a dedicated thread, so that the executor producing the output does not wait for the disk.
+ *
+ * <p>
+ * Whatever was buffered by the time the writer gets to a log is written at once,
+ * so a build printing many short lines costs one write per batch rather than one per line.
+ * The executor only waits when the buffer is full, and on {@link #close}, which returns once everything is written,
+ * so the log is complete by the time the build is.
+ *
+ * <p>
+ * Logs being written can be looked at from the script console, see {@link #getOpen}.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class AsyncLogOutputStream extends OutputStream {
+
+    /**
+     * Whether build logs are written this way.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ boolean ENABLED = SystemProperties.getBoolean(AsyncLogOutputStream.class.getName() + ".enabled");
+
+    /**
+     * Bytes buffered per log.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ int BUFFER_SIZE = SystemProperties.getInteger(AsyncLogOutputStream.class.getName() + ".bufferSize", 512 * 1024);
+
+    private static final int WRITERS = SystemProperties.getInteger(AsyncLogOutputStream.class.getName() + ".writers", 2);
+
+    private static final ExecutorService WRITER = Executors.newFixedThreadPool(WRITERS,
+            new NamingThreadFactory(new DaemonThreadFactory(), "Build log writer"));
+
+    private static final Map<File, AsyncLogOutputStream> OPEN = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final OutputStream out;
+    private final byte[] ring;
+    /**
+     * Bytes ever written to the buffer, and written out of it.
+     */
+    private long head, tail;
+    /**
+     * Whether the writer has this log to write.
+     */
+    private boolean queued;
+    private boolean closed;
+    private IOException failure;
+
+    private long rateStart = System.nanoTime();
+    private long rateBytes;
+    private volatile long bytesPerSecond;
+
+    private AsyncLogOutputStream(File file, OutputStream out, int size) {
+        this.file = file;
+        this.out = out;
+        this.ring = new byte[size];
+    }
+
+    /**
+     * @param file the file {@code out} writes to, for reference
+     * @return a stream writing to {@code out} asynchronously if {@link #ENABLED}, else {@code out} itself
+     */
+    public static @NonNull OutputStream wrap(@NonNull File file, @NonNull OutputStream out) {
+        if (!ENABLED) {
+            return out;
+        }
+        AsyncLogOutputStream async = new AsyncLogOutputStream(file, out, Math.max(BUFFER_SIZE, 4096));
+        OPEN.put(file, async);
+        return async;
+    }
+
+    /**
+     * @return logs currently written this way
+     */
+    public static @NonNull Collection<AsyncLogOutputStream> getOpen() {
+        return Collections.unmodifiableCollection(OPEN.values());
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(@NonNull byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            check();
+            if (closed) {
+                throw new IOException("closed");
+            }
+            int free = ring.length - (int) (head - tail);
+            if (free == 0) {
+                schedule();
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                continue;
+            }
+            int start = (int) (head % ring.length);
+            int n = Math.min(len, Math.min(free, ring.length - start));
+            System.arraycopy(b, off, ring, start, n);
+            head += n;
+            off += n;
+            len -= n;
+        }
+        schedule();
+    }
+
+    /**
+     * Does not wait for the log to be written, which happens anyway as soon as the writer gets to it.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        check();
+        schedule();
+    }
+
+    private void check() throws IOException {
+        if (failure != null) {
+            throw new IOException("Failed to write " + file, failure);
+        }
+    }
+
+    private void schedule() {
+        if (!queued && head > tail) {
+            queued = true;
+            WRITER.execute(this::drain);
+        }
+    }
+
+    /**
+     * Writes out whatever was buffered, on a writer thread.
+     */
+    private void drain() {
+        long from, to;
+        synchronized (this) {
+            from = tail;
+            to = head;
+        }
+        try {
+            for (long position = from; position < to; ) {
+                int start = (int) (position % ring.length);
+                int n = (int) Math.min(to - position, ring.length - start);
+                out.write(ring, start, n); // the producer does not touch what is not yet written
+                position += n;
+            }
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                queued = false;
+                notifyAll();
+            }
+            return;
+        }
+        synchronized (this) {
+            tail = to;
+            updateRate(to - from);
+            queued = false;
+            schedule();
+            notifyAll();
+        }
+    }
+
+    private void updateRate(long written) {
+        rateBytes += written;
+        long elapsed = System.nanoTime() - rateStart;
+        if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+            bytesPerSecond = rateBytes * TimeUnit.SECONDS.toNanos(1) / elapsed;
+            rateStart += elapsed;
+            rateBytes = 0;
+        }
+    }
+
+    /**
+     * Waits for everything to be written, then closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        boolean interrupted = false;
+        try {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                schedule();
+                while ((queued || head > tail) && failure == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true; // still wait, or the log would lack its end
+                    }
+                }
+            }
+            OPEN.remove(file, this);
+            out.close();
+            check();
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public @NonNull File getFile() {
+        return file;
+    }
+
+    /**
+     * @return how many bytes have been written to the file
+     */
+    public synchronized long getBytesWritten() {
+        return tail;
+    }
+
+    /**
+     * @return how many bytes are waiting to be written
+     */
+    public synchronized int getQueueDepth() {
+        return (int) (head - tail);
+    }
+
+    /**
+     * @return the rate at which the log was last written
+     */
+    public long getBytesPerSecond() {
+        synchronized (this) {
+            if (System.nanoTime() - rateStart > TimeUnit.SECONDS.toNanos(2)) {
+                return 0; // idle
+            }
+        }
+        return bytesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncLogOutputStream[" + file + ", written=" + getBytesWritten() + ", queued=" + getQueueDepth() + ", bytesPerSecond=" + getBytesPerSecond() + "]";
+    }
+}
@@ -25,6 +25,7 @@
 package hudson.console;
 
 import hudson.MarkupText;
+import hudson.Util;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -63,6 +64,8 @@ public class ConsoleAnnotationOutputStream<T> extends LineTransformationOutputSt
      */
     private final WriterOutputStream lineOut;
 
+    private final Charset charset;
+
     /**
      *
      */
@@ -71,6 +74,7 @@ public class ConsoleAnnotationOutputStream<T> extends LineTransformationOutputSt
         this.ann = ConsoleAnnotator.cast(ann);
         this.context = context;
         this.lineOut = new WriterOutputStream(line, charset);
+        this.charset = charset;
     }
 
     public ConsoleAnnotator<T> getConsoleAnnotator() {
@@ -84,11 +88,23 @@ public class ConsoleAnnotationOutputStream<T> extends LineTransformationOutputSt
     @SuppressWarnings({"unchecked", "rawtypes"}) // appears to be unsound
     @Override
     protected void eol(byte[] in, int sz) throws IOException {
+        int next = ConsoleNote.findPreamble(in, 0, sz);
+        if (next < 0) {
+            // the common case of a line without any console note: no need to track character positions
+            String text = new String(in, 0, sz, charset);
+            if (ann == null) {
+                out.write(Util.xmlEscape(text));
+            } else {
+                MarkupText mt = new MarkupText(text);
+                ann = ann.annotate(context, mt);
+                out.write(mt.toString(true)); // this perform escapes
+            }
+            return;
+        }
+
         line.reset();
         final StringBuffer strBuf = line.getStringBuffer();
 
-        int next = ConsoleNote.findPreamble(in, 0, sz);
-
         List<ConsoleAnnotator<T>> annotators = null;
 
         { // perform byte[]->char[] while figuring out the char positions of the BLOBs
@@ -32,6 +32,7 @@ import hudson.model.Describable;
 import hudson.model.Run;
 import hudson.remoting.ClassFilter;
 import hudson.remoting.ObjectInputStreamEx;
+import hudson.util.ByteArrayOutputStream2;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
@@ -42,15 +43,22 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import jenkins.model.Jenkins;
+import jenkins.security.ConfidentialStore;
 import jenkins.security.HMACConfidentialKey;
 import jenkins.util.JenkinsJVM;
 import jenkins.util.SystemProperties;
@@ -183,7 +191,7 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
         // atomically write to the final output, to minimize the chance of something else getting in between the output.
         // even with this, it is still technically possible to get such a mix-up to occur (for example,
         // if Java program is reading stdout/stderr separately and copying them into the same final stream.)
-        out.write(encodeToBytes().toByteArray());
+        out.write(encodeToBytes());
     }
 
     /**
@@ -194,21 +202,37 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
      * encoding is ASCII compatible.
      */
     public void encodeTo(Writer out) throws IOException {
-        out.write(encodeToBytes().toString());
+        out.write(encode());
     }
 
-    private ByteArrayOutputStream encodeToBytes() throws IOException {
-        ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        try (OutputStream gzos = new GZIPOutputStream(buf);
-             ObjectOutputStream oos = JenkinsJVM.isJenkinsJVM() ? AnonymousClassWarnings.checkingObjectOutputStream(gzos) : new ObjectOutputStream(gzos)) {
+    private byte[] encodeToBytes() throws IOException {
+        boolean signed = JenkinsJVM.isJenkinsJVM();
+        ByteArrayOutputStream2 serialized = new ByteArrayOutputStream2();
+        try (ObjectOutputStream oos = signed ? AnonymousClassWarnings.checkingObjectOutputStream(serialized) : new ObjectOutputStream(serialized)) {
             oos.writeObject(this);
         }
+        // the same notes, such as hyperlinks to the same items, tend to be printed over and over
+        Object store = signed ? ConfidentialStore.get() : null;
+        Serialized key = new Serialized(serialized.getBuffer(), serialized.size(), signed);
+        Encoded encoded = ENCODED.get(key);
+        if (encoded == null || encoded.store() != store) {
+            encoded = new Encoded(store, encode(serialized, signed));
+            ENCODED.put(key, encoded);
+        }
+        return encoded.bytes(); // not modified by callers
+    }
+
+    private static byte[] encode(ByteArrayOutputStream2 serialized, boolean signed) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (OutputStream gzos = new GZIPOutputStream(buf)) {
+            gzos.write(serialized.getBuffer(), 0, serialized.size());
+        }
 
         ByteArrayOutputStream buf2 = new ByteArrayOutputStream();
 
         try (DataOutputStream dos = new DataOutputStream(Base64.getEncoder().wrap(buf2))) {
             buf2.write(PREAMBLE);
-            if (JenkinsJVM.isJenkinsJVM()) { // else we are in another JVM and cannot sign; result will be ignored unless INSECURE
+            if (signed) { // else we are in another JVM and cannot sign; result will be ignored unless INSECURE
                 byte[] mac = MAC.mac(buf.toByteArray());
                 dos.writeInt(-mac.length); // negative to differentiate from older form
                 dos.write(mac);
@@ -217,14 +241,57 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
             buf.writeTo(dos);
         }
         buf2.write(POSTAMBLE);
-        return buf2;
+        return buf2.toByteArray();
+    }
+
+    /**
+     * The serialized form of a note, as a key to its encoded form.
+     */
+    private static final class Serialized {
+        private final byte[] bytes;
+        private final boolean signed;
+        private final int hash;
+
+        Serialized(byte[] buf, int size, boolean signed) {
+            this.bytes = Arrays.copyOf(buf, size);
+            this.signed = signed;
+            this.hash = Arrays.hashCode(bytes) * 31 + Boolean.hashCode(signed);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Serialized && ((Serialized) o).signed == signed && Arrays.equals(((Serialized) o).bytes, bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
 
+    /**
+     * @param store what the note was signed with, as this changes with the Jenkins instance
+     */
+    private record Encoded(Object store, byte[] bytes) {}
+
+    /**
+     * How many recently encoded notes are kept.
+     */
+    private static final int ENCODED_CACHE_SIZE = SystemProperties.getInteger(ConsoleNote.class.getName() + ".encodedCacheSize", 256);
+
+    @SuppressWarnings("serial")
+    private static final Map<Serialized, Encoded> ENCODED = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Serialized, Encoded> eldest) {
+            return size() > ENCODED_CACHE_SIZE;
+        }
+    });
+
     /**
      * Works like {@link #encodeTo(Writer)} but obtain the result as a string.
      */
     public String encode() throws IOException {
-        return encodeToBytes().toString();
+        return new String(encodeToBytes(), StandardCharsets.US_ASCII);
     }
 
     /**
@@ -341,20 +408,50 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
     public static int findPreamble(byte[] buf, int start, int len) {
         int e = start + len - PREAMBLE.length + 1;
 
-        OUTER:
         for (int i = start; i < e; i++) {
-            if (buf[i] == PREAMBLE[0]) {
-                // check for the rest of the match
-                for (int j = 1; j < PREAMBLE.length; j++) {
-                    if (buf[i + j] != PREAMBLE[j])
-                        continue OUTER;
+            if (i + Long.BYTES <= e) {
+                // look for the escape character starting the preamble 8 bytes at a time, as most lines have none
+                long v = (long) LONGS.get(buf, i) ^ ESCAPES;
+                long found = (v - 0x0101010101010101L) & ~v & 0x8080808080808080L;
+                if (found == 0) {
+                    i += Long.BYTES - 1;
+                    continue;
                 }
+                i += Long.numberOfTrailingZeros(found) >>> 3; // the first one is exact
+            } else if (buf[i] != PREAMBLE[0]) {
+                continue;
+            }
+            if (Arrays.equals(buf, i + 1, i + PREAMBLE.length, PREAMBLE, 1, PREAMBLE.length)) {
                 return i; // found it
             }
         }
         return -1; // not found
     }
 
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ESCAPES = 0x0101010101010101L * PREAMBLE[0];
+
+    /**
+     * Finds the end of a note starting at a given position, without decoding it, which is all
+     * {@link #skip} needs to do for a well-formed note as the encoded form is Base64.
+     *
+     * @param start where a preamble was found, see {@link #findPreamble}
+     * @return the position after the postamble, or -1 if there is no well-formed note there
+     */
+    static int findEnd(byte[] buf, int start, int end) {
+        for (int i = start + PREAMBLE.length; i < end; i++) {
+            byte c = buf[i];
+            if (c == POSTAMBLE[0]) {
+                int e = i + POSTAMBLE.length;
+                return e <= end && Arrays.equals(buf, i, e, POSTAMBLE, 0, POSTAMBLE.length) ? e : -1;
+            }
+            if (!(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '+' || c == '/' || c == '=')) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Removes the embedded console notes in the given log lines.
      *
@@ -373,12 +470,21 @@ public abstract class ConsoleNote<T> implements Serializable, Describable<Consol
      * @since 1.350
      */
     public static String removeNotes(String line) {
-        while (true) {
-            int idx = line.indexOf(PREAMBLE_STR);
-            if (idx < 0)  return line;
+        int idx = line.indexOf(PREAMBLE_STR);
+        if (idx < 0) {
+            return line;
+        }
+        StringBuilder b = new StringBuilder(line.length());
+        int from = 0;
+        while (idx >= 0) {
             int e = line.indexOf(POSTAMBLE_STR, idx);
-            if (e < 0)    return line;
-            line = line.substring(0, idx) + line.substring(e + POSTAMBLE_STR.length());
+            if (e < 0) {
+                break;
+            }
+            b.append(line, from, idx);
+            from = e + POSTAMBLE_STR.length();
+            idx = line.indexOf(PREAMBLE_STR, from);
         }
+        return b.append(line, from, line.length()).toString();
     }
 }
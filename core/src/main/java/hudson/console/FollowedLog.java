@@ -0,0 +1,338 @@
+package hudson.console;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Functions;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * A log still being written, shared by everyone following it.
+ *
+ * <p>
+ * The file is opened once and memory-mapped as it grows, whatever the number of readers,
+ * instead of being opened and read by each request polling for more output.
+ * The end of the last complete line is tracked as new bytes are mapped,
+ * so that readers of an incomplete log only ever get whole lines without looking for them.
+ *
+ * <p>
+ * Readers waiting for more output, see {@link #onMore}, do not hold a thread meanwhile.
+ * They are called back together once the file is seen to grow, which is checked once per {@link #CHECK_INTERVAL}
+ * rather than once per reader.
+ *
+ * <p>
+ * Logs no longer read for {@link #IDLE} are closed, and so are those which shrink or get replaced,
+ * whose readers then read the file as usual.
+ *
+ * @see AnnotatedLargeText#following
+ */
+@Restricted(NoExternalUse.class)
+public final class FollowedLog {
+
+    private static final Logger LOGGER = Logger.getLogger(FollowedLog.class.getName());
+
+    /**
+     * Whether logs of running builds are served this way. Off on Windows, where a mapped file cannot be deleted.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ boolean ENABLED = SystemProperties.getBoolean(FollowedLog.class.getName() + ".enabled", !Functions.isWindows());
+
+    /**
+     * How long a request for more output may wait for it, in milliseconds, or 0 not to wait.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ long WAIT = SystemProperties.getLong(FollowedLog.class.getName() + ".wait", 1000L);
+
+    static final long CHECK_INTERVAL = 100;
+    static final long IDLE = TimeUnit.MINUTES.toMillis(1);
+    static final int CHUNK = 16 * 1024 * 1024;
+
+    private static final Map<File, FollowedLog> LOGS = new ConcurrentHashMap<>();
+    private static final Periodic REAPER = new Periodic(() -> closeIdle(System.currentTimeMillis()), IDLE);
+    private static final Periodic POLLER = new Periodic(() -> poll(System.currentTimeMillis()), CHECK_INTERVAL);
+
+    private final File file;
+    private final FileChannel channel;
+    /**
+     * Identifies the file opened, to notice when it is replaced.
+     */
+    private final @CheckForNull Object fileKey;
+    /**
+     * Chunk {@code i} maps bytes from {@code i * CHUNK}; all but the last are full.
+     */
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private volatile long mapped;
+    private volatile long lineEnd;
+    private long checked;
+    private volatile long lastUsed = System.currentTimeMillis();
+    private boolean closed;
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    private FollowedLog(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.fileKey = fileKey();
+    }
+
+    private @CheckForNull Object fileKey() {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the shared instance for this file, or null if it cannot be followed this way, in which case it should be read as usual
+     */
+    static @CheckForNull FollowedLog of(@NonNull File file) {
+        if (!ENABLED || !file.isFile() || file.getName().endsWith(".gz")) {
+            return null;
+        }
+        try {
+            FollowedLog log = LOGS.computeIfAbsent(file.getAbsoluteFile(), f -> {
+                try {
+                    return new FollowedLog(f);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Cannot follow " + f, e);
+                    return null;
+                }
+            });
+            if (log != null) {
+                log.lastUsed = System.currentTimeMillis();
+                REAPER.schedule();
+            }
+            return log;
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Cannot follow " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Maps what was written since last time, and calls back the readers waiting for it or for long enough.
+     */
+    private void refresh() throws IOException {
+        try {
+            map();
+        } finally {
+            callBack();
+        }
+    }
+
+    /**
+     * Calls back, outside of the lock, the readers which got more output or waited long enough, or all of them once closed.
+     */
+    private void callBack() {
+        List<Runnable> callbacks = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            waiters.removeIf(w -> {
+                if (closed || lineEnd > w.position || now >= w.deadline) {
+                    callbacks.add(w.callback);
+                    return true;
+                }
+                return false;
+            });
+        }
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to call back a reader of " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Maps what was written since last time, or closes if the file shrank or was replaced,
+     * as what was mapped no longer is what the file has.
+     */
+    private synchronized void map() throws IOException {
+        checked = System.currentTimeMillis();
+        if (closed) {
+            return;
+        }
+        long size = channel.size();
+        long from = mapped;
+        if (size < from || !Objects.equals(fileKey, fileKey())) {
+            LOGGER.log(Level.FINE, "{0} was truncated or replaced", file);
+            LOGS.remove(file, this);
+            closeFile();
+            return;
+        }
+        if (size == from) {
+            return;
+        }
+        if (!chunks.isEmpty() && from % CHUNK != 0) {
+            chunks.remove(chunks.size() - 1); // remapped larger below
+        }
+        for (long start = (long) chunks.size() * CHUNK; start < size; start += CHUNK) {
+            chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK, size - start)));
+        }
+        for (long i = size - 1; i >= from; i--) {
+            if (byteAt(i) == '\n') {
+                lineEnd = i + 1;
+                break;
+            }
+        }
+        mapped = size;
+    }
+
+    private byte byteAt(long position) {
+        return chunks.get((int) (position / CHUNK)).get((int) (position % CHUNK));
+    }
+
+    /**
+     * Writes the log from a given position, or from the beginning if negative.
+     * @param complete whether the log is complete, else only whole lines are written
+     * @return the position up to which it was written
+     * @throws ClosedChannelException if closed meanwhile, as it was idle, truncated or replaced, in which case the file should be read as usual
+     */
+    long writeTo(long start, @NonNull OutputStream out, boolean complete) throws IOException {
+        lastUsed = System.currentTimeMillis();
+        refresh();
+        long end = complete ? mapped : lineEnd;
+        List<MappedByteBuffer> snapshot;
+        synchronized (this) {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            snapshot = new ArrayList<>(chunks);
+        }
+        start = Math.max(start, 0);
+        byte[] buf = new byte[8192];
+        long position = start;
+        while (position < end) {
+            MappedByteBuffer chunk = snapshot.get((int) (position / CHUNK));
+            int offset = (int) (position % CHUNK);
+            int n = (int) Math.min(buf.length, Math.min(end - position, chunk.limit() - offset));
+            chunk.get(offset, buf, 0, n); // absolute, so safe to share between readers
+            out.write(buf, 0, n);
+            position += n;
+        }
+        return Math.max(start, end);
+    }
+
+    /**
+     * @return whether there are complete lines past a given position, or the log was closed, so that there is no point in waiting
+     */
+    boolean hasMore(long position) throws IOException {
+        lastUsed = System.currentTimeMillis();
+        refresh();
+        synchronized (this) {
+            return closed || lineEnd > position;
+        }
+    }
+
+    /**
+     * Calls back once there are complete lines past a given position, or after a while, whichever comes first,
+     * without holding the calling thread meanwhile.
+     * The callback runs in a {@link Timer} thread, or in the calling thread if there already are such lines.
+     */
+    void onMore(long position, long timeout, @NonNull Runnable callback) throws IOException {
+        lastUsed = System.currentTimeMillis();
+        synchronized (this) {
+            waiters.add(new Waiter(position, lastUsed + timeout, callback));
+        }
+        POLLER.schedule();
+        refresh();
+    }
+
+    /**
+     * Checks the logs someone waits for.
+     */
+    static void poll(long now) {
+        for (FollowedLog log : LOGS.values()) {
+            synchronized (log) {
+                if (log.waiters.isEmpty() || now - log.checked < CHECK_INTERVAL) {
+                    continue;
+                }
+            }
+            try {
+                log.refresh();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to check " + log.file, e);
+            }
+        }
+    }
+
+    long length() {
+        return mapped;
+    }
+
+    private void close() {
+        closeFile();
+        callBack();
+    }
+
+    private synchronized void closeFile() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close " + file, e);
+        }
+        // mappings go away once no longer referenced
+        chunks.clear();
+    }
+
+    static void closeIdle(long now) {
+        LOGS.values().removeIf(log -> {
+            if (now - log.lastUsed < IDLE && log.file.isFile()) {
+                return false;
+            }
+            log.close();
+            return true;
+        });
+    }
+
+    static int size() {
+        return LOGS.size();
+    }
+
+    private record Waiter(long position, long deadline, Runnable callback) {}
+
+    /**
+     * Runs a task periodically on {@link Timer}, once scheduled, and again if the timer was recreated since, as in tests.
+     */
+    private static final class Periodic {
+        private final Runnable task;
+        private final long period;
+        private ScheduledExecutorService scheduledOn;
+
+        Periodic(Runnable task, long period) {
+            this.task = task;
+            this.period = period;
+        }
+
+        synchronized void schedule() {
+            ScheduledExecutorService timer = Timer.get();
+            if (scheduledOn != timer) {
+                scheduledOn = timer;
+                timer.scheduleWithFixedDelay(task, period, period, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
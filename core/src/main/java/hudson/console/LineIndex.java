@@ -0,0 +1,455 @@
+package hudson.console;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.io.BlockGzipFile;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Where the lines of a build log start, kept next to it as {@code log.lines} while it is written.
+ *
+ * <p>
+ * Only every {@link #STRIDE}th line is recorded, which keeps the index to a fraction of a percent of the log
+ * while bounding the scan needed to find any line, such as the first of the last few, see {@link Tail}.
+ * Offsets are into the uncompressed log, so the index remains usable once the log is block compressed, see {@link BlockGzipFile}.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class LineIndex implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(LineIndex.class.getName());
+
+    static final int MAGIC = 0x4c494458; // LIDX
+    static final int STRIDE = 32;
+    private static final int HEADER = 8;
+    /**
+     * Beyond which the last lines of a log are read byte by byte as if there were no index.
+     */
+    private static final int MAX_READ = 16 * 1024 * 1024;
+
+    /**
+     * Entry {@code i} is the offset of line {@code (i + 1) * stride}, counting from 0.
+     */
+    private final RandomAccessFile file;
+    private final int stride;
+    /**
+     * The number of entries up to the length of the log.
+     */
+    private long count;
+
+    private LineIndex(RandomAccessFile file, int stride, long count) {
+        this.file = file;
+        this.stride = stride;
+        this.count = count;
+    }
+
+    /**
+     * @param log the log, compressed or not
+     * @return the index of that log
+     */
+    static @NonNull File of(@NonNull File log) {
+        String name = log.getName();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return new File(log.getParentFile(), name + ".lines");
+    }
+
+    /**
+     * Records the lines written to a new log.
+     *
+     * @param log the file written to by {@code out}
+     * @return a stream to write the log to instead, or {@code out} itself if appending to an existing log
+     */
+    public static @NonNull OutputStream record(@NonNull File log, @NonNull OutputStream out) {
+        File index = of(log);
+        try {
+            if (log.length() > 0) {
+                Files.deleteIfExists(index.toPath()); // lines before these are unknown
+                return out;
+            }
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(index.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)));
+            dos.writeInt(MAGIC);
+            dos.writeInt(STRIDE);
+            return new Recorder(out, dos, index);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Cannot index " + log, e);
+            return out;
+        }
+    }
+
+    private static final class Recorder extends FilterOutputStream {
+        private final File file;
+        private DataOutputStream index;
+        private long position;
+        private long lines;
+
+        Recorder(OutputStream out, DataOutputStream index, File file) {
+            super(out);
+            this.index = index;
+            this.file = file;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            recorded(b);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            for (int i = off; i < off + len; i++) {
+                recorded(b[i]);
+            }
+        }
+
+        private void recorded(int b) {
+            position++;
+            if (b == '\n' && ++lines % STRIDE == 0 && index != null) {
+                try {
+                    index.writeLong(position);
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        /**
+         * The log must not suffer from a problem with its index, which is simply dropped.
+         */
+        private void failed(IOException e) {
+            LOGGER.log(Level.FINE, "Cannot index " + file, e);
+            try {
+                index.close();
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException x) {
+                e.addSuppressed(x);
+            }
+            index = null;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            if (index != null) {
+                try {
+                    index.flush();
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                if (index != null) {
+                    try {
+                        index.close();
+                    } catch (IOException e) {
+                        failed(e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param tail the log, opened
+     * @return the index of this log, to be closed, or null if there is none or it does not match the log
+     */
+    private static @CheckForNull LineIndex load(@NonNull File log, @NonNull Tail tail) throws IOException {
+        LineIndex index = load(log, tail.length());
+        if (index == null) {
+            return null;
+        }
+        try {
+            long last = index.count == 0 ? 0 : index.entry(index.count - 1);
+            if (last > 0 && tail.byteAt(last - 1) == '\n') {
+                return index;
+            }
+        } catch (IOException | RuntimeException e) {
+            index.close();
+            throw e;
+        }
+        index.close();
+        return null;
+    }
+
+    /**
+     * Opens the index, reading only its header and the few entries needed to find the last one within the log,
+     * so that the cost of a lookup does not grow with the log.
+     *
+     * @param length the length of the log, past which the index cannot go
+     */
+    private static @CheckForNull LineIndex load(@NonNull File log, long length) {
+        File f = of(log);
+        if (!f.isFile()) {
+            return null;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(f, "r");
+            if (file.readInt() != MAGIC) {
+                file.close();
+                return null;
+            }
+            int stride = file.readInt();
+            if (stride <= 0) {
+                file.close();
+                return null;
+            }
+            // a partial entry being written is ignored
+            LineIndex index = new LineIndex(file, stride, (file.length() - HEADER) / Long.BYTES);
+            // as are those written since the log was opened; entries only grow, so they are found by bisection
+            long low = 0;
+            long high = index.count;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (index.entry(middle) <= length) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            index.count = low;
+            return index;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Cannot read " + f, e);
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException x) {
+                    e.addSuppressed(x);
+                }
+            }
+            return null;
+        }
+    }
+
+    private long entry(long i) throws IOException {
+        byte[] b = new byte[Long.BYTES];
+        file.seek(HEADER + i * Long.BYTES);
+        file.readFully(b);
+        return ByteBuffer.wrap(b).getLong();
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * @return the greatest indexed line at or before {@code line}, and its offset
+     */
+    private long[] floor(long line) throws IOException {
+        long i = Math.min(line / stride, count);
+        return i == 0 ? new long[] {0, 0} : new long[] {i * stride, entry(i - 1)};
+    }
+
+    /**
+     * The bytes of a log, read backwards from the end to get its last lines, as {@code Run#getLog(int)} does.
+     * When the log has an index, the part holding the lines asked for is read at once, rather than byte by byte.
+     */
+    public abstract static class Tail implements Closeable {
+        /**
+         * @return the (uncompressed) length of the log
+         */
+        public abstract long length();
+
+        public abstract byte byteAt(long position) throws IOException;
+
+        /**
+         * @return the bytes of the log from {@code start} to its end
+         */
+        abstract byte[] read(long start) throws IOException;
+
+        /**
+         * @param lines how many lines will be read, used to find where they start
+         */
+        public static @NonNull Tail open(@NonNull File log, int lines) throws IOException {
+            Tail tail = LineIndex.open(log);
+            try (LineIndex index = load(log, tail)) {
+                return index != null ? index.tail(tail, lines) : tail;
+            } catch (IOException | RuntimeException e) {
+                tail.close();
+                throw e;
+            }
+        }
+    }
+
+    private static Tail open(File log) throws IOException {
+        return log.getName().endsWith(".gz") && BlockGzipFile.isBlockCompressed(log) ? new BlockTail(log) : new FileTail(log);
+    }
+
+    /**
+     * Reads the last lines of a log at once, from an indexed line before them.
+     */
+    private Tail tail(Tail log, int lines) throws IOException {
+        long length = log.length();
+        long indexed = count * stride;
+        long last = entry(count - 1);
+        if (length - last > MAX_READ) {
+            return log;
+        }
+        byte[] unindexed = log.read(last);
+        long newlines = indexed;
+        for (byte b : unindexed) {
+            if (b == '\n') {
+                newlines++;
+            }
+        }
+        if (length > 0 && log.byteAt(length - 1) == '\n') {
+            newlines--; // not counted as a line break when reading backwards
+        }
+        // the lines asked for, and the break before them, come after this one
+        long[] start = floor(Math.max(0, newlines - lines));
+        if (length - start[1] > MAX_READ) {
+            return log;
+        }
+        return new BufferedTail(log, start[1], start[1] == last ? unindexed : log.read(start[1]));
+    }
+
+    /**
+     * Finds where a line starts, as for showing a range of lines, reading at most {@link #STRIDE} lines to do so if the log is indexed.
+     *
+     * @param line counting from 0
+     * @return the offset at which that line starts, or -1 if there are not that many lines
+     */
+    public static long offsetOf(@NonNull File log, long line) throws IOException {
+        try (Tail tail = open(log); LineIndex index = load(log, tail)) {
+            long[] start = index != null ? index.floor(line) : new long[] {0, 0};
+            long length = tail.length();
+            long position = start[1];
+            for (long l = start[0]; l < line; position++) {
+                if (position >= length) {
+                    return -1;
+                }
+                if (tail.byteAt(position) == '\n') {
+                    l++;
+                }
+            }
+            return position < length || line == 0 ? position : -1;
+        }
+    }
+
+    private static final class FileTail extends Tail {
+        private final RandomAccessFile file;
+        /**
+         * As of opening, the log might still grow.
+         */
+        private final long length;
+
+        FileTail(File log) throws IOException {
+            file = new RandomAccessFile(log, "r");
+            length = file.length();
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public byte byteAt(long position) throws IOException {
+            file.seek(position);
+            return file.readByte();
+        }
+
+        @Override
+        byte[] read(long start) throws IOException {
+            byte[] bytes = new byte[Math.toIntExact(length - start)];
+            file.seek(start);
+            file.readFully(bytes);
+            return bytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    private static final class BlockTail extends Tail {
+        private final BlockGzipFile file;
+
+        BlockTail(File log) throws IOException {
+            file = new BlockGzipFile(log);
+        }
+
+        @Override
+        public long length() {
+            return file.length();
+        }
+
+        @Override
+        public byte byteAt(long position) throws IOException {
+            return file.byteAt(position);
+        }
+
+        @Override
+        byte[] read(long start) throws IOException {
+            try (InputStream in = file.open(start)) {
+                return in.readNBytes(Math.toIntExact(file.length() - start));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    private static final class BufferedTail extends Tail {
+        private final Tail log;
+        private final long start;
+        private final byte[] bytes;
+
+        BufferedTail(Tail log, long start, byte[] bytes) {
+            this.log = log;
+            this.start = start;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long length() {
+            return start + bytes.length;
+        }
+
+        @Override
+        public byte byteAt(long position) throws IOException {
+            return position >= start ? bytes[(int) (position - start)] : log.byteAt(position);
+        }
+
+        @Override
+        byte[] read(long from) throws IOException {
+            return from >= start ? Arrays.copyOfRange(bytes, (int) (from - start), bytes.length) : log.read(from);
+        }
+
+        @Override
+        public void close() throws IOException {
+            log.close();
+        }
+    }
+}
@@ -49,6 +49,26 @@ public class PlainTextConsoleOutputStream extends LineTransformationOutputStream
         super(out);
     }
 
+    /**
+     * Passes complete lines without any console note straight through, rather than buffering them one by one.
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (isAtLineStart()) {
+            int end = off + len;
+            int lastEol = end - 1;
+            while (lastEol >= off && b[lastEol] != '\n') {
+                lastEol--;
+            }
+            if (lastEol >= off && ConsoleNote.findPreamble(b, off, lastEol + 1 - off) < 0) {
+                out.write(b, off, lastEol + 1 - off);
+                off = lastEol + 1;
+                len = end - off;
+            }
+        }
+        super.write(b, off, len);
+    }
+
     /**
      * Called after we read the whole line of plain text.
      */
@@ -67,17 +87,22 @@ public class PlainTextConsoleOutputStream extends LineTransformationOutputStream
                 assert next == written;
             }
 
-            int rest = sz - next;
-            ByteArrayInputStream b = new ByteArrayInputStream(in, next, rest);
+            int end = ConsoleNote.findEnd(in, next, sz);
+            if (end >= 0) {
+                written = end;
+            } else {
+                int rest = sz - next;
+                ByteArrayInputStream b = new ByteArrayInputStream(in, next, rest);
 
-            try {
-                ConsoleNote.skip(new DataInputStream(b));
-            } catch (IOException x) {
-                LOGGER.log(Level.FINE, "Failed to skip annotation from \"" + SourceCodeEscapers.javaCharEscaper().escape(new String(in, next, rest, Charset.defaultCharset())) + "\"", x);
-            }
+                try {
+                    ConsoleNote.skip(new DataInputStream(b));
+                } catch (IOException x) {
+                    LOGGER.log(Level.FINE, "Failed to skip annotation from \"" + SourceCodeEscapers.javaCharEscaper().escape(new String(in, next, rest, Charset.defaultCharset())) + "\"", x);
+                }
 
-            int bytesUsed = rest - b.available(); // bytes consumed by annotations
-            written += bytesUsed;
+                int bytesUsed = rest - b.available(); // bytes consumed by annotations
+                written += bytesUsed;
+            }
 
 
             next = ConsoleNote.findPreamble(in, written, sz - written);
@@ -51,14 +51,17 @@ import java.io.File;
 import java.io.IOException;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -340,20 +343,78 @@ public class Fingerprint implements ModelObject, Saveable {
      */
     @ExportedBean(defaultVisibility = 3)
     public static final class RangeSet {
-        // sorted
-        private final List<Range> ranges;
+        /**
+         * Start and end of each range, in order: {@code [bounds[2i], bounds[2i+1])} is the i-th range.
+         * Ranges are sorted and separated by gaps, unless {@link #normalized} is false.
+         */
+        private int[] bounds;
+        private int size;
+        /**
+         * False when read from a string listing ranges out of order, adjacent, or overlapping,
+         * in which case they are kept as is and looked up one by one.
+         */
+        private boolean normalized = true;
 
         public RangeSet() {
-            this(new ArrayList<>());
+            this.bounds = new int[2];
         }
 
         private RangeSet(List<Range> data) {
-            this.ranges = data;
+            this();
+            set(data);
         }
 
         private RangeSet(Range initial) {
             this();
-            ranges.add(initial);
+            append(initial.start, initial.end);
+        }
+
+        /**
+         * Adds a range after all others, without merging.
+         */
+        private void append(int start, int end) {
+            if (size > 0 && start <= bounds[2 * size - 1]) {
+                normalized = false;
+            }
+            if (2 * size == bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[2 * size] = start;
+            bounds[2 * size + 1] = end;
+            size++;
+        }
+
+        private void set(List<Range> ranges) {
+            size = 0;
+            normalized = true;
+            for (Range r : ranges) {
+                append(r.start, r.end);
+            }
+        }
+
+        private List<Range> toList() {
+            List<Range> ranges = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                ranges.add(new Range(bounds[2 * i], bounds[2 * i + 1]));
+            }
+            return ranges;
+        }
+
+        /**
+         * Index of the last range starting at or before n, or -1.
+         */
+        private int floor(int n) {
+            int lo = 0;
+            int hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (bounds[2 * mid] <= n) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return hi;
         }
 
         /**
@@ -397,7 +458,7 @@ public class Fingerprint implements ModelObject, Saveable {
          */
         @Exported
         public synchronized List<Range> getRanges() {
-            return new ArrayList<>(ranges);
+            return toList();
         }
 
         /**
@@ -405,27 +466,75 @@ public class Fingerprint implements ModelObject, Saveable {
          * If the set already includes this number, this will be a no-op.
          */
         public synchronized void add(int n) {
+            addIfAbsent(n);
+        }
+
+        /**
+         * Like {@link #add(int)}, telling whether the set changed.
+         * Build numbers mostly being added in increasing order, this is usually a matter of growing the last range.
+         */
+        synchronized boolean addIfAbsent(int n) {
+            if (!normalized) {
+                List<Range> ranges = toList();
+                boolean added = add(ranges, n);
+                set(ranges);
+                return added;
+            }
+            int i = floor(n);
+            if (i >= 0 && n < bounds[2 * i + 1]) {
+                return false; // already included
+            }
+            boolean joinsNext = i + 1 < size && bounds[2 * (i + 1)] == n + 1;
+            if (i >= 0 && bounds[2 * i + 1] == n) {
+                if (joinsNext) {
+                    // fills the gap between two ranges
+                    bounds[2 * i + 1] = bounds[2 * i + 3];
+                    System.arraycopy(bounds, 2 * i + 4, bounds, 2 * i + 2, 2 * (size - i - 2));
+                    size--;
+                } else {
+                    bounds[2 * i + 1] = n + 1;
+                }
+            } else if (joinsNext) {
+                bounds[2 * (i + 1)] = n;
+            } else {
+                // needs to insert a single-value range
+                if (2 * size == bounds.length) {
+                    bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                }
+                System.arraycopy(bounds, 2 * i + 2, bounds, 2 * i + 4, 2 * (size - i - 1));
+                bounds[2 * i + 2] = n;
+                bounds[2 * i + 3] = n + 1;
+                size++;
+            }
+            return true;
+        }
+
+        /**
+         * Adds a number to ranges which may not be sorted, as done before ranges were kept sorted.
+         */
+        private static boolean add(List<Range> ranges, int n) {
             for (int i = 0; i < ranges.size(); i++) {
                 Range r = ranges.get(i);
-                if (r.includes(n))   return; // already included
+                if (r.includes(n))   return false; // already included
                 if (r.end == n) {
                     ranges.set(i, r.expandRight());
-                    checkCollapse(i);
-                    return;
+                    checkCollapse(ranges, i);
+                    return true;
                 }
                 if (r.start == n + 1) {
                     ranges.set(i, r.expandLeft());
-                    checkCollapse(i - 1);
-                    return;
+                    checkCollapse(ranges, i - 1);
+                    return true;
                 }
                 if (r.isBiggerThan(n)) {
                     // needs to insert a single-value Range
                     ranges.add(i, new Range(n, n + 1));
-                    return;
+                    return true;
                 }
             }
 
             ranges.add(new Range(n, n + 1));
+            return true;
         }
 
         public synchronized void addAll(int... n) {
@@ -434,7 +543,7 @@ public class Fingerprint implements ModelObject, Saveable {
         }
 
 
-        private void checkCollapse(int i) {
+        private static void checkCollapse(List<Range> ranges, int i) {
             if (i < 0 || i == ranges.size() - 1)     return;
             Range lhs = ranges.get(i);
             Range rhs = ranges.get(i + 1);
@@ -447,18 +556,24 @@ public class Fingerprint implements ModelObject, Saveable {
         }
 
         public synchronized boolean includes(int i) {
-            for (Range r : ranges) {
-                if (r.includes(i))
+            if (normalized) {
+                int r = floor(i);
+                return r >= 0 && i < bounds[2 * r + 1];
+            }
+            for (int r = 0; r < size; r++) {
+                if (bounds[2 * r] <= i && i < bounds[2 * r + 1])
                     return true;
             }
             return false;
         }
 
         public synchronized void add(RangeSet that) {
+            List<Range> ranges = toList();
+            List<Range> thatRanges = that.getRanges();
             int lhs = 0, rhs = 0;
-            while (lhs < this.ranges.size() && rhs < that.ranges.size()) {
-                Range lr = this.ranges.get(lhs);
-                Range rr = that.ranges.get(rhs);
+            while (lhs < ranges.size() && rhs < thatRanges.size()) {
+                Range lr = ranges.get(lhs);
+                Range rr = thatRanges.get(rhs);
 
                 // no overlap
                 if (lr.end < rr.start) {
@@ -477,16 +592,17 @@ public class Fingerprint implements ModelObject, Saveable {
                 rhs++;
 
                 // since ranges[lhs] is expanded, it might overlap with others in this.ranges
-                while (lhs + 1 < this.ranges.size() && !m.isIndependent(this.ranges.get(lhs + 1))) {
-                    m = m.combine(this.ranges.get(lhs + 1));
-                    this.ranges.remove(lhs + 1);
+                while (lhs + 1 < ranges.size() && !m.isIndependent(ranges.get(lhs + 1))) {
+                    m = m.combine(ranges.get(lhs + 1));
+                    ranges.remove(lhs + 1);
                 }
 
-                this.ranges.set(lhs, m);
+                ranges.set(lhs, m);
             }
 
             // if anything is left in that.ranges, add them all
-            this.ranges.addAll(that.ranges.subList(rhs, that.ranges.size()));
+            ranges.addAll(thatRanges.subList(rhs, thatRanges.size()));
+            set(ranges);
         }
 
         /**
@@ -495,12 +611,14 @@ public class Fingerprint implements ModelObject, Saveable {
          * @return true if this range set was modified as a result.
          */
         public synchronized boolean retainAll(RangeSet that) {
+            List<Range> ranges = toList();
+            List<Range> thatRanges = that.getRanges();
             List<Range> intersection = new ArrayList<>();
 
             int lhs = 0, rhs = 0;
-            while (lhs < this.ranges.size() && rhs < that.ranges.size()) {
-                Range lr = this.ranges.get(lhs);
-                Range rr = that.ranges.get(rhs);
+            while (lhs < ranges.size() && rhs < thatRanges.size()) {
+                Range lr = ranges.get(lhs);
+                Range rr = thatRanges.get(rhs);
 
                 if (lr.end <= rr.start) { // lr has no overlap with that.ranges
                     lhs++;
@@ -523,11 +641,10 @@ public class Fingerprint implements ModelObject, Saveable {
                 }
             }
 
-            boolean same = this.ranges.equals(intersection);
+            boolean same = ranges.equals(intersection);
 
             if (!same) {
-                this.ranges.clear();
-                this.ranges.addAll(intersection);
+                set(intersection);
                 return true;
             } else {
                 return false;
@@ -540,13 +657,15 @@ public class Fingerprint implements ModelObject, Saveable {
          * @return true if this range set was modified as a result.
          */
         public synchronized boolean removeAll(RangeSet that) {
+            List<Range> ranges = toList();
+            List<Range> thatRanges = that.getRanges();
             boolean modified = false;
             List<Range> sub = new ArrayList<>();
 
             int lhs = 0, rhs = 0;
-            while (lhs < this.ranges.size() && rhs < that.ranges.size()) {
-                Range lr = this.ranges.get(lhs);
-                Range rr = that.ranges.get(rhs);
+            while (lhs < ranges.size() && rhs < thatRanges.size()) {
+                Range lr = ranges.get(lhs);
+                Range rr = thatRanges.get(rhs);
 
                 if (lr.end <= rr.start) { // lr has no overlap with that.ranges. lr stays
                     sub.add(lr);
@@ -586,7 +705,7 @@ public class Fingerprint implements ModelObject, Saveable {
                 if (rr.end < lr.end) { // if B is non-empty
                     // we still need to check that with that.ranges, so keep it in the place of lr.
                     // how much of them will eventually stay is up to the remainder of that.ranges
-                    this.ranges.set(lhs, new Range(rr.end, lr.end));
+                    ranges.set(lhs, new Range(rr.end, lr.end));
                     rhs++;
                 } else {
                     // if B is empty, we are done considering lr
@@ -597,19 +716,18 @@ public class Fingerprint implements ModelObject, Saveable {
             if (!modified)  return false;   // no changes
 
             // whatever that remains in lhs will survive
-            sub.addAll(this.ranges.subList(lhs, this.ranges.size()));
+            sub.addAll(ranges.subList(lhs, ranges.size()));
 
-            this.ranges.clear();
-            this.ranges.addAll(sub);
+            set(sub);
             return true;
         }
 
         @Override
         public synchronized String toString() {
-            StringBuilder buf = new StringBuilder();
-            for (Range r : ranges) {
-                if (!buf.isEmpty())  buf.append(',');
-                buf.append(r);
+            StringBuilder buf = new StringBuilder(size * 10);
+            for (int i = 0; i < size; i++) {
+                if (i > 0)  buf.append(',');
+                buf.append('[').append(bounds[2 * i]).append(',').append(bounds[2 * i + 1]).append(')');
             }
             return buf.toString();
         }
@@ -619,17 +737,25 @@ public class Fingerprint implements ModelObject, Saveable {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
 
-            return ranges.equals(((RangeSet) o).ranges);
+            return Arrays.equals(snapshot(), ((RangeSet) o).snapshot());
+        }
 
+        private synchronized int[] snapshot() {
+            return Arrays.copyOf(bounds, 2 * size);
         }
 
         @Override
-        public int hashCode() {
-            return ranges.hashCode();
+        public synchronized int hashCode() {
+            // as List<Range>.hashCode(), as it used to be
+            int h = 1;
+            for (int i = 0; i < size; i++) {
+                h = 31 * h + 31 * bounds[2 * i] + bounds[2 * i + 1];
+            }
+            return h;
         }
 
         public synchronized boolean isEmpty() {
-            return ranges.isEmpty();
+            return size == 0;
         }
 
         /**
@@ -638,7 +764,10 @@ public class Fingerprint implements ModelObject, Saveable {
          * If this range is empty, this method throws an exception.
          */
         public synchronized int min() {
-            return ranges.get(0).start;
+            if (size == 0) {
+                throw new IndexOutOfBoundsException("empty");
+            }
+            return bounds[0];
         }
 
         /**
@@ -647,7 +776,10 @@ public class Fingerprint implements ModelObject, Saveable {
          * If this range is empty, this method throws an exception.
          */
         public synchronized int max() {
-            return ranges.get(ranges.size() - 1).end;
+            if (size == 0) {
+                throw new IndexOutOfBoundsException("empty");
+            }
+            return bounds[2 * size - 1];
         }
 
         /**
@@ -658,9 +790,9 @@ public class Fingerprint implements ModelObject, Saveable {
          * Note that {} is smaller than any n.
          */
         public synchronized boolean isSmallerThan(int n) {
-            if (ranges.isEmpty())    return true;
+            if (size == 0)    return true;
 
-            return ranges.get(ranges.size() - 1).isSmallerThan(n);
+            return bounds[2 * size - 1] <= n;
         }
 
         /**
@@ -731,7 +863,7 @@ public class Fingerprint implements ModelObject, Saveable {
                                 // ignore inverse range like "10-5"
                                 continue;
                             }
-                            rs.ranges.add(new Range(left, right + 1));
+                            rs.append(left, right + 1);
                         } else {
                             if (!skipError) {
                                 throw new IllegalArgumentException(
@@ -742,7 +874,7 @@ public class Fingerprint implements ModelObject, Saveable {
                         }
                     } else {
                         int n = Integer.parseInt(s);
-                        rs.ranges.add(new Range(n, n + 1));
+                        rs.append(n, n + 1);
                     }
                 } catch (NumberFormatException e) {
                     if (!skipError)
@@ -785,15 +917,19 @@ public class Fingerprint implements ModelObject, Saveable {
              * For e.g., if used in builds 1,2,3,5, it will be serialized to 1-3,5
              */
             public static String serialize(RangeSet src) {
-                StringBuilder buf = new StringBuilder(src.ranges.size() * 10);
-                for (Range r : src.ranges) {
-                    if (!buf.isEmpty())  buf.append(',');
-                    if (r.isSingle())
-                        buf.append(r.start);
-                    else
-                        buf.append(r.start).append('-').append(r.end - 1);
+                synchronized (src) {
+                    StringBuilder buf = new StringBuilder(src.size * 10);
+                    for (int i = 0; i < src.size; i++) {
+                        int start = src.bounds[2 * i];
+                        int end = src.bounds[2 * i + 1];
+                        if (i > 0)  buf.append(',');
+                        if (end - 1 == start)
+                            buf.append(start);
+                        else
+                            buf.append(start).append('-').append(end - 1);
+                    }
+                    return buf.toString();
                 }
-                return buf.toString();
             }
 
             @Override
@@ -1022,8 +1158,25 @@ public class Fingerprint implements ModelObject, Saveable {
      * Records that a build of a job has used this file.
      */
     public synchronized void add(@NonNull String jobFullName, int n) throws IOException {
-        addWithoutSaving(jobFullName, n);
-        save();
+        if (addWithoutSaving(jobFullName, n)) {
+            save();
+        }
+    }
+
+    /**
+     * Records that a build has used all these files.
+     * Each fingerprint is saved once, however many times it is listed, and only if it did not already record this build.
+     * @since TODO
+     */
+    public static void addFor(@NonNull Run b, @NonNull Iterable<Fingerprint> fingerprints) throws IOException {
+        String jobFullName = b.getParent().getFullName();
+        int n = b.getNumber();
+        Set<Fingerprint> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Fingerprint fp : fingerprints) {
+            if (seen.add(fp)) {
+                fp.add(jobFullName, n);
+            }
+        }
     }
 
     // JENKINS-49588
@@ -1035,14 +1188,17 @@ public class Fingerprint implements ModelObject, Saveable {
         return this;
     }
 
-    void addWithoutSaving(@NonNull String jobFullName, int n) {
+    /**
+     * @return whether this build was not recorded yet
+     */
+    boolean addWithoutSaving(@NonNull String jobFullName, int n) {
         synchronized (usages) { // TODO why not synchronized (this) like some, though not all, other accesses?
             RangeSet r = usages.get(jobFullName);
             if (r == null) {
                 r = new RangeSet();
                 usages.put(jobFullName, r);
             }
-            r.add(n);
+            return r.addIfAbsent(n);
         }
     }
 
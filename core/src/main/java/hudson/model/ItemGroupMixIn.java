@@ -25,9 +25,12 @@
 package hudson.model;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Util;
 import hudson.XmlFile;
 import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
 import hudson.security.AccessControlled;
 import hudson.util.CopyOnWriteMap;
 import hudson.util.Function1;
@@ -40,7 +43,13 @@ import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.transform.TransformerException;
@@ -49,12 +58,16 @@ import javax.xml.transform.stream.StreamSource;
 import jenkins.model.Jenkins;
 import jenkins.security.ExtendedReadRedaction;
 import jenkins.security.NotReallyRoleSensitiveCallable;
+import jenkins.util.SystemProperties;
 import jenkins.util.xml.XMLUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerRequest2;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.StaplerResponse2;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
 import org.xml.sax.SAXException;
 
 /**
@@ -109,31 +122,116 @@ public abstract class ItemGroupMixIn {
         }
 
         File[] subdirs = modulesDir.listFiles(File::isDirectory);
+        List<V> items;
+        if (PARALLEL_LOAD && Jenkins.PARALLEL_LOAD && subdirs.length > 1) {
+            items = loadChildrenInParallel(parent, subdirs);
+        } else {
+            items = new ArrayList<>(subdirs.length);
+            for (File subdir : subdirs) {
+                items.add(loadChild(parent, subdir));
+            }
+        }
+
         CopyOnWriteMap.Tree<K, V> configurations = new CopyOnWriteMap.Tree<>();
-        for (File subdir : subdirs) {
+        for (int i = 0; i < subdirs.length; i++) {
+            V item = items.get(i);
+            if (item == null) {
+                continue;
+            }
             try {
-                // Try to retain the identity of an existing child object if we can.
-                V item = (V) parent.getItem(subdir.getName());
-                if (item == null) {
-                    XmlFile xmlFile = Items.getConfigFile(subdir);
-                    if (xmlFile.exists()) {
-                        item = (V) Items.load(parent, subdir);
-                    } else {
-                        Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not find file " + xmlFile.getFile());
-                        continue;
-                    }
-                } else {
-                    item.onLoad(parent, subdir.getName());
-                }
                 configurations.put(key.call(item), item);
             } catch (Exception e) {
-                Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not load " + subdir, e);
+                Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not load " + subdirs[i], e);
             }
         }
 
         return configurations;
     }
 
+    /**
+     * @return null if there is no item in this directory, or it failed to load
+     */
+    private static <V extends Item> V loadChild(ItemGroup parent, File subdir) {
+        try {
+            // Try to retain the identity of an existing child object if we can.
+            V item = (V) parent.getItem(subdir.getName());
+            if (item == null) {
+                XmlFile xmlFile = Items.getConfigFile(subdir);
+                if (xmlFile.exists()) {
+                    item = (V) Items.load(parent, subdir);
+                } else {
+                    Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not find file " + xmlFile.getFile());
+                    return null;
+                }
+            } else {
+                item.onLoad(parent, subdir.getName());
+            }
+            return item;
+        } catch (Exception e) {
+            Logger.getLogger(ItemGroupMixIn.class.getName()).log(Level.WARNING, "could not load " + subdir, e);
+            return null;
+        }
+    }
+
+    /**
+     * Loads the children on {@link #LOADER}, in the same order as they would be loaded sequentially.
+     * A child that is itself an {@link ItemGroup} is loaded before its own children,
+     * which get loaded on the same pool, the waiting thread helping rather than blocking a worker.
+     */
+    private static <V extends Item> List<V> loadChildrenInParallel(ItemGroup parent, File[] subdirs) {
+        Authentication auth = Jenkins.getAuthentication2();
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        List<ForkJoinTask<V>> tasks = new ArrayList<>(subdirs.length);
+        for (File subdir : subdirs) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                Thread t = Thread.currentThread();
+                ClassLoader old = t.getContextClassLoader();
+                t.setContextClassLoader(contextClassLoader);
+                try (ACLContext ctx = ACL.as2(auth)) {
+                    return loadChild(parent, subdir);
+                } finally {
+                    t.setContextClassLoader(old);
+                }
+            }));
+        }
+        if (ForkJoinTask.getPool() == LOADER) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            LOADER.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        List<V> items = new ArrayList<>(subdirs.length);
+        for (ForkJoinTask<V> task : tasks) {
+            items.add(task.join());
+        }
+        return items;
+    }
+
+    /**
+     * Whether {@link #loadChildren} loads the children of a folder in parallel, when {@link Jenkins#PARALLEL_LOAD} is also set.
+     * Top-level items are loaded in parallel by {@link jenkins.InitReactorRunner} already,
+     * so this matters for instances where most items live in folders.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ boolean PARALLEL_LOAD = SystemProperties.getBoolean(ItemGroupMixIn.class.getName() + ".parallelLoad");
+
+    /**
+     * Bounds the number of items loaded at the same time by {@link #PARALLEL_LOAD} across all folders.
+     */
+    private static final ForkJoinPool LOADER = new ForkJoinPool(
+            SystemProperties.getInteger(ItemGroupMixIn.class.getName() + ".loadConcurrency", Runtime.getRuntime().availableProcessors() * 2),
+            pool -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName("Loading items #" + t.getPoolIndex());
+                return t;
+            },
+            null, false);
+
     /**
      * {@link Item} → name function.
      */
@@ -45,6 +45,7 @@ import hudson.model.labels.LabelExpression.Or;
 import hudson.model.labels.LabelExpression.Paren;
 import hudson.model.labels.LabelExpressionLexer;
 import hudson.model.labels.LabelExpressionParser;
+import hudson.model.labels.LabelIndex;
 import hudson.model.labels.LabelOperatorPrecedence;
 import hudson.model.labels.LabelVisitor;
 import hudson.model.queue.SubTask;
@@ -230,8 +231,12 @@ public abstract class Label extends Actionable implements Comparable<Label>, Mod
         Set<Node> nodes = this.nodes;
         if (nodes != null) return nodes;
 
-        Set<Node> r = new HashSet<>();
         Jenkins h = Jenkins.get();
+        LabelIndex index = h.getLabelIndex();
+        if (index != null) {
+            return this.nodes = index.getNodes(this);
+        }
+        Set<Node> r = new HashSet<>();
         if (this.matches(h))
             r.add(h);
         for (Node n : h.getNodes()) {
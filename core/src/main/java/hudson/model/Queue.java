@@ -85,6 +85,7 @@ import java.nio.channels.ClosedByInterruptException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -94,16 +95,19 @@ import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -186,7 +190,7 @@ public class Queue extends ResourceController implements Saveable {
      * This consists of {@link Item}s that cannot be run yet
      * because its time has not yet come.
      */
-    private final Set<WaitingItem> waitingList = new TreeSet<>();
+    private final WaitingList waitingList = new WaitingList();
 
     /**
      * {@link Task}s that can be built immediately
@@ -210,7 +214,7 @@ public class Queue extends ResourceController implements Saveable {
      */
     private final ItemList<BuildableItem> pendings = new ItemList<>();
 
-    private transient volatile Snapshot snapshot = new Snapshot(waitingList, blockedProjects, buildables, pendings);
+    private transient volatile Snapshot snapshot = new Snapshot(waitingList.freeze(), blockedProjects.freeze(), buildables.freeze(), pendings.freeze());
 
     /**
      * Items that left queue would stay here for a while to enable tracking via {@link Item#getId()}.
@@ -219,6 +223,17 @@ public class Queue extends ResourceController implements Saveable {
      */
     private final Cache<Long, LeftItem> leftItems = CacheBuilder.newBuilder().expireAfterWrite(5 * 60, TimeUnit.SECONDS).build();
 
+    /**
+     * Ids of the items handed out by {@link #scheduleAsync} which turned out to duplicate an item of the queue,
+     * to the id of that item, while it is in the queue.
+     */
+    private final transient Map<Long, Long> mergedIds = new ConcurrentHashMap<>();
+
+    /**
+     * Same as {@link #mergedIds}, once the item they were merged into left the queue, kept as long as {@link #leftItems}.
+     */
+    private final Cache<Long, LeftItem> mergedLeftItems = CacheBuilder.newBuilder().expireAfterWrite(5 * 60, TimeUnit.SECONDS).build();
+
     /**
      * Data structure created for each idle {@link Executor}.
      * This is a job offer from the queue to an executor.
@@ -346,6 +361,100 @@ public class Queue extends ResourceController implements Saveable {
 
     private final transient Condition condition = lock.newCondition();
 
+    private final transient AtmostOneTaskExecutor<Void> saverThread = new AtmostOneTaskExecutor<>(new Callable<>() {
+        @Override
+        public Void call() throws Exception {
+            save();
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "Jenkins queue persistence";
+        }
+    });
+
+    /**
+     * Serializes the writes of {@link #save()}. Never acquired while holding {@link #lock}.
+     */
+    private final transient Object saveLock = new Object();
+
+    /**
+     * Appends {@link #journalRecords} to the {@link #JOURNAL}, outside of the {@link #lock}.
+     */
+    private final transient AtmostOneTaskExecutor<Void> journalWriter = new AtmostOneTaskExecutor<>(new Callable<>() {
+        @Override
+        public Void call() throws Exception {
+            writeJournal();
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "Jenkins queue journal";
+        }
+    });
+
+    /**
+     * Incremented each time {@link #save()} captures the state of the queue.
+     */
+    @GuardedBy("lock")
+    private transient long saveSequence;
+
+    /**
+     * Value of {@link #saveSequence} for the state last written to disk.
+     */
+    @GuardedBy("saveLock")
+    private transient long lastSavedSequence;
+
+    /**
+     * Created on first use by {@link #getJournal()}, under {@link #journalRecords}.
+     */
+    private transient volatile QueueJournal journal;
+
+    /**
+     * Items which entered or left the queue, captured under the {@link #lock} in that order,
+     * not yet appended to the {@link #JOURNAL} by {@link #journalWriter}.
+     */
+    private final transient ConcurrentLinkedQueue<JournalRecord> journalRecords = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param entered the item and the {@link QueueIdStrategy} state if it entered the queue, or null if it left
+     * @param save the {@link #saveSequence} when it happened
+     */
+    private record JournalRecord(@CheckForNull State entered, long id, long save) {}
+
+    /**
+     * True while {@link #load()} puts the items back, so that they are not journaled.
+     */
+    @GuardedBy("lock")
+    private transient boolean loading;
+
+    /**
+     * Requests accepted by {@link #scheduleAsync} while another thread held the {@link #lock}.
+     * Multiple producers, drained by whichever thread holds the lock next.
+     */
+    private final transient ConcurrentLinkedQueue<ScheduleRequest> intake = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Bumped whenever something happened that may unblock {@link #blockedProjects},
+     * such as an executor becoming free, a node coming online or a build completing.
+     * Only consulted when {@link #INCREMENTAL_MAINTENANCE} is enabled.
+     */
+    private final transient AtomicLong blockersGeneration = new AtomicLong();
+
+    /**
+     * Value of {@link #blockersGeneration} seen by the last full re-evaluation of {@link #blockedProjects}.
+     */
+    @GuardedBy("lock")
+    private transient long lastRescanGeneration = -1;
+
+    /**
+     * When the last full re-evaluation of {@link #blockedProjects} happened.
+     */
+    @GuardedBy("lock")
+    private transient long lastFullRescan;
+
     public Queue(@NonNull LoadBalancer loadBalancer) {
         this.loadBalancer =  loadBalancer.sanitize();
         // if all the executors are busy doing something, then the queue won't be maintained in
@@ -392,28 +501,54 @@ public class Queue extends ResourceController implements Saveable {
      * Loads the queue contents that was {@link #save() saved}.
      */
     public void load() {
+        QueueJournal journal = getJournal();
         lock.lock();
         try { try {
+            // the items below are not new, there is no need to journal them
+            loading = true;
+
             // Clear items, for the benefit of reloading.
             waitingList.clear();
             blockedProjects.clear();
             buildables.clear();
             pendings.clear();
+            mergedIds.clear();
 
             File queueFile = getXMLQueueFile();
-            if (Files.exists(queueFile.toPath())) {
-                Object unmarshaledObj = new XmlFile(XSTREAM, queueFile).read();
+            boolean exists = Files.exists(queueFile.toPath());
+            if (exists || journal != null) {
                 List items;
 
                 State state;
-                if (unmarshaledObj instanceof State) {
-                    state = (State) unmarshaledObj;
+                if (!exists) {
+                    state = new State();
                     items = state.items;
                 } else {
-                    // backward compatibility - it's an old List queue.xml
-                    items = (List) unmarshaledObj;
-                    state = new State();
-                    state.items.addAll(items);
+                    Object unmarshaledObj = new XmlFile(XSTREAM, queueFile).read();
+                    if (unmarshaledObj instanceof State) {
+                        state = (State) unmarshaledObj;
+                        items = state.items;
+                    } else {
+                        // backward compatibility - it's an old List queue.xml
+                        items = (List) unmarshaledObj;
+                        state = new State();
+                        state.items.addAll(items);
+                    }
+                }
+                if (journal != null) {
+                    // apply what happened since queue.xml was written
+                    Map<Long, Item> byId = QueueJournal.index(items);
+                    journal.replay(byId, state.properties);
+                    List<Object> replayed = new ArrayList<>();
+                    for (Object o : items) {
+                        if (!(o instanceof Item)) {
+                            replayed.add(o);
+                        }
+                    }
+                    replayed.addAll(byId.values());
+                    items = replayed;
+                    state.items.clear();
+                    state.items.addAll(byId.values());
                 }
                 QueueIdStrategy.get().load(state);
 
@@ -446,14 +581,23 @@ public class Queue extends ResourceController implements Saveable {
                 // object that doesn't appear to be de-serialized properly.
                 // I don't know how this problem happened, but to diagnose this problem better
                 // when it happens again, save the old queue file for introspection.
-                File bk = new File(queueFile.getPath() + ".bak");
-                Files.move(queueFile.toPath(), bk.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                if (exists) {
+                    File bk = new File(queueFile.getPath() + ".bak");
+                    Files.move(queueFile.toPath(), bk.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                if (journal != null) {
+                    journal.backup();
+                }
             }
         } catch (IOException | InvalidPathException e) {
             LOGGER.log(Level.WARNING, "Failed to load the queue file " + getXMLQueueFile(), e);
-        } finally { updateSnapshot(); } } finally {
+        } finally { loading = false; updateSnapshot(); } } finally {
             lock.unlock();
         }
+        if (journal != null) {
+            // the journal was moved aside, so do not wait for the next change to have the loaded items on disk
+            save();
+        }
     }
 
     /**
@@ -467,28 +611,145 @@ public class Queue extends ResourceController implements Saveable {
         }
 
         XmlFile queueFile = new XmlFile(XSTREAM, getXMLQueueFile());
+        QueueJournal journal = getJournal();
+        // write out the queue state we want to save
+        State state = new State();
+        long sequence;
+        long segment = -1;
         lock.lock();
         try {
-            // write out the queue state we want to save
-            State state = new State();
             QueueIdStrategy.get().persist(state);
             // write out the tasks on the queue
             for (Item item : getItems()) {
                 if (item.task instanceof TransientTask)  continue;
                 state.items.add(item);
             }
+            sequence = ++saveSequence;
+            if (journal != null) {
+                try {
+                    // whatever was journaled so far, or captured to be, is part of this state
+                    segment = journal.rotate(sequence);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to rotate the queue journal", e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
 
+        // serialize without holding up the queue, but never let an older state overwrite a newer one
+        synchronized (saveLock) {
+            if (sequence < lastSavedSequence) {
+                return;
+            }
             try {
                 queueFile.write(state);
+                lastSavedSequence = sequence;
+                if (segment >= 0) {
+                    journal.deleteUpTo(segment);
+                }
             } catch (IOException e) {
                 LOGGER.log(e instanceof ClosedByInterruptException ? Level.FINE : Level.WARNING, "Failed to write out the queue file " + getXMLQueueFile(), e);
             }
-        } finally {
-            lock.unlock();
         }
         SaveableListener.fireOnChange(this, queueFile);
     }
 
+    /**
+     * Schedules a {@link #save()} on a background thread and returns immediately.
+     * Calls made while a save is pending are coalesced into it.
+     *
+     * @return a future that completes once the state of the queue as of this call is on disk
+     * @since TODO
+     */
+    public Future<?> scheduleSave() {
+        if (BulkChange.contains(this)) {
+            return Futures.precomputed(null);
+        }
+        return saverThread.submit();
+    }
+
+    /**
+     * Gets the journal of queue changes, if {@link #JOURNAL} is enabled.
+     */
+    private @CheckForNull QueueJournal getJournal() {
+        if (!JOURNAL || Jenkins.getInstanceOrNull() == null) {
+            return null;
+        }
+        QueueJournal journal = this.journal;
+        if (journal == null) {
+            synchronized (journalRecords) {
+                journal = this.journal;
+                if (journal == null) {
+                    File queueFile = getXMLQueueFile();
+                    String name = queueFile.getName().replaceFirst("\\.xml$", "");
+                    this.journal = journal = new QueueJournal(new File(queueFile.getParentFile(), name + ".journal"));
+                }
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Records an item entering or leaving the queue in the {@link #JOURNAL}.
+     * Called under the {@link #lock}, so this only captures the change, for {@link #journalWriter} to append.
+     *
+     * @return false if the journal is disabled
+     */
+    private boolean journal(Item item, boolean entered) {
+        if (!JOURNAL || Jenkins.getInstanceOrNull() == null) {
+            return false;
+        }
+        if (loading) {
+            return true;
+        }
+        State record = null;
+        if (entered) {
+            record = new State();
+            QueueIdStrategy.get().persist(record);
+            record.items.add(item);
+        }
+        journalRecords.add(new JournalRecord(record, item.getId(), saveSequence));
+        journalWriter.submit();
+        return true;
+    }
+
+    /**
+     * Appends the changes captured by {@link #journal(Item, boolean)},
+     * and has the journal compacted into {@code queue.xml} once it gets long.
+     */
+    private void writeJournal() {
+        QueueJournal journal = getJournal();
+        JournalRecord r;
+        while ((r = journalRecords.poll()) != null) {
+            if (journal == null) {
+                continue; // disabled meanwhile
+            }
+            try {
+                if (r.entered() != null) {
+                    journal.entered(r.save(), r.entered());
+                } else {
+                    journal.left(r.save(), r.id());
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to journal queue item " + r.id(), e);
+                scheduleSave();
+            }
+        }
+        if (journal != null && journal.size() >= JOURNAL_COMPACTION_THRESHOLD) {
+            scheduleSave();
+        }
+    }
+
+    /**
+     * Appends to the {@link #JOURNAL} the changes made so far.
+     *
+     * @return a future that completes once they are appended
+     */
+    /*package*/ Future<?> scheduleJournalWrite() {
+        return journalWriter.submit();
+    }
+
     /**
      * Wipes out all the items currently in the queue, as if all of them are cancelled at once.
      */
@@ -496,6 +757,8 @@ public class Queue extends ResourceController implements Saveable {
         Jenkins.get().checkPermission(Jenkins.ADMINISTER);
         lock.lock();
         try { try {
+            // including the items handed out by scheduleAsync
+            drainIntake();
             for (WaitingItem i : new ArrayList<>(
                     waitingList))   // copy the list as we'll modify it in the loop
                 i.cancel(this);
@@ -583,8 +846,15 @@ public class Queue extends ResourceController implements Saveable {
         actions = new ArrayList<>(actions);
         actions.removeIf(Objects::isNull);
 
+        if (ASYNC_INTAKE && lock.isLocked() && !lock.isHeldByCurrentThread()) {
+            return scheduleAsync(p, quietPeriod, actions);
+        }
+
         lock.lock();
         try { try {
+            // keep the order in which schedule requests came in
+            drainIntake();
+
             for (QueueDecisionHandler h : QueueDecisionHandler.all())
                 if (!h.shouldSchedule(p, actions))
                     return ScheduleResult.refused();    // veto
@@ -595,6 +865,77 @@ public class Queue extends ResourceController implements Saveable {
         }
     }
 
+    /**
+     * Variant of {@link #schedule2(Task, int, List)} used by {@link #ASYNC_INTAKE} when another thread holds the lock.
+     * Decides on the result from the current {@link Snapshot} and leaves it to {@link #drainIntake} to update the queue.
+     */
+    private @NonNull ScheduleResult scheduleAsync(Task p, int quietPeriod, List<Action> actions) {
+        for (QueueDecisionHandler h : QueueDecisionHandler.all())
+            if (!h.shouldSchedule(p, actions))
+                return ScheduleResult.refused();    // veto
+
+        Calendar due = new GregorianCalendar();
+        due.add(Calendar.SECOND, quietPeriod);
+
+        Snapshot snapshot = this.snapshot;
+        List<Item> items = new ArrayList<>();
+        items.addAll(snapshot.blockedProjects.getAll(p));
+        items.addAll(snapshot.buildables.getAll(p));
+        items.addAll(snapshot.waitingList.getAll(p));
+        for (Item item : items) {
+            if (isDuplicate(item, actions)) {
+                // the actions get folded in (or a new item created if it left the queue meanwhile) when drained
+                intake.add(new ScheduleRequest(p, due, actions, null));
+                maintainerThread.submit();
+                return ScheduleResult.existing(item);
+            }
+        }
+
+        WaitingItem added = new WaitingItem(due, p, actions);
+        intake.add(new ScheduleRequest(p, due, actions, added));
+        maintainerThread.submit();
+        return ScheduleResult.created(added);
+    }
+
+    /**
+     * Folds the requests accepted by {@link #scheduleAsync} into the queue.
+     * They are only removed from the {@link #intake} once the {@link Snapshot} has them,
+     * so that {@link #getItem(long)} finds the items handed out for them in either place.
+     */
+    @GuardedBy("lock")
+    private void drainIntake() {
+        int drained = 0;
+        try {
+            for (ScheduleRequest request : intake) {
+                LOGGER.log(Level.FINE, "Taking {0} in from the intake", request.task);
+                drained++;
+                scheduleInternal(request.task, request.due, request.actions, request.item);
+            }
+        } finally {
+            if (drained > 0) {
+                updateSnapshot();
+                // only the lock holder removes requests, so the ones at the head are those just taken in
+                for (int i = 0; i < drained; i++) {
+                    intake.poll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether scheduling a task with the given actions should be folded into an item of the same task.
+     */
+    private static boolean isDuplicate(Item item, List<Action> actions) {
+        boolean shouldScheduleItem = false;
+        for (QueueAction action : item.getActions(QueueAction.class)) {
+            shouldScheduleItem |= action.shouldSchedule(actions);
+        }
+        for (QueueAction action : Util.filter(actions, QueueAction.class)) {
+            shouldScheduleItem |= action.shouldSchedule(new ArrayList<>(item.getAllActions()));
+        }
+        return !shouldScheduleItem;
+    }
+
     /**
      * Schedules an execution of a task.
      *
@@ -609,22 +950,23 @@ public class Queue extends ResourceController implements Saveable {
      *      That said, one can still look at {@link WaitingItem#future}, {@link WaitingItem#getId()}, etc.
      */
     private @NonNull ScheduleResult scheduleInternal(Task p, int quietPeriod, List<Action> actions) {
+        Calendar due = new GregorianCalendar();
+        due.add(Calendar.SECOND, quietPeriod);
+        return scheduleInternal(p, due, actions, null);
+    }
+
+    /**
+     * @param provisional
+     *      the item already handed out by {@link #scheduleAsync}, to be put in the queue instead of a new one.
+     *      If the task turns out to be a duplicate, it gets to follow the future of the existing item.
+     */
+    private @NonNull ScheduleResult scheduleInternal(Task p, Calendar due, List<Action> actions, @CheckForNull WaitingItem provisional) {
         lock.lock();
         try { try {
-            Calendar due = new GregorianCalendar();
-            due.add(Calendar.SECOND, quietPeriod);
-
             // Do we already have this task in the queue? Because if so, we won't schedule a new one.
             List<Item> duplicatesInQueue = new ArrayList<>();
             for (Item item : liveGetItems(p)) {
-                boolean shouldScheduleItem = false;
-                for (QueueAction action : item.getActions(QueueAction.class)) {
-                    shouldScheduleItem |= action.shouldSchedule(actions);
-                }
-                for (QueueAction action : Util.filter(actions, QueueAction.class)) {
-                    shouldScheduleItem |= action.shouldSchedule(new ArrayList<>(item.getAllActions()));
-                }
-                if (!shouldScheduleItem) {
+                if (isDuplicate(item, actions)) {
                     duplicatesInQueue.add(item);
                 }
             }
@@ -632,9 +974,11 @@ public class Queue extends ResourceController implements Saveable {
                 LOGGER.log(Level.FINE, "{0} added to queue", p);
 
                 // put the item in the queue
-                WaitingItem added = new WaitingItem(due, p, actions);
+                WaitingItem added = provisional != null ? provisional : new WaitingItem(due, p, actions);
                 added.enter(this);
-                scheduleMaintenance();   // let an executor know that a new item is in the queue.
+                // let an executor know that a new item is in the queue.
+                // A new item cannot unblock anything, so do not go through scheduleMaintenance().
+                maintainerThread.submit();
                 return ScheduleResult.created(added);
             }
 
@@ -663,7 +1007,13 @@ public class Queue extends ResourceController implements Saveable {
                 queueUpdated = true;
             }
 
-            if (queueUpdated) scheduleMaintenance();
+            if (queueUpdated) maintainerThread.submit();
+
+            if (provisional != null) {
+                // the caller was given this item, so keep its id leading to the one it was merged into
+                duplicatesInQueue.get(0).future.addFollower(provisional.future);
+                mergedIds.put(provisional.getId(), duplicatesInQueue.get(0).getId());
+            }
 
             // REVISIT: when there are multiple existing items in the queue that matches the incoming one,
             // whether the new one should affect all existing ones or not is debatable. I for myself
@@ -722,6 +1072,9 @@ public class Queue extends ResourceController implements Saveable {
         lock.lock();
         try { try {
             LOGGER.log(Level.FINE, "Cancelling {0}", p);
+            // it may have been scheduled by scheduleAsync just before
+            drainIntake();
+            blockersGeneration.incrementAndGet();
             for (WaitingItem item : waitingList) {
                 if (item.task.equals(p)) {
                     return item.cancel(this);
@@ -734,8 +1087,12 @@ public class Queue extends ResourceController implements Saveable {
         }
     }
 
+    /**
+     * Publishes the current state for lock-free readers.
+     * Only the lists modified since the last call get copied, the others are shared with the previous {@link Snapshot}.
+     */
     private void updateSnapshot() {
-        Snapshot revised = new Snapshot(waitingList, blockedProjects, buildables, pendings);
+        Snapshot revised = new Snapshot(waitingList.freeze(), blockedProjects.freeze(), buildables.freeze(), pendings.freeze());
         if (LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.log(Level.FINEST, "{0} → {1}; leftItems={2}", new Object[] {snapshot, revised, leftItems.asMap()});
         }
@@ -746,6 +1103,9 @@ public class Queue extends ResourceController implements Saveable {
         LOGGER.log(Level.FINE, "Cancelling {0} item#{1}", new Object[] {item.task, item.id});
         lock.lock();
         try { try {
+            // it may have been handed out by scheduleAsync just before
+            drainIntake();
+            blockersGeneration.incrementAndGet();
             return item.cancel(this);
         } finally { updateSnapshot(); } } finally {
             lock.unlock();
@@ -899,25 +1259,32 @@ public class Queue extends ResourceController implements Saveable {
     }
 
     public Item getItem(long id) {
+        // looked at before the snapshot, which already has the requests that are no longer in the intake
+        for (ScheduleRequest request : intake) {
+            if (request.item != null && request.item.getId() == id) {
+                return request.item;
+            }
+        }
         Snapshot snapshot = this.snapshot;
-        for (Item item : snapshot.blockedProjects) {
-            if (item.id == id)
-                return item;
+        Item item = snapshot.blockedProjects.getById(id);
+        if (item == null) {
+            item = snapshot.buildables.getById(id);
         }
-        for (Item item : snapshot.buildables) {
-            if (item.id == id)
-                return item;
+        if (item == null) {
+            item = snapshot.pendings.getById(id);
         }
-        for (Item item : snapshot.pendings) {
-            if (item.id == id)
-                return item;
+        if (item == null) {
+            item = snapshot.waitingList.getById(id);
         }
-        for (Item item : snapshot.waitingList) {
-            if (item.id == id) {
-                return item;
-            }
+        if (item != null) {
+            return item;
         }
-        return leftItems.getIfPresent(id);
+        Long mergedInto = mergedIds.get(id);
+        if (mergedInto != null) {
+            return getItem(mergedInto);
+        }
+        item = leftItems.getIfPresent(id);
+        return item != null ? item : mergedLeftItems.getIfPresent(id);
     }
 
     /**
@@ -1015,11 +1382,7 @@ public class Queue extends ResourceController implements Saveable {
      * Is the given task currently pending execution?
      */
     public boolean isPending(Task t) {
-        Snapshot snapshot = this.snapshot;
-        for (BuildableItem i : snapshot.pendings)
-            if (i.task.equals(t))
-                return true;
-        return false;
+        return snapshot.pendings.get(t) != null;
     }
 
     /**
@@ -1081,24 +1444,17 @@ public class Queue extends ResourceController implements Saveable {
      */
     public Item getItem(Task t) {
         Snapshot snapshot = this.snapshot;
-        for (Item item : snapshot.blockedProjects) {
-            if (item.task.equals(t))
-                return item;
+        Item item = snapshot.blockedProjects.get(t);
+        if (item == null) {
+            item = snapshot.buildables.get(t);
         }
-        for (Item item : snapshot.buildables) {
-            if (item.task.equals(t))
-                return item;
+        if (item == null) {
+            item = snapshot.pendings.get(t);
         }
-        for (Item item : snapshot.pendings) {
-            if (item.task.equals(t))
-                return item;
+        if (item == null) {
+            item = snapshot.waitingList.get(t);
         }
-        for (Item item : snapshot.waitingList) {
-            if (item.task.equals(t)) {
-                return item;
-            }
-        }
-        return null;
+        return item;
     }
 
     /**
@@ -1139,26 +1495,10 @@ public class Queue extends ResourceController implements Saveable {
     public List<Item> getItems(Task t) {
         Snapshot snapshot = this.snapshot;
         List<Item> result = new ArrayList<>();
-        for (Item item : snapshot.blockedProjects) {
-            if (item.task.equals(t)) {
-                result.add(item);
-            }
-        }
-        for (Item item : snapshot.buildables) {
-            if (item.task.equals(t)) {
-                result.add(item);
-            }
-        }
-        for (Item item : snapshot.pendings) {
-            if (item.task.equals(t)) {
-                result.add(item);
-            }
-        }
-        for (Item item : snapshot.waitingList) {
-            if (item.task.equals(t)) {
-                result.add(item);
-            }
-        }
+        result.addAll(snapshot.blockedProjects.getAll(t));
+        result.addAll(snapshot.buildables.getAll(t));
+        result.addAll(snapshot.pendings.getAll(t));
+        result.addAll(snapshot.waitingList.getAll(t));
         return result;
     }
 
@@ -1192,15 +1532,41 @@ public class Queue extends ResourceController implements Saveable {
      *
      * <p>
      * When conditions are changed, this method should be invoked.
+     * With {@link #INCREMENTAL_MAINTENANCE} this is also what makes the next
+     * {@link #maintain()} re-evaluate the blocked items.
      * <p>
      * This wakes up one {@link Executor} so that it will maintain a queue.
      */
     @WithBridgeMethods(void.class)
     public Future<?> scheduleMaintenance() {
         // LOGGER.info("Scheduling maintenance");
+        blockersGeneration.incrementAndGet();
         return maintainerThread.submit();
     }
 
+    /**
+     * Decides whether this {@link #maintain()} pass needs to re-evaluate every item in {@link #blockedProjects}.
+     *
+     * @return true unless {@link #INCREMENTAL_MAINTENANCE} is enabled, nothing was reported through
+     *      {@link #scheduleMaintenance()} since the last full pass, and that pass is younger than
+     *      {@link #FULL_RESCAN_INTERVAL}.
+     */
+    @GuardedBy("lock")
+    private boolean needsFullRescan() {
+        if (!INCREMENTAL_MAINTENANCE) {
+            return true;
+        }
+        // read the generation before evaluating, so that changes made during this pass trigger the next one
+        long generation = blockersGeneration.get();
+        long now = System.currentTimeMillis();
+        if (generation == lastRescanGeneration && now - lastFullRescan < FULL_RESCAN_INTERVAL) {
+            return false;
+        }
+        lastRescanGeneration = generation;
+        lastFullRescan = now;
+        return true;
+    }
+
     /**
      * Checks if the given item should be prevented from entering into the {@link #buildables} state
      * and instead stay in the {@link #blockedProjects} state.
@@ -1234,7 +1600,7 @@ public class Queue extends ResourceController implements Saveable {
             // If `task.isConcurrentBuild` returns `false`,
             // it should also return non-null value for `task.getCauseOfBlockage` in case of on-going execution.
             // But both are public non-final methods, so, we need to keep backward compatibility here.
-            // And check one more time across all `buildables` and `pendings` for O(N) each.
+            // And check one more time across all `buildables` and `pendings`, which keep count of their items by task.
             if (!i.task.isConcurrentBuild() && (buildables.containsKey(i.task) || pendings.containsKey(i.task))) {
                 return CauseOfBlockage.fromMessage(Messages._Queue_InProgress());
             }
@@ -1497,6 +1863,8 @@ public class Queue extends ResourceController implements Saveable {
 
             LOGGER.log(Level.FINE, "Queue maintenance started on {0} with {1}", new Object[] {this, snapshot});
 
+            drainIntake();
+
             // The executors that are currently waiting for a job to run.
             Map<Executor, JobOffer> parked = new HashMap<>();
 
@@ -1539,7 +1907,9 @@ public class Queue extends ResourceController implements Saveable {
 
             final QueueSorter s = sorter;
 
-            { // blocked -> buildable
+            if (!needsFullRescan()) {
+                LOGGER.log(Level.FINEST, "Nothing could have unblocked {0} blocked items since the last pass", blockedProjects.size());
+            } else { // blocked -> buildable
                 // copy as we'll mutate the list and we want to process in a potentially different order
                 List<BlockedItem> blockedItems = new ArrayList<>(blockedProjects.values());
                 // if facing a cycle of blocked tasks, ensure we process in the desired sort order
@@ -1615,9 +1985,24 @@ public class Queue extends ResourceController implements Saveable {
             // Ensure that identification of blocked tasks is using the live state: JENKINS-27708 & JENKINS-27871
             updateSnapshot();
 
+            // only used with INCREMENTAL_MAINTENANCE
+            JobOfferIndex offerIndex = new JobOfferIndex(parked.values());
+
             // allocate buildable jobs to executors
             for (BuildableItem p : new ArrayList<>(
                     buildables)) { // copy as we'll mutate the list in the loop
+                Collection<JobOffer> offers = parked.values();
+                if (INCREMENTAL_MAINTENANCE && !(p.task instanceof FlyweightTask)) {
+                    offers = offerIndex.getCandidates(p);
+                    if (offers.isEmpty()) {
+                        // leave it in the buildables list, without asking the dispatchers about it until a parked executor
+                        // could take it, nor the reasons the executors of a previous pass gave, which no longer apply
+                        LOGGER.log(Level.FINEST, "No parked executor has the labels required by {0}", p);
+                        p.transientCausesOfBlockage = null;
+                        continue;
+                    }
+                }
+
                 // one last check to make sure this build is not blocked.
                 CauseOfBlockage causeOfBlockage = getCauseOfBlockageForItem(p);
                 if (causeOfBlockage != null) {
@@ -1642,9 +2027,9 @@ public class Queue extends ResourceController implements Saveable {
                     }
                 } else {
 
-                    List<JobOffer> candidates = new ArrayList<>(parked.size());
+                    List<JobOffer> candidates = new ArrayList<>(offers.size());
                     Map<Node, CauseOfBlockage> reasonMap = new HashMap<>();
-                    for (JobOffer j : parked.values()) {
+                    for (JobOffer j : offers) {
                         Node offerNode = j.getNode();
                         CauseOfBlockage reason;
                         if (reasonMap.containsKey(offerNode)) {
@@ -1702,6 +2087,9 @@ public class Queue extends ResourceController implements Saveable {
                     updateSnapshot();
                 }
             }
+
+            // requests that came in during this pass, they will be processed by the next one
+            drainIntake();
         } finally { updateSnapshot(); } } finally {
             lock.unlock();
         }
@@ -2817,6 +3205,15 @@ public class Queue extends ResourceController implements Saveable {
         @Override
         void enter(Queue q) {
             q.leftItems.put(getId(), this);
+            if (!q.mergedIds.isEmpty()) {
+                q.mergedIds.entrySet().removeIf(e -> {
+                    if (e.getValue() != getId()) {
+                        return false;
+                    }
+                    q.mergedLeftItems.put(e.getKey(), this);
+                    return true;
+                });
+            }
             Listeners.notify(QueueListener.class, true, l -> l.onLeft(this));
         }
 
@@ -2829,6 +3226,51 @@ public class Queue extends ResourceController implements Saveable {
 
     private static final Logger LOGGER = Logger.getLogger(Queue.class.getName());
 
+    /**
+     * If true, {@link #maintain()} only re-evaluates blocked items after a {@link #scheduleMaintenance()}
+     * (or every {@link #FULL_RESCAN_INTERVAL} milliseconds), and only considers buildable items
+     * for which some parked executor is on a node matching their label.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ boolean INCREMENTAL_MAINTENANCE = SystemProperties.getBoolean(Queue.class.getName() + ".incrementalMaintenance");
+
+    /**
+     * If true, {@link #schedule2(Task, int, List)} does not wait for another thread holding the queue lock
+     * (typically {@link #maintain()}): it decides on the result from the latest snapshot and leaves the request
+     * in a buffer that the next holder of the lock folds into the queue.
+     * {@link QueueDecisionHandler}s are then consulted without the lock, and a {@link ScheduleResult.Created}
+     * item only shows up in {@link #getItems()} once folded in. If it turns out to duplicate an item scheduled
+     * meanwhile, its future follows the one of that item, and {@link #getItem(long)} of its id returns that item.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ boolean ASYNC_INTAKE = SystemProperties.getBoolean(Queue.class.getName() + ".asyncIntake");
+
+    /**
+     * If true, items entering and leaving the queue are appended to a journal next to {@code queue.xml},
+     * which {@link #load()} replays, so that no item is lost if Jenkins dies between two {@link #save()}s.
+     * Each save compacts the journal.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ boolean JOURNAL = SystemProperties.getBoolean(Queue.class.getName() + ".journal");
+
+    /**
+     * With {@link #JOURNAL}, the number of changes after which a {@link #scheduleSave()} compacts the journal.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ int JOURNAL_COMPACTION_THRESHOLD = SystemProperties.getInteger(Queue.class.getName() + ".journalCompactionThreshold", 1000);
+
+    /**
+     * With {@link #INCREMENTAL_MAINTENANCE}, the maximum time in milliseconds between two full re-evaluations of
+     * the blocked items, for {@link QueueTaskDispatcher}s whose decision changes without any notification.
+     */
+    @Restricted(NoExternalUse.class)
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ long FULL_RESCAN_INTERVAL = SystemProperties.getLong(Queue.class.getName() + ".fullRescanInterval", TimeUnit.SECONDS.toMillis(30));
+
     /**
      * This {@link XStream} instance is used to persist {@link Task}s.
      */
@@ -2927,10 +3369,157 @@ public class Queue extends ResourceController implements Saveable {
         }
     }
 
+    /**
+     * A {@link #schedule2} call waiting in the {@link #intake}.
+     */
+    private static final class ScheduleRequest {
+        final Task task;
+        final Calendar due;
+        final List<Action> actions;
+        /**
+         * The item handed out as {@link ScheduleResult.Created}, or null if {@link ScheduleResult.Existing} was returned.
+         */
+        final @CheckForNull WaitingItem item;
+
+        ScheduleRequest(Task task, Calendar due, List<Action> actions, @CheckForNull WaitingItem item) {
+            this.task = task;
+            this.due = due;
+            this.actions = actions;
+            this.item = item;
+        }
+    }
+
+    /**
+     * Index of the parked {@link JobOffer}s by the {@link Label} of the node they are on,
+     * built lazily over a single {@link #maintain()} pass.
+     * Lets {@link #INCREMENTAL_MAINTENANCE} skip asking {@link QueueTaskDispatcher}s and building a
+     * {@link MappingWorksheet} for items that no parked executor could run anyway.
+     */
+    private static final class JobOfferIndex {
+        private final Collection<JobOffer> offers;
+        private final Map<Label, List<JobOffer>> byLabel = new HashMap<>();
+
+        JobOfferIndex(Collection<JobOffer> offers) {
+            this.offers = offers;
+        }
+
+        /**
+         * Gets the offers that are worth considering for the given item.
+         *
+         * @return empty if some {@link SubTask} of the item has no parked executor on a matching node
+         */
+        Collection<JobOffer> getCandidates(BuildableItem item) {
+            Collection<JobOffer> result = null;
+            for (SubTask st : item.task.getSubTasks()) {
+                List<JobOffer> matching = byLabel.computeIfAbsent(item.getAssignedLabelFor(st), this::matching);
+                if (matching.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                if (result == null) {
+                    result = matching;
+                } else if (result != matching) {
+                    // subtasks want different labels, let the MappingWorksheet sort it out
+                    result = offers;
+                }
+            }
+            return result == null ? offers : result;
+        }
+
+        private List<JobOffer> matching(@CheckForNull Label label) {
+            List<JobOffer> r = new ArrayList<>();
+            for (JobOffer j : offers) {
+                Node n = j.getNode();
+                if (n == null) {
+                    continue;
+                }
+                // same label rules as Node.canTake
+                if (label == null ? n.getMode() == Mode.NORMAL : label.contains(n)) {
+                    r.add(j);
+                }
+            }
+            return r;
+        }
+    }
+
+    /**
+     * {@link TreeSet} of {@link WaitingItem}s that can hand out an immutable copy of itself, see {@link ItemList#freeze}.
+     * Items only get in and out through {@link #add}, {@link #remove} and {@link #clear}, which are the modifications tracked here.
+     */
+    private static final class WaitingList extends TreeSet<WaitingItem> {
+        private int version;
+        private FrozenItemList<WaitingItem> frozen;
+        private int frozenVersion;
+
+        @Override
+        public boolean add(WaitingItem item) {
+            boolean r = super.add(item);
+            if (r) {
+                version++;
+            }
+            return r;
+        }
+
+        @Override
+        public boolean remove(Object item) {
+            boolean r = super.remove(item);
+            if (r) {
+                version++;
+            }
+            return r;
+        }
+
+        @Override
+        public void clear() {
+            version++;
+            super.clear();
+        }
+
+        FrozenItemList<WaitingItem> freeze() {
+            if (frozen == null || frozenVersion != version) {
+                frozen = new FrozenItemList<>(this);
+                frozenVersion = version;
+            }
+            return frozen;
+        }
+    }
+
     /**
      * {@link ArrayList} of {@link Item} with more convenience methods.
      */
     private class ItemList<T extends Item> extends ArrayList<T> {
+        /**
+         * Last copy made by {@link #freeze}, valid as long as {@link #modCount} is still {@link #frozenModCount}.
+         */
+        private FrozenItemList<T> frozen;
+        private int frozenModCount;
+
+        /**
+         * Number of items of each task, for {@link #containsKey}.
+         * Kept up to date by {@link #add} and {@link #remove(Object)}, through which items enter and leave,
+         * and counted again after any other modification, that is if {@link #modCount} is no longer {@link #countedModCount}.
+         */
+        private final Map<Task, Integer> counts = new HashMap<>();
+        private int countedModCount;
+
+        /**
+         * Gets an immutable copy of this list for {@link Snapshot}s,
+         * reusing the previous one if the list has not been modified since.
+         */
+        public FrozenItemList<T> freeze() {
+            if (frozen == null || frozenModCount != modCount) {
+                frozen = new FrozenItemList<>(this);
+                frozenModCount = modCount;
+            }
+            return frozen;
+        }
+
+        @Override
+        public T set(int index, T element) {
+            // unlike structural modifications this is not counted by ArrayList, but QueueSorter may use it
+            modCount++;
+            return super.set(index, element);
+        }
+
         public T get(Task task) {
             for (T item : this) {
                 if (item.task.equals(task)) {
@@ -2951,7 +3540,47 @@ public class Queue extends ResourceController implements Saveable {
         }
 
         public boolean containsKey(Task task) {
-            return get(task) != null;
+            if (countedModCount != modCount) {
+                counts.clear();
+                for (T item : this) {
+                    counts.merge(item.task, 1, Integer::sum);
+                }
+                countedModCount = modCount;
+            }
+            return counts.containsKey(task);
+        }
+
+        @Override
+        public boolean add(T item) {
+            boolean counted = countedModCount == modCount;
+            super.add(item);
+            if (counted) {
+                counts.merge(item.task, 1, Integer::sum);
+                countedModCount = modCount;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            int index = indexOf(o);
+            if (index < 0) {
+                return false;
+            }
+            boolean counted = countedModCount == modCount;
+            T item = super.remove(index);
+            if (counted) {
+                counts.computeIfPresent(item.task, (task, n) -> n == 1 ? null : n - 1);
+                countedModCount = modCount;
+            }
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            counts.clear();
+            countedModCount = modCount;
         }
 
         public T remove(Task task) {
@@ -2994,18 +3623,84 @@ public class Queue extends ResourceController implements Saveable {
         }
     }
 
+    /**
+     * Immutable copy of the items in one stage of the queue, see {@link ItemList#freeze}.
+     * The indexes by {@link Task} and by {@link Item#getId() id} are built on first use,
+     * and since unmodified lists are shared between {@link Snapshot}s, so are they.
+     */
+    private static final class FrozenItemList<T extends Item> extends AbstractList<T> implements RandomAccess {
+        private final List<T> items;
+        private volatile Map<Task, List<T>> byTask;
+        private volatile Map<Long, T> byId;
+
+        FrozenItemList(Collection<T> items) {
+            this.items = new ArrayList<>(items);
+        }
+
+        @Override
+        public T get(int index) {
+            return items.get(index);
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+
+        /**
+         * Gets the first item for the given task, like {@link ItemList#get(Task)}.
+         */
+        @CheckForNull
+        T get(Task task) {
+            List<T> all = getAll(task);
+            return all.isEmpty() ? null : all.get(0);
+        }
+
+        /**
+         * Gets all the items for the given task, in list order. Not to be modified.
+         */
+        List<T> getAll(Task task) {
+            Map<Task, List<T>> m = byTask;
+            if (m == null) {
+                m = new HashMap<>();
+                for (T item : items) {
+                    m.computeIfAbsent(item.task, k -> new ArrayList<>(1)).add(item);
+                }
+                byTask = m;
+            }
+            return m.getOrDefault(task, Collections.emptyList());
+        }
+
+        @CheckForNull
+        T getById(long id) {
+            Map<Long, T> m = byId;
+            if (m == null) {
+                m = new HashMap<>();
+                for (T item : items) {
+                    m.putIfAbsent(item.id, item);
+                }
+                byId = m;
+            }
+            return m.get(id);
+        }
+    }
+
+    /**
+     * Immutable view of the queue for lock-free readers.
+     * The lists may be shared with earlier snapshots, see {@link #updateSnapshot}.
+     */
     private static class Snapshot {
-        private final Set<WaitingItem> waitingList;
-        private final List<BlockedItem> blockedProjects;
-        private final List<BuildableItem> buildables;
-        private final List<BuildableItem> pendings;
+        private final FrozenItemList<WaitingItem> waitingList;
+        private final FrozenItemList<BlockedItem> blockedProjects;
+        private final FrozenItemList<BuildableItem> buildables;
+        private final FrozenItemList<BuildableItem> pendings;
 
-        Snapshot(Set<WaitingItem> waitingList, List<BlockedItem> blockedProjects, List<BuildableItem> buildables,
-                        List<BuildableItem> pendings) {
-            this.waitingList = new LinkedHashSet<>(waitingList);
-            this.blockedProjects = new ArrayList<>(blockedProjects);
-            this.buildables = new ArrayList<>(buildables);
-            this.pendings = new ArrayList<>(pendings);
+        Snapshot(FrozenItemList<WaitingItem> waitingList, FrozenItemList<BlockedItem> blockedProjects, FrozenItemList<BuildableItem> buildables,
+                        FrozenItemList<BuildableItem> pendings) {
+            this.waitingList = waitingList;
+            this.blockedProjects = blockedProjects;
+            this.buildables = buildables;
+            this.pendings = pendings;
         }
 
         @Override
@@ -3119,11 +3814,19 @@ public class Queue extends ResourceController implements Saveable {
 
         @Override
         public void onEnterWaiting(WaitingItem wi) {
+            Jenkins j = Jenkins.getInstanceOrNull();
+            if (j != null && j.getQueue().journal(wi, true)) {
+                return;
+            }
             push();
         }
 
         @Override
         public void onLeft(Queue.LeftItem li) {
+            Jenkins j = Jenkins.getInstanceOrNull();
+            if (j != null && j.getQueue().journal(li, false)) {
+                return;
+            }
             push();
         }
 
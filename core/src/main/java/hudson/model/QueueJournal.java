@@ -0,0 +1,262 @@
+package hudson.model;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only log of the items entering and leaving the {@link Queue}, kept next to {@code queue.xml}
+ * so that items scheduled since the last {@link Queue#save()} survive a crash.
+ *
+ * <p>
+ * Each {@link Queue#save()} rotates the journal, and deletes the rotated segments once {@code queue.xml} is written,
+ * so the journal only ever holds the changes that happened since the last successful save.
+ *
+ * @see Queue#JOURNAL
+ */
+final class QueueJournal {
+
+    private static final Logger LOGGER = Logger.getLogger(QueueJournal.class.getName());
+
+    private static final byte ENTERED = 'E';
+    private static final byte LEFT = 'L';
+
+    private final File file;
+
+    /**
+     * Open lazily, closed by {@link #rotate}.
+     */
+    private DataOutputStream out;
+
+    /**
+     * Number of records in the current segment.
+     */
+    private int size;
+
+    /**
+     * Sequence number to be given to the next rotated segment.
+     */
+    private long nextSegment;
+
+    /**
+     * The save the last {@link #rotate} was for.
+     */
+    private long rotated;
+
+    /**
+     * @param file the current segment, rotated ones get a numeric suffix
+     */
+    QueueJournal(@NonNull File file) {
+        this.file = file;
+        for (long n : segments()) {
+            nextSegment = Math.max(nextSegment, n + 1);
+        }
+    }
+
+    /**
+     * Records an item that entered the queue.
+     * Not to be called under the queue lock, as this serializes the item.
+     *
+     * @param save the number of saves of the queue which had started when the item entered it
+     * @param record the item, along with the {@link jenkins.model.queue.QueueIdStrategy} state at that point,
+     *      so that ids handed out after the last save are not handed out again after a restart
+     */
+    void entered(long save, @NonNull Queue.State record) throws IOException {
+        byte[] xml = Queue.XSTREAM.toXML(record).getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            if (save < rotated) {
+                return; // already part of the state being saved, and older than it
+            }
+            DataOutputStream out = open();
+            out.writeByte(ENTERED);
+            out.writeInt(xml.length);
+            out.write(xml);
+            out.flush();
+            size++;
+        }
+    }
+
+    /**
+     * Records an item that left the queue, either to be built or because it was cancelled.
+     *
+     * @param save the number of saves of the queue which had started when the item left it
+     */
+    synchronized void left(long save, long id) throws IOException {
+        if (save < rotated) {
+            return;
+        }
+        DataOutputStream out = open();
+        out.writeByte(LEFT);
+        out.writeLong(id);
+        out.flush();
+        size++;
+    }
+
+    /**
+     * Number of records written since the last {@link #rotate()}.
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Closes the current segment and starts a new one.
+     * To be called under the queue lock while capturing the state about to be saved,
+     * so that the rotated segments only contain changes already part of that state.
+     * Changes made before, and recorded only after, are part of that state too, so they are dropped.
+     *
+     * @param save the number of that save
+     * @return the number to pass to {@link #deleteUpTo} once the state is on disk
+     */
+    synchronized long rotate(long save) throws IOException {
+        rotated = save;
+        long n = nextSegment++;
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        if (file.exists()) {
+            Files.move(file.toPath(), segment(n).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        size = 0;
+        return n;
+    }
+
+    /**
+     * Deletes the segments rotated up to (and including) the given one.
+     */
+    void deleteUpTo(long last) {
+        for (long n : segments()) {
+            if (n <= last) {
+                try {
+                    Files.deleteIfExists(segment(n).toPath());
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to delete " + segment(n), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies all the segments, oldest first, on top of the items loaded from {@code queue.xml}.
+     * A record truncated by a crash ends the replay of its segment.
+     *
+     * @param items loaded items by {@link Queue.Item#getId()}, updated in place
+     * @param properties loaded {@link Queue.State#properties}, updated in place
+     */
+    synchronized void replay(@NonNull Map<Long, Queue.Item> items, @NonNull Map<String, Object> properties) {
+        List<File> files = new ArrayList<>();
+        for (long n : segments()) {
+            files.add(segment(n));
+        }
+        files.add(file);
+        for (File f : files) {
+            if (!f.exists()) {
+                continue;
+            }
+            try (InputStream is = Files.newInputStream(f.toPath());
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+                while (true) {
+                    byte type = in.readByte();
+                    if (type == ENTERED) {
+                        byte[] xml = new byte[in.readInt()];
+                        in.readFully(xml);
+                        Object o = Queue.XSTREAM.fromXML(new String(xml, StandardCharsets.UTF_8));
+                        if (o instanceof Queue.State) {
+                            Queue.State record = (Queue.State) o;
+                            for (Queue.Item item : index(record.items).values()) {
+                                if (item.task != null) { // botched persistence otherwise
+                                    items.putIfAbsent(item.getId(), item);
+                                }
+                            }
+                            properties.putAll(record.properties);
+                        }
+                    } else if (type == LEFT) {
+                        items.remove(in.readLong());
+                    } else {
+                        throw new IOException("Unexpected record type " + type + " in " + f);
+                    }
+                }
+            } catch (EOFException e) {
+                // end of the segment, or a record cut short by a crash
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to replay the queue journal " + f, e);
+            }
+        }
+    }
+
+    /**
+     * Indexes the items read from {@code queue.xml} by id, keeping their order, to be passed to {@link #replay}.
+     */
+    static Map<Long, Queue.Item> index(@NonNull List<?> items) {
+        Map<Long, Queue.Item> r = new LinkedHashMap<>();
+        for (Object o : items) {
+            if (o instanceof Queue.Item) {
+                r.put(((Queue.Item) o).getId(), (Queue.Item) o);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Moves all segments aside, for the same introspection purposes as {@code queue.xml.bak}.
+     */
+    synchronized void backup() throws IOException {
+        rotate(rotated);
+        for (long n : segments()) {
+            File bak = new File(segment(n).getPath() + ".bak");
+            Files.move(segment(n).toPath(), bak.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private DataOutputStream open() throws IOException {
+        if (out == null) {
+            Files.createDirectories(file.toPath().getParent());
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+        return out;
+    }
+
+    private File segment(long n) {
+        return new File(file.getPath() + "." + n);
+    }
+
+    /**
+     * Sequence numbers of the rotated segments on disk, in ascending order.
+     */
+    private long[] segments() {
+        String prefix = file.getName() + ".";
+        String[] names = file.getParentFile().list();
+        if (names == null) {
+            return new long[0];
+        }
+        List<Long> r = new ArrayList<>();
+        for (String name : names) {
+            if (name.startsWith(prefix)) {
+                try {
+                    r.add(Long.parseLong(name.substring(prefix.length())));
+                } catch (NumberFormatException e) {
+                    // something else, like a backup
+                }
+            }
+        }
+        return r.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+}
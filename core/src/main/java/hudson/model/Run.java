@@ -48,8 +48,10 @@ import hudson.Util;
 import hudson.XmlFile;
 import hudson.cli.declarative.CLIMethod;
 import hudson.console.AnnotatedLargeText;
+import hudson.console.AsyncLogOutputStream;
 import hudson.console.ConsoleLogFilter;
 import hudson.console.ConsoleNote;
+import hudson.console.LineIndex;
 import hudson.console.ModelHyperlinkNote;
 import hudson.console.PlainTextConsoleOutputStream;
 import hudson.model.Descriptor.FormException;
@@ -68,6 +70,7 @@ import hudson.util.FormApply;
 import hudson.util.LogTaskListener;
 import hudson.util.ProcessTree;
 import hudson.util.XStream2;
+import hudson.util.io.BlockGzipFile;
 import io.jenkins.servlet.ServletExceptionWrapper;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletResponse;
@@ -79,7 +82,6 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.Serializable;
 import java.nio.charset.Charset;
@@ -1421,6 +1423,7 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
     /**
      * Returns an input stream that reads from the log file.
      * It will use a gzip-compressed log file (log.gz) if that exists.
+     * If that file is block compressed, see {@link BlockGzipFile}, skipping the stream does not read what is skipped.
      *
      * @return An input stream from the log file.
      *   If the log file does not exist, the error message will be returned to the output.
@@ -1432,6 +1435,9 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
         if (logFile.exists()) {
             // Checking if a ".gz" file was return
             try {
+                if (logFile.getName().endsWith(".gz") && BlockGzipFile.isBlockCompressed(logFile)) {
+                    return BlockGzipFile.open(logFile, 0);
+                }
                 InputStream fis = Files.newInputStream(logFile.toPath());
                 if (logFile.getName().endsWith(".gz")) {
                     return new GZIPInputStream(fis);
@@ -1502,7 +1508,10 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
      * @return A {@link Run} log with annotations
      */
     public @NonNull AnnotatedLargeText getLogText() {
-        return new AnnotatedLargeText(getLogFile(), getCharset(), !isLogUpdated(), this);
+        if (isLogUpdated()) {
+            return AnnotatedLargeText.following(getLogFile(), getCharset(), this);
+        }
+        return new AnnotatedLargeText(getLogFile(), getCharset(), true, this);
     }
 
     @Override
@@ -1904,8 +1913,11 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
         // don't do buffering so that what's written to the listener
         // gets reflected to the file immediately, which can then be
         // served to the browser immediately
+        // (AsyncLogOutputStream, if enabled, writes as soon as its writer thread gets to it)
         try {
-            return Files.newOutputStream(getLogFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            File logFile = getLogFile();
+            OutputStream out = Files.newOutputStream(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            return LineIndex.record(logFile, AsyncLogOutputStream.wrap(logFile, out));
         } catch (InvalidPathException e) {
             throw new IOException(e);
         }
@@ -2046,12 +2058,11 @@ public abstract class Run<JobT extends Job<JobT, RunT>, RunT extends Run<JobT, R
         final List<String> lastLines = new ArrayList<>(Math.min(maxLines, 128));
         final List<Byte> bytes = new ArrayList<>();
 
-        try (RandomAccessFile fileHandler = new RandomAccessFile(getLogFile(), "r")) {
-            long fileLength = fileHandler.length() - 1;
+        try (LineIndex.Tail tail = LineIndex.Tail.open(getLogFile(), maxLines)) {
+            long fileLength = tail.length() - 1;
 
             for (filePointer = fileLength; filePointer != -1 && maxLines != lines; filePointer--) {
-                fileHandler.seek(filePointer);
-                byte readByte = fileHandler.readByte();
+                byte readByte = tail.byteAt(filePointer);
 
                 if (readByte == 0x0A) {
                     if (filePointer < fileLength) {
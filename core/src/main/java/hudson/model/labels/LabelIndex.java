@@ -0,0 +1,222 @@
+package hudson.model.labels;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.model.Label;
+import hudson.model.Node;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Index from {@link LabelAtom}s to the {@link Node}s they are assigned to, so that the nodes of a {@link Label}
+ * are computed from the label expression on bit sets of nodes, rather than by matching each node against it.
+ *
+ * <p>
+ * Each node gets a slot, and each atom a bit set of the slots of the nodes with that atom.
+ * {@code a && b} is then the intersection of the bit sets of {@code a} and {@code b}, {@code !a} the complement of that of {@code a}, and so on.
+ *
+ * <p>
+ * The index is updated for the nodes given to {@code Jenkins.trimLabels}, which is called for each node added, updated or removed,
+ * and rebuilt when all labels are trimmed, including periodically.
+ * Jenkins keeps a single instance, so that an update is never applied to an index about to be replaced by one rebuilt without it.
+ * So it is as up to date as the nodes cached by {@link Label#getNodes} are.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class LabelIndex {
+
+    /**
+     * Whether {@link Label#getNodes} and the trimming of labels no node matches anymore use the index.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ boolean ENABLED = SystemProperties.getBoolean(LabelIndex.class.getName() + ".enabled");
+
+    /**
+     * Nodes by slot, null for free slots.
+     */
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<Node, Integer> slots = new IdentityHashMap<>();
+    /**
+     * Slots by node name, as a node replaced by another of the same name may not be reported.
+     */
+    private final Map<String, Integer> names = new HashMap<>();
+    /**
+     * Atom names by slot, to take the node out of their bit sets when it goes or changes.
+     */
+    private final List<Set<String>> assigned = new ArrayList<>();
+    private final Map<String, BitSet> atoms = new HashMap<>();
+    /**
+     * The slots in use.
+     */
+    private final BitSet all = new BitSet();
+
+    /**
+     * Indexes all the nodes of Jenkins anew.
+     */
+    public synchronized void rebuild(@NonNull Jenkins jenkins) {
+        nodes.clear();
+        slots.clear();
+        names.clear();
+        assigned.clear();
+        atoms.clear();
+        all.clear();
+        add(jenkins);
+        for (Node n : jenkins.getNodes()) {
+            add(n);
+        }
+    }
+
+    /**
+     * Indexes the given nodes anew if they belong to Jenkins, or forgets them otherwise.
+     */
+    public synchronized void update(@NonNull Jenkins jenkins, @NonNull Node... changed) {
+        for (Node n : changed) {
+            if (n == null) {
+                continue;
+            }
+            remove(n);
+            if (n == jenkins || jenkins.getNode(n.getNodeName()) == n) {
+                add(n);
+            }
+        }
+    }
+
+    private void add(Node n) {
+        Integer existing = names.get(n.getNodeName());
+        if (existing != null) {
+            remove(nodes.get(existing));
+        }
+        int slot = all.nextClearBit(0);
+        if (slot == nodes.size()) {
+            nodes.add(n);
+            assigned.add(null);
+        } else {
+            nodes.set(slot, n);
+        }
+        Set<String> labels = new HashSet<>();
+        for (LabelAtom a : n.getAssignedLabels()) {
+            labels.add(a.getName());
+            atoms.computeIfAbsent(a.getName(), k -> new BitSet()).set(slot);
+        }
+        assigned.set(slot, labels);
+        slots.put(n, slot);
+        names.put(n.getNodeName(), slot);
+        all.set(slot);
+    }
+
+    private void remove(Node n) {
+        Integer slot = slots.remove(n);
+        if (slot == null) {
+            return;
+        }
+        names.remove(n.getNodeName(), slot);
+        for (String name : assigned.get(slot)) {
+            BitSet bits = atoms.get(name);
+            bits.clear(slot);
+            if (bits.isEmpty()) {
+                atoms.remove(name);
+            }
+        }
+        assigned.set(slot, null);
+        nodes.set(slot, null);
+        all.clear(slot);
+    }
+
+    /**
+     * Whether the node is indexed, as opposed to, say, one being configured.
+     */
+    public synchronized boolean contains(@NonNull Node n) {
+        return slots.containsKey(n);
+    }
+
+    /**
+     * Computes the nodes matching a label.
+     */
+    public synchronized @NonNull Set<Node> getNodes(@NonNull Label label) {
+        BitSet bits = label.accept(EVALUATOR, this);
+        Set<Node> r = new HashSet<>(bits.cardinality() * 4 / 3 + 1);
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            r.add(nodes.get(i));
+        }
+        return Collections.unmodifiableSet(r);
+    }
+
+    /**
+     * Whether any node matches a label.
+     */
+    public synchronized boolean matchesAny(@NonNull Label label) {
+        return !label.accept(EVALUATOR, this).isEmpty();
+    }
+
+    private @CheckForNull BitSet atom(String name) {
+        return atoms.get(name);
+    }
+
+    /**
+     * Evaluates a label to the slots of the nodes it matches.
+     * Bit sets of atoms are returned as they are, so each operator works on a copy.
+     */
+    private static final LabelVisitor<BitSet, LabelIndex> EVALUATOR = new LabelVisitor<>() {
+        @Override
+        public BitSet onAtom(LabelAtom a, LabelIndex index) {
+            BitSet bits = index.atom(a.getName());
+            return bits != null ? bits : new BitSet();
+        }
+
+        @Override
+        public BitSet onParen(LabelExpression.Paren p, LabelIndex index) {
+            return p.base.accept(this, index);
+        }
+
+        @Override
+        public BitSet onNot(LabelExpression.Not p, LabelIndex index) {
+            BitSet r = (BitSet) index.all.clone();
+            r.andNot(p.base.accept(this, index));
+            return r;
+        }
+
+        @Override
+        public BitSet onAnd(LabelExpression.And p, LabelIndex index) {
+            BitSet r = (BitSet) p.lhs.accept(this, index).clone();
+            r.and(p.rhs.accept(this, index));
+            return r;
+        }
+
+        @Override
+        public BitSet onOr(LabelExpression.Or p, LabelIndex index) {
+            BitSet r = (BitSet) p.lhs.accept(this, index).clone();
+            r.or(p.rhs.accept(this, index));
+            return r;
+        }
+
+        @Override
+        public BitSet onIff(LabelExpression.Iff p, LabelIndex index) {
+            BitSet different = (BitSet) p.lhs.accept(this, index).clone();
+            different.xor(p.rhs.accept(this, index));
+            BitSet r = (BitSet) index.all.clone();
+            r.andNot(different);
+            return r;
+        }
+
+        @Override
+        public BitSet onImplies(LabelExpression.Implies p, LabelIndex index) {
+            BitSet r = (BitSet) index.all.clone();
+            r.andNot(p.lhs.accept(this, index));
+            r.or(p.rhs.accept(this, index));
+            return r;
+        }
+    };
+}
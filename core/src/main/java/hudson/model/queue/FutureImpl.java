@@ -31,10 +31,15 @@ import hudson.model.Queue.Executable;
 import hudson.model.Queue.Task;
 import hudson.remoting.AsyncFutureImpl;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 /**
  * Created when {@link hudson.model.Queue.Item} is created so that the caller can track the progress of the task.
@@ -49,12 +54,26 @@ public final class FutureImpl extends AsyncFutureImpl<Executable> implements Que
      */
     private final Set<Executor> executors = new HashSet<>();
 
+    /**
+     * Futures of items that were folded into the item of this one before entering the queue.
+     * They complete along with this one, see {@link #addFollower}.
+     */
+    private final List<FutureImpl> followers = new CopyOnWriteArrayList<>();
+
     /**
      * {@link Future} that completes when the task started running.
      *
      * In contrast, {@link FutureImpl} will complete when the task finishes.
      */
-    /*package*/ final AsyncFutureImpl<Executable> start = new AsyncFutureImpl<>();
+    /*package*/ final AsyncFutureImpl<Executable> start = new AsyncFutureImpl<>() {
+        @Override
+        public synchronized void set(Executable value) {
+            super.set(value);
+            for (FutureImpl f : followers) {
+                f.start.set(value);
+            }
+        }
+    };
 
     public FutureImpl(Task task) {
         this.task = task;
@@ -90,13 +109,71 @@ public final class FutureImpl extends AsyncFutureImpl<Executable> implements Que
         if (!start.isDone()) {
             start.setAsCancelled();
         }
+        for (FutureImpl f : followers) {
+            f.setAsCancelled();
+        }
+    }
+
+    @Override
+    public synchronized void set(Executable value) {
+        super.set(value);
+        for (FutureImpl f : followers) {
+            f.set(value);
+        }
+    }
+
+    @Override
+    public synchronized void set(Throwable problem) {
+        super.set(problem);
+        for (FutureImpl f : followers) {
+            f.set(problem);
+        }
+    }
+
+    /**
+     * Makes the given future track this one: it starts, completes or gets cancelled along with this one.
+     * Used when a task scheduled through {@link Queue#ASYNC_INTAKE} turned out to be a duplicate of an item
+     * already in the queue, after the caller was handed the future of its own item.
+     *
+     * @param follower a future that has not completed yet
+     */
+    @Restricted(NoExternalUse.class)
+    public void addFollower(@NonNull FutureImpl follower) {
+        followers.add(follower);
+        // in case we completed before the follower got registered
+        if (start.isDone() && !follower.start.isDone()) {
+            try {
+                follower.start.set(start.get());
+            } catch (CancellationException e) {
+                follower.start.setAsCancelled();
+            } catch (ExecutionException | InterruptedException e) {
+                follower.start.set(e);
+            }
+        }
+        if (isDone() && !follower.isDone()) {
+            try {
+                follower.set(get());
+            } catch (CancellationException e) {
+                follower.setAsCancelled();
+            } catch (ExecutionException e) {
+                follower.set(e.getCause());
+            } catch (InterruptedException e) {
+                follower.set(e);
+            }
+        }
     }
 
     synchronized void addExecutor(@NonNull Executor executor) {
         this.executors.add(executor);
+        for (FutureImpl f : followers) {
+            f.addExecutor(executor);
+        }
     }
 
     synchronized void finished() {
         executors.clear();
+        for (FutureImpl f : followers) {
+            f.finished();
+        }
     }
 }
@@ -30,6 +30,8 @@ import static java.util.Calendar.MINUTE;
 import static java.util.Calendar.MONTH;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.Locale;
@@ -68,6 +70,11 @@ public final class CronTab {
      */
     private @CheckForNull String specTimezone;
 
+    /**
+     * Evaluates {@link #bits} and {@link #dayOfWeek} for {@link #ceil(long, ZoneId)} and {@link #floor(long, ZoneId)}.
+     */
+    private CronTabEvaluator evaluator;
+
     /**
      * @param format the crontab entry to be parsed
      * @throws IllegalArgumentException if the crontab entry cannot be parsed
@@ -141,6 +148,7 @@ public final class CronTab {
             dayOfWeek |= 1; // copy bit 7 over to bit 0
             dayOfWeek &= ~(1 << 7); // clear bit 7 or CalendarField#ceil will return an invalid value 7
         }
+        evaluator = new CronTabEvaluator(bits[0], bits[1], bits[2], bits[3], dayOfWeek);
     }
 
 
@@ -483,6 +491,32 @@ public final class CronTab {
         }
     }
 
+    /**
+     * Computes the nearest future time that matches this cron tab on the wall clock of the given time zone,
+     * like {@link #ceil(Calendar)} with a calendar in that time zone, but without any {@link Calendar} arithmetic.
+     *
+     * @param t the time to start from, in milliseconds since the epoch
+     * @return the matching time, in milliseconds since the epoch
+     * @throws RareOrImpossibleDateException if the date isn't hit in the 2 years after
+     * @since TODO
+     */
+    public long ceil(long t, @NonNull ZoneId zone) {
+        return evaluator.ceil(t, zone);
+    }
+
+    /**
+     * Computes the nearest past time that matched this cron tab on the wall clock of the given time zone,
+     * like {@link #floor(Calendar)} with a calendar in that time zone, but without any {@link Calendar} arithmetic.
+     *
+     * @param t the time to start from, in milliseconds since the epoch
+     * @return the matching time, in milliseconds since the epoch
+     * @throws RareOrImpossibleDateException if the date isn't hit in the 2 years before
+     * @since TODO
+     */
+    public long floor(long t, @NonNull ZoneId zone) {
+        return evaluator.floor(t, zone);
+    }
+
     /**
      * @param format the crontab entry to be parsed
      * @throws IllegalArgumentException if the crontab entry cannot be parsed
@@ -598,4 +632,11 @@ public final class CronTab {
         }
         return TimeZone.getTimeZone(this.specTimezone);
     }
+
+    /**
+     * The time zone this tab runs in: the configured one, else the default one.
+     */
+    @NonNull ZoneId getZoneId() {
+        return specTimezone == null ? ZoneId.systemDefault() : TimeZone.getTimeZone(specTimezone).toZoneId();
+    }
 }
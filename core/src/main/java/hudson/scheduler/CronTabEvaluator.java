@@ -0,0 +1,337 @@
+package hudson.scheduler;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneRules;
+
+/**
+ * Computes the times matching a {@link CronTab} on the wall clock fields of a time zone,
+ * in place of the {@link java.util.Calendar} arithmetic of {@link CronTab#ceil(java.util.Calendar)}
+ * and {@link CronTab#floor(java.util.Calendar)}.
+ *
+ * <p>
+ * Each field is kept as a bit mask, so finding the next or previous matching value of a field
+ * is a single bit scan, and the fields being adjusted are plain {@code int}s.
+ * Days of the week are folded into the mask of days of each month visited,
+ * so a day has to match both, as in {@link CronTab#check(java.util.Calendar)}.
+ *
+ * <p>
+ * As with the {@link java.util.Calendar} based methods, seconds and below are carried over
+ * from the given time, the search gives up after two years, and a wall clock time skipped
+ * by a daylight saving transition never matches.
+ */
+final class CronTabEvaluator {
+    private final long minutes;
+    private final long hours;
+    private final long days;
+    private final long months;
+    /**
+     * Days of the week, bit 0 being Sunday.
+     */
+    private final int daysOfWeek;
+
+    CronTabEvaluator(long minutes, long hours, long days, long months, int daysOfWeek) {
+        this.minutes = minutes;
+        this.hours = hours;
+        this.days = days;
+        this.months = months;
+        this.daysOfWeek = daysOfWeek & 0x7F;
+    }
+
+    /**
+     * See {@link CronTab#ceil(long, ZoneId)}.
+     */
+    long ceil(long t, ZoneId zone) {
+        ZoneRules rules = zone.getRules();
+        Instant instant = Instant.ofEpochMilli(t);
+        LocalDateTime start = LocalDateTime.ofInstant(instant, zone);
+        long limit = pack(start.plusYears(2));
+
+        int year = start.getYear();
+        int month = start.getMonthValue();
+        int day = start.getDayOfMonth();
+        int hour = start.getHour();
+        int minute = start.getMinute();
+
+        while (true) {
+            if (pack(year, month, day, hour, minute) > limit) {
+                // we went too far into the future
+                throw new RareOrImpossibleDateException();
+            }
+
+            int m = ceil(months, month);
+            if (m < 0) {
+                year++;
+                month = 1;
+                day = 1;
+                hour = 0;
+                minute = 0;
+                continue;
+            }
+            if (m != month) {
+                month = m;
+                day = 1;
+                hour = 0;
+                minute = 0;
+            }
+
+            int d = ceil(days & daysOfWeekIn(year, month), day);
+            if (d < 0) {
+                if (++month > 12) {
+                    year++;
+                    month = 1;
+                }
+                day = 1;
+                hour = 0;
+                minute = 0;
+                continue;
+            }
+            if (d != day) {
+                day = d;
+                hour = 0;
+                minute = 0;
+            }
+
+            int h = ceil(hours, hour);
+            if (h < 0) {
+                if (++day > lengthOfMonth(year, month)) {
+                    if (++month > 12) {
+                        year++;
+                        month = 1;
+                    }
+                    day = 1;
+                }
+                hour = 0;
+                minute = 0;
+                continue;
+            }
+            if (h != hour) {
+                hour = h;
+                minute = 0;
+            }
+
+            int mi = ceil(minutes, minute);
+            if (mi < 0) {
+                hour++;
+                minute = 0;
+                if (hour > 23) {
+                    hour = 0;
+                    if (++day > lengthOfMonth(year, month)) {
+                        if (++month > 12) {
+                            year++;
+                            month = 1;
+                        }
+                        day = 1;
+                    }
+                }
+                continue;
+            }
+            minute = mi;
+            if (pack(year, month, day, hour, minute) > limit) {
+                throw new RareOrImpossibleDateException();
+            }
+
+            LocalDateTime match = LocalDateTime.of(year, month, day, hour, minute, start.getSecond(), start.getNano());
+            if (rules.getValidOffsets(match).isEmpty()) {
+                // skipped by a daylight saving transition, so look further
+                if (++minute > 59) {
+                    minute = 0;
+                    hour++; // rolled over by the next round if need be
+                }
+                continue;
+            }
+            ZonedDateTime zoned = ZonedDateTime.ofLocal(match, zone, rules.getOffset(instant));
+            if (zoned.toInstant().toEpochMilli() < t) {
+                // the earlier of two times in an overlap
+                zoned = zoned.withLaterOffsetAtOverlap();
+            }
+            return zoned.toInstant().toEpochMilli();
+        }
+    }
+
+    /**
+     * See {@link CronTab#floor(long, ZoneId)}.
+     */
+    long floor(long t, ZoneId zone) {
+        ZoneRules rules = zone.getRules();
+        Instant instant = Instant.ofEpochMilli(t);
+        LocalDateTime start = LocalDateTime.ofInstant(instant, zone);
+        long limit = pack(start.minusYears(2));
+
+        int year = start.getYear();
+        int month = start.getMonthValue();
+        int day = start.getDayOfMonth();
+        int hour = start.getHour();
+        int minute = start.getMinute();
+
+        while (true) {
+            if (pack(year, month, day, hour, minute) < limit) {
+                // we went too far into the past
+                throw new RareOrImpossibleDateException();
+            }
+
+            int m = floor(months, month);
+            if (m < 0) {
+                year--;
+                month = 12;
+                day = 31;
+                hour = 23;
+                minute = 59;
+                continue;
+            }
+            if (m != month) {
+                month = m;
+                day = lengthOfMonth(year, month);
+                hour = 23;
+                minute = 59;
+            }
+
+            int d = floor(days & daysOfWeekIn(year, month), day);
+            if (d < 0) {
+                if (--month < 1) {
+                    year--;
+                    month = 12;
+                }
+                day = lengthOfMonth(year, month);
+                hour = 23;
+                minute = 59;
+                continue;
+            }
+            if (d != day) {
+                day = d;
+                hour = 23;
+                minute = 59;
+            }
+
+            int h = floor(hours, hour);
+            if (h < 0) {
+                if (--day < 1) {
+                    if (--month < 1) {
+                        year--;
+                        month = 12;
+                    }
+                    day = lengthOfMonth(year, month);
+                }
+                hour = 23;
+                minute = 59;
+                continue;
+            }
+            if (h != hour) {
+                hour = h;
+                minute = 59;
+            }
+
+            int mi = floor(minutes, minute);
+            if (mi < 0) {
+                hour--;
+                minute = 59;
+                if (hour < 0) {
+                    hour = 23;
+                    if (--day < 1) {
+                        if (--month < 1) {
+                            year--;
+                            month = 12;
+                        }
+                        day = lengthOfMonth(year, month);
+                    }
+                }
+                continue;
+            }
+            minute = mi;
+            if (pack(year, month, day, hour, minute) < limit) {
+                throw new RareOrImpossibleDateException();
+            }
+
+            LocalDateTime match = LocalDateTime.of(year, month, day, hour, minute, start.getSecond(), start.getNano());
+            if (rules.getValidOffsets(match).isEmpty()) {
+                // skipped by a daylight saving transition, so look further
+                if (--minute < 0) {
+                    minute = 59;
+                    hour--; // rolled over by the next round if need be
+                }
+                continue;
+            }
+            ZonedDateTime zoned = ZonedDateTime.ofLocal(match, zone, rules.getOffset(instant));
+            if (zoned.toInstant().toEpochMilli() > t) {
+                // the later of two times in an overlap
+                zoned = zoned.withEarlierOffsetAtOverlap();
+            }
+            return zoned.toInstant().toEpochMilli();
+        }
+    }
+
+    /**
+     * The smallest bit at or above {@code n} which is on, or -1.
+     */
+    private static int ceil(long bits, int n) {
+        if (n > 63) {
+            return -1;
+        }
+        long masked = bits & (-1L << n);
+        return masked == 0 ? -1 : Long.numberOfTrailingZeros(masked);
+    }
+
+    /**
+     * The largest bit at or below {@code n} which is on, or -1.
+     */
+    private static int floor(long bits, int n) {
+        if (n < 0) {
+            return -1;
+        }
+        long masked = bits & (-1L >>> (63 - n));
+        return masked == 0 ? -1 : 63 - Long.numberOfLeadingZeros(masked);
+    }
+
+    /**
+     * The days of the given month falling on one of {@link #daysOfWeek}, as a mask like {@link #days}.
+     */
+    private long daysOfWeekIn(int year, int month) {
+        // Sunday is 0, as in cron
+        int firstDay = (int) Math.floorMod(epochDay(year, month, 1) + 4, 7L);
+        // rotate so that bit 0 is the first day of the month
+        long week = ((daysOfWeek >>> firstDay) | (daysOfWeek << (7 - firstDay))) & 0x7F;
+        long mask = week | week << 7 | week << 14 | week << 21 | week << 28;
+        return (mask << 1) & ((1L << (lengthOfMonth(year, month) + 1)) - 1);
+    }
+
+    /**
+     * Days since 1970-01-01 of the given date, as {@link java.time.LocalDate#toEpochDay} without the allocation.
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+        case 2:
+            return Year.isLeap(year) ? 29 : 28;
+        case 4:
+        case 6:
+        case 9:
+        case 11:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
+    private static long pack(LocalDateTime t) {
+        return pack(t.getYear(), t.getMonthValue(), t.getDayOfMonth(), t.getHour(), t.getMinute());
+    }
+
+    /**
+     * Orders wall clock times down to the minute, also those with fields not yet rolled over,
+     * such as hour 24.
+     */
+    private static long pack(int year, int month, int day, int hour, int minute) {
+        return ((((long) year * 16 + month) * 32 + day) * 32 + (hour + 1)) * 64 + minute;
+    }
+}
@@ -137,25 +137,61 @@ public final class CronTabList {
 
     @Restricted(NoExternalUse.class) // just for form validation
     public @CheckForNull Calendar previous() {
-        Calendar nearest = null;
+        long now = System.currentTimeMillis();
+        CronTab nearestTab = null;
+        long nearest = 0;
         for (CronTab tab : tabs) {
-            Calendar scheduled = tab.floor(tab.getTimeZone() == null ? Calendar.getInstance() : Calendar.getInstance(tab.getTimeZone()));
-            if (nearest == null || nearest.before(scheduled)) {
+            long scheduled = tab.floor(now, tab.getZoneId());
+            if (nearestTab == null || nearest < scheduled) {
+                nearestTab = tab;
                 nearest = scheduled;
             }
         }
-        return nearest;
+        return toCalendar(nearestTab, nearest);
     }
 
     @Restricted(NoExternalUse.class) // just for form validation
     public @CheckForNull Calendar next() {
-        Calendar nearest = null;
+        long now = System.currentTimeMillis();
+        CronTab nearestTab = null;
+        long nearest = 0;
         for (CronTab tab : tabs) {
-            Calendar scheduled = tab.ceil(tab.getTimeZone() == null ? Calendar.getInstance() : Calendar.getInstance(tab.getTimeZone()));
-            if (nearest == null || nearest.after(scheduled)) {
+            long scheduled = tab.ceil(now, tab.getZoneId());
+            if (nearestTab == null || nearest > scheduled) {
+                nearestTab = tab;
                 nearest = scheduled;
             }
         }
+        return toCalendar(nearestTab, nearest);
+    }
+
+    private static @CheckForNull Calendar toCalendar(@CheckForNull CronTab tab, long t) {
+        if (tab == null) {
+            return null;
+        }
+        Calendar cal = tab.getTimeZone() == null ? Calendar.getInstance() : Calendar.getInstance(tab.getTimeZone());
+        cal.setTimeInMillis(t);
+        return cal;
+    }
+
+    /**
+     * Computes the nearest time at or after the given one that any of the tabs matches.
+     *
+     * @return that time in milliseconds, or -1 if none matches within {@link CronTab#ceil(Calendar) two years}
+     */
+    @Restricted(NoExternalUse.class) // for hudson.triggers.CronScheduler
+    public synchronized long ceil(long t) {
+        long nearest = -1;
+        for (CronTab tab : tabs) {
+            try {
+                long scheduled = tab.ceil(t, tab.getZoneId());
+                if (nearest < 0 || scheduled < nearest) {
+                    nearest = scheduled;
+                }
+            } catch (RareOrImpossibleDateException e) {
+                // this one does not come up
+            }
+        }
         return nearest;
     }
 
@@ -0,0 +1,135 @@
+package hudson.scm;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.Job;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
+
+/**
+ * Shares the remote state found by polling between the jobs whose SCMs have the same {@link SCM#getRemoteRevisionKey}.
+ *
+ * <p>
+ * The first job to poll a key queries the remote repository with {@link SCM#compareRemoteRevisionWith} as usual,
+ * and the {@link PollingResult#remote} state it gets is kept for {@link #TTL} seconds.
+ * Jobs polling the same key meanwhile compare their own baseline against that state with {@link SCM#compareRevisions},
+ * without querying the remote repository. Jobs polling a key at once wait for one query instead of each making one.
+ *
+ * <p>
+ * A change found against a state that was fetched before the polling started is confirmed with a query of the job's own,
+ * since the baseline of the job may be newer than the shared state.
+ * So the shared state can delay the discovery of a change by up to {@link #TTL} seconds, but cannot trigger a build by itself.
+ *
+ * @since TODO
+ */
+@Restricted(Beta.class)
+public final class RemoteRevisionCache {
+
+    private static final Logger LOGGER = Logger.getLogger(RemoteRevisionCache.class.getName());
+
+    /**
+     * Seconds a remote state is shared for, or 0 not to share any.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ int TTL = SystemProperties.getInteger(RemoteRevisionCache.class.getName() + ".ttl", 60);
+
+    private static final RemoteRevisionCache INSTANCE = new RemoteRevisionCache();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    RemoteRevisionCache() {
+    }
+
+    public static @NonNull RemoteRevisionCache get() {
+        return INSTANCE;
+    }
+
+    private static final class Entry {
+        /**
+         * Guarded by this entry, as is the query to the remote repository.
+         */
+        SCMRevisionState remote;
+        /**
+         * When {@link #remote} was fetched, or the entry created.
+         */
+        volatile long fetched;
+
+        Entry(long created) {
+            fetched = created;
+        }
+    }
+
+    /**
+     * Compares the current state of the remote repository against the given baseline, as
+     * {@link SCM#compareRemoteRevisionWith(Job, Launcher, FilePath, TaskListener, SCMRevisionState)} does,
+     * but sharing the remote state with other jobs if the SCM allows it.
+     */
+    public PollingResult compare(
+            @NonNull SCM scm,
+            @NonNull Job<?, ?> project,
+            @CheckForNull Launcher launcher,
+            @CheckForNull FilePath workspace,
+            @NonNull TaskListener listener,
+            @NonNull SCMRevisionState baseline)
+            throws IOException, InterruptedException {
+        String key = TTL > 0 && baseline != SCMRevisionState.NONE && !scm.requiresWorkspaceForPolling() ? scm.getRemoteRevisionKey() : null;
+        if (key == null) {
+            return scm.compareRemoteRevisionWith(project, launcher, workspace, listener, baseline);
+        }
+
+        long started = System.currentTimeMillis();
+        Entry e = entries.get(key);
+        if (e == null) {
+            expunge(started);
+            e = entries.computeIfAbsent(key, k -> new Entry(started));
+        }
+        synchronized (e) {
+            long now = System.currentTimeMillis();
+            if (e.remote != null && now - e.fetched < TimeUnit.SECONDS.toMillis(TTL)) {
+                PollingResult r = scm.compareRevisions(baseline, e.remote);
+                if (r != null) {
+                    if (e.fetched > started || !r.hasChanges()) {
+                        listener.getLogger().println("Using the remote state fetched " + Util.getTimeSpanString(now - e.fetched) + " ago for another job polling " + key);
+                        return r;
+                    }
+                    listener.getLogger().println("Confirming changes against the remote state fetched " + Util.getTimeSpanString(now - e.fetched) + " ago for another job");
+                }
+            }
+            PollingResult r = scm.compareRemoteRevisionWith(project, launcher, workspace, listener, baseline);
+            if (r.remote != null) {
+                e.remote = r.remote;
+                e.fetched = System.currentTimeMillis();
+            }
+            return r;
+        }
+    }
+
+    /**
+     * Forgets the states no longer shared.
+     */
+    private void expunge(long now) {
+        long expired = TimeUnit.SECONDS.toMillis(TTL) * 10;
+        entries.values().removeIf(e -> now - e.fetched > expired);
+        LOGGER.log(Level.FINER, "{0} remote states shared", entries.size());
+    }
+
+    /**
+     * Forgets the state shared for a key, so that the next polling queries the remote repository.
+     * To be called when the SCM learns of a change, such as from a push notification, before scheduling polling.
+     */
+    public void invalidate(@NonNull String key) {
+        entries.remove(key);
+    }
+}
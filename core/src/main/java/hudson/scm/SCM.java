@@ -196,6 +196,20 @@ public abstract class SCM implements Describable<SCM>, ExtensionPoint {
         return true;
     }
 
+    /**
+     * Identifies the server that polling talks to, such as the host and port of the repository URL.
+     *
+     * <p>
+     * When enabled, {@link hudson.triggers.SCMTrigger} limits how many pollings of one endpoint run at once,
+     * and lets the endpoints take turns, so that polling a slow server does not hold up polling the others.
+     *
+     * @return by default null, grouping this SCM with all the others that do not tell
+     * @since TODO
+     */
+    public @CheckForNull String getPollingEndpoint() {
+        return null;
+    }
+
     /**
      * Called before a workspace is deleted on the given node, to provide SCM an opportunity to perform clean up.
      *
@@ -433,12 +447,46 @@ public abstract class SCM implements Describable<SCM>, ExtensionPoint {
                 baseline2 = calcRevisionsFromBuild(project.getLastBuild(), launcher, listener);
             }
 
-            return compareRemoteRevisionWith(project, launcher, workspace, listener, baseline2);
+            return RemoteRevisionCache.get().compare(this, project, launcher, workspace, listener, baseline2);
         } else {
             return pollChanges(project, launcher, workspace, listener) ? PollingResult.SIGNIFICANT : PollingResult.NO_CHANGES;
         }
     }
 
+    /**
+     * Identifies the remote state that {@link #compareRemoteRevisionWith(Job, Launcher, FilePath, TaskListener, SCMRevisionState)}
+     * looks at, such as the repository URL and branch, so that jobs polling the same state can share one query of it.
+     *
+     * <p>
+     * An SCM returning a key must also implement {@link #compareRevisions}, and the {@link PollingResult#remote} states it returns
+     * must be immutable, as one may be compared against the baselines of several jobs.
+     * Anything else that affects the remote state found, such as credentials, must be part of the key.
+     * An SCM that learns of changes from push notifications should {@link RemoteRevisionCache#invalidate} the key before scheduling polling.
+     *
+     * <p>
+     * Only used for SCMs which do not {@link #requiresWorkspaceForPolling() require a workspace for polling}.
+     *
+     * @return by default null, not to share any state
+     * @see RemoteRevisionCache
+     * @since TODO
+     */
+    public @CheckForNull String getRemoteRevisionKey() {
+        return null;
+    }
+
+    /**
+     * Compares a baseline against a remote state found by
+     * {@link #compareRemoteRevisionWith(Job, Launcher, FilePath, TaskListener, SCMRevisionState)} for another job
+     * with the same {@link #getRemoteRevisionKey}, without contacting the remote repository.
+     *
+     * @return the result, as {@link #compareRemoteRevisionWith(Job, Launcher, FilePath, TaskListener, SCMRevisionState)}
+     * would have returned it, or by default null if they cannot be compared that way
+     * @since TODO
+     */
+    public @CheckForNull PollingResult compareRevisions(@NonNull SCMRevisionState baseline, @NonNull SCMRevisionState remote) {
+        return null;
+    }
+
     private boolean is1_346OrLater() {
         for (Class<?> c = getClass(); c != SCM.class; c = c.getSuperclass()) {
             try {
@@ -323,11 +323,14 @@ public class Fingerprinter extends Recorder implements Serializable, DependencyD
     }
 
     private void record(Run<?, ?> build, FilePath ws, TaskListener listener, Map<String, String> record, final String targets) throws IOException, InterruptedException {
+        List<Fingerprint> fingerprints = new ArrayList<>();
         for (Record r : ws.act(new FindRecords(targets, excludes, defaultExcludes, caseSensitive, build.getTimeInMillis()))) {
             Fingerprint fp = r.addRecord(build);
-            fp.addFor(build);
+            fingerprints.add(fp);
             record.put(r.relativePath, fp.getHashString());
         }
+        // identical files are common (the same library copied to several places), record each fingerprint once
+        Fingerprint.addFor(build, fingerprints);
     }
 
     @Extension @Symbol("fingerprint")
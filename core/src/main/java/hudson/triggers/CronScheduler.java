@@ -0,0 +1,251 @@
+package hudson.triggers;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.ExtensionList;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.scheduler.CronTabList;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.ExceptionCatchingThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.triggers.TriggeredItem;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Runs triggers at the minutes their cron tabs match, as {@link Trigger#checkTriggers} does,
+ * without checking every trigger every minute.
+ *
+ * <p>
+ * The next minute each trigger fires is computed once, when the trigger is {@link Trigger#start started} and after each time it fires,
+ * and triggers are kept in a queue ordered by that minute, so each minute only looks at the triggers due then.
+ * Items are also walked every {@link #RECONCILE_INTERVAL} minutes, as they were every minute,
+ * to pick up triggers that were never started and forget those that are gone.
+ *
+ * <p>
+ * Triggers run on a pool of {@link #THREADS} threads, so that one taking long does not hold up the others.
+ * A trigger still running when it is due again is skipped that time.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class CronScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(CronScheduler.class.getName());
+
+    /**
+     * Whether {@link Trigger.Cron} schedules triggers this way.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ boolean ENABLED = SystemProperties.getBoolean(CronScheduler.class.getName() + ".enabled");
+
+    /**
+     * Minutes between walks of all items.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ int RECONCILE_INTERVAL = SystemProperties.getInteger(CronScheduler.class.getName() + ".reconcileInterval", 60);
+
+    private static final int THREADS = SystemProperties.getInteger(CronScheduler.class.getName() + ".threads", 4);
+
+    private static final ThreadPoolExecutor RUNNERS = new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            new ExceptionCatchingThreadFactory(new NamingThreadFactory(new DaemonThreadFactory(), "Trigger runner")));
+
+    static {
+        RUNNERS.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * How far ahead to look again for a trigger whose cron tabs match no minute within the two years {@link hudson.scheduler.CronTab#ceil(Calendar)} looks at.
+     */
+    private static final long RARE = TimeUnit.DAYS.toMillis(365);
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private final Executor executor;
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private final Map<Trigger<?>, Entry> entries = new IdentityHashMap<>();
+    /**
+     * The next minute to be checked.
+     */
+    private long cursor;
+    private long reconciled = -1;
+
+    CronScheduler(long start) {
+        this(start, RUNNERS);
+    }
+
+    CronScheduler(long start, @NonNull Executor executor) {
+        this.cursor = start;
+        this.executor = executor;
+    }
+
+    /**
+     * Schedules a trigger that has just been {@link Trigger#start started}, if enabled.
+     */
+    static void started(@NonNull Trigger<?> trigger) {
+        if (!ENABLED || !(trigger.job instanceof TriggeredItem) || trigger.tabs == null || Jenkins.getInstanceOrNull() == null) {
+            return;
+        }
+        for (Trigger.Cron cron : ExtensionList.lookup(Trigger.Cron.class)) {
+            cron.getScheduler().schedule((TriggeredItem) trigger.job, trigger);
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final TriggeredItem item;
+        final Trigger<?> trigger;
+        /**
+         * As of scheduling, so that changed ones are noticed.
+         */
+        final CronTabList tabs;
+        long next;
+        boolean cancelled;
+        volatile boolean running;
+
+        Entry(TriggeredItem item, Trigger<?> trigger) {
+            this.item = item;
+            this.trigger = trigger;
+            this.tabs = trigger.tabs;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return Long.compare(next, o.next);
+        }
+    }
+
+    private synchronized void schedule(TriggeredItem item, Trigger<?> trigger) {
+        Entry previous = entries.get(trigger);
+        if (previous != null) {
+            if (previous.item == item && previous.tabs == trigger.tabs) {
+                return;
+            }
+            previous.cancelled = true;
+        }
+        Entry e = new Entry(item, trigger);
+        entries.put(trigger, e);
+        enqueue(e, cursor);
+    }
+
+    private void enqueue(Entry e, long from) {
+        long next = e.tabs.ceil(from);
+        e.next = next >= 0 ? next : from + RARE;
+        queue.add(e);
+    }
+
+    /**
+     * Runs the triggers due at a minute, in place of {@link Trigger#checkTriggers}.
+     */
+    void check(@NonNull Calendar cal) {
+        Jenkins jenkins = Jenkins.get();
+        SCMTrigger.DescriptorImpl scmd = jenkins.getDescriptorByType(SCMTrigger.DescriptorImpl.class);
+        if (scmd.synchronousPolling) {
+            Trigger.pollSynchronously(scmd);
+        }
+
+        long now = cal.getTimeInMillis();
+        List<Entry> due = new ArrayList<>();
+        synchronized (this) {
+            cursor = now;
+            if (reconciled < 0 || now - reconciled >= TimeUnit.MINUTES.toMillis(Math.max(RECONCILE_INTERVAL, 1))) {
+                reconcile(jenkins);
+                reconciled = now;
+            }
+            while (!queue.isEmpty() && queue.peek().next <= now) {
+                Entry e = queue.poll();
+                if (!e.cancelled) {
+                    due.add(e);
+                }
+            }
+            cursor = now + MINUTE; // anything scheduled from now on is checked from the next minute
+        }
+
+        for (Entry e : due) {
+            if (!isCurrent(jenkins, e)) {
+                synchronized (this) {
+                    entries.remove(e.trigger, e);
+                }
+                continue;
+            }
+            if (!(e.item instanceof AbstractProject && e.trigger instanceof SCMTrigger && scmd.synchronousPolling) && e.tabs.check(cal)) {
+                if (e.running) {
+                    LOGGER.log(Level.FINE, "{0} is still running on {1}, skipping it this time", new Object[] {e.trigger, e.item});
+                } else {
+                    LOGGER.log(Level.CONFIG, "cron triggered {0}", e.item);
+                    e.running = true;
+                    executor.execute(() -> {
+                        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+                            Trigger.runTrigger(e.item, e.trigger);
+                        } finally {
+                            e.running = false;
+                        }
+                    });
+                }
+            }
+            synchronized (this) {
+                if (!e.cancelled) {
+                    enqueue(e, now + MINUTE);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the trigger still belongs to the item, and the item to Jenkins
+     */
+    private static boolean isCurrent(Jenkins jenkins, Entry e) {
+        return e.item.getTriggers().containsValue(e.trigger) && jenkins.getItemByFullName(e.item.getFullName(), Item.class) == e.item;
+    }
+
+    /**
+     * Schedules the triggers of all items that are not yet, and forgets those that no longer exist.
+     */
+    private void reconcile(Jenkins jenkins) {
+        Set<Trigger<?>> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (TriggeredItem p : jenkins.allItems(TriggeredItem.class)) {
+            for (Trigger<?> t : p.getTriggers().values()) {
+                if (t == null || t.spec == null || t.tabs == null) {
+                    LOGGER.log(Level.WARNING, "The job {0} has a syntactically incorrect config and is missing the cron spec for a trigger", p.getFullName());
+                    continue;
+                }
+                seen.add(t);
+                schedule(p, t);
+            }
+        }
+        entries.values().removeIf(e -> {
+            if (seen.contains(e.trigger)) {
+                return false;
+            }
+            e.cancelled = true;
+            return true;
+        });
+        queue.removeIf(e -> e.cancelled);
+        LOGGER.log(Level.FINE, "{0} triggers scheduled", entries.size());
+    }
+
+    /**
+     * @return the number of triggers scheduled
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,414 @@
+package hudson.triggers;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Util;
+import hudson.scm.SCM;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Runs SCM pollings like {@link hudson.util.SequentialExecutionQueue} does for {@link SCMTrigger},
+ * but shares the polling threads fairly between the servers being polled.
+ *
+ * <p>
+ * Pollings are grouped by the {@link SCM#getPollingEndpoint() endpoint} of the SCMs of their job.
+ * Each endpoint runs at most {@link #MAX_PER_ENDPOINT} pollings at once and starts at most {@link #MAX_PER_MINUTE} a minute,
+ * and endpoints with pollings waiting take turns for the free threads.
+ * So thousands of jobs on a slow server only hold up each other, not the jobs on other servers.
+ * SCMs which do not tell their endpoint may be polling any number of servers, so they are not limited this way,
+ * only taking their turn for the threads like an endpoint.
+ *
+ * <p>
+ * As with {@link hudson.util.SequentialExecutionQueue}, a polling requested for a job whose polling is waiting is dropped,
+ * and one requested while it runs makes it run once more afterwards.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class SCMPollingScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(SCMPollingScheduler.class.getName());
+
+    /**
+     * Whether {@link SCMTrigger} polls this way.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ boolean ENABLED = SystemProperties.getBoolean(SCMPollingScheduler.class.getName() + ".enabled");
+
+    /**
+     * Pollings of one endpoint running at once.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ int MAX_PER_ENDPOINT = SystemProperties.getInteger(SCMPollingScheduler.class.getName() + ".maxPerEndpoint", 4);
+
+    /**
+     * Pollings of one endpoint started a minute, or 0 for no limit.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ int MAX_PER_MINUTE = SystemProperties.getInteger(SCMPollingScheduler.class.getName() + ".maxPerMinute", 0);
+
+    /**
+     * The endpoint of SCMs which do not tell theirs, exempt from {@link #MAX_PER_ENDPOINT} and {@link #MAX_PER_MINUTE}.
+     */
+    static final String UNKNOWN = "";
+
+    private final Executor executor;
+    private final IntSupplier threads;
+
+    /**
+     * Pollings waiting or running, by the {@link Runnable} requested, which should have value equality.
+     */
+    private final Map<Runnable, Entry> entries = new HashMap<>();
+    private final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+    /**
+     * Endpoints take turns in this order.
+     */
+    private final List<Endpoint> turns = new ArrayList<>();
+    private int turn;
+    private int running;
+    /**
+     * When {@link #dispatch} is next due to run for a rate limited endpoint, or 0.
+     */
+    private long wakeUp;
+
+    /**
+     * @param executor runs the pollings
+     * @param threads how many pollings to run at once at most
+     */
+    SCMPollingScheduler(@NonNull Executor executor, @NonNull IntSupplier threads) {
+        this.executor = executor;
+        this.threads = threads;
+    }
+
+    /**
+     * Computes the endpoint a job polls, from the first of its SCMs to tell.
+     */
+    static @NonNull String endpointOf(@NonNull Iterable<? extends SCM> scms) {
+        for (SCM scm : scms) {
+            String endpoint;
+            try {
+                endpoint = scm.getPollingEndpoint();
+            } catch (RuntimeException x) {
+                LOGGER.log(Level.WARNING, "failed to get the polling endpoint of " + scm, x);
+                continue;
+            }
+            if (endpoint != null) {
+                return endpoint;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Requests a polling.
+     *
+     * @param item the polling, with value equality, as requests for the same job are combined
+     * @param endpoint as computed by {@link #endpointOf}
+     */
+    void execute(@NonNull Runnable item, @NonNull String endpoint) {
+        synchronized (this) {
+            Entry e = entries.get(item);
+            if (e == null) {
+                e = new Entry(item, endpoints.computeIfAbsent(endpoint, this::newEndpoint));
+                entries.put(item, e);
+                e.enqueue(System.currentTimeMillis());
+            } else {
+                e.queued = true;
+            }
+        }
+        dispatch();
+    }
+
+    private Endpoint newEndpoint(String name) {
+        Endpoint endpoint = new Endpoint(name);
+        turns.add(endpoint);
+        return endpoint;
+    }
+
+    /**
+     * Starts as many waiting pollings as limits allow, endpoints taking turns.
+     */
+    private void dispatch() {
+        List<Entry> started = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long nextAllowed = Long.MAX_VALUE;
+            int max = Math.max(threads.getAsInt(), 1);
+            int perEndpoint = Math.max(MAX_PER_ENDPOINT, 1);
+            long interval = MAX_PER_MINUTE > 0 ? TimeUnit.MINUTES.toMillis(1) / MAX_PER_MINUTE : 0;
+            while (running < max) {
+                Entry next = null;
+                for (int i = 0; i < turns.size() && next == null; i++) {
+                    Endpoint endpoint = turns.get((turn + i) % turns.size());
+                    if (endpoint.waiting.isEmpty() || endpoint.limited && endpoint.running >= perEndpoint) {
+                        continue;
+                    }
+                    if (endpoint.limited && endpoint.nextStart > now) {
+                        nextAllowed = Math.min(nextAllowed, endpoint.nextStart);
+                        continue;
+                    }
+                    next = endpoint.waiting.poll();
+                    endpoint.running++;
+                    if (endpoint.limited) {
+                        endpoint.nextStart = Math.max(endpoint.nextStart, now) + interval;
+                    }
+                    endpoint.waited += now - next.submissionTime;
+                    endpoint.started++;
+                    turn = (turn + i + 1) % turns.size();
+                }
+                if (next == null) {
+                    break;
+                }
+                running++;
+                next.queued = false;
+                next.startTime = now;
+                started.add(next);
+            }
+            if (nextAllowed != Long.MAX_VALUE && (wakeUp == 0 || nextAllowed < wakeUp)) {
+                wakeUp = nextAllowed;
+                Timer.get().schedule(this::wakeUp, nextAllowed - now, TimeUnit.MILLISECONDS);
+            }
+        }
+        for (Entry e : started) {
+            try {
+                executor.execute(e);
+            } catch (RuntimeException x) { // such as RejectedExecutionException, the pool being resized
+                LOGGER.log(Level.WARNING, "failed to start polling " + e.item, x);
+                e.done();
+            }
+        }
+    }
+
+    private void wakeUp() {
+        synchronized (this) {
+            wakeUp = 0;
+        }
+        dispatch();
+    }
+
+    /**
+     * Whether a polling has been waiting longer than the given time.
+     */
+    synchronized boolean isStarving(long threshold) {
+        long now = System.currentTimeMillis();
+        for (Endpoint endpoint : turns) {
+            Entry oldest = endpoint.waiting.peek();
+            if (oldest != null && now - oldest.submissionTime > threshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The pollings running.
+     */
+    synchronized @NonNull Set<Runnable> getInProgress() {
+        Set<Runnable> items = new HashSet<>();
+        for (Entry e : entries.values()) {
+            if (e.startTime != 0) {
+                items.add(e.item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Statistics of each endpoint polled so far.
+     */
+    public synchronized @NonNull List<EndpointStatistics> getStatistics() {
+        long now = System.currentTimeMillis();
+        List<EndpointStatistics> r = new ArrayList<>();
+        for (Endpoint endpoint : turns) {
+            Entry oldest = endpoint.waiting.peek();
+            r.add(new EndpointStatistics(
+                    endpoint.name,
+                    endpoint.waiting.size(),
+                    endpoint.running,
+                    oldest == null ? 0 : now - oldest.submissionTime,
+                    endpoint.started == 0 ? 0 : endpoint.waited / endpoint.started,
+                    endpoint.completed == 0 ? 0 : endpoint.took / endpoint.completed,
+                    endpoint.completed));
+        }
+        return r;
+    }
+
+    /**
+     * Polling activity of an {@link SCM#getPollingEndpoint() endpoint}.
+     */
+    public static final class EndpointStatistics {
+        private final String endpoint;
+        private final int waiting;
+        private final int running;
+        private final long oldestWaiting;
+        private final long averageWait;
+        private final long averageDuration;
+        private final long completed;
+
+        EndpointStatistics(String endpoint, int waiting, int running, long oldestWaiting, long averageWait, long averageDuration, long completed) {
+            this.endpoint = endpoint;
+            this.waiting = waiting;
+            this.running = running;
+            this.oldestWaiting = oldestWaiting;
+            this.averageWait = averageWait;
+            this.averageDuration = averageDuration;
+            this.completed = completed;
+        }
+
+        /**
+         * The endpoint, or empty for SCMs which do not tell theirs.
+         */
+        public @NonNull String getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * Pollings waiting.
+         */
+        public int getWaiting() {
+            return waiting;
+        }
+
+        /**
+         * Pollings running.
+         */
+        public int getRunning() {
+            return running;
+        }
+
+        /**
+         * How long the polling waiting longest has been, in milliseconds.
+         */
+        public long getOldestWaiting() {
+            return oldestWaiting;
+        }
+
+        /**
+         * How long pollings waited before they ran, in milliseconds.
+         */
+        public long getAverageWait() {
+            return averageWait;
+        }
+
+        /**
+         * How long pollings took to run, in milliseconds.
+         */
+        public long getAverageDuration() {
+            return averageDuration;
+        }
+
+        /**
+         * Pollings run.
+         */
+        public long getCompleted() {
+            return completed;
+        }
+
+        /**
+         * Human readable {@link #getOldestWaiting}, {@link #getAverageWait} and {@link #getAverageDuration}.
+         */
+        public @NonNull String getOldestWaitingString() {
+            return Util.getTimeSpanString(oldestWaiting);
+        }
+
+        public @NonNull String getAverageWaitString() {
+            return Util.getTimeSpanString(averageWait);
+        }
+
+        public @NonNull String getAverageDurationString() {
+            return Util.getTimeSpanString(averageDuration);
+        }
+    }
+
+    private static final class Endpoint {
+        final String name;
+        /**
+         * Whether {@link #MAX_PER_ENDPOINT} and {@link #MAX_PER_MINUTE} apply.
+         */
+        final boolean limited;
+        final ArrayDeque<Entry> waiting = new ArrayDeque<>();
+        int running;
+        /**
+         * The earliest a polling may start under {@link #MAX_PER_MINUTE}.
+         */
+        long nextStart;
+        long started;
+        long waited;
+        long completed;
+        long took;
+
+        Endpoint(String name) {
+            this.name = name;
+            this.limited = !name.equals(UNKNOWN);
+        }
+    }
+
+    private final class Entry implements Runnable {
+        final Runnable item;
+        final Endpoint endpoint;
+        /**
+         * Whether the polling is to run (again).
+         */
+        boolean queued;
+        long submissionTime;
+        /**
+         * When the polling started, or 0 if it is waiting.
+         */
+        long startTime;
+
+        Entry(Runnable item, Endpoint endpoint) {
+            this.item = item;
+            this.endpoint = endpoint;
+        }
+
+        // Caller must have a lock
+        void enqueue(long now) {
+            queued = true;
+            submissionTime = now;
+            startTime = 0;
+            endpoint.waiting.add(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                item.run();
+            } finally {
+                done();
+            }
+        }
+
+        void done() {
+            synchronized (SCMPollingScheduler.this) {
+                long now = System.currentTimeMillis();
+                endpoint.running--;
+                endpoint.completed++;
+                endpoint.took += now - startTime;
+                running--;
+                if (queued) {
+                    // another polling for this job was requested while we were doing the polling. do it again.
+                    enqueue(now);
+                } else {
+                    entries.remove(item);
+                }
+            }
+            dispatch();
+        }
+    }
+}
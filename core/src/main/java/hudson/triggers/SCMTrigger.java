@@ -183,6 +183,10 @@ public class SCMTrigger extends Trigger<Item> {
             LOGGER.fine("Running the trigger directly without threading, " +
                     "as it's already taken care of by Trigger.Cron");
             new Runner(additionalActions).run();
+        } else if (SCMPollingScheduler.ENABLED) {
+            LOGGER.fine("scheduling the trigger to (asynchronously) run in turn with others polling the same endpoint");
+            d.scheduler.execute(new Runner(additionalActions), SCMPollingScheduler.endpointOf(job().getSCMs()));
+            d.clogCheck();
         } else {
             // schedule the polling.
             // even if we end up submitting this too many times, that's OK.
@@ -231,6 +235,11 @@ public class SCMTrigger extends Trigger<Item> {
          */
         private final transient SequentialExecutionQueue queue = new SequentialExecutionQueue(Executors.newSingleThreadExecutor(threadFactory()));
 
+        /**
+         * Used in place of {@link #queue} when {@link SCMPollingScheduler#ENABLED}, on the same threads.
+         */
+        private final transient SCMPollingScheduler scheduler = new SCMPollingScheduler(r -> getExecutor().execute(r), this::getPollingThreadCount);
+
         /**
          * Whether the projects should be polled all in one go in the order of dependencies. The default behavior is
          * that each project polls for changes independently.
@@ -267,7 +276,7 @@ public class SCMTrigger extends Trigger<Item> {
          * than it can handle.
          */
         public boolean isClogged() {
-            return queue.isStarving(STARVATION_THRESHOLD);
+            return queue.isStarving(STARVATION_THRESHOLD) || scheduler.isStarving(STARVATION_THRESHOLD);
         }
 
         /**
@@ -282,7 +291,17 @@ public class SCMTrigger extends Trigger<Item> {
          * Gets the snapshot of {@link Runner}s that are performing polling.
          */
         public List<Runner> getRunners() {
-            return Util.filter(queue.getInProgress(), Runner.class);
+            List<Runner> r = Util.filter(queue.getInProgress(), Runner.class);
+            r.addAll(Util.filter(scheduler.getInProgress(), Runner.class));
+            return r;
+        }
+
+        /**
+         * Gets the polling activity of each SCM endpoint, if pollings are scheduled by endpoint.
+         */
+        @Restricted(NoExternalUse.class)
+        public List<SCMPollingScheduler.EndpointStatistics> getEndpointStatistics() {
+            return SCMPollingScheduler.ENABLED ? scheduler.getStatistics() : List.of();
         }
 
          // originally List<SCMedItem> but known to be used only for logging, in which case the instances are not actually cast to SCMedItem anyway
@@ -105,6 +105,7 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
             // so if it fails, use whatever 'tabs' that we already have.
             LOGGER.log(Level.WARNING, String.format("Failed to parse crontab spec %s in job %s", spec, project.getFullName()), e);
         }
+        CronScheduler.started(this);
     }
 
     /**
@@ -218,10 +219,12 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
     @Extension @Symbol("cron")
     public static class Cron extends PeriodicWork {
         private final Calendar cal = new GregorianCalendar();
+        private final CronScheduler scheduler;
 
         public Cron() {
             cal.set(Calendar.SECOND, 0);
             cal.set(Calendar.MILLISECOND, 0);
+            scheduler = new CronScheduler(cal.getTimeInMillis());
         }
 
         @Override
@@ -239,7 +242,11 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
             while (new Date().getTime() >= cal.getTimeInMillis()) {
                 LOGGER.log(Level.FINE, "cron checking {0}", cal.getTime());
                 try {
-                    checkTriggers(cal);
+                    if (CronScheduler.ENABLED) {
+                        scheduler.check(cal);
+                    } else {
+                        checkTriggers(cal);
+                    }
                 } catch (Throwable e) {
                     LOGGER.log(Level.WARNING, "Cron thread throw an exception", e);
                     // SafeTimerTask.run would also catch this, but be sure to increment cal too.
@@ -248,6 +255,10 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
                 cal.add(Calendar.MINUTE, 1);
             }
         }
+
+        CronScheduler getScheduler() {
+            return scheduler;
+        }
     }
 
     private static Future previousSynchronousPolling;
@@ -258,32 +269,7 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
         // Are we using synchronous polling?
         SCMTrigger.DescriptorImpl scmd = inst.getDescriptorByType(SCMTrigger.DescriptorImpl.class);
         if (scmd.synchronousPolling) {
-            LOGGER.fine("using synchronous polling");
-
-            // Check that previous synchronous polling job is done to prevent piling up too many jobs
-            if (previousSynchronousPolling == null || previousSynchronousPolling.isDone()) {
-                // Process SCMTriggers in the order of dependencies. Note that the crontab spec expressed per-project is
-                // ignored, only the global setting is honored. The polling job is submitted only if the previous job has
-                // terminated.
-                // FIXME allow to set a global crontab spec
-                previousSynchronousPolling = scmd.getExecutor().submit(new DependencyRunner(new ProjectRunnable() {
-                    @Override
-                    public void run(AbstractProject p) {
-                        for (Trigger t : (Collection<Trigger>) p.getTriggers().values()) {
-                            if (t instanceof SCMTrigger) {
-                                if (t.job != null) {
-                                    LOGGER.fine("synchronously triggering SCMTrigger for project " + t.job.getName());
-                                } else {
-                                    LOGGER.fine("synchronously triggering SCMTrigger for unknown project");
-                                }
-                                t.run();
-                            }
-                        }
-                    }
-                }));
-            } else {
-                LOGGER.fine("synchronous polling has detected unfinished jobs, will not trigger additional jobs.");
-            }
+            pollSynchronously(scmd);
         }
 
         // Process all triggers, except SCMTriggers when synchronousPolling is set
@@ -297,26 +283,7 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
 
                         if (t.tabs.check(cal)) {
                             LOGGER.log(Level.CONFIG, "cron triggered {0}", p);
-                            try {
-                                long begin_time = System.currentTimeMillis();
-                                if (t.job == null) {
-                                    LOGGER.fine(() -> t + " not yet started on " + p + " but trying to run anyway");
-                                }
-                                t.run();
-                                long end_time = System.currentTimeMillis();
-                                if (end_time - begin_time > CRON_THRESHOLD * 1000) {
-                                    TriggerDescriptor descriptor = t.getDescriptor();
-                                    String name = descriptor.getDisplayName();
-                                    final String msg = String.format("Trigger '%s' triggered by '%s' (%s) spent too much time (%s) in its execution, other timers could be delayed.",
-                                            name, p.getFullDisplayName(), p.getFullName(), Util.getTimeSpanString(end_time - begin_time));
-                                    LOGGER.log(Level.WARNING, msg);
-                                    SlowTriggerAdminMonitor.getInstance().report(descriptor.getClass(), p.getFullName(), end_time - begin_time);
-                                }
-                            } catch (Throwable e) {
-                                // t.run() is a plugin, and some of them throw RuntimeException and other things.
-                                // don't let that cancel the polling activity. report and move on.
-                                LOGGER.log(Level.WARNING, t.getClass().getName() + ".run() failed for " + p, e);
-                            }
+                            runTrigger(p, t);
                         } else {
                             LOGGER.log(Level.FINER, "did not trigger {0}", p);
                         }
@@ -328,6 +295,58 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
         }
     }
 
+    static void pollSynchronously(SCMTrigger.DescriptorImpl scmd) {
+        LOGGER.fine("using synchronous polling");
+
+        // Check that previous synchronous polling job is done to prevent piling up too many jobs
+        if (previousSynchronousPolling == null || previousSynchronousPolling.isDone()) {
+            // Process SCMTriggers in the order of dependencies. Note that the crontab spec expressed per-project is
+            // ignored, only the global setting is honored. The polling job is submitted only if the previous job has
+            // terminated.
+            // FIXME allow to set a global crontab spec
+            previousSynchronousPolling = scmd.getExecutor().submit(new DependencyRunner(new ProjectRunnable() {
+                @Override
+                public void run(AbstractProject p) {
+                    for (Trigger t : (Collection<Trigger>) p.getTriggers().values()) {
+                        if (t instanceof SCMTrigger) {
+                            if (t.job != null) {
+                                LOGGER.fine("synchronously triggering SCMTrigger for project " + t.job.getName());
+                            } else {
+                                LOGGER.fine("synchronously triggering SCMTrigger for unknown project");
+                            }
+                            t.run();
+                        }
+                    }
+                }
+            }));
+        } else {
+            LOGGER.fine("synchronous polling has detected unfinished jobs, will not trigger additional jobs.");
+        }
+    }
+
+    static void runTrigger(TriggeredItem p, Trigger<?> t) {
+        try {
+            long begin_time = System.currentTimeMillis();
+            if (t.job == null) {
+                LOGGER.fine(() -> t + " not yet started on " + p + " but trying to run anyway");
+            }
+            t.run();
+            long end_time = System.currentTimeMillis();
+            if (end_time - begin_time > CRON_THRESHOLD * 1000) {
+                TriggerDescriptor descriptor = t.getDescriptor();
+                String name = descriptor.getDisplayName();
+                final String msg = String.format("Trigger '%s' triggered by '%s' (%s) spent too much time (%s) in its execution, other timers could be delayed.",
+                        name, p.getFullDisplayName(), p.getFullName(), Util.getTimeSpanString(end_time - begin_time));
+                LOGGER.log(Level.WARNING, msg);
+                SlowTriggerAdminMonitor.getInstance().report(descriptor.getClass(), p.getFullName(), end_time - begin_time);
+            }
+        } catch (Throwable e) {
+            // t.run() is a plugin, and some of them throw RuntimeException and other things.
+            // don't let that cancel the polling activity. report and move on.
+            LOGGER.log(Level.WARNING, t.getClass().getName() + ".run() failed for " + p, e);
+        }
+    }
+
     /**
      * Used to be milliseconds, now is seconds since Jenkins 2.289.
      */
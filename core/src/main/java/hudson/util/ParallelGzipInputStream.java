@@ -0,0 +1,83 @@
+package hudson.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Reads what {@link ParallelGzipOutputStream} wrote.
+ *
+ * <p>
+ * Unlike {@link GZIPInputStream} reading concatenated members, this does not depend on the next member having arrived
+ * to tell whether the stream is over, which matters when reading from a pipe.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class ParallelGzipInputStream extends InputStream {
+
+    /**
+     * The most a chunk of {@link ParallelGzipOutputStream#CHUNK_SIZE} bytes can take compressed,
+     * when deflate falls back to stored blocks, with room for the gzip header and trailer.
+     * As the length comes from the other side, nothing longer is buffered.
+     */
+    static final int MAX_COMPRESSED_SIZE = ParallelGzipOutputStream.CHUNK_SIZE + (ParallelGzipOutputStream.CHUNK_SIZE >> 3) + 1024;
+
+    private final DataInputStream in;
+    private InputStream chunk = InputStream.nullInputStream();
+    private boolean eof;
+    private final byte[] single = new byte[1];
+
+    public ParallelGzipInputStream(@NonNull InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (!eof) {
+            int n = chunk.read(b, off, len);
+            if (n > 0) {
+                return n;
+            }
+            next();
+        }
+        return -1;
+    }
+
+    private void next() throws IOException {
+        int length = in.readInt();
+        if (length == 0) {
+            eof = true;
+            return;
+        }
+        if (length < 0 || length > MAX_COMPRESSED_SIZE) {
+            throw new IOException("corrupted stream: chunk of " + length + " bytes");
+        }
+        byte[] compressed = new byte[length];
+        try {
+            in.readFully(compressed);
+        } catch (EOFException e) {
+            throw new IOException("truncated stream", e);
+        }
+        chunk = new GZIPInputStream(new ByteArrayInputStream(compressed), Math.min(length, 64 * 1024));
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
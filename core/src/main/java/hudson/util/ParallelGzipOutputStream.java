@@ -0,0 +1,149 @@
+package hudson.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Compresses a stream in fixed size chunks, several at a time, so that compression is not limited to one CPU.
+ *
+ * <p>
+ * Each chunk is an independent gzip member, preceded by its length; a zero length marks the end.
+ * Chunks are written in order, and at most a few per thread are in flight, which bounds the memory used.
+ * Read back with {@link ParallelGzipInputStream}.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class ParallelGzipOutputStream extends OutputStream {
+
+    /**
+     * Number of threads compressing chunks, shared by all streams of this JVM.
+     */
+    private static final int THREADS = SystemProperties.getInteger(ParallelGzipOutputStream.class.getName() + ".threads", Runtime.getRuntime().availableProcessors());
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final class Pool {
+        static final ExecutorService INSTANCE = Executors.newFixedThreadPool(Math.max(THREADS, 1),
+                new NamingThreadFactory(new DaemonThreadFactory(), "ParallelGzipOutputStream"));
+    }
+
+    private final DataOutputStream out;
+    private final int chunkSize;
+    private final int window;
+    private final Deque<Future<ByteArrayOutputStream2>> inFlight = new ArrayDeque<>();
+    private byte[] chunk;
+    private int size;
+    private boolean closed;
+
+    public ParallelGzipOutputStream(@NonNull OutputStream out) {
+        this(out, CHUNK_SIZE);
+    }
+
+    ParallelGzipOutputStream(@NonNull OutputStream out, int chunkSize) {
+        this.out = new DataOutputStream(out);
+        this.chunkSize = chunkSize;
+        this.window = 2 * Math.max(THREADS, 1);
+        this.chunk = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        chunk[size++] = (byte) b;
+        if (size == chunkSize) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, chunkSize - size);
+            System.arraycopy(b, off, chunk, size, n);
+            size += n;
+            off += n;
+            len -= n;
+            if (size == chunkSize) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Compresses what was written so far, and waits until all of it is written out.
+     */
+    @Override
+    public void flush() throws IOException {
+        submit();
+        while (!inFlight.isEmpty()) {
+            drain();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            out.writeInt(0);
+        } finally {
+            for (Future<ByteArrayOutputStream2> f : inFlight) {
+                f.cancel(false);
+            }
+            inFlight.clear();
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        if (size == 0) {
+            return;
+        }
+        byte[] data = chunk;
+        int length = size;
+        inFlight.add(Pool.INSTANCE.submit(() -> compress(data, length)));
+        chunk = new byte[chunkSize];
+        size = 0;
+        while (inFlight.size() >= window) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        ByteArrayOutputStream2 compressed;
+        try {
+            compressed = inFlight.remove().get();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        out.writeInt(compressed.size());
+        out.write(compressed.getBuffer(), 0, compressed.size());
+    }
+
+    private static ByteArrayOutputStream2 compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream2 buf = new ByteArrayOutputStream2(length / 2 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(buf)) {
+            gz.write(data, 0, length);
+        }
+        return buf;
+    }
+}
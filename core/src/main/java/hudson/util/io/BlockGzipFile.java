@@ -0,0 +1,434 @@
+package hudson.util.io;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Random access to a file written by {@link BlockGzipOutputStream}, or by {@code bgzip}.
+ *
+ * <p>
+ * Blocks are located from the {@code .gzi} index next to the file if there is one, else by reading each block header,
+ * and only the block holding a given position needs to be decompressed to read from there.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class BlockGzipFile implements Closeable {
+
+    static final String INDEX_SUFFIX = ".gzi";
+
+    private final File file;
+    private final FileChannel channel;
+    private final long size;
+    /**
+     * Compressed and uncompressed offsets of each block.
+     */
+    private long[] compressed = new long[64];
+    private long[] uncompressed = new long[64];
+    private int blocks;
+    private long length;
+
+    private int cachedBlock = -1;
+    private byte[] cached;
+
+    public BlockGzipFile(@NonNull File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            File index = indexOf(file);
+            if (index.isFile() && index.lastModified() >= file.lastModified()) {
+                readIndex(index);
+            }
+            // blocks past the index, if any, and the length
+            long from = blocks == 0 ? 0 : compressed[blocks - 1];
+            long uoffset = blocks == 0 ? 0 : uncompressed[blocks - 1];
+            blocks = Math.max(0, blocks - 1);
+            scan(from, uoffset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Whether this file starts with a BGZF block, as opposed to plain gzip or anything else.
+     */
+    public static boolean isBlockCompressed(@NonNull File file) {
+        byte[] header = new byte[256];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n = in.readNBytes(header, 0, header.length);
+            return blockSize(header, n) > 0;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    static File indexOf(File file) {
+        return new File(file.getPath() + INDEX_SUFFIX);
+    }
+
+    /**
+     * @return the total size of the block starting with this header, or -1 if it is not a BGZF header
+     */
+    private static int blockSize(byte[] h, int n) {
+        if (n < 18 || (h[0] & 0xff) != 0x1f || (h[1] & 0xff) != 0x8b || h[2] != 8 || (h[3] & 4) == 0) {
+            return -1;
+        }
+        int end = 12 + u16(h, 10);
+        for (int p = 12; p + 4 <= Math.min(end, n); p += 4 + u16(h, p + 2)) {
+            if (h[p] == 'B' && h[p + 1] == 'C' && u16(h, p + 2) == 2 && p + 6 <= n) {
+                return u16(h, p + 4) + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int u16(byte[] b, int p) {
+        return (b[p] & 0xff) | (b[p + 1] & 0xff) << 8;
+    }
+
+    private static int u32(byte[] b, int p) {
+        return u16(b, p) | u16(b, p + 2) << 16;
+    }
+
+    /**
+     * Reads the uncompressed size of a block from its trailer, which no block of this format exceeds {@link BlockGzipOutputStream#MAX_BLOCK}.
+     */
+    private int isize(byte[] trailer, int p, long offset) throws ZipException {
+        long isize = Integer.toUnsignedLong(u32(trailer, p));
+        if (isize > BlockGzipOutputStream.MAX_BLOCK) {
+            throw new ZipException("Corrupt block size " + isize + " at " + offset + " in " + file);
+        }
+        return (int) isize;
+    }
+
+    private void readIndex(File index) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index.toPath())))) {
+            long count = Long.reverseBytes(in.readLong());
+            if (count < 0 || count > size / BlockGzipOutputStream.HEADER_SIZE) {
+                return; // not an index of this file; scan it instead
+            }
+            add(0, 0);
+            for (long i = 0; i < count; i++) {
+                long c = Long.reverseBytes(in.readLong());
+                long u = Long.reverseBytes(in.readLong());
+                if (c <= compressed[blocks - 1] || c >= size || u < uncompressed[blocks - 1]) {
+                    blocks = 0;
+                    return;
+                }
+                add(c, u);
+            }
+        } catch (EOFException e) {
+            blocks = 0;
+        }
+    }
+
+    private void add(long c, long u) {
+        if (blocks == compressed.length) {
+            compressed = Arrays.copyOf(compressed, blocks * 2);
+            uncompressed = Arrays.copyOf(uncompressed, blocks * 2);
+        }
+        compressed[blocks] = c;
+        uncompressed[blocks] = u;
+        blocks++;
+    }
+
+    private void scan(long offset, long uoffset) throws IOException {
+        byte[] header = new byte[256];
+        while (offset < size) {
+            int n = read(offset, header, (int) Math.min(header.length, size - offset));
+            int total = blockSize(header, n);
+            if (total < 0 || offset + total > size) {
+                throw new ZipException("Not a block compressed file, or truncated, at " + offset + " in " + file);
+            }
+            byte[] isize = new byte[4];
+            read(offset + total - 4, isize, 4);
+            add(offset, uoffset);
+            uoffset += isize(isize, 0, offset);
+            offset += total;
+        }
+        length = uoffset;
+    }
+
+    private int read(long position, byte[] buf, int len) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, len);
+        while (bb.hasRemaining()) {
+            if (channel.read(bb, position + bb.position()) < 0) {
+                break;
+            }
+        }
+        return bb.position();
+    }
+
+    /**
+     * @return the uncompressed length
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return the block holding this position
+     */
+    private int find(long position) {
+        int i = Arrays.binarySearch(uncompressed, 0, blocks, position);
+        if (i < 0) {
+            return -i - 2;
+        }
+        while (i + 1 < blocks && uncompressed[i + 1] == position) {
+            i++; // past empty blocks
+        }
+        return i;
+    }
+
+    private byte[] inflate(int block) throws IOException {
+        long offset = compressed[block];
+        byte[] data = new byte[(int) Math.min(BlockGzipOutputStream.MAX_BLOCK, size - offset)];
+        int n = read(offset, data, data.length);
+        int total = blockSize(data, n);
+        if (total < 0 || total > n) {
+            throw new ZipException("Corrupt block at " + offset + " in " + file);
+        }
+        int start = 12 + u16(data, 10);
+        byte[] result = new byte[isize(data, total - 4, offset)];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, start, total - BlockGzipOutputStream.TRAILER_SIZE - start);
+            int len = 0;
+            while (len < result.length && !inflater.finished()) {
+                int r = inflater.inflate(result, len, result.length - len);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                len += r;
+            }
+            if (len != result.length) {
+                throw new ZipException("Corrupt block at " + offset + " in " + file);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupt block at " + offset + " in " + file + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(result);
+        if ((int) crc.getValue() != u32(data, total - 8)) {
+            throw new ZipException("CRC mismatch in block at " + offset + " in " + file);
+        }
+        return result;
+    }
+
+    /**
+     * Reads a single byte, as when looking for the last lines of a log.
+     * The last block read is kept, so reading nearby bytes in any order is cheap.
+     */
+    public synchronized byte byteAt(long position) throws IOException {
+        if (position < 0 || position >= length) {
+            throw new EOFException(position + " is past the end of " + file);
+        }
+        if (cachedBlock < 0 || position < uncompressed[cachedBlock] || position >= uncompressed[cachedBlock] + cached.length) {
+            int block = find(position);
+            cached = inflate(block);
+            cachedBlock = block;
+        }
+        return cached[(int) (position - uncompressed[cachedBlock])];
+    }
+
+    /**
+     * Reads the uncompressed content from a given position. Skipping is cheap.
+     * Closing the stream does not close this file.
+     */
+    public @NonNull InputStream open(long position) {
+        return new BlockInputStream(position, false);
+    }
+
+    /**
+     * Like {@link #open(long)} but closing the stream closes the file.
+     */
+    public static @NonNull InputStream open(@NonNull File file, long position) throws IOException {
+        return new BlockGzipFile(file).new BlockInputStream(position, true);
+    }
+
+    private final class BlockInputStream extends InputStream {
+        private long position;
+        private final boolean owner;
+        private byte[] data = new byte[0];
+        private long dataStart;
+
+        BlockInputStream(long position, boolean owner) {
+            this.position = Math.max(0, position);
+            this.owner = owner;
+        }
+
+        /**
+         * @return the number of bytes left in the current block, decompressing the next one if need be
+         */
+        private int fill() throws IOException {
+            while (position >= dataStart + data.length) {
+                if (position >= length) {
+                    return 0;
+                }
+                int block = find(position);
+                data = inflate(block);
+                dataStart = uncompressed[block];
+            }
+            if (position < dataStart) { // should not happen
+                throw new IOException("Inconsistent block index for " + file);
+            }
+            return (int) (dataStart + data.length - position);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (fill() == 0) {
+                return -1;
+            }
+            return data[(int) (position++ - dataStart)] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n = Math.min(len, fill());
+            if (n == 0) {
+                return -1;
+            }
+            System.arraycopy(data, (int) (position - dataStart), b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            long left = dataStart + data.length - position;
+            return left > 0 ? (int) left : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (owner) {
+                BlockGzipFile.this.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the offsets of the blocks of this file in the format of {@code bgzip --index}.
+     */
+    public void writeIndex(@NonNull OutputStream os) throws IOException {
+        DataOutputStream dos = new DataOutputStream(os);
+        dos.writeLong(Long.reverseBytes(Math.max(0, blocks - 1)));
+        for (int i = 1; i < blocks; i++) {
+            dos.writeLong(Long.reverseBytes(compressed[i]));
+            dos.writeLong(Long.reverseBytes(uncompressed[i]));
+        }
+        dos.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Converts a log to a block compressed {@code log.gz} with its index,
+     * so that it can be read from any position.
+     * A {@code log} is compressed then deleted; a plain gzip {@code log.gz} is recompressed;
+     * an already block compressed {@code log.gz} only gets an index if it lacks one.
+     * Must not be called on a log still being written.
+     *
+     * @param log the uncompressed log file, which may or may not exist
+     * @return the converted file, or null if there was no log
+     */
+    public static File convert(@NonNull File log) throws IOException {
+        File raw = log.getName().endsWith(".gz") ? new File(log.getParentFile(), log.getName().substring(0, log.getName().length() - 3)) : log;
+        File gz = new File(raw.getPath() + ".gz");
+        File index = indexOf(gz);
+        if (raw.isFile()) {
+            compress(raw, false, gz);
+            Files.delete(raw.toPath());
+        } else if (gz.isFile()) {
+            if (isBlockCompressed(gz)) {
+                if (!index.isFile()) {
+                    Path tmp = tmp(index);
+                    try (BlockGzipFile blocks = new BlockGzipFile(gz); OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                        blocks.writeIndex(out);
+                    }
+                    move(tmp, index);
+                }
+            } else {
+                compress(gz, true, gz);
+            }
+        } else {
+            return null;
+        }
+        return gz;
+    }
+
+    private static void compress(File source, boolean gunzip, File gz) throws IOException {
+        Path tmp = tmp(gz);
+        Path tmpIndex = tmp(indexOf(gz));
+        try {
+            BlockGzipOutputStream out = new BlockGzipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+            try (InputStream raw = Files.newInputStream(source.toPath());
+                 InputStream in = gunzip ? new GZIPInputStream(raw, 65536) : raw;
+                 out) {
+                in.transferTo(out);
+            }
+            try (OutputStream index = new BufferedOutputStream(Files.newOutputStream(tmpIndex))) {
+                out.writeIndex(index);
+            }
+            move(tmp, gz);
+            move(tmpIndex, indexOf(gz));
+        } finally {
+            Files.deleteIfExists(tmp);
+            Files.deleteIfExists(tmpIndex);
+        }
+    }
+
+    private static Path tmp(File f) {
+        return new File(f.getPath() + ".tmp").toPath();
+    }
+
+    private static void move(Path from, File to) throws IOException {
+        try {
+            Files.move(from, to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
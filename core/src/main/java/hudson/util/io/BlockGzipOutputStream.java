@@ -0,0 +1,186 @@
+package hudson.util.io;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Writes gzip as a series of small, independently compressed members, as BGZF does,
+ * so that it can be read from any block, see {@link BlockGzipFile}, while remaining readable by any gzip reader.
+ *
+ * <p>
+ * Each member carries its own compressed size in a {@code BC} extra field, and holds at most {@link #BLOCK_SIZE} bytes.
+ * The stream ends with an empty member, which tells a complete file from a truncated one.
+ * The offsets of all blocks can also be written as an index, see {@link #writeIndex}.
+ *
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public final class BlockGzipOutputStream extends OutputStream {
+
+    /**
+     * Uncompressed bytes per block, such that the compressed block is never larger than 64KiB.
+     */
+    static final int BLOCK_SIZE = 0xff00;
+    static final int HEADER_SIZE = 18;
+    static final int TRAILER_SIZE = 8;
+    static final int MAX_BLOCK = 0x10000;
+
+    /**
+     * The empty block ending a BGZF file.
+     */
+    static final byte[] EOF = {
+        0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+    };
+
+    private final OutputStream out;
+    private final Deflater deflater;
+    private final Deflater stored = new Deflater(Deflater.NO_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] compressed = new byte[MAX_BLOCK];
+    private int size;
+    private long compressedOffset;
+    private long uncompressedOffset;
+    /**
+     * Compressed and uncompressed offsets of each block but the first, as in a {@code .gzi} file.
+     */
+    private long[] index = new long[64];
+    private int blocks;
+    private boolean closed;
+
+    public BlockGzipOutputStream(@NonNull OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public BlockGzipOutputStream(@NonNull OutputStream out, int level) {
+        this.out = out;
+        this.deflater = new Deflater(level, true);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[size++] = (byte) b;
+        if (size == BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, BLOCK_SIZE - size);
+            System.arraycopy(b, off, block, size, n);
+            size += n;
+            off += n;
+            len -= n;
+            if (size == BLOCK_SIZE) {
+                writeBlock();
+            }
+        }
+    }
+
+    /**
+     * Ends the current block, so that everything written so far can be read.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (size > 0) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    private void writeBlock() throws IOException {
+        int length = deflate(deflater);
+        if (length < 0) {
+            length = deflate(stored); // incompressible
+        }
+        if (blocks > 0 || compressedOffset > 0) {
+            if (2 * blocks + 2 > index.length) {
+                index = Arrays.copyOf(index, index.length * 2);
+            }
+            index[2 * blocks] = compressedOffset;
+            index[2 * blocks + 1] = uncompressedOffset;
+            blocks++;
+        }
+        crc.reset();
+        crc.update(block, 0, size);
+        int total = HEADER_SIZE + length + TRAILER_SIZE;
+        byte[] header = {
+            0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+            (byte) (total - 1), (byte) ((total - 1) >> 8),
+        };
+        out.write(header);
+        out.write(compressed, 0, length);
+        writeIntLE(out, (int) crc.getValue());
+        writeIntLE(out, size);
+        compressedOffset += total;
+        uncompressedOffset += size;
+        size = 0;
+    }
+
+    /**
+     * @return the compressed length, or -1 if it did not fit
+     */
+    private int deflate(Deflater d) {
+        d.reset();
+        d.setInput(block, 0, size);
+        d.finish();
+        int max = MAX_BLOCK - HEADER_SIZE - TRAILER_SIZE;
+        int length = 0;
+        while (!d.finished() && length < max) {
+            length += d.deflate(compressed, length, max - length);
+        }
+        return d.finished() ? length : -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (size > 0) {
+                writeBlock();
+            }
+            out.write(EOF);
+        } finally {
+            deflater.end();
+            stored.end();
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the offsets of the blocks written so far in the format of {@code bgzip --index}:
+     * the number of entries, then the compressed and uncompressed offsets of each block but the first,
+     * all as little-endian 64 bit integers.
+     */
+    public void writeIndex(@NonNull OutputStream os) throws IOException {
+        DataOutputStream dos = new DataOutputStream(os);
+        writeLongLE(dos, blocks);
+        for (int i = 0; i < 2 * blocks; i++) {
+            writeLongLE(dos, index[i]);
+        }
+        dos.flush();
+    }
+
+    static void writeIntLE(OutputStream out, int v) throws IOException {
+        out.write(v);
+        out.write(v >> 8);
+        out.write(v >> 16);
+        out.write(v >> 24);
+    }
+
+    private static void writeLongLE(DataOutputStream out, long v) throws IOException {
+        out.writeLong(Long.reverseBytes(v));
+    }
+}
@@ -0,0 +1,717 @@
+package hudson.util.io;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.model.TaskListener;
+import hudson.remoting.Pipe;
+import hudson.remoting.VirtualChannel;
+import hudson.util.DirScanner;
+import hudson.util.FileVisitor;
+import hudson.util.IOUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import jenkins.MasterToSlaveFileCallable;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Copies a set of files so that only the parts that differ from what is already at the destination are sent,
+ * the way {@code rsync} does.
+ *
+ * <ol>
+ * <li>The source lists the files to copy.
+ * <li>The destination skips those of the same size and modification time, and cuts the others into blocks,
+ *     sending back a weak rolling checksum and a strong hash of each block.
+ * <li>The source looks for these blocks at every offset of its files, rolling the weak checksum one byte at a time,
+ *     and sends a compressed stream of references to the blocks found, and of the bytes in between.
+ * <li>The destination rebuilds each file from its old copy and that stream into a temporary file,
+ *     checks the hash of the whole file, and moves it into place.
+ * </ol>
+ *
+ * <p>Files at the destination that are not at the source are left alone.
+ *
+ * @see FilePath#syncRecursiveTo
+ * @since TODO
+ */
+public final class DeltaSync {
+
+    private DeltaSync() {}
+
+    /**
+     * Blocks at most this big, so that a change does not cause much to be sent again.
+     */
+    static final int MAX_BLOCK_SIZE = 128 * 1024;
+
+    /**
+     * Blocks at least this big, so that the signatures do not outweigh the data for small files.
+     */
+    static final int MIN_BLOCK_SIZE = 2048;
+
+    /**
+     * Literal data is sent in pieces of at most this size, so that the sender does not need to buffer more.
+     */
+    private static final int MAX_LITERAL = 64 * 1024;
+
+    private static final byte FILE = 'F';
+    private static final byte SYMLINK = 'L';
+    private static final byte END = 'E';
+    private static final byte COPY = 'C';
+    private static final byte DATA = 'D';
+    private static final byte DONE = 'X';
+
+    /**
+     * What a synchronization did.
+     */
+    public static final class Result implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        int files;
+        int unchanged;
+        long matchedBytes;
+        long literalBytes;
+        long sentBytes;
+        long signatureBytes;
+
+        /**
+         * Number of files and symlinks created or updated.
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * Number of files skipped as they had the same size and modification time at the destination.
+         */
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        /**
+         * Bytes of the updated files copied from blocks already at the destination.
+         */
+        public long getMatchedBytes() {
+            return matchedBytes;
+        }
+
+        /**
+         * Bytes of the updated files which had to be sent.
+         */
+        public long getLiteralBytes() {
+            return literalBytes;
+        }
+
+        /**
+         * Size of the compressed stream sent from the source to the destination.
+         */
+        public long getSentBytes() {
+            return sentBytes;
+        }
+
+        /**
+         * Approximate size of the block signatures sent from the destination to the source.
+         */
+        public long getSignatureBytes() {
+            return signatureBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "DeltaSync.Result[files=" + files + ", unchanged=" + unchanged + ", matched=" + matchedBytes + ", literal=" + literalBytes
+                    + ", sent=" + sentBytes + ", signatures=" + signatureBytes + "]";
+        }
+    }
+
+    /**
+     * @see FilePath#syncRecursiveTo
+     */
+    @Restricted(NoExternalUse.class)
+    public static @NonNull Result sync(@NonNull FilePath source, @NonNull DirScanner scanner, @NonNull FilePath target, @NonNull String description)
+            throws IOException, InterruptedException {
+        if (source.getChannel() == target.getChannel()) {
+            // nothing to save by comparing files on the same machine, as rsync --whole-file
+            Result result = new Result();
+            result.files = source.copyRecursiveTo(scanner, target, description);
+            return result;
+        }
+        List<Entry> entries = source.act(new Scan(scanner));
+        Map<String, Signature> signatures = target.act(new Sign(entries, description));
+        Result result;
+        try {
+            if (!source.isRemote()) {
+                Pipe pipe = Pipe.createLocalToRemote();
+                Future<Void> applied = target.actAsync(new Apply(pipe, description));
+                result = source.act(new Send(entries, signatures, pipe));
+                applied.get();
+            } else if (!target.isRemote()) {
+                Pipe pipe = Pipe.createRemoteToLocal();
+                Future<Result> sent = source.actAsync(new Send(entries, signatures, pipe));
+                target.act(new Apply(pipe, description));
+                result = sent.get();
+            } else {
+                // between two agents, relayed through here
+                Pipe in = Pipe.createRemoteToLocal();
+                Pipe out = Pipe.createLocalToRemote();
+                Future<Result> sent = source.actAsync(new Send(entries, signatures, in));
+                Future<Void> applied = target.actAsync(new Apply(out, description));
+                try (InputStream is = in.getIn(); OutputStream os = out.getOut()) {
+                    is.transferTo(os);
+                }
+                applied.get();
+                result = sent.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ioe ? ioe : new IOException(cause);
+        }
+        for (Signature s : signatures.values()) {
+            result.signatureBytes += 4 + 12L * s.weak.length;
+        }
+        return result;
+    }
+
+    /**
+     * A file or symlink to copy, as listed by the source.
+     */
+    record Entry(String path, long size, long lastModified, int mode, @CheckForNull String symlink) implements Serializable {}
+
+    /**
+     * Resolves a path listed by the source, which might be another machine, and must not get out of the destination.
+     */
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "checked against the base directory")
+    static File resolve(File base, String path, String description) throws IOException {
+        File f = new File(base, path);
+        if (path.isEmpty() || new File(path).isAbsolute() || path.startsWith("/") || path.startsWith("\\")
+                || Arrays.asList(path.split("[/\\\\]")).contains("..") || !f.toPath().normalize().startsWith(base.toPath().normalize())) {
+            throw new IOException("Sync of " + description + " contains illegal file name that breaks out of the target directory: " + path);
+        }
+        return f;
+    }
+
+    /**
+     * Checks that a file about to be written is not reached through a symlink pointing out of the destination,
+     * such as one created earlier in the same sync.
+     */
+    private static void checkParent(Path realBase, File f, String description, String path) throws IOException {
+        Path existing = f.toPath().getParent();
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null || !existing.toRealPath().startsWith(realBase)) {
+            throw new IOException("Sync of " + description + " contains file name that breaks out of the target directory through a symlink: " + path);
+        }
+    }
+
+    /**
+     * Checksums of the blocks of the copy of a file at the destination.
+     * {@link #UNCHANGED} if it looks the same as at the source.
+     */
+    private static final class Signature implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        static final Signature UNCHANGED = new Signature(0, new int[0], new long[0]);
+
+        final int blockSize;
+        final int[] weak;
+        final long[] strong;
+
+        Signature(int blockSize, int[] weak, long[] strong) {
+            this.blockSize = blockSize;
+            this.weak = weak;
+            this.strong = strong;
+        }
+
+        boolean isUnchanged() {
+            return blockSize == 0;
+        }
+    }
+
+    static int blockSize(long size) {
+        // about as many blocks as bytes per block, as rsync does
+        long sqrt = (long) Math.sqrt(size);
+        return (int) Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, Long.highestOneBit(Math.max(sqrt, 1))));
+    }
+
+    /**
+     * The rolling checksum of {@code rsync}, with both halves packed in an int.
+     */
+    static int weak(byte[] b, int off, int len) {
+        int a = 0;
+        int s = 0;
+        for (int i = 0; i < len; i++) {
+            a += b[off + i] & 0xFF;
+            s += (len - i) * (b[off + i] & 0xFF);
+        }
+        return (s & 0xFFFF) << 16 | (a & 0xFFFF);
+    }
+
+    static long strong(MessageDigest md, byte[] b, int off, int len) {
+        md.update(b, off, len);
+        byte[] d = md.digest();
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = v << 8 | (d[i] & 0xFF);
+        }
+        return v;
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static final class Scan extends MasterToSlaveFileCallable<List<Entry>> {
+        private static final long serialVersionUID = 1;
+        private final DirScanner scanner;
+
+        Scan(DirScanner scanner) {
+            this.scanner = scanner;
+        }
+
+        @Override
+        public List<Entry> invoke(File base, VirtualChannel channel) throws IOException {
+            List<Entry> entries = new ArrayList<>();
+            if (!base.exists()) {
+                return entries;
+            }
+            scanner.scan(base, new FileVisitor() {
+                @Override
+                public void visit(File f, String relativePath) throws IOException {
+                    if (f.isFile()) {
+                        entries.add(new Entry(relativePath, f.length(), f.lastModified(), IOUtils.mode(f), null));
+                    }
+                }
+
+                @Override
+                public boolean understandsSymlink() {
+                    return true;
+                }
+
+                @Override
+                public void visitSymlink(File link, String target, String relativePath) {
+                    entries.add(new Entry(relativePath, 0, 0, -1, target));
+                }
+            });
+            return entries;
+        }
+    }
+
+    static final class Sign extends MasterToSlaveFileCallable<Map<String, Signature>> {
+        private static final long serialVersionUID = 1;
+        private final List<Entry> entries;
+        private final String description;
+
+        Sign(List<Entry> entries, String description) {
+            this.entries = entries;
+            this.description = description;
+        }
+
+        @Override
+        public Map<String, Signature> invoke(File base, VirtualChannel channel) throws IOException {
+            Map<String, Signature> signatures = new HashMap<>();
+            MessageDigest md = sha256();
+            Path realBase = base.exists() ? base.toPath().toRealPath() : null;
+            for (Entry e : entries) {
+                if (e.symlink() != null) {
+                    continue;
+                }
+                // nothing is to be told about files outside of the destination
+                File f = resolve(base, e.path(), description);
+                if (realBase == null || !f.isFile() || Files.isSymbolicLink(f.toPath()) || !f.toPath().toRealPath().startsWith(realBase)) {
+                    continue;
+                }
+                long size = f.length();
+                if (size == e.size() && f.lastModified() == e.lastModified()) {
+                    signatures.put(e.path(), Signature.UNCHANGED);
+                    continue;
+                }
+                int blockSize = blockSize(size);
+                int blocks = (int) (size / blockSize); // a shorter last block is never matched
+                int[] weak = new int[blocks];
+                long[] strong = new long[blocks];
+                byte[] buf = new byte[blockSize];
+                try (InputStream in = Files.newInputStream(f.toPath())) {
+                    for (int i = 0; i < blocks; i++) {
+                        if (in.readNBytes(buf, 0, blockSize) < blockSize) {
+                            // shrunk meanwhile
+                            weak = Arrays.copyOf(weak, i);
+                            strong = Arrays.copyOf(strong, i);
+                            break;
+                        }
+                        weak[i] = weak(buf, 0, blockSize);
+                        strong[i] = strong(md, buf, 0, blockSize);
+                    }
+                }
+                signatures.put(e.path(), new Signature(blockSize, weak, strong));
+            }
+            return signatures;
+        }
+    }
+
+    private static final class Send extends MasterToSlaveFileCallable<Result> {
+        private static final long serialVersionUID = 1;
+        private final List<Entry> entries;
+        private final Map<String, Signature> signatures;
+        private final Pipe pipe;
+
+        Send(List<Entry> entries, Map<String, Signature> signatures, Pipe pipe) {
+            this.entries = entries;
+            this.signatures = signatures;
+            this.pipe = pipe;
+        }
+
+        @Override
+        public Result invoke(File base, VirtualChannel channel) throws IOException {
+            Result result = new Result();
+            try (CountingOutputStream counter = new CountingOutputStream(pipe.getOut());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(counter, 64 * 1024)))) {
+                for (Entry e : entries) {
+                    if (e.symlink() != null) {
+                        out.writeByte(SYMLINK);
+                        out.writeUTF(e.path());
+                        out.writeUTF(e.symlink());
+                        result.files++;
+                        continue;
+                    }
+                    Signature signature = signatures.get(e.path());
+                    if (signature != null && signature.isUnchanged()) {
+                        result.unchanged++;
+                        continue;
+                    }
+                    out.writeByte(FILE);
+                    out.writeUTF(e.path());
+                    out.writeLong(e.lastModified());
+                    out.writeInt(e.mode());
+                    Delta delta = new Delta(signature, out, result);
+                    out.writeInt(delta.blockSize);
+                    delta.send(new File(base, e.path()));
+                    result.files++;
+                }
+                out.writeByte(END);
+                out.close();
+                result.sentBytes = counter.count;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Sends one file, as references to blocks of the old copy and literal data.
+     */
+    private static final class Delta {
+        private final DataOutputStream out;
+        private final Result result;
+        private final int blockSize;
+        private final Map<Integer, int[]> blocksByWeak = new HashMap<>();
+        private final long[] strong;
+        private final MessageDigest blockDigest = sha256();
+        private final MessageDigest fileDigest = sha256();
+
+        /** Run of consecutive blocks to be copied, not yet sent. */
+        private int copyStart = -1;
+        private int copyCount;
+
+        Delta(@CheckForNull Signature signature, DataOutputStream out, Result result) {
+            this.out = out;
+            this.result = result;
+            if (signature != null && signature.weak.length > 0) {
+                blockSize = signature.blockSize;
+                strong = signature.strong;
+                for (int i = 0; i < signature.weak.length; i++) {
+                    blocksByWeak.merge(signature.weak[i], new int[] {i}, (a, b) -> {
+                        int[] c = Arrays.copyOf(a, a.length + 1);
+                        c[a.length] = b[0];
+                        return c;
+                    });
+                }
+            } else {
+                blockSize = 0;
+                strong = null;
+            }
+        }
+
+        void send(File f) throws IOException {
+            try (InputStream in = Files.newInputStream(f.toPath())) {
+                if (blockSize == 0) {
+                    byte[] buf = new byte[MAX_LITERAL];
+                    int n;
+                    while ((n = in.readNBytes(buf, 0, buf.length)) > 0) {
+                        literal(buf, 0, n);
+                    }
+                } else {
+                    match(in);
+                }
+            }
+            flushCopy();
+            out.writeByte(DONE);
+            out.write(fileDigest.digest());
+        }
+
+        /**
+         * Slides a window of one block over the file.
+         * Bytes before the window not matched yet, at most {@link #MAX_LITERAL} of them, are kept in the buffer too.
+         */
+        private void match(InputStream in) throws IOException {
+            int b = blockSize;
+            byte[] buf = new byte[MAX_LITERAL + 2 * b];
+            int len = 0; // bytes in buf
+            int pos = 0; // start of the window
+            int lit = 0; // start of the bytes not matched yet
+            boolean eof = false;
+            boolean rolling = false;
+            int a = 0;
+            int s = 0;
+            while (true) {
+                if (len - pos < b && !eof) {
+                    // move what is still needed to the front, and fill up
+                    System.arraycopy(buf, lit, buf, 0, len - lit);
+                    len -= lit;
+                    pos -= lit;
+                    lit = 0;
+                    int n = in.readNBytes(buf, len, buf.length - len);
+                    fileDigest.update(buf, len, n);
+                    len += n;
+                    eof = len < buf.length;
+                    continue;
+                }
+                if (len - pos < b) {
+                    break; // too short to match anything
+                }
+                if (!rolling) {
+                    a = 0;
+                    s = 0;
+                    for (int i = 0; i < b; i++) {
+                        a += buf[pos + i] & 0xFF;
+                        s += (b - i) * (buf[pos + i] & 0xFF);
+                    }
+                    rolling = true;
+                }
+                int block = find((s & 0xFFFF) << 16 | (a & 0xFFFF), buf, pos);
+                if (block >= 0) {
+                    literal(buf, lit, pos - lit);
+                    copy(block);
+                    pos += b;
+                    lit = pos;
+                    rolling = false;
+                    continue;
+                }
+                if (pos - lit + 1 >= MAX_LITERAL) {
+                    literal(buf, lit, pos + 1 - lit);
+                    lit = pos + 1;
+                }
+                if (pos + b < len) {
+                    int out = buf[pos] & 0xFF;
+                    int in2 = buf[pos + b] & 0xFF;
+                    a += in2 - out;
+                    s += a - b * out;
+                } else {
+                    rolling = false; // need more data first
+                }
+                pos++;
+            }
+            literal(buf, lit, len - lit);
+        }
+
+        private int find(int weak, byte[] buf, int pos) {
+            int[] candidates = blocksByWeak.get(weak);
+            if (candidates == null) {
+                return -1;
+            }
+            long h = strong(blockDigest, buf, pos, blockSize);
+            // prefer the block following the last one copied, to extend the run
+            int next = copyStart + copyCount;
+            int found = -1;
+            for (int i : candidates) {
+                if (strong[i] == h) {
+                    if (i == next) {
+                        return i;
+                    }
+                    if (found < 0) {
+                        found = i;
+                    }
+                }
+            }
+            return found;
+        }
+
+        private void copy(int block) throws IOException {
+            if (copyStart >= 0 && block == copyStart + copyCount) {
+                copyCount++;
+            } else {
+                flushCopy();
+                copyStart = block;
+                copyCount = 1;
+            }
+            result.matchedBytes += blockSize;
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyStart >= 0) {
+                out.writeByte(COPY);
+                out.writeInt(copyStart);
+                out.writeInt(copyCount);
+                copyStart = -1;
+                copyCount = 0;
+            }
+        }
+
+        private void literal(byte[] buf, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            if (blockSize == 0) {
+                fileDigest.update(buf, off, len);
+            }
+            flushCopy();
+            // the bytes left over at the end of the file may exceed what the destination reads at once
+            for (int end = off + len; off < end; off += MAX_LITERAL) {
+                int n = Math.min(MAX_LITERAL, end - off);
+                out.writeByte(DATA);
+                out.writeInt(n);
+                out.write(buf, off, n);
+            }
+            result.literalBytes += len;
+        }
+    }
+
+    private static final class Apply extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1;
+        private final Pipe pipe;
+        private final String description;
+
+        Apply(Pipe pipe, String description) {
+            this.pipe = pipe;
+            this.description = description;
+        }
+
+        @Override
+        public Void invoke(File base, VirtualChannel channel) throws IOException, InterruptedException {
+            apply(base, pipe.getIn(), description);
+            return null;
+        }
+    }
+
+    /**
+     * Rebuilds the files sent by {@link Send} in the destination.
+     */
+    static void apply(File base, InputStream stream, String description) throws IOException, InterruptedException {
+        Files.createDirectories(base.toPath());
+        Path realBase = base.toPath().toRealPath();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(stream, 64 * 1024)))) {
+            MessageDigest md = sha256();
+            byte[] buf = new byte[MAX_LITERAL];
+            int type;
+            while ((type = in.readByte()) != END) {
+                String path = in.readUTF();
+                File f = resolve(base, path, description);
+                checkParent(realBase, f, description, path);
+                Path parent = f.toPath().getParent();
+                Files.createDirectories(parent);
+                checkParent(realBase, f, description, path);
+                if (type == SYMLINK) {
+                    new FilePath(f).symlinkTo(in.readUTF(), TaskListener.NULL);
+                    continue;
+                }
+                if (type != FILE) {
+                    throw new IOException("Sync of " + description + " is corrupted");
+                }
+                long lastModified = in.readLong();
+                int mode = in.readInt();
+                int blockSize = in.readInt();
+                Path tmp = Files.createTempFile(parent, ".sync", ".tmp");
+                try {
+                    try (OutputStream os = Files.newOutputStream(tmp);
+                         RandomAccessFile old = f.isFile() && !Files.isSymbolicLink(f.toPath()) ? new RandomAccessFile(f, "r") : null) {
+                        int op;
+                        while ((op = in.readByte()) != DONE) {
+                            if (op == DATA) {
+                                int len = in.readInt();
+                                if (len < 0 || len > buf.length) {
+                                    throw new IOException("Sync of " + description + " is corrupted at " + path);
+                                }
+                                in.readFully(buf, 0, len);
+                                md.update(buf, 0, len);
+                                os.write(buf, 0, len);
+                            } else if (op == COPY && old != null && blockSize > 0) {
+                                int start = in.readInt();
+                                long remaining = (long) in.readInt() * blockSize;
+                                old.seek((long) start * blockSize);
+                                while (remaining > 0) {
+                                    int n = (int) Math.min(buf.length, remaining);
+                                    old.readFully(buf, 0, n);
+                                    md.update(buf, 0, n);
+                                    os.write(buf, 0, n);
+                                    remaining -= n;
+                                }
+                            } else {
+                                throw new IOException("Sync of " + description + " is corrupted at " + path);
+                            }
+                        }
+                    }
+                    byte[] expected = new byte[32];
+                    in.readFully(expected);
+                    if (!MessageDigest.isEqual(expected, md.digest())) {
+                        throw new IOException("Sync of " + description + " produced a different " + path + ", was it modified meanwhile?");
+                    }
+                    Files.move(tmp, f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+                if (!f.setLastModified(lastModified)) {
+                    throw new IOException("Failed to set the modification time of " + f);
+                }
+                if (mode > 0 && !Functions.isWindows()) {
+                    new FilePath(f).chmod(mode & 0777);
+                }
+            }
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
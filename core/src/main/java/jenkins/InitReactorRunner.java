@@ -8,8 +8,11 @@ import hudson.security.ACL;
 import hudson.util.DaemonThreadFactory;
 import hudson.util.NamingThreadFactory;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -81,6 +84,9 @@ public class InitReactorRunner {
 
             @Override
             public void onAttained(Milestone milestone) {
+                if (milestone instanceof InitMilestone && Jenkins.LOG_STARTUP_PERFORMANCE) {
+                    timings.report((InitMilestone) milestone);
+                }
                 Level lv = level;
                 String s = "Attained " + milestone.toString();
                 if (milestone instanceof InitMilestone) {
@@ -91,9 +97,65 @@ public class InitReactorRunner {
                 LOGGER.log(lv, s);
             }
         });
+        if (Jenkins.LOG_STARTUP_PERFORMANCE) {
+            r.add(timings);
+        }
         return new ReactorListener.Aggregator(r);
     }
 
+    private final PhaseTimings timings = new PhaseTimings();
+
+    /**
+     * Measures how long it takes to go from one {@link InitMilestone} to the next, and which tasks take the longest in between.
+     */
+    private static final class PhaseTimings implements ReactorListener {
+        private final Map<Task, Long> started = new ConcurrentHashMap<>();
+        /**
+         * Tasks completed since the last milestone, with their duration in nanoseconds.
+         */
+        private final Map<Task, Long> completed = new ConcurrentHashMap<>();
+        private long phaseStart = System.nanoTime();
+
+        @Override
+        public void onTaskStarted(Task t) {
+            started.put(t, System.nanoTime());
+        }
+
+        @Override
+        public void onTaskCompleted(Task t) {
+            Long start = started.remove(t);
+            if (start != null) {
+                completed.put(t, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void onTaskFailed(Task t, Throwable err, boolean fatal) {
+            onTaskCompleted(t);
+        }
+
+        @Override
+        public void onAttained(Milestone milestone) {
+        }
+
+        synchronized void report(InitMilestone milestone) {
+            long now = System.nanoTime();
+            List<Map.Entry<Task, Long>> tasks = new ArrayList<>(completed.entrySet());
+            completed.keySet().removeAll(tasks.stream().map(Map.Entry::getKey).collect(Collectors.toSet()));
+            long total = 0;
+            for (Map.Entry<Task, Long> e : tasks) {
+                total += e.getValue();
+            }
+            LOGGER.info(String.format("Took %dms to reach %s, running %d tasks for a total of %dms",
+                    TimeUnit.NANOSECONDS.toMillis(now - phaseStart), milestone, tasks.size(), TimeUnit.NANOSECONDS.toMillis(total)));
+            tasks.sort(Map.Entry.<Task, Long>comparingByValue().reversed());
+            for (Map.Entry<Task, Long> e : tasks.subList(0, Math.min(SLOWEST_TASKS, tasks.size()))) {
+                LOGGER.info(String.format("  took %dms for %s", TimeUnit.NANOSECONDS.toMillis(e.getValue()), getDisplayName(e.getKey())));
+            }
+            phaseStart = now;
+        }
+    }
+
     /** Like {@link Task#getDisplayName} but more robust. */
     @Restricted(NoExternalUse.class)
     public static String getDisplayName(Task t) {
@@ -111,6 +173,11 @@ public class InitReactorRunner {
     protected void onInitMilestoneAttained(InitMilestone milestone) {
     }
 
+    /**
+     * Number of tasks to list per {@link InitMilestone} with {@link Jenkins#LOG_STARTUP_PERFORMANCE}.
+     */
+    private static final int SLOWEST_TASKS = 5;
+
     private static final int TWICE_CPU_NUM = SystemProperties.getInteger(
             InitReactorRunner.class.getName() + ".concurrency",
             Runtime.getRuntime().availableProcessors() * 2);
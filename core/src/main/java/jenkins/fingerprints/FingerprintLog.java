@@ -0,0 +1,654 @@
+package jenkins.fingerprints;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import net.jcip.annotations.GuardedBy;
+
+/**
+ * Append-only store of records keyed by a 16 byte digest, used by {@link LogStructuredFingerprintStorage}.
+ *
+ * <p>
+ * Records are appended to the current segment file, which is rolled over once it reaches {@link #segmentSize}.
+ * Each record is its length, its type (put or delete), the key, the value, and a CRC-32 of all but the length.
+ * An in-memory {@link Index} maps each key to the location of its latest record; it is rebuilt by scanning
+ * the segments when opened, which also drops a record cut short by a crash at the end of the last segment.
+ *
+ * <p>
+ * Concurrent {@link #put}s and {@link #delete}s are written, and forced to disk, together:
+ * the first thread to come writes all the records pending at that time while the others wait for it.
+ *
+ * <p>
+ * Records replaced or deleted leave garbage behind; {@link #compact} copies the live records of the segments
+ * where it is the majority to the current segment, and deletes them.
+ */
+final class FingerprintLog implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintLog.class.getName());
+
+    private static final Pattern SEGMENT = Pattern.compile("([0-9]{8})\\.log");
+    private static final byte PUT = 'P';
+    private static final byte DELETE = 'D';
+    /** Length, type, key. */
+    private static final int HEADER = 4 + 1 + 16;
+    /** Type, key, and CRC, counted in the length but not part of the value. */
+    private static final int OVERHEAD = 1 + 16 + 4;
+    private static final int OFFSET_BITS = 40;
+
+    private final Path dir;
+    private final long segmentSize;
+
+    /**
+     * Held for reading to look up and read records, and for writing to change {@link #index} or {@link #segments}.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Held while appending, so that appends (including those of {@link #compact}) do not interleave.
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    @GuardedBy("lock")
+    private final Index index = new Index();
+
+    @GuardedBy("lock")
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    @GuardedBy("appendLock")
+    private Segment active;
+
+    @GuardedBy("pending")
+    private final List<Pending> pending = new ArrayList<>();
+
+    @GuardedBy("pending")
+    private boolean writing;
+
+    FingerprintLog(@NonNull Path dir, long segmentSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(dir);
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> s = Files.newDirectoryStream(dir)) {
+            for (Path p : s) {
+                Matcher m = SEGMENT.matcher(p.getFileName().toString());
+                if (m.matches()) {
+                    ids.add(Integer.parseInt(m.group(1)));
+                }
+            }
+        }
+        ids.sort(null);
+        for (int i = 0; i < ids.size(); i++) {
+            Segment segment = Segment.open(dir, ids.get(i));
+            segments.put(segment.id, segment);
+            scan(segment, i == ids.size() - 1);
+        }
+        active = ids.isEmpty() ? null : segments.get(ids.get(ids.size() - 1));
+        if (active == null) {
+            active = newSegment(1);
+        }
+    }
+
+    /**
+     * Reads the headers of the records of a segment into the index.
+     * @param last whether records may have been cut short, in which case their CRC is checked too
+     */
+    private void scan(Segment segment, boolean last) throws IOException {
+        FileChannel ch = segment.channel;
+        long size = ch.size();
+        long pos = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        while (pos + HEADER <= size) {
+            header.clear();
+            readFully(ch, header, pos);
+            header.flip();
+            int length = header.getInt();
+            byte type = header.get();
+            long hi = header.getLong();
+            long lo = header.getLong();
+            if (length < OVERHEAD || pos + 4 + length > size || (type != PUT && type != DELETE)
+                    || last && !checksumMatches(ch, pos, length)) {
+                break;
+            }
+            long location = location(segment.id, pos);
+            int recordSize = 4 + length;
+            segment.liveBytes += recordSize;
+            long previous = type == PUT ? index.put(hi, lo, location) : index.remove(hi, lo);
+            if (previous != 0) {
+                release(previous);
+            }
+            if (type == DELETE) {
+                segment.liveBytes -= recordSize; // only needed until the earlier records are gone, counted as garbage
+            }
+            pos += recordSize;
+        }
+        if (pos != size) {
+            long dropped = size - pos;
+            LOGGER.warning(() -> "Dropping " + dropped + " bytes of incomplete records at the end of " + segment.path);
+            ch.truncate(pos);
+        }
+        segment.size = pos;
+    }
+
+    private static boolean checksumMatches(FileChannel ch, long pos, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length);
+        readFully(ch, b, pos + 4);
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, length - 4);
+        return (int) crc.getValue() == b.getInt(length - 4);
+    }
+
+    /**
+     * Accounts for a record no longer being the latest for its key.
+     */
+    @GuardedBy("lock")
+    private void release(long location) {
+        Segment segment = segments.get(segmentOf(location));
+        if (segment != null) {
+            try {
+                segment.liveBytes -= recordSize(segment, offsetOf(location));
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "failed to account for garbage in " + segment.path, e);
+            }
+        }
+    }
+
+    private static int recordSize(Segment segment, long offset) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4);
+        readFully(segment.channel, b, offset);
+        return 4 + b.getInt(0);
+    }
+
+    /**
+     * @return the value of the latest record for the key, or null if it was deleted or never put
+     */
+    @CheckForNull byte[] get(@NonNull byte[] key) throws IOException {
+        long hi = hi(key);
+        long lo = lo(key);
+        lock.readLock().lock();
+        try {
+            long location = index.get(hi, lo);
+            if (location == 0) {
+                return null;
+            }
+            Segment segment = segments.get(segmentOf(location));
+            long offset = offsetOf(location);
+            int length = recordSize(segment, offset) - 4;
+            ByteBuffer b = ByteBuffer.allocate(length);
+            readFully(segment.channel, b, offset + 4);
+            CRC32 crc = new CRC32();
+            crc.update(b.array(), 0, length - 4);
+            if ((int) crc.getValue() != b.getInt(length - 4)) {
+                throw new IOException("Corrupted record at " + offset + " in " + segment.path);
+            }
+            return Arrays.copyOfRange(b.array(), 1 + 16, length - 4);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean contains(@NonNull byte[] key) {
+        lock.readLock().lock();
+        try {
+            return index.get(hi(key), lo(key)) != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return index.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void put(@NonNull byte[] key, @NonNull byte[] value) throws IOException {
+        write(new Pending(PUT, key, value));
+    }
+
+    void delete(@NonNull byte[] key) throws IOException {
+        if (contains(key)) {
+            write(new Pending(DELETE, key, new byte[0]));
+        }
+    }
+
+    private void write(Pending p) throws IOException {
+        boolean writer;
+        synchronized (pending) {
+            pending.add(p);
+            writer = !writing;
+            writing = true;
+        }
+        if (writer) {
+            // keep writing batches until nothing is left, the other threads waiting for theirs meanwhile
+            while (true) {
+                List<Pending> batch;
+                synchronized (pending) {
+                    if (pending.isEmpty()) {
+                        writing = false;
+                        break;
+                    }
+                    batch = new ArrayList<>(pending);
+                    pending.clear();
+                }
+                try {
+                    append(batch, true);
+                    batch.forEach(b -> b.done.complete(null));
+                } catch (IOException | RuntimeException e) {
+                    batch.forEach(b -> b.done.completeExceptionally(e));
+                }
+            }
+        }
+        try {
+            p.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ioe ? new IOException(ioe.getMessage(), ioe) : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Appends records and updates the index.
+     */
+    private void append(List<Pending> batch, boolean force) throws IOException {
+        appendLock.lock();
+        try {
+            if (active.size >= segmentSize) {
+                active.channel.force(false);
+                int next = active.id + 1;
+                Segment segment = newSegment(next);
+                active = segment;
+            }
+            int total = 0;
+            for (Pending p : batch) {
+                total += 4 + OVERHEAD + p.value.length;
+            }
+            ByteBuffer b = ByteBuffer.allocate(total);
+            long[] locations = new long[batch.size()];
+            CRC32 crc = new CRC32();
+            long offset = active.size;
+            for (int i = 0; i < batch.size(); i++) {
+                Pending p = batch.get(i);
+                locations[i] = location(active.id, offset + b.position());
+                b.putInt(OVERHEAD + p.value.length);
+                int start = b.position();
+                b.put(p.type).put(p.key).put(p.value);
+                crc.reset();
+                crc.update(b.array(), start, b.position() - start);
+                b.putInt((int) crc.getValue());
+            }
+            b.flip();
+            while (b.hasRemaining()) {
+                active.channel.write(b, offset + b.position());
+            }
+            if (force) {
+                active.channel.force(false);
+            }
+            active.size = offset + total;
+
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    Pending p = batch.get(i);
+                    int recordSize = 4 + OVERHEAD + p.value.length;
+                    long previous;
+                    if (p.type == PUT) {
+                        active.liveBytes += recordSize;
+                        previous = index.put(hi(p.key), lo(p.key), locations[i]);
+                    } else {
+                        previous = index.remove(hi(p.key), lo(p.key));
+                    }
+                    if (previous != 0) {
+                        release(previous);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private Segment newSegment(int id) throws IOException {
+        Segment segment = Segment.open(dir, id);
+        lock.writeLock().lock();
+        try {
+            segments.put(id, segment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return segment;
+    }
+
+    /**
+     * Calls back with the key and value of each live record, segment by segment, reading each one sequentially.
+     * Records put or deleted meanwhile may or may not be visited.
+     */
+    void forEach(@NonNull Visitor visitor) throws IOException {
+        List<Segment> snapshot;
+        lock.readLock().lock();
+        try {
+            snapshot = new ArrayList<>(segments.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Segment segment : snapshot) {
+            try {
+                forEachIn(segment, visitor, null);
+            } catch (ClosedChannelException e) {
+                // compacted meanwhile, its records were moved to the active segment
+            }
+        }
+    }
+
+    interface Visitor {
+        void visit(byte[] key, byte[] value) throws IOException;
+    }
+
+    /**
+     * Bytes taken by the segments, live or not.
+     */
+    long totalBytes() {
+        lock.readLock().lock();
+        try {
+            return segments.values().stream().mapToLong(s -> s.size).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes taken by the latest record of each key.
+     */
+    long liveBytes() {
+        lock.readLock().lock();
+        try {
+            return segments.values().stream().mapToLong(s -> s.liveBytes).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the live records of the inactive segments that are mostly garbage, and deletes these segments.
+     * Deletions are rewritten too unless no older segment is left, as they may hide a record of an older segment.
+     * @return the number of segments deleted
+     */
+    int compact() throws IOException {
+        List<Segment> candidates = new ArrayList<>();
+        appendLock.lock();
+        try {
+            lock.readLock().lock();
+            try {
+                for (Segment s : segments.values()) {
+                    if (s != active && s.liveBytes * 2 <= s.size) {
+                        candidates.add(s);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (Segment s : candidates) {
+                boolean oldest;
+                lock.readLock().lock();
+                try {
+                    oldest = segments.firstKey() == s.id;
+                } finally {
+                    lock.readLock().unlock();
+                }
+                List<Pending> live = new ArrayList<>();
+                // holding appendLock, nothing can be put or deleted meanwhile, so what is live now stays live
+                forEachIn(s, (key, value) -> live.add(new Pending(PUT, key, value)),
+                        oldest ? null : key -> live.add(new Pending(DELETE, key, new byte[0])));
+                for (int i = 0; i < live.size(); i += 1000) {
+                    append(live.subList(i, Math.min(i + 1000, live.size())), false);
+                }
+                active.channel.force(false);
+                lock.writeLock().lock();
+                try {
+                    segments.remove(s.id);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                s.channel.close();
+                Files.delete(s.path);
+                LOGGER.fine(() -> "Compacted " + s.path + " into " + live.size() + " records");
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        return candidates.size();
+    }
+
+    /**
+     * @param deletions if not null, called back with the keys deleted in this segment and not put again since
+     */
+    private void forEachIn(Segment segment, Visitor visitor, @CheckForNull Consumer<byte[]> deletions) throws IOException {
+        long pos = 0;
+        long size = segment.size;
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        while (pos + HEADER <= size) {
+            header.clear();
+            readFully(segment.channel, header, pos);
+            int length = header.getInt(0);
+            byte type = header.get(4);
+            long hi = header.getLong(5);
+            long lo = header.getLong(13);
+            long current;
+            lock.readLock().lock();
+            try {
+                current = index.get(hi, lo);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (type == PUT && current == location(segment.id, pos)) {
+                byte[] value = new byte[length - OVERHEAD];
+                readFully(segment.channel, ByteBuffer.wrap(value), pos + HEADER);
+                visitor.visit(ByteBuffer.allocate(16).putLong(hi).putLong(lo).array(), value);
+            } else if (type == DELETE && current == 0 && deletions != null) {
+                deletions.accept(ByteBuffer.allocate(16).putLong(hi).putLong(lo).array());
+            }
+            pos += 4 + length;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        lock.writeLock().lock();
+        try {
+            for (Segment s : segments.values()) {
+                s.channel.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+            appendLock.unlock();
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) {
+            if (ch.read(b, pos + b.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    private static long location(int segment, long offset) {
+        return (long) segment << OFFSET_BITS | offset;
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> OFFSET_BITS);
+    }
+
+    private static long offsetOf(long location) {
+        return location & ((1L << OFFSET_BITS) - 1);
+    }
+
+    private static long hi(byte[] key) {
+        return ByteBuffer.wrap(key).getLong(0);
+    }
+
+    private static long lo(byte[] key) {
+        return ByteBuffer.wrap(key).getLong(8);
+    }
+
+    private static final class Pending {
+        final byte type;
+        final byte[] key;
+        final byte[] value;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(byte type, byte[] key, byte[] value) {
+            if (key.length != 16) {
+                throw new IllegalArgumentException("expected a 16 byte key, got " + key.length);
+            }
+            this.type = type;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        /** Guarded by appendLock for the active segment, else only changed while opening. */
+        volatile long size;
+        /** Bytes of records still the latest for their key. */
+        @GuardedBy("lock")
+        long liveBytes;
+
+        private Segment(int id, Path path, FileChannel channel) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        static Segment open(Path dir, int id) throws IOException {
+            Path path = dir.resolve(String.format("%08d.log", id));
+            return new Segment(id, path, FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+    }
+
+    /**
+     * Open addressing hash table from a 128 bit key, such as a digest, to a nonzero {@code long},
+     * taking 24 bytes per slot rather than the hundred or so of a {@link java.util.HashMap} entry with boxed keys and values.
+     * The keys being digests, their bits are already uniformly distributed.
+     */
+    static final class Index {
+        private long[] his = new long[16];
+        private long[] los = new long[16];
+        /** 0 for an empty slot. */
+        private long[] values = new long[16];
+        int size;
+
+        private int slot(long hi, long lo) {
+            int mask = values.length - 1;
+            int i = (int) (hi ^ hi >>> 32) & mask;
+            while (values[i] != 0 && (his[i] != hi || los[i] != lo)) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        long get(long hi, long lo) {
+            return values[slot(hi, lo)];
+        }
+
+        /**
+         * @return the previous value, or 0
+         */
+        long put(long hi, long lo, long value) {
+            int i = slot(hi, lo);
+            long previous = values[i];
+            his[i] = hi;
+            los[i] = lo;
+            values[i] = value;
+            if (previous == 0 && ++size * 10 > values.length * 7) {
+                resize();
+            }
+            return previous;
+        }
+
+        /**
+         * @return the previous value, or 0
+         */
+        long remove(long hi, long lo) {
+            int i = slot(hi, lo);
+            long previous = values[i];
+            if (previous == 0) {
+                return 0;
+            }
+            size--;
+            // shift back the following entries of the cluster which would not be found otherwise
+            int mask = values.length - 1;
+            int j = i;
+            while (true) {
+                values[i] = 0;
+                while (true) {
+                    j = (j + 1) & mask;
+                    if (values[j] == 0) {
+                        return previous;
+                    }
+                    int home = (int) (his[j] ^ his[j] >>> 32) & mask;
+                    // move it to i unless its home lies cyclically in (i, j]
+                    if (i <= j ? i < home && home <= j : i < home || home <= j) {
+                        continue;
+                    }
+                    break;
+                }
+                his[i] = his[j];
+                los[i] = los[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+
+        private void resize() {
+            long[] oldHis = his;
+            long[] oldLos = los;
+            long[] oldValues = values;
+            his = new long[oldValues.length * 2];
+            los = new long[oldValues.length * 2];
+            values = new long[oldValues.length * 2];
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != 0) {
+                    int j = slot(oldHis[i], oldLos[i]);
+                    his[j] = oldHis[i];
+                    los[j] = oldLos[i];
+                    values[j] = oldValues[i];
+                }
+            }
+        }
+    }
+}
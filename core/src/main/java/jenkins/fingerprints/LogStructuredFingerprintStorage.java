@@ -0,0 +1,279 @@
+package jenkins.fingerprints;
+
+import com.thoughtworks.xstream.XStreamException;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.Functions;
+import hudson.Util;
+import hudson.init.Terminator;
+import hudson.model.Fingerprint;
+import hudson.model.TaskListener;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Fingerprint storage keeping all fingerprints in a few large files rather than one small file each.
+ *
+ * <p>
+ * Fingerprints are appended to segment files under {@code $JENKINS_HOME/fingerprint-segments},
+ * and found through an index kept in memory, which takes a few dozen bytes per fingerprint.
+ * Saves from concurrent builds are written and synced together.
+ * Cleanup reads the segments sequentially instead of walking a directory tree, and reclaims the space
+ * of fingerprints since replaced or deleted.
+ *
+ * <p>
+ * When selected, fingerprints of {@link FileFingerprintStorage} are moved over as they are loaded,
+ * and all of the remaining ones on the next cleanup.
+ */
+@Symbol("logStructuredFingerprintStorage")
+@Restricted(NoExternalUse.class)
+public class LogStructuredFingerprintStorage extends FingerprintStorage {
+
+    private static final Logger LOGGER = Logger.getLogger(LogStructuredFingerprintStorage.class.getName());
+    public static final String SEGMENTS_DIR_NAME = "fingerprint-segments";
+    private static final Pattern FINGERPRINT_FILE_PATTERN = Pattern.compile("[0-9a-f]{28}\\.xml");
+
+    /**
+     * Size past which a new segment is started.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ long SEGMENT_SIZE = SystemProperties.getLong(LogStructuredFingerprintStorage.class.getName() + ".segmentSize", 64L * 1024 * 1024);
+
+    /**
+     * Open logs by directory. Instances of this class are recreated whenever the configuration is loaded,
+     * while the log must stay open.
+     */
+    private static final Map<Path, FingerprintLog> LOGS = new HashMap<>();
+
+    @DataBoundConstructor
+    public LogStructuredFingerprintStorage() {}
+
+    private FingerprintLog getLog() throws IOException {
+        Path dir = new File(getRootDir(), SEGMENTS_DIR_NAME).toPath();
+        synchronized (LOGS) {
+            FingerprintLog log = LOGS.get(dir);
+            if (log == null) {
+                log = new FingerprintLog(dir, SEGMENT_SIZE);
+                LOGS.put(dir, log);
+            }
+            return log;
+        }
+    }
+
+    @Terminator
+    public static void closeAll() throws IOException {
+        synchronized (LOGS) {
+            for (FingerprintLog log : LOGS.values()) {
+                log.close();
+            }
+            LOGS.clear();
+        }
+    }
+
+    @Override
+    public void save(Fingerprint fp) throws IOException {
+        byte[] key;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        synchronized (fp) {
+            key = Util.fromHexString(fp.getHashString());
+            try (Writer w = new OutputStreamWriter(buf, StandardCharsets.UTF_8)) {
+                Fingerprint.getXStream().toXML(fp, w);
+            }
+        }
+        getLog().put(key, buf.toByteArray());
+    }
+
+    @Override
+    public @CheckForNull Fingerprint load(@NonNull String id) throws IOException {
+        byte[] key = keyOf(id);
+        if (key == null) {
+            return null;
+        }
+        byte[] value = getLog().get(key);
+        return value == null ? null : parse(id, value);
+    }
+
+    /**
+     * Reads a fingerprint back, deleting it if that is not possible, as {@link FileFingerprintStorage} does.
+     */
+    private @CheckForNull Fingerprint parse(@NonNull String id, @NonNull byte[] value) throws IOException {
+        Object loaded;
+        try {
+            loaded = Fingerprint.getXStream().fromXML(new ByteArrayInputStream(value));
+        } catch (XStreamException | LinkageError e) {
+            LOGGER.log(Level.WARNING, "Malformed fingerprint " + id + "; deleting it", e);
+            delete(id);
+            return null;
+        }
+        if (!(loaded instanceof Fingerprint f)) {
+            throw new IOException("Unexpected Fingerprint type. Expected " + Fingerprint.class + " or subclass but got "
+                    + (loaded != null ? loaded.getClass() : "null"));
+        }
+        if (f.getPersistedFacets() == null) {
+            LOGGER.log(Level.WARNING, "Malformed fingerprint {0}: Missing facets", id);
+            delete(id);
+            return null;
+        }
+        return f;
+    }
+
+    @Override
+    public void delete(String id) throws IOException {
+        byte[] key = keyOf(id);
+        if (key != null) {
+            getLog().delete(key);
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return new File(getRootDir(), SEGMENTS_DIR_NAME).isDirectory();
+    }
+
+    /**
+     * Moves the fingerprints left in {@link FileFingerprintStorage} over, cleans up all fingerprints,
+     * and compacts the segments.
+     */
+    @Override
+    public void iterateAndCleanupFingerprints(TaskListener taskListener) {
+        FingerprintLog log;
+        try {
+            log = getLog();
+        } catch (IOException e) {
+            Functions.printStackTrace(e, taskListener.error("Failed to open " + SEGMENTS_DIR_NAME));
+            return;
+        }
+
+        int moved = migrateFromFiles(log, taskListener);
+        if (moved > 0) {
+            taskListener.getLogger().println("Moved " + moved + " records from " + FileFingerprintStorage.FINGERPRINTS_DIR_NAME);
+        }
+
+        int[] numRecords = {0};
+        try {
+            log.forEach((key, value) -> {
+                String id = Util.toHexString(key);
+                try {
+                    Fingerprint fp = parse(id, value);
+                    if (fp != null && cleanFingerprint(fp, taskListener)) {
+                        numRecords[0]++;
+                    }
+                } catch (IOException e) {
+                    Functions.printStackTrace(e, taskListener.error("Failed to process " + id));
+                }
+            });
+        } catch (IOException e) {
+            Functions.printStackTrace(e, taskListener.error("Failed to read " + SEGMENTS_DIR_NAME));
+        }
+        taskListener.getLogger().println("Cleaned up " + numRecords[0] + " records");
+
+        try {
+            long before = log.totalBytes();
+            int segments = log.compact();
+            if (segments > 0) {
+                taskListener.getLogger().println("Compacted " + segments + " segments, reclaiming " + Functions.humanReadableByteSize(before - log.totalBytes()));
+            }
+        } catch (IOException e) {
+            Functions.printStackTrace(e, taskListener.error("Failed to compact " + SEGMENTS_DIR_NAME));
+        }
+    }
+
+    /**
+     * Imports all fingerprints from the layout of {@link FileFingerprintStorage}, deleting each file once imported.
+     * Those already imported, and since saved to this storage, are only deleted.
+     * @return the number of fingerprints imported
+     */
+    int migrateFromFiles(FingerprintLog log, TaskListener listener) {
+        int moved = 0;
+        File root = new File(getRootDir(), FileFingerprintStorage.FINGERPRINTS_DIR_NAME);
+        File[] files1 = root.listFiles(f -> f.isDirectory() && f.getName().length() == 2);
+        if (files1 == null) {
+            return 0;
+        }
+        for (File file1 : files1) {
+            File[] files2 = file1.listFiles(f -> f.isDirectory() && f.getName().length() == 2);
+            if (files2 == null) {
+                continue;
+            }
+            for (File file2 : files2) {
+                File[] files3 = file2.listFiles(f -> f.isFile() && FINGERPRINT_FILE_PATTERN.matcher(f.getName()).matches());
+                if (files3 == null) {
+                    continue;
+                }
+                for (File file3 : files3) {
+                    String id = file1.getName() + file2.getName() + file3.getName().substring(0, 28);
+                    try {
+                        byte[] key = Util.fromHexString(id);
+                        if (!log.contains(key)) {
+                            Fingerprint fp = FileFingerprintStorage.load(file3);
+                            if (fp != null) {
+                                save(fp);
+                                moved++;
+                            }
+                        }
+                        Files.deleteIfExists(file3.toPath());
+                    } catch (IOException | RuntimeException e) {
+                        Functions.printStackTrace(e, listener.error("Failed to move " + file3));
+                    }
+                }
+                deleteIfEmpty(file2);
+            }
+            deleteIfEmpty(file1);
+        }
+        // so that FileFingerprintStorage.isReady() is false from now on, unless something failed to move
+        deleteIfEmpty(root);
+        return moved;
+    }
+
+    private static void deleteIfEmpty(File dir) {
+        String[] children = dir.list();
+        if (children != null && children.length == 0 && !dir.delete()) {
+            LOGGER.fine(() -> "Could not delete " + dir);
+        }
+    }
+
+    private static @CheckForNull byte[] keyOf(String id) {
+        try {
+            byte[] key = Util.fromHexString(id);
+            return key.length == 16 ? key : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    protected File getRootDir() {
+        return Jenkins.get().getRootDir();
+    }
+
+    @Extension
+    public static class DescriptorImpl extends FingerprintStorageDescriptor {
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return Messages.LogStructuredFingerprintStorage_DisplayName();
+        }
+
+    }
+
+}
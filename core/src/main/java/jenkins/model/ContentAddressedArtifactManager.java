@@ -0,0 +1,407 @@
+package jenkins.model;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.BuildListener;
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.VirtualFile;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Artifact manager which stores each distinct file once, in a directory of blobs named after their SHA-256 digest
+ * shared by all builds, and makes it appear in the archive directory of a build as a hard link to the blob.
+ *
+ * <p>
+ * The agent computes the digests of the artifacts first, and only those missing from the blob directory are transferred.
+ * As a digest alone could be made up to get the artifacts of other builds, the agent then has to prove it has the content
+ * of the blobs it would get: it is sent a random nonce per artifact and returns the HMAC of the content keyed by it,
+ * which the controller checks against the blob. Artifacts without such a proof are transferred, and hashed on the controller.
+ * Since the archive directory is made of regular files, {@link #root}, directory browsing, etc. work as with
+ * {@link StandardArtifactManager}.
+ *
+ * <p>
+ * The number of links of a blob serves as its reference count: once the builds using it are deleted,
+ * only the blob directory refers to it and it is deleted as well.
+ * Deleting a blob never affects the builds, since each of their links keeps the content on its own.
+ * Where the file system does not support hard links, artifacts are transferred and archived as they are instead,
+ * and where it does not report the number of links, blobs are never deleted.
+ *
+ * <p>
+ * The digests of the linked artifacts are listed in {@value #MANIFEST} in the build directory,
+ * in the format of {@code sha256sum}.
+ *
+ * @see ContentAddressedArtifactManagerFactory
+ * @since TODO
+ */
+@Restricted(NoExternalUse.class)
+public class ContentAddressedArtifactManager extends ArtifactManager {
+
+    private static final Logger LOGGER = Logger.getLogger(ContentAddressedArtifactManager.class.getName());
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    static final String MANIFEST = "artifacts.sha256";
+
+    private transient Run<?, ?> build;
+
+    public ContentAddressedArtifactManager(@NonNull Run<?, ?> build) {
+        onLoad(build);
+    }
+
+    @Override public void onLoad(@NonNull Run<?, ?> build) {
+        this.build = build;
+    }
+
+    @Override public void archive(FilePath workspace, Launcher launcher, BuildListener listener, Map<String, String> artifacts) throws IOException, InterruptedException {
+        Path archive = getArtifactsDir().toPath();
+        Path blobs = getBlobsDir().toPath();
+        Files.createDirectories(blobs);
+
+        Map<String, String> digests = workspace.act(new Digest(artifacts));
+
+        // the agent has to prove it has the content of the blobs it would get
+        Map<String, byte[]> nonces = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : digests.entrySet()) {
+            if (Files.isRegularFile(blob(blobs, entry.getValue()))) {
+                byte[] nonce = new byte[32];
+                RANDOM.nextBytes(nonce);
+                nonces.put(entry.getKey(), nonce);
+            }
+        }
+        Map<String, byte[]> proofs = nonces.isEmpty() ? Map.of() : prove(workspace, artifacts, nonces);
+
+        // linked to the blob with the claimed digest, keyed by their path in the archive
+        Map<String, String> linked = new LinkedHashMap<>();
+        Map<String, String> transfer = new LinkedHashMap<>();
+        Set<String> seen = new HashSet<>();
+        for (Map.Entry<String, String> entry : artifacts.entrySet()) {
+            String path = entry.getKey();
+            String digest = digests.get(path);
+            if (digest == null) {
+                // symlinks and such are archived as usual
+                transfer.put(path, entry.getValue());
+            } else if (nonces.containsKey(path)) {
+                if (proven(blob(blobs, digest), nonces.get(path), proofs.get(path))) {
+                    linked.put(path, digest);
+                } else {
+                    LOGGER.fine(() -> "no proof that " + path + " in " + build + " has the content of blob " + digest + ", transferring it");
+                    transfer.put(path, entry.getValue());
+                }
+            } else if (seen.add(digest)) {
+                // one file per missing blob
+                transfer.put(path, entry.getValue());
+            } else {
+                linked.put(path, digest);
+            }
+        }
+
+        // digests of the content the agent actually sent
+        Set<String> stored = new HashSet<>();
+        int copied = 0;
+        try (BufferedWriter manifest = Files.newBufferedWriter(getManifest().toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (!transfer.isEmpty()) {
+                Path incoming = Files.createTempDirectory(blobs, "incoming");
+                try {
+                    workspace.copyRecursiveTo(new FilePath.ExplicitlySpecifiedDirScanner(transfer), new FilePath(incoming.toFile()), "transfer of " + transfer.size() + " files", StandardArtifactManager.TAR_COMPRESSION);
+                    for (String path : transfer.keySet()) {
+                        Path file = incoming.resolve(path);
+                        Path target = target(archive, path);
+                        if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                            if (Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+                                Files.move(file, target);
+                            }
+                            continue;
+                        }
+                        String digest = digest(file);
+                        if (store(file, target, blob(blobs, digest))) {
+                            manifest.write(digest + "  " + path + "\n");
+                            stored.add(digest);
+                        }
+                    }
+                } finally {
+                    Util.deleteRecursive(incoming.toFile());
+                }
+            }
+
+            for (Map.Entry<String, String> entry : linked.entrySet()) {
+                String path = entry.getKey();
+                String digest = entry.getValue();
+                Path target = target(archive, path);
+                Path blob = blob(blobs, digest);
+                if (nonces.containsKey(path) || stored.contains(digest)) {
+                    try {
+                        Files.createLink(target, blob);
+                        manifest.write(digest + "  " + path + "\n");
+                        continue;
+                    } catch (NoSuchFileException x) {
+                        // meanwhile deleted along with another build
+                    } catch (UnsupportedOperationException | FileSystemException x) {
+                        LOGGER.log(Level.FINE, "could not link " + target + " to " + blob + ", copying it instead", x);
+                    }
+                } else {
+                    // the file transferred for that content turned out to differ, as it changed while being archived
+                    LOGGER.fine(() -> path + " in " + build + " changed while being archived");
+                }
+                copied++;
+                workspace.child(artifacts.get(path)).copyTo(new FilePath(target.toFile()));
+            }
+        }
+
+        listener.getLogger().println("Transferred " + (transfer.size() + copied) + " of " + artifacts.size() + " artifacts; the rest were already stored");
+    }
+
+    /**
+     * Has the agent prove it has the content of the given artifacts.
+     * @param artifacts all the artifacts, as for {@link #archive}
+     * @param nonces the nonce for each artifact to prove, keyed by its path in the archive
+     * @return the {@link #proof} for each of them it has, keyed by its path in the archive
+     */
+    Map<String, byte[]> prove(FilePath workspace, Map<String, String> artifacts, Map<String, byte[]> nonces) throws IOException, InterruptedException {
+        return workspace.act(new Prove(artifacts, nonces));
+    }
+
+    @Override public boolean delete() throws IOException, InterruptedException {
+        File ad = getArtifactsDir();
+        File manifest = getManifest();
+        Set<String> digests = new TreeSet<>();
+        if (manifest.isFile()) {
+            for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+                int space = line.indexOf(' ');
+                if (space > 0) {
+                    digests.add(line.substring(0, space));
+                }
+            }
+        }
+        if (!ad.exists()) {
+            LOGGER.log(Level.FINE, "no such directory {0} to delete for {1}", new Object[] {ad, build});
+            Files.deleteIfExists(manifest.toPath());
+            return false;
+        }
+        LOGGER.log(Level.FINE, "deleting {0} for {1}", new Object[] {ad, build});
+        Util.deleteRecursive(ad);
+        Files.deleteIfExists(manifest.toPath());
+        collect(getBlobsDir().toPath(), digests);
+        return true;
+    }
+
+    @Override public VirtualFile root() {
+        return VirtualFile.forFile(getArtifactsDir());
+    }
+
+    @SuppressWarnings("deprecation")
+    private File getArtifactsDir() {
+        return build.getArtifactsDir();
+    }
+
+    private File getManifest() {
+        return new File(build.getRootDir(), MANIFEST);
+    }
+
+    /**
+     * Within {@code $JENKINS_HOME}, so that it is on the same file system as the builds, as hard links require.
+     */
+    static File getBlobsDir() {
+        return new File(Jenkins.get().getRootDir(), "artifact-blobs");
+    }
+
+    static Path blob(Path blobs, String digest) {
+        return blobs.resolve(digest.substring(0, 2)).resolve(digest);
+    }
+
+    /**
+     * Where an artifact goes in the archive, after removing what was there.
+     */
+    private static Path target(Path archive, String path) throws IOException {
+        Path target = archive.resolve(path).normalize();
+        if (!target.startsWith(archive)) {
+            throw new IOException("refusing to archive " + path + " outside of " + archive);
+        }
+        Files.createDirectories(target.getParent());
+        Files.deleteIfExists(target);
+        return target;
+    }
+
+    /**
+     * Moves a freshly transferred file into the archive as a link to the blob with the same content,
+     * which it becomes if there is none yet.
+     * @return whether the artifact is linked to the blob
+     */
+    private static boolean store(Path file, Path target, Path blob) throws IOException {
+        try {
+            Files.createLink(target, blob);
+            return true;
+        } catch (NoSuchFileException x) {
+            // first of its kind, or meanwhile deleted along with another build
+        } catch (UnsupportedOperationException | FileSystemException x) {
+            LOGGER.log(Level.FINE, "could not link " + target + " to " + blob + ", archiving it as is", x);
+            Files.move(file, target);
+            return false;
+        }
+        Files.move(file, target);
+        try {
+            Files.createDirectories(blob.getParent());
+            // linked rather than moved there, so that the blob never has fewer links than the builds using it
+            Files.createLink(blob, target);
+        } catch (UnsupportedOperationException | FileSystemException x) {
+            // an identical one got there first; not replacing it, which would split the links to the same content between two files
+            LOGGER.log(Level.FINE, "could not link " + blob + " to " + target, x);
+            return false;
+        }
+        // any change through one of the links would affect all the builds sharing it
+        if (!blob.toFile().setWritable(false, false)) {
+            LOGGER.fine(() -> "could not make " + blob + " read-only");
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the given blobs if no build links to them anymore.
+     */
+    private static void collect(Path blobs, Collection<String> digests) {
+        for (String digest : digests) {
+            Path blob = blob(blobs, digest);
+            try {
+                Object links = Files.getAttribute(blob, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+                if (links instanceof Integer n && n <= 1) {
+                    LOGGER.fine(() -> "deleting unreferenced " + blob);
+                    Files.deleteIfExists(blob);
+                }
+            } catch (NoSuchFileException x) {
+                // already gone
+            } catch (UnsupportedOperationException | IllegalArgumentException x) {
+                return; // no link count on this file system
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "failed to delete " + blob, x);
+            }
+        }
+    }
+
+    static String digest(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file);
+             DigestOutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), MessageDigest.getInstance("SHA-256"))) {
+            in.transferTo(out);
+            return Util.toHexString(out.getMessageDigest().digest());
+        } catch (NoSuchAlgorithmException x) {
+            throw new IOException(x);
+        }
+    }
+
+    /**
+     * Proof of possession of the content of a file, which cannot be computed from its digest alone.
+     */
+    static byte[] proof(Path file, byte[] nonce) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(nonce, "HmacSHA256"));
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                mac.update(buf, 0, n);
+            }
+            return mac.doFinal();
+        } catch (GeneralSecurityException x) {
+            throw new IOException(x);
+        }
+    }
+
+    /**
+     * Checks a proof sent by the agent against a blob.
+     */
+    private static boolean proven(Path blob, byte[] nonce, byte[] proof) throws IOException {
+        if (proof == null) {
+            return false;
+        }
+        try {
+            return MessageDigest.isEqual(proof, proof(blob, nonce));
+        } catch (NoSuchFileException x) {
+            return false; // meanwhile deleted along with another build
+        }
+    }
+
+    /**
+     * Computes the digests of the regular files among the artifacts, keyed by their path in the archive.
+     */
+    private static final class Digest extends MasterToSlaveFileCallable<Map<String, String>> {
+        private static final long serialVersionUID = 1;
+
+        private final Map<String, String> artifacts;
+
+        Digest(Map<String, String> artifacts) {
+            this.artifacts = new LinkedHashMap<>(artifacts);
+        }
+
+        @Override public Map<String, String> invoke(File ws, VirtualChannel channel) throws IOException {
+            Map<String, String> digests = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : artifacts.entrySet()) {
+                Path file = new File(ws, entry.getValue()).toPath();
+                if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                    digests.put(entry.getKey(), digest(file));
+                }
+            }
+            return digests;
+        }
+    }
+
+    /**
+     * Computes the {@link #proof} for the regular files among the given artifacts, keyed by their path in the archive.
+     */
+    private static final class Prove extends MasterToSlaveFileCallable<Map<String, byte[]>> {
+        private static final long serialVersionUID = 1;
+
+        private final Map<String, String> artifacts;
+        private final Map<String, byte[]> nonces;
+
+        Prove(Map<String, String> artifacts, Map<String, byte[]> nonces) {
+            this.artifacts = new LinkedHashMap<>(artifacts);
+            this.artifacts.keySet().retainAll(nonces.keySet());
+            this.nonces = new LinkedHashMap<>(nonces);
+        }
+
+        @Override public Map<String, byte[]> invoke(File ws, VirtualChannel channel) throws IOException {
+            Map<String, byte[]> proofs = new LinkedHashMap<>();
+            for (Map.Entry<String, byte[]> entry : nonces.entrySet()) {
+                String path = artifacts.get(entry.getKey());
+                if (path == null) {
+                    continue;
+                }
+                Path file = new File(ws, path).toPath();
+                if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                    proofs.put(entry.getKey(), proof(file, entry.getValue()));
+                }
+            }
+            return proofs;
+        }
+    }
+}
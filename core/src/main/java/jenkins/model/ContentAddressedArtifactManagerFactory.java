@@ -0,0 +1,31 @@
+package jenkins.model;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Run;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Stores the artifacts of all builds in a shared, deduplicated blob directory.
+ * @see ContentAddressedArtifactManager
+ * @since TODO
+ */
+public final class ContentAddressedArtifactManagerFactory extends ArtifactManagerFactory {
+
+    @DataBoundConstructor
+    public ContentAddressedArtifactManagerFactory() {}
+
+    @Override public ArtifactManager managerFor(Run<?, ?> build) {
+        return new ContentAddressedArtifactManager(build);
+    }
+
+    @Extension @Symbol("contentAddressed")
+    public static final class DescriptorImpl extends ArtifactManagerFactoryDescriptor {
+        @NonNull
+        @Override public String getDisplayName() {
+            return Messages.ContentAddressedArtifactManagerFactory_DisplayName();
+        }
+    }
+
+}
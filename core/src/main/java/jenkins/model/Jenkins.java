@@ -138,6 +138,7 @@ import hudson.model.View;
 import hudson.model.ViewGroupMixIn;
 import hudson.model.WorkspaceCleanupThread;
 import hudson.model.labels.LabelAtom;
+import hudson.model.labels.LabelIndex;
 import hudson.model.listeners.ItemListener;
 import hudson.model.listeners.SCMListener;
 import hudson.model.listeners.SaveableListener;
@@ -675,6 +676,17 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      */
     private final transient ConcurrentHashMap<String, Label> labels = new ConcurrentHashMap<>();
 
+    /**
+     * Nodes by label atom, kept up to date by {@link #trimLabels} while {@link LabelIndex#ENABLED}.
+     * Always the same instance, so that updates for some nodes and rebuilds are serialized on it rather than made to different ones.
+     */
+    private final transient LabelIndex labelIndex = new LabelIndex();
+
+    /**
+     * Whether {@link #labelIndex} has been rebuilt and kept up to date since {@link LabelIndex#ENABLED} was last unset.
+     */
+    private transient volatile boolean labelIndexed;
+
     /**
      * Load statistics of the entire system.
      *
@@ -2215,6 +2227,12 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      * but we also call this periodically to self-heal any data out-of-sync issue.
      */
     /*package*/ void trimLabels() {
+        if (LabelIndex.ENABLED) {
+            labelIndex.rebuild(this);
+            labelIndexed = true;
+        } else {
+            labelIndexed = false;
+        }
         trimLabels((Set) null);
     }
 
@@ -2223,6 +2241,11 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      * @param nodes the nodes taken as reference to update labels
      */
     void trimLabels(Node... nodes) {
+        if (LabelIndex.ENABLED) {
+            labelIndex.update(this, nodes);
+        } else {
+            labelIndexed = false;
+        }
         Set<LabelAtom> includedLabels = new HashSet<>();
         Arrays.stream(nodes).filter(Objects::nonNull).forEach(n -> includedLabels.addAll(n.getAssignedLabels()));
         trimLabels(includedLabels);
@@ -2233,13 +2256,16 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
      * @param includedLabels the labels taken as reference to update labels. If {@code null}, all labels are considered.
      */
     private void trimLabels(@CheckForNull Set<LabelAtom> includedLabels) {
+        LabelIndex index = getLabelIndex();
         Set<Set<LabelAtom>> nodeLabels = new HashSet<>();
-        nodeLabels.add(this.getAssignedLabels());
-        this.getNodes().forEach(n -> nodeLabels.add(n.getAssignedLabels()));
+        if (index == null) {
+            nodeLabels.add(this.getAssignedLabels());
+            this.getNodes().forEach(n -> nodeLabels.add(n.getAssignedLabels()));
+        }
         for (Iterator<Label> itr = labels.values().iterator(); itr.hasNext();) {
             Label l = itr.next();
             if (includedLabels == null || includedLabels.contains(l) || l.matches(includedLabels)) {
-                if (nodeLabels.stream().anyMatch(l::matches) || !l.getClouds().isEmpty()) {
+                if ((index != null ? index.matchesAny(l) : nodeLabels.stream().anyMatch(l::matches)) || !l.getClouds().isEmpty()) {
                     // there is at least one static agent or one cloud that currently claims it can handle the label.
                     // if the cloud has been removed, or its labels updated such that it can not handle this, this is handle in later calls
                     // resetLabel will remove the agents, and clouds from the label, and they will be repopulated later.
@@ -2252,6 +2278,14 @@ public class Jenkins extends AbstractCIBase implements DirectlyModifiableTopLeve
         }
     }
 
+    /**
+     * The index of nodes by label atom, or null if {@link LabelIndex#ENABLED} is not set or labels have not been trimmed since.
+     */
+    @Restricted(NoExternalUse.class)
+    public @CheckForNull LabelIndex getLabelIndex() {
+        return LabelIndex.ENABLED && labelIndexed ? labelIndex : null;
+    }
+
     /**
      * Binds {@link AdministrativeMonitor}s to URL.
      * @param id Monitor ID
@@ -26,6 +26,8 @@ import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
+import jenkins.model.lazy.BuildSummary;
+import jenkins.model.lazy.LazyBuildMixIn;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.Beta;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
@@ -85,6 +87,17 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         return new File(job.getBuildDir(), getId());
     }
 
+    /**
+     * Equivalent of {@link #apply(Run)} for a completed build known by its {@link BuildSummary} only.
+     *
+     * @return null if the build itself is needed to decide
+     * @since TODO
+     */
+    @Restricted(Beta.class)
+    protected @CheckForNull Predicate<BuildSummary> summaryPredicate() {
+        return null;
+    }
+
     /**
      * Resolves the permalink by using the cache if possible.
      */
@@ -98,6 +111,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
      */
     @CheckForNull
     private Run<?, ?> find(@CheckForNull Run<?, ?> b) {
+        Predicate<BuildSummary> summaryMatches = summaryPredicate();
+        if (b != null && summaryMatches != null && b.getParent() instanceof LazyBuildMixIn.LazyLoadingJob<?, ?> job) {
+            // skip over the builds known not to match without loading them
+            return job.getLazyBuildMixIn()._getRuns().search(b.getNumber(), summaryMatches, this);
+        }
         while (b != null && !apply(b)) {
             b = b.getPreviousBuild();
         }
@@ -356,6 +374,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         public boolean apply(Run<?, ?> run) {
             return !run.isBuilding() && run.getResult() == Result.SUCCESS;
         }
+
+        @Override
+        protected Predicate<BuildSummary> summaryPredicate() {
+            return summary -> summary.result() == Result.SUCCESS;
+        }
     };
 
     /**
@@ -377,6 +400,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         public boolean apply(Run<?, ?> run) {
             return !run.isBuilding() && run.getResult().isBetterOrEqualTo(Result.UNSTABLE);
         }
+
+        @Override
+        protected Predicate<BuildSummary> summaryPredicate() {
+            return summary -> summary.result().isBetterOrEqualTo(Result.UNSTABLE);
+        }
     };
 
     /**
@@ -397,6 +425,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         public boolean apply(Run<?, ?> run) {
             return !run.isBuilding() && run.getResult() == Result.FAILURE;
         }
+
+        @Override
+        protected Predicate<BuildSummary> summaryPredicate() {
+            return summary -> summary.result() == Result.FAILURE;
+        }
     };
 
     /**
@@ -417,6 +450,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         public boolean apply(Run<?, ?> run) {
             return !run.isBuilding() && run.getResult() == Result.UNSTABLE;
         }
+
+        @Override
+        protected Predicate<BuildSummary> summaryPredicate() {
+            return summary -> summary.result() == Result.UNSTABLE;
+        }
     };
 
     /**
@@ -437,6 +475,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         public boolean apply(Run<?, ?> run) {
             return !run.isBuilding() && run.getResult() != Result.SUCCESS;
         }
+
+        @Override
+        protected Predicate<BuildSummary> summaryPredicate() {
+            return summary -> summary.result() != Result.SUCCESS;
+        }
     };
 
     /**
@@ -457,6 +500,11 @@ public abstract class PeepholePermalink extends Permalink implements Predicate<R
         public boolean apply(Run<?, ?> run) {
             return !run.isBuilding();
         }
+
+        @Override
+        protected Predicate<BuildSummary> summaryPredicate() {
+            return summary -> true;
+        }
     };
 
     static {
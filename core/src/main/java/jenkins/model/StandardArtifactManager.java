@@ -55,6 +55,8 @@ public class StandardArtifactManager extends ArtifactManager {
     @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
     public static FilePath.TarCompression TAR_COMPRESSION = SystemProperties.getBoolean(StandardArtifactManager.class.getName() + ".disableTrafficCompression")
             ? FilePath.TarCompression.NONE
+            : SystemProperties.getBoolean(StandardArtifactManager.class.getName() + ".parallelTrafficCompression")
+            ? FilePath.TarCompression.GZIP_PARALLEL
             : FilePath.TarCompression.GZIP;
 
     protected transient Run<?, ?> build;
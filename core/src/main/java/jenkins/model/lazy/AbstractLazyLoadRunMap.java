@@ -28,6 +28,7 @@ import static jenkins.model.lazy.AbstractLazyLoadRunMap.Direction.ASC;
 import static jenkins.model.lazy.AbstractLazyLoadRunMap.Direction.DESC;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.model.Job;
 import hudson.model.Run;
 import hudson.model.RunMap;
@@ -50,10 +51,13 @@ import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.TreeMap;
 import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import jenkins.util.MemoryReductionUtil;
+import jenkins.util.Timer;
+import net.jcip.annotations.GuardedBy;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.Beta;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
@@ -291,6 +295,12 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
      */
     protected File dir;
 
+    /**
+     * Created on demand when {@link BuildSummaryIndex#ENABLED}.
+     */
+    @GuardedBy("this")
+    private BuildSummaryIndex summaries;
+
     @Restricted(NoExternalUse.class) // subclassing other than by RunMap does not guarantee compatibility
     protected AbstractLazyLoadRunMap() {
     }
@@ -319,6 +329,9 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
      */
     public final void updateBaseDir(File dir) {
         this.dir = dir;
+        synchronized (this) {
+            summaries = null;
+        }
     }
 
     /**
@@ -545,6 +558,80 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
         }
     }
 
+    /**
+     * Finds the newest build #M with M ≤ N that matches the given criteria,
+     * using the {@link BuildSummaryIndex} when enabled to avoid loading builds that cannot match.
+     *
+     * @param n the build number to start the search from
+     * @param summaryMatches applied to the summary of a completed build, instead of loading it;
+     *      builds that pass it are still loaded and checked against {@code matches}
+     * @param matches applied to builds without a summary
+     * @since TODO
+     */
+    @Restricted(Beta.class)
+    public @CheckForNull R search(int n, @NonNull Predicate<BuildSummary> summaryMatches, @NonNull Predicate<? super R> matches) {
+        BuildSummaryIndex index = summaries();
+        SortedIntList numbers = numberOnDisk;
+        for (int i = numbers.floor(n); i >= 0; i--) {
+            int m = numbers.get(i);
+            if (index != null) {
+                BuildSummary summary = index.get(m);
+                if (summary != null && !summaryMatches.test(summary)) {
+                    continue;
+                }
+            }
+            R r = getByNumber(m);
+            if (r != null && matches.test(r)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets what is known about a completed build without loading it.
+     *
+     * @return null if {@link BuildSummaryIndex#ENABLED} is off, or the build is unknown, running, or not indexed yet,
+     *      in which case the caller needs to {@link #getByNumber} it
+     * @since TODO
+     */
+    @Restricted(Beta.class)
+    public @CheckForNull BuildSummary getSummary(int n) {
+        BuildSummaryIndex index = summaries();
+        return index != null && numberOnDisk.contains(n) ? index.get(n) : null;
+    }
+
+    /**
+     * Records the summary of a build that was saved.
+     */
+    @Restricted(NoExternalUse.class)
+    public void putSummary(@NonNull BuildSummary summary) {
+        BuildSummaryIndex index = summaries();
+        if (index != null) {
+            index.put(summary);
+        }
+    }
+
+    /**
+     * Gets the index of this map, (re)building it in the background when it does not exist yet.
+     */
+    private @CheckForNull BuildSummaryIndex summaries() {
+        if (!BuildSummaryIndex.ENABLED || dir == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (summaries == null) {
+                BuildSummaryIndex index = new BuildSummaryIndex(dir);
+                summaries = index;
+                if (!index.exists()) {
+                    SortedIntList numbers = numberOnDisk;
+                    Timer.get().submit(() -> index.rebuild(numbers));
+                }
+            }
+            return summaries;
+        }
+    }
+
     public R getById(String id) {
         return getByNumber(Integer.parseInt(id));
     }
@@ -760,6 +847,10 @@ public abstract class AbstractLazyLoadRunMap<R> extends AbstractMap<Integer, R>
         a.removeValue(n);
         numberOnDisk = a;
         this.index = copy;
+        BuildSummaryIndex summaries = summaries();
+        if (summaries != null) {
+            summaries.remove(n);
+        }
 
         entrySet.clearCache();
 
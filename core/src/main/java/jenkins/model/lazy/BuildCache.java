@@ -0,0 +1,286 @@
+package jenkins.model.lazy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.model.Run;
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import net.jcip.annotations.GuardedBy;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
+
+/**
+ * Cache of loaded builds shared by all jobs, bounded by a number of builds and an estimated number of bytes,
+ * used by {@link BuildReference.DefaultHolderFactory} in {@code bounded} mode.
+ *
+ * <p>
+ * Builds in the cache are strongly held, so that how many of them stay in memory does not depend on the heuristics of
+ * the garbage collector. Evicted builds are only weakly held, so that a build still in use elsewhere is not loaded twice.
+ *
+ * <p>
+ * Which build is evicted depends on {@link #POLICY}:
+ * <dl>
+ * <dt>{@code lru} (default)
+ * <dd>the least recently used one.
+ * <dt>{@code lfu}
+ * <dd>the least frequently used one among the {@value #LFU_SAMPLE} least recently used ones,
+ *     so that a build looked at once, such as by a scan of the whole history, does not push out the popular ones.
+ * </dl>
+ *
+ * <p>
+ * Getting a build from the cache takes no lock: it only stamps the build with the value of an access counter,
+ * and counts the use under {@code lfu}. The order of use is worked out from the stamps when evicting,
+ * which is rarer, and costs little compared to loading the build that causes it.
+ *
+ * @since TODO
+ */
+@Restricted(Beta.class)
+public final class BuildCache {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildCache.class.getName());
+
+    /**
+     * Maximum number of builds in the cache.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ int MAX_ENTRIES = SystemProperties.getInteger(BuildCache.class.getName() + ".maxEntries", 1000);
+
+    /**
+     * Maximum estimated size of the builds in the cache. See {@link #estimate}.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ long MAX_BYTES = SystemProperties.getLong(BuildCache.class.getName() + ".maxBytes", 256L * 1024 * 1024);
+
+    /**
+     * {@code lru} or {@code lfu}.
+     */
+    static final String POLICY = SystemProperties.getString(BuildCache.class.getName() + ".policy", "lru");
+
+    private static final int LFU_SAMPLE = 16;
+
+    private static final BuildCache INSTANCE = new BuildCache(() -> MAX_ENTRIES, () -> MAX_BYTES, POLICY);
+
+    public static @NonNull BuildCache get() {
+        return INSTANCE;
+    }
+
+    private final IntSupplier maxEntries;
+    private final LongSupplier maxBytes;
+    private final boolean lfu;
+
+    @GuardedBy("this")
+    private final Set<CachedHolder<?>> entries = new HashSet<>();
+
+    /**
+     * Counts accesses, to tell which build was used last.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    @GuardedBy("this")
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    BuildCache(int maxEntries, long maxBytes, @NonNull String policy) {
+        this(() -> maxEntries, () -> maxBytes, policy);
+    }
+
+    /**
+     * @param maxEntries read on each admission, so that the limits can be changed at runtime
+     */
+    BuildCache(@NonNull IntSupplier maxEntries, @NonNull LongSupplier maxBytes, @NonNull String policy) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        if (policy.equals("lfu")) {
+            lfu = true;
+        } else if (policy.equals("lru")) {
+            lfu = false;
+        } else {
+            throw new IllegalStateException("unrecognized value of " + BuildCache.class.getName() + ".policy: " + policy);
+        }
+    }
+
+    /**
+     * Holds onto a freshly loaded build, evicting others if needed.
+     */
+    @NonNull <R> BuildReference.Holder<R> make(@NonNull R referent) {
+        CachedHolder<R> h = new CachedHolder<>(referent, estimate(referent));
+        admit(h);
+        return h;
+    }
+
+    /**
+     * Number of times a build was asked for and still in memory.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of times a build was asked for but had to be loaded again.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of builds evicted to stay within the limits.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Number of builds currently in the cache.
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Estimated size of the builds currently in the cache.
+     */
+    public synchronized long getEstimatedBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "BuildCache[size=" + getSize() + ", bytes=" + getEstimatedBytes() + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+    }
+
+    /**
+     * Guesses the memory used by a build from the size of its {@code build.xml},
+     * since the object graph is typically a few times bigger than its serialized form.
+     */
+    private static long estimate(Object referent) {
+        long size = 0;
+        if (referent instanceof Run<?, ?> run) {
+            size = new File(run.getRootDir(), "build.xml").length() * 4;
+        }
+        return Math.max(size, 4096);
+    }
+
+    private synchronized void admit(CachedHolder<?> h) {
+        h.lastUsed = clock.incrementAndGet();
+        if (entries.add(h)) {
+            bytes += h.size;
+        }
+        int maxEntries = this.maxEntries.getAsInt();
+        long maxBytes = this.maxBytes.getAsLong();
+        // always keep the one just admitted, even if it alone exceeds the limits
+        while (entries.size() > 1 && (entries.size() > maxEntries || bytes > maxBytes)) {
+            CachedHolder<?> victim = victim(h);
+            entries.remove(victim);
+            bytes -= victim.size;
+            victim.strong = null;
+            evictions.increment();
+            LOGGER.finer(() -> "evicted " + victim);
+        }
+    }
+
+    /**
+     * @param admitted never chosen, as it would always lose to the others under {@code lfu}
+     */
+    @GuardedBy("this")
+    private CachedHolder<?> victim(CachedHolder<?> admitted) {
+        int sample = lfu ? LFU_SAMPLE : 1;
+        // the least recently used ones, most recently used first; stamps are copied as they keep changing meanwhile
+        PriorityQueue<Candidate> lru = new PriorityQueue<>(sample + 1, Comparator.comparingLong(Candidate::lastUsed).reversed());
+        for (CachedHolder<?> h : entries) {
+            if (h != admitted) {
+                lru.add(new Candidate(h, h.lastUsed, h.frequency.get()));
+                if (lru.size() > sample) {
+                    lru.poll();
+                }
+            }
+        }
+        Candidate victim = null;
+        for (Candidate c : lru) {
+            if (victim == null || c.frequency < victim.frequency || c.frequency == victim.frequency && c.lastUsed < victim.lastUsed) {
+                victim = c;
+            }
+        }
+        return victim.holder;
+    }
+
+    private record Candidate(CachedHolder<?> holder, long lastUsed, int frequency) {}
+
+    private void touch(CachedHolder<?> h) {
+        h.lastUsed = clock.incrementAndGet();
+        if (lfu) {
+            h.frequency.incrementAndGet();
+        }
+    }
+
+    /**
+     * Called when a build is deleted, so that it does not take up room until evicted.
+     */
+    synchronized void release(CachedHolder<?> h) {
+        if (entries.remove(h)) {
+            bytes -= h.size;
+        }
+        h.strong = null;
+    }
+
+    final class CachedHolder<R> implements BuildReference.Holder<R> {
+        private final WeakReference<R> weak;
+        private final long size;
+        private volatile R strong;
+        /**
+         * The value of {@link #clock} when last used.
+         */
+        private volatile long lastUsed;
+        private final AtomicInteger frequency = new AtomicInteger();
+
+        CachedHolder(R referent, long size) {
+            this.weak = new WeakReference<>(referent);
+            this.strong = referent;
+            this.size = size;
+        }
+
+        @Override
+        public @CheckForNull R get() {
+            R r = strong;
+            if (r != null) {
+                hits.increment();
+                touch(this);
+                return r;
+            }
+            r = weak.get();
+            if (r != null) {
+                // evicted, but still in use elsewhere
+                hits.increment();
+                strong = r;
+                admit(this);
+                return r;
+            }
+            misses.increment();
+            return null;
+        }
+
+        void release() {
+            BuildCache.this.release(this);
+        }
+
+        @Override
+        public String toString() {
+            R r = weak.get();
+            return r != null ? r.toString() : "<collected>";
+        }
+    }
+}
@@ -59,6 +59,10 @@ public final class BuildReference<R> {
      * @see RunMixIn#dropLinks()
      */
     /*package*/ void clear() {
+        Holder<R> h = holder;
+        if (h instanceof BuildCache.CachedHolder<R> cached) {
+            cached.release();
+        }
         holder = null;
     }
 
@@ -137,6 +141,8 @@ public final class BuildReference<R> {
      * <dd>Use {@link WeakReference}s. Builds will be kept only until the next full garbage collection cycle.
      * <dt>{@code strong}
      * <dd>Use strong references. Builds will still be loaded lazily, but once loaded, will not be released.
+     * <dt>{@code bounded}
+     * <dd>Keep a bounded number of builds across all jobs in the {@link BuildCache}.
      * <dt>{@code none}
      * <dd>Do not hold onto builds at all. Mainly offered as an option for the purpose of reproducing lazy-loading bugs.
      * </dl>
@@ -154,6 +160,8 @@ public final class BuildReference<R> {
                 return new WeakHolder<>(referent);
             } else if (mode.equals("strong")) {
                 return new StrongHolder<>(referent);
+            } else if (mode.equals("bounded")) {
+                return BuildCache.get().make(referent);
             } else if (mode.equals("none")) {
                 return new NoHolder<>();
             } else {
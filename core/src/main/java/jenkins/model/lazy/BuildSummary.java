@@ -0,0 +1,43 @@
+package jenkins.model.lazy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Result;
+import hudson.model.Run;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.Beta;
+
+/**
+ * What is known about a completed build without loading its {@code build.xml}.
+ *
+ * @param number {@link Run#getNumber}
+ * @param id {@link Run#getId}
+ * @param timestamp {@link Run#getTimeInMillis}
+ * @param duration {@link Run#getDuration}
+ * @param result {@link Run#getResult}
+ * @param displayName the display name if {@link Run#hasCustomDisplayName}, else null
+ * @see AbstractLazyLoadRunMap#getSummary
+ * @since TODO
+ */
+@Restricted(Beta.class)
+public record BuildSummary(int number, @NonNull String id, long timestamp, long duration, @NonNull Result result, @CheckForNull String displayName) {
+
+    /**
+     * @return null if the build is still running
+     */
+    public static @CheckForNull BuildSummary of(@NonNull Run<?, ?> run) {
+        Result result = run.getResult();
+        if (result == null || run.isBuilding()) {
+            return null;
+        }
+        return new BuildSummary(run.getNumber(), run.getId(), run.getTimeInMillis(), run.getDuration(), result,
+                run.hasCustomDisplayName() ? run.getDisplayName() : null);
+    }
+
+    /**
+     * Same as {@link Run#getDisplayName}.
+     */
+    public @NonNull String getDisplayName() {
+        return displayName != null ? displayName : "#" + number;
+    }
+}
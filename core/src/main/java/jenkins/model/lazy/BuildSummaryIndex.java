@@ -0,0 +1,308 @@
+package jenkins.model.lazy;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.util.XStream2;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import net.jcip.annotations.GuardedBy;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * {@link BuildSummary}s of the completed builds of a job, kept in a {@code summaries} file in its builds directory
+ * so that {@link AbstractLazyLoadRunMap} can answer questions about the result, timestamp, etc. of a build
+ * without loading it.
+ *
+ * <p>
+ * The file is a header followed by records, each either adding or replacing the summary of a build, or removing it.
+ * Records are appended as builds are saved or deleted, and the file is rewritten when it has too many stale records.
+ * If the file is missing, it is rebuilt by scanning the {@code build.xml} files.
+ *
+ * <p>
+ * A build that is not in the index is not known to be absent: it may be running, or simply not indexed yet.
+ * Callers must then fall back to loading the build.
+ *
+ * @see #ENABLED
+ */
+@Restricted(NoExternalUse.class)
+public final class BuildSummaryIndex {
+
+    /**
+     * Whether {@link AbstractLazyLoadRunMap} maintains and consults the index.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static /* not final */ boolean ENABLED = SystemProperties.getBoolean(BuildSummaryIndex.class.getName() + ".enabled");
+
+    private static final Logger LOGGER = Logger.getLogger(BuildSummaryIndex.class.getName());
+
+    private static final int MAGIC = 0x4a425331; // "JBS1"
+    private static final byte PUT = 'P';
+    private static final byte REMOVE = 'R';
+
+    private final File dir;
+    private final File file;
+
+    @GuardedBy("this")
+    private final Map<Integer, BuildSummary> summaries = new TreeMap<>();
+
+    @GuardedBy("this")
+    private boolean loaded;
+
+    /**
+     * Number of records in {@link #file}, to decide when to compact it.
+     */
+    @GuardedBy("this")
+    private int records;
+
+    /**
+     * @param dir the builds directory of the job
+     */
+    BuildSummaryIndex(@NonNull File dir) {
+        this.dir = dir;
+        this.file = new File(dir, "summaries");
+    }
+
+    /**
+     * @return true if there is an index file, false if it needs to be {@linkplain #rebuild rebuilt}
+     */
+    boolean exists() {
+        return file.isFile();
+    }
+
+    synchronized @CheckForNull BuildSummary get(int number) {
+        load();
+        return summaries.get(number);
+    }
+
+    synchronized void put(@NonNull BuildSummary summary) {
+        load();
+        if (summary.equals(summaries.put(summary.number(), summary))) {
+            return; // saved again without any change we care about
+        }
+        append(summary.number(), summary);
+    }
+
+    synchronized void remove(int number) {
+        load();
+        if (summaries.remove(number) != null) {
+            append(number, null);
+        }
+    }
+
+    /**
+     * Reads the {@code build.xml} of the given builds, and writes a new index file from scratch.
+     * Builds indexed meanwhile by {@link #put} are kept as is, since they are more recent than {@code build.xml}.
+     * May take a while, so not called with the lock of the map held.
+     */
+    void rebuild(@NonNull Iterable<Integer> numbers) {
+        Map<Integer, BuildSummary> read = new TreeMap<>();
+        for (int number : numbers) {
+            BuildSummary summary = read(new File(dir, Integer.toString(number)), number);
+            if (summary != null) {
+                read.put(number, summary);
+            }
+        }
+        synchronized (this) {
+            load();
+            for (BuildSummary summary : read.values()) {
+                if (new File(dir, Integer.toString(summary.number())).isDirectory()) {
+                    summaries.putIfAbsent(summary.number(), summary);
+                }
+            }
+            compact();
+        }
+        LOGGER.fine(() -> "indexed " + read.size() + " builds in " + dir);
+    }
+
+    /**
+     * Reads the summary of a build from the top level elements of its {@code build.xml}, without unmarshalling it.
+     *
+     * @return null if the build does not look completed, or cannot be read
+     */
+    static @CheckForNull BuildSummary read(@NonNull File buildDir, int number) {
+        File xml = new File(buildDir, "build.xml");
+        if (!xml.isFile()) {
+            return null;
+        }
+        long timestamp = -1;
+        long duration = 0;
+        Result result = null;
+        String displayName = null;
+        try {
+            HierarchicalStreamReader reader = XStream2.getDefaultDriver().createReader(xml);
+            try {
+                while (reader.hasMoreChildren()) {
+                    reader.moveDown();
+                    switch (reader.getNodeName()) {
+                        case "timestamp" -> timestamp = Long.parseLong(reader.getValue().trim());
+                        case "duration" -> duration = Long.parseLong(reader.getValue().trim());
+                        case "result" -> result = Result.fromString(reader.getValue().trim());
+                        case "displayName" -> displayName = reader.getValue();
+                        default -> {
+                            // not summarized; moveUp skips its children
+                        }
+                    }
+                    reader.moveUp();
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "failed to summarize " + xml, e);
+            return null;
+        }
+        if (result == null || timestamp < 0) {
+            return null;
+        }
+        return new BuildSummary(number, Integer.toString(number), timestamp, duration, result, displayName);
+    }
+
+    @GuardedBy("this")
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.isFile()) {
+            return;
+        }
+        boolean truncated = false;
+        try (InputStream is = Files.newInputStream(file.toPath());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("unrecognized format");
+            }
+            int type;
+            while ((type = in.read()) != -1) {
+                int number = in.readInt();
+                if (type == PUT) {
+                    String id = in.readUTF();
+                    long timestamp = in.readLong();
+                    long duration = in.readLong();
+                    Result result = Result.fromString(in.readUTF());
+                    String displayName = in.readBoolean() ? in.readUTF() : null;
+                    summaries.put(number, new BuildSummary(number, id, timestamp, duration, result, displayName));
+                } else if (type == REMOVE) {
+                    summaries.remove(number);
+                } else {
+                    throw new IOException("unexpected record type " + type);
+                }
+                records++;
+            }
+        } catch (EOFException e) {
+            // a record cut short by a crash; drop it rather than append after it
+            truncated = true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to read " + file + ", starting over", e);
+            summaries.clear();
+            truncated = true;
+        }
+        if (truncated || records > 2 * summaries.size() + 100) {
+            compact();
+        }
+    }
+
+    @GuardedBy("this")
+    private void append(int number, @CheckForNull BuildSummary summary) {
+        try {
+            boolean create = !file.isFile();
+            try (OutputStream os = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                if (create) {
+                    out.writeInt(MAGIC);
+                }
+                write(out, number, summary);
+            }
+            records++;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to update " + file, e);
+        }
+        if (records > 2 * summaries.size() + 100) {
+            compact();
+        }
+    }
+
+    /**
+     * Writes a new file with one record per build.
+     */
+    @GuardedBy("this")
+    private void compact() {
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp.toPath());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                out.writeInt(MAGIC);
+                for (BuildSummary summary : summaries.values()) {
+                    write(out, summary.number(), summary);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            records = summaries.size();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to write " + file, e);
+        }
+    }
+
+    private static void write(DataOutputStream out, int number, @CheckForNull BuildSummary summary) throws IOException {
+        if (summary == null) {
+            out.writeByte(REMOVE);
+            out.writeInt(number);
+            return;
+        }
+        out.writeByte(PUT);
+        out.writeInt(number);
+        out.writeUTF(summary.id());
+        out.writeLong(summary.timestamp());
+        out.writeLong(summary.duration());
+        out.writeUTF(summary.result().toString());
+        out.writeBoolean(summary.displayName() != null);
+        if (summary.displayName() != null) {
+            out.writeUTF(summary.displayName());
+        }
+    }
+
+    /**
+     * Indexes builds as they are saved, which covers their completion, and later changes of their result or display name.
+     */
+    @Extension
+    public static final class SaveableListenerImpl extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (!ENABLED || !(o instanceof Run<?, ?> run)) {
+                return;
+            }
+            Job<?, ?> job = run.getParent();
+            if (job instanceof LazyBuildMixIn.LazyLoadingJob lazy) {
+                BuildSummary summary = BuildSummary.of(run);
+                if (summary != null) {
+                    lazy.getLazyBuildMixIn()._getRuns().putSummary(summary);
+                }
+            }
+        }
+    }
+}
@@ -43,7 +43,9 @@ import hudson.model.TaskListener;
 import hudson.os.WindowsUtil;
 import hudson.remoting.VirtualChannel;
 import hudson.slaves.WorkspaceList;
+import hudson.util.DirScanner;
 import hudson.util.StreamTaskListener;
+import hudson.util.io.DeltaSync;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -67,6 +69,7 @@ import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -482,6 +485,105 @@ public class FilePathTest {
             }
     }
 
+    @Test public void copyRecursiveToParallelGzip() throws Exception {
+        assumeFalse(Functions.isWindows());
+
+        FilePath src = new FilePath(temp.newFolder("src"));
+        byte[] big = new byte[3 * 1024 * 1024 + 17];
+        for (int i = 0; i < big.length; i++) {
+            big[i] = (byte) (i * 31 + i / 1000);
+        }
+        try (OutputStream os = src.child("big").write()) {
+            os.write(big);
+        }
+        for (int i = 0; i < 500; i++) {
+            src.child("dir/small" + i).write("file " + i, "UTF-8");
+        }
+        src.child("run.sh").write("#!/bin/sh", "UTF-8");
+        src.child("run.sh").chmod(0755);
+        src.child("link").symlinkTo("dir/small7", TaskListener.NULL);
+
+        // remote -> local, and local -> remote
+        File dst = temp.newFolder("dst");
+        FilePath remote = new FilePath(channels.french, src.getRemote());
+        remote.copyRecursiveTo(new DirScanner.Glob("**/*", null), new FilePath(dst), "test", TarCompression.GZIP_PARALLEL);
+        File dst2 = temp.newFolder("dst2");
+        new FilePath(dst).copyRecursiveTo(new DirScanner.Glob("**/*", null), new FilePath(channels.british, dst2.getPath()), "test", TarCompression.GZIP_PARALLEL);
+
+        for (File d : new File[] {dst, dst2}) {
+            FilePath copy = new FilePath(d);
+            assertTrue(Arrays.equals(big, Files.readAllBytes(new File(d, "big").toPath())));
+            assertEquals("file 499", copy.child("dir/small499").readToString());
+            assertEquals(0755, copy.child("run.sh").mode());
+            assertEquals("dir/small7", copy.child("link").readLink());
+        }
+    }
+
+    @Test public void syncRecursiveTo() throws Exception {
+        assumeFalse(Functions.isWindows());
+
+        File src = temp.newFolder("src");
+        File dst = temp.newFolder("dst");
+        byte[] big = new byte[1024 * 1024];
+        new Random(1).nextBytes(big);
+        Files.write(new File(src, "big").toPath(), big);
+        Files.writeString(new File(src, "same").toPath(), "unchanged");
+        FilePath from = new FilePath(channels.french, src.getPath());
+        FilePath to = new FilePath(dst);
+
+        DeltaSync.Result result = from.syncRecursiveTo(new DirScanner.Glob("**/*", null), to, "test");
+        assertEquals(2, result.getFiles());
+        assertEquals(0, result.getMatchedBytes());
+
+        // insert a few bytes in the middle, and add some files
+        byte[] edited = new byte[big.length + 3];
+        System.arraycopy(big, 0, edited, 0, 500_000);
+        edited[500_000] = 1;
+        edited[500_001] = 2;
+        edited[500_002] = 3;
+        System.arraycopy(big, 500_000, edited, 500_003, big.length - 500_000);
+        Files.write(new File(src, "big").toPath(), edited);
+        new FilePath(src).child("sub/new").write("new", "UTF-8");
+        Files.createSymbolicLink(new File(src, "link").toPath(), Path.of("same"));
+        new File(src, "big").setExecutable(true);
+
+        result = from.syncRecursiveTo(new DirScanner.Glob("**/*", null), to, "test");
+        assertEquals(3, result.getFiles());
+        assertEquals(1, result.getUnchanged());
+        assertTrue(result.toString(), result.getLiteralBytes() < 64 * 1024);
+        assertTrue(result.toString(), result.getMatchedBytes() > big.length - 64 * 1024);
+        assertTrue(Arrays.equals(edited, Files.readAllBytes(new File(dst, "big").toPath())));
+        assertEquals(new File(src, "big").lastModified(), new File(dst, "big").lastModified());
+        assertEquals(0100, new FilePath(dst).child("big").mode() & 0100);
+        assertEquals("new", Files.readString(new File(dst, "sub/new").toPath()));
+        assertEquals("same", new FilePath(dst).child("link").readLink());
+
+        // and back, from here to the other side
+        Files.delete(new File(dst, "big").toPath());
+        result = to.syncRecursiveTo(new DirScanner.Glob("**/*", null), new FilePath(channels.british, src.getPath()), "test");
+        assertEquals(1, result.getFiles()); // the symlink
+        assertEquals(2, result.getUnchanged());
+    }
+
+    @Test public void syncRecursiveToWithoutMatchingBlocks() throws Exception {
+        File src = temp.newFolder("src");
+        File dst = temp.newFolder("dst");
+        Random random = new Random(1);
+        byte[] old = new byte[4096];
+        random.nextBytes(old);
+        Files.write(new File(dst, "f").toPath(), old);
+        // longer than the literal data sent at once, and sharing no block with the old file
+        byte[] data = new byte[66_000];
+        random.nextBytes(data);
+        Files.write(new File(src, "f").toPath(), data);
+
+        DeltaSync.Result result = new FilePath(channels.french, src.getPath()).syncRecursiveTo(new DirScanner.Glob("**/*", null), new FilePath(dst), "test");
+        assertEquals(1, result.getFiles());
+        assertEquals(0, result.getMatchedBytes());
+        assertEquals(data.length, result.getLiteralBytes());
+        assertTrue(Arrays.equals(data, Files.readAllBytes(new File(dst, "f").toPath())));
+    }
+
     @Test public void symlinkInTar() throws Exception {
         assumeFalse(Functions.isWindows());
 
@@ -13,11 +13,18 @@ import hudson.util.XStream2;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import jenkins.model.Jenkins;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class XmlFileTest {
 
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
     @Test
     public void canReadXml1_0Test() throws IOException {
         URL configUrl = getClass().getResource("/hudson/config_1_0.xml");
@@ -80,4 +87,37 @@ public class XmlFileTest {
             assertThat(n.getLabelString(), is("LESS_TERMCAP_mb=\u001B[01;31m"));
         }
     }
+
+    public static final class Data {
+        String value;
+    }
+
+    @Test
+    public void parseCache() throws IOException {
+        XmlFile.PARSE_CACHE_BYTES = 1024 * 1024;
+        try {
+            File f = tmp.newFile("data.xml");
+            XStream2 xs = new XStream2();
+            XmlFile xmlFile = new XmlFile(xs, f);
+            Data d = new Data();
+            d.value = "one";
+            xmlFile.write(d);
+
+            assertThat(((Data) xmlFile.read()).value, is("one"));
+            assertThat(((Data) xmlFile.read()).value, is("one"));
+            Data existing = new Data();
+            assertThat(xmlFile.unmarshal(existing), is(existing));
+            assertThat(existing.value, is("one"));
+
+            d.value = "two";
+            xmlFile.write(d);
+            assertThat(((Data) xmlFile.read()).value, is("two"));
+
+            // changed behind our back
+            Files.writeString(f.toPath(), xmlFile.asString().replace("two", "three"), StandardCharsets.UTF_8);
+            assertThat(((Data) xmlFile.read()).value, is("three"));
+        } finally {
+            XmlFile.PARSE_CACHE_BYTES = 0;
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package hudson.console;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncLogOutputStreamTest {
+
+    private boolean enabled;
+    private int bufferSize;
+
+    @Before
+    public void enable() {
+        enabled = AsyncLogOutputStream.ENABLED;
+        bufferSize = AsyncLogOutputStream.BUFFER_SIZE;
+        AsyncLogOutputStream.ENABLED = true;
+        AsyncLogOutputStream.BUFFER_SIZE = 4096;
+    }
+
+    @After
+    public void restore() {
+        AsyncLogOutputStream.ENABLED = enabled;
+        AsyncLogOutputStream.BUFFER_SIZE = bufferSize;
+    }
+
+    /**
+     * A disk slower than the build, counting writes.
+     */
+    private static final class SlowStream extends ByteArrayOutputStream {
+        final AtomicInteger writes = new AtomicInteger();
+        volatile boolean closed;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writes.incrementAndGet();
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void completeOnClose() throws Exception {
+        SlowStream disk = new SlowStream();
+        File file = new File("log");
+        OutputStream out = AsyncLogOutputStream.wrap(file, disk);
+        assertTrue(AsyncLogOutputStream.getOpen().contains(out));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 10000; i++) {
+            byte[] line = ("line " + i + "\n").getBytes(StandardCharsets.UTF_8);
+            out.write(line);
+            expected.write(line);
+        }
+        out.write('!');
+        expected.write('!');
+        out.close();
+        assertTrue(disk.closed);
+        assertArrayEquals(expected.toByteArray(), disk.toByteArray());
+        assertTrue("batched: " + disk.writes, disk.writes.get() < 10000);
+        assertEquals(expected.size(), ((AsyncLogOutputStream) out).getBytesWritten());
+        assertEquals(0, ((AsyncLogOutputStream) out).getQueueDepth());
+        assertFalse(AsyncLogOutputStream.getOpen().contains(out));
+    }
+
+    @Test
+    public void failureReported() throws Exception {
+        CountDownLatch failed = new CountDownLatch(1);
+        IOException diskFull = new IOException("disk full");
+        OutputStream out = AsyncLogOutputStream.wrap(new File("log"), new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                failed.countDown();
+                throw diskFull;
+            }
+        });
+        out.write(new byte[] {'x'});
+        failed.await();
+        try {
+            for (int i = 0; i < 10000; i++) {
+                out.write(new byte[100]);
+            }
+            out.close();
+            fail();
+        } catch (IOException e) {
+            assertSame(diskFull, e.getCause());
+        }
+    }
+
+    @Test
+    public void disabled() {
+        AsyncLogOutputStream.ENABLED = false;
+        OutputStream disk = new ByteArrayOutputStream();
+        assertSame(disk, AsyncLogOutputStream.wrap(new File("log"), disk));
+    }
+}
@@ -0,0 +1,70 @@
+package hudson.console;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class ConsoleNoteTest {
+
+    private static int naiveFindPreamble(byte[] buf, int start, int len) {
+        for (int i = start; i + ConsoleNote.PREAMBLE.length <= start + len; i++) {
+            if (Arrays.equals(buf, i, i + ConsoleNote.PREAMBLE.length, ConsoleNote.PREAMBLE, 0, ConsoleNote.PREAMBLE.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void findPreamble() {
+        Random random = new Random(42);
+        byte[] alphabet = {'a', '\n', 0x1B, '[', '8', 'm', 'h', 'a', ':', (byte) 0x80, (byte) 0xff};
+        for (int round = 0; round < 10000; round++) {
+            byte[] buf = new byte[random.nextInt(64)];
+            for (int i = 0; i < buf.length; i++) {
+                buf[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            if (buf.length >= ConsoleNote.PREAMBLE.length && random.nextBoolean()) {
+                int at = random.nextInt(buf.length - ConsoleNote.PREAMBLE.length + 1);
+                System.arraycopy(ConsoleNote.PREAMBLE, 0, buf, at, ConsoleNote.PREAMBLE.length);
+            }
+            int start = buf.length == 0 ? 0 : random.nextInt(buf.length);
+            int len = random.nextInt(buf.length - start + 1);
+            assertEquals(Arrays.toString(buf) + " from " + start + " for " + len,
+                    naiveFindPreamble(buf, start, len), ConsoleNote.findPreamble(buf, start, len));
+        }
+    }
+
+    @Test
+    public void encodeRepeatedly() throws Exception {
+        String first = new HyperlinkNote("/job/p/", 1).encode();
+        assertEquals(first, new HyperlinkNote("/job/p/", 1).encode());
+        String other = new HyperlinkNote("/job/q/", 1).encode();
+        assertEquals(first.length(), other.length());
+        assertNotEquals(first, other);
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        try (PlainTextConsoleOutputStream out = new PlainTextConsoleOutputStream(plain)) {
+            out.write(("a" + first + "p b " + other + "q c\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(("broken " + ConsoleNote.PREAMBLE_STR + "!!" + ConsoleNote.POSTAMBLE_STR + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+        assertEquals("ap b q c\nbroken ", plain.toString(StandardCharsets.US_ASCII).substring(0, 16));
+    }
+
+    @Test
+    public void removeNotes() throws Exception {
+        String note = new HyperlinkNote("/job/p/", 1).encode();
+        String line = "no notes";
+        assertSame(line, ConsoleNote.removeNotes(line));
+        assertEquals(List.of("ap b p c", "unterminated " + ConsoleNote.PREAMBLE_STR + "x"), ConsoleNote.removeNotes(List.of(
+                "a" + note + "p b " + note + "p c",
+                "unterminated " + ConsoleNote.PREAMBLE_STR + "x")));
+    }
+}
@@ -0,0 +1,196 @@
+package hudson.console;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import jenkins.util.Timer;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FollowedLogTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Before
+    public void enabled() {
+        Assume.assumeTrue(FollowedLog.ENABLED);
+    }
+
+    @After
+    public void close() {
+        FollowedLog.closeIdle(Long.MAX_VALUE);
+    }
+
+    private static String read(FollowedLog log, long start, boolean complete, long[] end) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        end[0] = log.writeTo(start, out, complete);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void wholeLinesUntilComplete() throws Exception {
+        File f = tmp.newFile("log");
+        try (OutputStream out = new FileOutputStream(f)) {
+            out.write("one\ntw".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            FollowedLog log = FollowedLog.of(f);
+            assertNotNull(log);
+            assertSame(log, FollowedLog.of(f));
+            long[] end = new long[1];
+
+            assertEquals("one\n", read(log, 0, false, end));
+            assertEquals(4, end[0]);
+
+            out.write("o\nthr".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertEquals("two\n", read(log, end[0], false, end));
+            assertEquals(8, end[0]);
+            assertEquals("", read(log, end[0], false, end));
+            assertEquals(8, end[0]);
+            assertEquals("thr", read(log, end[0], true, end));
+            assertEquals(11, end[0]);
+            assertEquals(11, log.length());
+        }
+    }
+
+    @Test
+    public void negativeStart() throws Exception {
+        File f = tmp.newFile("log");
+        Files.writeString(f.toPath(), "one\ntwo\n", StandardCharsets.UTF_8);
+        FollowedLog log = FollowedLog.of(f);
+        assertNotNull(log);
+        long[] end = new long[1];
+        assertEquals("one\ntwo\n", read(log, -5, false, end));
+        assertEquals(8, end[0]);
+    }
+
+    @Test
+    public void acrossChunks() throws Exception {
+        File f = tmp.newFile("log");
+        byte[] line = "0123456789abcdefghijklmnopqrstuvwxyz\n".getBytes(StandardCharsets.US_ASCII);
+        long written = 0;
+        try (OutputStream out = new FileOutputStream(f)) {
+            while (written < FollowedLog.CHUNK + 1000) {
+                out.write(line);
+                written += line.length;
+            }
+        }
+        FollowedLog log = FollowedLog.of(f);
+        assertNotNull(log);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long start = FollowedLog.CHUNK - 5L;
+        assertEquals(written, log.writeTo(start, out, false));
+        assertEquals(written - start, out.size());
+        byte[] bytes = out.toByteArray();
+        assertEquals('\n', bytes[bytes.length - 1]);
+    }
+
+    @Test
+    public void waitForMore() throws Exception {
+        File f = tmp.newFile("log");
+        try (OutputStream out = new FileOutputStream(f)) {
+            out.write("started\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            FollowedLog log = FollowedLog.of(f);
+            assertNotNull(log);
+            assertTrue(log.hasMore(0));
+            assertFalse(log.hasMore(8));
+
+            CompletableFuture<Void> timedOut = new CompletableFuture<>();
+            log.onMore(8, 200, () -> timedOut.complete(null));
+            timedOut.get(5, TimeUnit.SECONDS);
+            assertFalse(log.hasMore(8));
+
+            CompletableFuture<Void> waiting = new CompletableFuture<>();
+            log.onMore(8, 10_000, () -> waiting.complete(null));
+            Thread.sleep(200);
+            assertFalse(waiting.isDone());
+            out.write("more\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            waiting.get(5, TimeUnit.SECONDS);
+            assertTrue(log.hasMore(8));
+        }
+    }
+
+    @Test
+    public void waitAfterTimerRecreated() throws Exception {
+        File f = tmp.newFile("log");
+        FollowedLog log = FollowedLog.of(f);
+        assertNotNull(log);
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        log.onMore(0, 100, () -> first.complete(null));
+        first.get(5, TimeUnit.SECONDS);
+
+        Timer.shutdown();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        log.onMore(0, 100, () -> second.complete(null));
+        second.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void closedWhenTruncated() throws Exception {
+        File f = tmp.newFile("log");
+        Files.writeString(f.toPath(), "one\ntwo\n", StandardCharsets.UTF_8);
+        FollowedLog log = FollowedLog.of(f);
+        assertNotNull(log);
+        long[] end = new long[1];
+        assertEquals("one\ntwo\n", read(log, 0, false, end));
+        CompletableFuture<Void> waiting = new CompletableFuture<>();
+        log.onMore(8, 10_000, () -> waiting.complete(null));
+
+        Files.writeString(f.toPath(), "three\n", StandardCharsets.UTF_8);
+        assertThrows(ClosedChannelException.class, () -> read(log, 0, false, end));
+        // those waiting read the file as usual rather than wait for a position it may never reach
+        waiting.get(5, TimeUnit.SECONDS);
+        FollowedLog reopened = FollowedLog.of(f);
+        assertNotSame(log, reopened);
+        assertEquals("three\n", read(reopened, 0, false, end));
+    }
+
+    @Test
+    public void closedWhenReplaced() throws Exception {
+        File f = tmp.newFile("log");
+        Files.writeString(f.toPath(), "one\n", StandardCharsets.UTF_8);
+        FollowedLog log = FollowedLog.of(f);
+        assertNotNull(log);
+        long[] end = new long[1];
+        assertEquals("one\n", read(log, 0, false, end));
+
+        File other = tmp.newFile("other");
+        Files.writeString(other.toPath(), "another\nlog\n", StandardCharsets.UTF_8);
+        Files.move(other.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        assertThrows(ClosedChannelException.class, () -> read(log, 0, false, end));
+        assertEquals("another\nlog\n", read(FollowedLog.of(f), 0, false, end));
+    }
+
+    @Test
+    public void closedWhenIdleOrGone() throws Exception {
+        File f = tmp.newFile("log");
+        FollowedLog log = FollowedLog.of(f);
+        assertNotNull(log);
+        FollowedLog.closeIdle(System.currentTimeMillis());
+        assertSame(log, FollowedLog.of(f));
+        FollowedLog.closeIdle(System.currentTimeMillis() + FollowedLog.IDLE);
+        assertNotSame(log, FollowedLog.of(f));
+    }
+}
@@ -0,0 +1,141 @@
+package hudson.console;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.util.io.BlockGzipFile;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LineIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File write(int lines, boolean trailingNewline) throws Exception {
+        File log = new File(tmp.getRoot(), "log");
+        try (OutputStream out = LineIndex.record(log, Files.newOutputStream(log.toPath()))) {
+            for (int i = 0; i < lines; i++) {
+                byte[] line = ("line " + i + (i < lines - 1 || trailingNewline ? "\n" : "")).getBytes(StandardCharsets.UTF_8);
+                if (i % 2 == 0) {
+                    out.write(line);
+                } else {
+                    for (byte b : line) {
+                        out.write(b);
+                    }
+                }
+            }
+        }
+        return log;
+    }
+
+    /**
+     * The last lines as read backwards by {@code Run#getLog(int)}, without the truncation marker.
+     */
+    private static List<String> last(File log, int maxLines) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (LineIndex.Tail tail = LineIndex.Tail.open(log, maxLines)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long end = tail.length();
+            for (long p = tail.length() - 1; p >= 0 && lines.size() < maxLines; p--) {
+                if (tail.byteAt(p) == '\n') {
+                    if (p < tail.length() - 1) {
+                        lines.add(0, read(tail, p + 1, end));
+                    }
+                    end = p;
+                }
+            }
+            if (lines.size() < maxLines) {
+                lines.add(0, read(tail, 0, end));
+            }
+        }
+        return lines;
+    }
+
+    private static String read(LineIndex.Tail tail, long from, long to) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long p = from; p < to; p++) {
+            byte b = tail.byteAt(p);
+            if (b != '\n') {
+                out.write(b);
+            }
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void recorded() throws Exception {
+        File log = write(1000, true);
+        File index = LineIndex.of(log);
+        assertTrue(index.isFile());
+        assertEquals(8 + 8 * (1000 / LineIndex.STRIDE), index.length());
+        assertEquals(List.of("line 997", "line 998", "line 999"), last(log, 3));
+        assertEquals(List.of("line 999"), last(log, 1));
+        assertEquals(1000, last(log, 5000).size());
+        assertEquals(List.of("line 0", "line 1"), last(write(2, true), 10));
+
+        log = write(1000, false);
+        assertEquals(List.of("line 998", "line 999"), last(log, 2));
+        assertEquals(List.of("line 968", "line 969"), last(log, 32).subList(0, 2));
+    }
+
+    @Test
+    public void offsetOf() throws Exception {
+        File log = write(1000, true);
+        String content = Files.readString(log.toPath());
+        for (int line : new int[] {0, 1, 31, 32, 33, 640, 999}) {
+            assertEquals(content.indexOf("line " + line + "\n"), LineIndex.offsetOf(log, line));
+        }
+        assertEquals(-1, LineIndex.offsetOf(log, 1000));
+    }
+
+    @Test
+    public void compressed() throws Exception {
+        File log = write(100000, true);
+        File gz = BlockGzipFile.convert(log);
+        assertFalse(log.exists());
+        assertTrue(LineIndex.of(gz).isFile());
+        assertEquals(List.of("line 99998", "line 99999"), last(gz, 2));
+        assertEquals(LineIndex.offsetOf(gz, 50000), LineIndex.offsetOf(gz, 49999) + "line 49999\n".length());
+    }
+
+    @Test
+    public void notRecordedWhenAppending() throws Exception {
+        File log = write(100, true);
+        try (OutputStream out = LineIndex.record(log, Files.newOutputStream(log.toPath(), StandardOpenOption.APPEND))) {
+            out.write("more\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertFalse(LineIndex.of(log).exists());
+        assertEquals(List.of("line 99", "more"), last(log, 2));
+    }
+
+    @Test
+    public void entriesPastTheLogIgnored() throws Exception {
+        File log = write(1000, true);
+        String content = Files.readString(log.toPath());
+        // as if the index had been written to since the log was opened
+        Files.writeString(log.toPath(), content.substring(0, content.indexOf("line 500\n")));
+        assertEquals(List.of("line 498", "line 499"), last(log, 2));
+        assertEquals(content.indexOf("line 480\n"), LineIndex.offsetOf(log, 480));
+        assertEquals(-1, LineIndex.offsetOf(log, 640));
+    }
+
+    @Test
+    public void staleIndexIgnored() throws Exception {
+        File log = write(1000, true);
+        String replaced = "a".repeat(20000);
+        Files.writeString(log.toPath(), replaced + "\nend\n");
+        assertEquals(List.of(replaced, "end"), last(log, 2));
+        assertEquals(20001, LineIndex.offsetOf(log, 1));
+    }
+}
@@ -30,6 +30,8 @@ import static org.hamcrest.Matchers.is;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import org.junit.Test;
 
@@ -47,6 +49,33 @@ public final class LineTransformationOutputStreamTest {
         test("\r");
     }
 
+    @Test public void chunked() throws Exception {
+        byte[] text = "one\ntwo\r\nthree\rfour\r\r\nfive\n\nsix".getBytes(StandardCharsets.UTF_8);
+        List<String> expected = lines(text, 1);
+        assertThat(expected, is(List.of("one\n", "two\r\n", "three\r", "four\r", "\r\n", "five\n", "\n", "six")));
+        for (int chunk = 2; chunk <= text.length; chunk++) {
+            assertThat("chunks of " + chunk, lines(text, chunk), is(expected));
+        }
+    }
+
+    private static List<String> lines(byte[] text, int chunk) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (var out = new LineTransformationOutputStream() {
+            @Override protected void eol(byte[] b, int len) {
+                lines.add(new String(b, 0, len, StandardCharsets.UTF_8));
+            }
+        }) {
+            for (int i = 0; i < text.length; i += chunk) {
+                if (chunk == 1) {
+                    out.write(text[i]);
+                } else {
+                    out.write(text, i, Math.min(chunk, text.length - i));
+                }
+            }
+        }
+        return lines;
+    }
+
     private void test(String linefeed) throws Exception {
         var count = new AtomicLong();
         long max = 1_000_000; // to see OOME in cr without fix: 1_000_000_000
@@ -33,8 +33,13 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
+import hudson.model.Fingerprint.Range;
 import hudson.model.Fingerprint.RangeSet;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
 import jenkins.fingerprints.FileFingerprintStorage;
 import org.junit.Rule;
 import org.junit.Test;
@@ -79,6 +84,30 @@ public class FingerprintTest {
         assertEquals("[3,7),[9,11)", rs.toString());
     }
 
+    @Test public void rangeSetAgainstModel() {
+        Random r = new Random(42);
+        RangeSet rs = new RangeSet();
+        TreeSet<Integer> model = new TreeSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            // mostly increasing, as build numbers are, with some going back
+            int n = r.nextInt(10) == 0 ? r.nextInt(2000) : i / 4 + r.nextInt(8);
+            assertEquals(model.add(n), rs.addIfAbsent(n));
+            int probe = r.nextInt(3000);
+            assertEquals(model.contains(probe), rs.includes(probe));
+        }
+        List<Integer> numbers = new ArrayList<>();
+        rs.listNumbers().forEach(numbers::add);
+        assertEquals(new ArrayList<>(model), numbers);
+        List<Range> ranges = rs.getRanges();
+        for (int i = 1; i < ranges.size(); i++) {
+            assertTrue("separated by a gap: " + rs, ranges.get(i - 1).getEnd() < ranges.get(i).getStart());
+        }
+        assertEquals(rs, RangeSet.fromString(RangeSet.ConverterImpl.serialize(rs), false));
+        assertEquals(ranges.hashCode(), rs.hashCode());
+        assertEquals((int) model.first(), rs.min());
+        assertEquals(model.last() + 1, rs.max());
+    }
+
     @Test public void merge() {
         RangeSet x = new RangeSet();
         x.add(1);
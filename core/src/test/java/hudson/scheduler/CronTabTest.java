@@ -33,11 +33,14 @@ import static org.junit.Assert.assertThrows;
 
 import antlr.ANTLRException;
 import java.text.DateFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Locale;
+import java.util.Random;
 import java.util.TimeZone;
 import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
@@ -353,4 +356,48 @@ public class CronTabTest {
         cal.set(Calendar.MONTH, Calendar.NOVEMBER);
         new CronTab("0 0 31 * *").ceil(cal); // would infinite loop
     }
+
+    @Test public void ceilAndFloorInZoneMatchCalendar() throws Exception {
+        String[] specs = {"H/15 * * * *", "H H(0-7) * * 1-5", "0 0 1 * 0", "H 8 29 * *", "5,35 */3 1-10 1,4,7,10 *", "@weekly"};
+        // zones without daylight saving time, around which Calendar arithmetic is known to be off
+        String[] zones = {"UTC", "Asia/Kolkata", "Asia/Tokyo"};
+        Random random = new Random(42);
+        for (String spec : specs) {
+            for (String zone : zones) {
+                CronTab x = new CronTab(spec, Hash.from(spec));
+                for (int i = 0; i < 200; i++) {
+                    // 2010 to 2030, seconds included
+                    long t = 1262304000000L + (long) (random.nextDouble() * 20 * 365 * 24 * 3600 * 1000);
+                    Calendar c = new GregorianCalendar(TimeZone.getTimeZone(zone));
+                    c.setTimeInMillis(t);
+                    assertEquals(spec + " from " + t + " in " + zone, x.ceil((Calendar) c.clone()).getTimeInMillis(), x.ceil(t, ZoneId.of(zone)));
+                    assertEquals(spec + " from " + t + " in " + zone, x.floor((Calendar) c.clone()).getTimeInMillis(), x.floor(t, ZoneId.of(zone)));
+                }
+            }
+        }
+    }
+
+    @Test public void ceilInZoneSkipsMissingTimes() throws Exception {
+        ZoneId berlin = ZoneId.of("Europe/Berlin");
+        CronTab x = new CronTab("30 2 * * *");
+        // 2:30 does not exist on 2014-03-30
+        long t = LocalDateTime.of(2014, 3, 29, 12, 0).atZone(berlin).toInstant().toEpochMilli();
+        assertEquals(LocalDateTime.of(2014, 3, 31, 2, 30).atZone(berlin).toInstant().toEpochMilli(), x.ceil(t, berlin));
+        t = LocalDateTime.of(2014, 3, 30, 12, 0).atZone(berlin).toInstant().toEpochMilli();
+        assertEquals(LocalDateTime.of(2014, 3, 29, 2, 30).atZone(berlin).toInstant().toEpochMilli(), x.floor(t, berlin));
+    }
+
+    @Test public void ceilInZoneUsesTheFirstOfRepeatedTimes() throws Exception {
+        ZoneId berlin = ZoneId.of("Europe/Berlin");
+        CronTab x = new CronTab("30 2 * * *");
+        // 2:30 happens twice on 2014-10-26
+        long t = LocalDateTime.of(2014, 10, 26, 1, 0).atZone(berlin).toInstant().toEpochMilli();
+        assertEquals(LocalDateTime.of(2014, 10, 26, 2, 30).atZone(berlin).withEarlierOffsetAtOverlap().toInstant().toEpochMilli(), x.ceil(t, berlin));
+    }
+
+    @Issue("SECURITY-1193")
+    @Test(timeout = 1000L) public void testCeilInZoneLongMonths() throws Exception {
+        assertThrows(RareOrImpossibleDateException.class, () -> new CronTab("0 0 31 2 *").ceil(System.currentTimeMillis(), ZoneId.of("UTC")));
+        assertThrows(RareOrImpossibleDateException.class, () -> new CronTab("0 0 31 2 *").floor(System.currentTimeMillis(), ZoneId.of("UTC")));
+    }
 }
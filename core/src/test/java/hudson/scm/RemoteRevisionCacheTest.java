@@ -0,0 +1,104 @@
+package hudson.scm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Job;
+import hudson.model.TaskListener;
+import org.junit.Test;
+
+public class RemoteRevisionCacheTest {
+
+    private final RemoteRevisionCache cache = new RemoteRevisionCache();
+    private final Job<?, ?> job = mock(Job.class);
+
+    /**
+     * The head of the remote branch.
+     */
+    private int head = 1;
+    private int queries;
+
+    @Test
+    public void jobsOnTheSameKeyShareOneQuery() throws Exception {
+        Revision baseline = new Revision(1);
+        for (int i = 0; i < 10; i++) {
+            PollingResult r = cache.compare(new FakeSCM("repo#main"), job, null, null, TaskListener.NULL, baseline);
+            assertEquals(PollingResult.Change.NONE, r.change);
+        }
+        assertEquals(1, queries);
+
+        cache.compare(new FakeSCM("repo#other"), job, null, null, TaskListener.NULL, baseline);
+        cache.compare(new FakeSCM(null), job, null, null, TaskListener.NULL, baseline);
+        cache.compare(new FakeSCM(null), job, null, null, TaskListener.NULL, baseline);
+        assertEquals(4, queries);
+    }
+
+    @Test
+    public void changesAreConfirmed() throws Exception {
+        cache.compare(new FakeSCM("repo#main"), job, null, null, TaskListener.NULL, new Revision(1));
+        assertEquals(1, queries);
+        // a job built since has a newer baseline than the shared state, which is not a change
+        head = 2;
+        PollingResult r = cache.compare(new FakeSCM("repo#main"), job, null, null, TaskListener.NULL, new Revision(2));
+        assertEquals(PollingResult.Change.NONE, r.change);
+        assertEquals(2, queries);
+        // a change is confirmed by a query of its own
+        r = cache.compare(new FakeSCM("repo#main"), job, null, null, TaskListener.NULL, new Revision(1));
+        assertEquals(PollingResult.Change.SIGNIFICANT, r.change);
+        assertEquals(3, queries);
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        cache.compare(new FakeSCM("repo#main"), job, null, null, TaskListener.NULL, new Revision(1));
+        head = 2;
+        cache.invalidate("repo#main");
+        PollingResult r = cache.compare(new FakeSCM("repo#main"), job, null, null, TaskListener.NULL, new Revision(1));
+        assertEquals(PollingResult.Change.SIGNIFICANT, r.change);
+        assertEquals(2, queries);
+        assertSame(Revision.class, r.remote.getClass());
+        assertEquals(2, ((Revision) r.remote).number);
+    }
+
+    private static final class Revision extends SCMRevisionState {
+        final int number;
+
+        Revision(int number) {
+            this.number = number;
+        }
+    }
+
+    private final class FakeSCM extends NullSCM {
+        private final String key;
+
+        FakeSCM(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean requiresWorkspaceForPolling() {
+            return false;
+        }
+
+        @Override
+        public String getRemoteRevisionKey() {
+            return key;
+        }
+
+        @Override
+        public PollingResult compareRemoteRevisionWith(Job<?, ?> project, Launcher launcher, FilePath workspace, TaskListener listener, SCMRevisionState baseline) {
+            queries++;
+            return compareRevisions(baseline, new Revision(head));
+        }
+
+        @Override
+        public PollingResult compareRevisions(SCMRevisionState baseline, SCMRevisionState remote) {
+            int before = ((Revision) baseline).number;
+            int after = ((Revision) remote).number;
+            return new PollingResult(baseline, remote, before == after ? PollingResult.Change.NONE : PollingResult.Change.SIGNIFICANT);
+        }
+    }
+}
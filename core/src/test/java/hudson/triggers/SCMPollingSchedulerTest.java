@@ -0,0 +1,186 @@
+package hudson.triggers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SCMPollingSchedulerTest {
+
+    /**
+     * Pollings handed over to the executor and not yet run.
+     */
+    private final List<Runnable> started = new ArrayList<>();
+    private final List<String> ran = new ArrayList<>();
+    private int maxPerEndpoint;
+    private int maxPerMinute;
+
+    @Before
+    public void setUp() {
+        maxPerEndpoint = SCMPollingScheduler.MAX_PER_ENDPOINT;
+        maxPerMinute = SCMPollingScheduler.MAX_PER_MINUTE;
+        SCMPollingScheduler.MAX_PER_ENDPOINT = 2;
+        SCMPollingScheduler.MAX_PER_MINUTE = 0;
+    }
+
+    @After
+    public void tearDown() {
+        SCMPollingScheduler.MAX_PER_ENDPOINT = maxPerEndpoint;
+        SCMPollingScheduler.MAX_PER_MINUTE = maxPerMinute;
+    }
+
+    private SCMPollingScheduler scheduler(int threads) {
+        return new SCMPollingScheduler(started::add, () -> threads);
+    }
+
+    /**
+     * Runs the oldest polling started.
+     */
+    private void runNext() {
+        started.remove(0).run();
+    }
+
+    @Test
+    public void endpointsTakeTurns() {
+        SCMPollingScheduler scheduler = scheduler(4);
+        for (int i = 0; i < 10; i++) {
+            scheduler.execute(new Polling("slow-" + i), "slow.example.com");
+        }
+        scheduler.execute(new Polling("fast-0"), "fast.example.com");
+        scheduler.execute(new Polling("fast-1"), "fast.example.com");
+        scheduler.execute(new Polling("fast-2"), "fast.example.com");
+        // two slow ones, then as many fast ones as allowed, leaving the rest of the threads free
+        assertEquals(4, started.size());
+        SCMPollingScheduler.EndpointStatistics slow = scheduler.getStatistics().get(0);
+        assertEquals("slow.example.com", slow.getEndpoint());
+        assertEquals(2, slow.getRunning());
+        assertEquals(8, slow.getWaiting());
+        SCMPollingScheduler.EndpointStatistics fast = scheduler.getStatistics().get(1);
+        assertEquals(2, fast.getRunning());
+        assertEquals(1, fast.getWaiting());
+
+        while (!started.isEmpty()) {
+            runNext();
+        }
+        assertEquals(13, ran.size());
+        assertEquals("[fast-0, fast-1, fast-2]", ran.stream().filter(s -> s.startsWith("fast")).collect(Collectors.toList()).toString());
+        assertEquals(10, scheduler.getStatistics().get(0).getCompleted());
+        assertEquals(0, scheduler.getStatistics().get(0).getWaiting());
+    }
+
+    @Test
+    public void threadsAreShared() {
+        SCMPollingScheduler scheduler = scheduler(3);
+        for (int i = 0; i < 3; i++) {
+            scheduler.execute(new Polling("a-" + i), "a");
+            scheduler.execute(new Polling("b-" + i), "b");
+            scheduler.execute(new Polling("c-" + i), "c");
+        }
+        assertEquals(3, started.size());
+        while (!started.isEmpty()) {
+            runNext();
+        }
+        assertEquals("[a-0, b-0, c-0, a-1, b-1, c-1, a-2, b-2, c-2]", ran.toString());
+    }
+
+    @Test
+    public void requestsAreCombined() {
+        SCMPollingScheduler scheduler = scheduler(1);
+        scheduler.execute(new Polling("first"), "a");
+        scheduler.execute(new Polling("second"), "a");
+        scheduler.execute(new Polling("second"), "a"); // while waiting: dropped
+        assertEquals(1, started.size());
+        runNext();
+        scheduler.execute(new Polling("first"), "a"); // after it ran: polls again
+        runNext();
+        scheduler.execute(new Polling("first"), "a");
+        assertEquals("second", ran.get(1));
+        assertEquals(1, started.size());
+        scheduler.execute(new Polling("first"), "a"); // while running: polls once more afterwards
+        Runnable running = started.remove(0);
+        scheduler.execute(new Polling("first"), "a");
+        running.run();
+        assertEquals(1, started.size());
+        runNext();
+        assertEquals("[first, second, first, first]", ran.toString());
+        assertEquals(0, started.size());
+    }
+
+    @Test
+    public void pollingsPerMinuteAreLimited() {
+        SCMPollingScheduler.MAX_PER_MINUTE = 1;
+        SCMPollingScheduler scheduler = scheduler(4);
+        scheduler.execute(new Polling("a-0"), "a");
+        scheduler.execute(new Polling("a-1"), "a");
+        scheduler.execute(new Polling("b-0"), "b");
+        assertEquals(2, started.size());
+        runNext();
+        runNext();
+        assertEquals("[a-0, b-0]", ran.toString());
+        assertEquals(1, scheduler.getStatistics().get(0).getWaiting());
+    }
+
+    @Test
+    public void unknownEndpointIsNotLimited() {
+        SCMPollingScheduler.MAX_PER_MINUTE = 1;
+        SCMPollingScheduler scheduler = scheduler(4);
+        for (int i = 0; i < 6; i++) {
+            scheduler.execute(new Polling("unknown-" + i), SCMPollingScheduler.UNKNOWN);
+        }
+        // as many as there are threads, not MAX_PER_ENDPOINT nor MAX_PER_MINUTE
+        assertEquals(4, started.size());
+        assertEquals(4, scheduler.getStatistics().get(0).getRunning());
+        while (!started.isEmpty()) {
+            runNext();
+        }
+        assertEquals(6, ran.size());
+
+        // still taking turns with other endpoints
+        for (int i = 0; i < 4; i++) {
+            scheduler.execute(new Polling("unknown-" + i), SCMPollingScheduler.UNKNOWN);
+        }
+        scheduler.execute(new Polling("a-0"), "a");
+        scheduler.execute(new Polling("a-1"), "a");
+        assertEquals(4, started.size());
+        runNext();
+        assertEquals(4, started.size());
+        assertEquals(1, scheduler.getStatistics().get(1).getRunning());
+    }
+
+    @Test
+    public void endpointOf() {
+        assertEquals(SCMPollingScheduler.UNKNOWN, SCMPollingScheduler.endpointOf(List.of()));
+    }
+
+    private final class Polling implements Runnable {
+        private final String name;
+
+        Polling(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            ran.add(name);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Polling && ((Polling) o).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package hudson.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class ParallelGzipOutputStreamTest {
+
+    @Test
+    public void roundTrip() throws Exception {
+        byte[] data = new byte[100_000];
+        Random r = new Random(42);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (r.nextInt(16) + 'a');
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 1000)) {
+            // a mix of single bytes, partial chunks and writes spanning several chunks
+            out.write(data, 0, 10);
+            out.write(data[10]);
+            out.write(data, 11, 4000);
+            out.flush();
+            out.write(data, 4011, data.length - 4011);
+        }
+        try (InputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void empty() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(compressed).close();
+        try (InputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertArrayEquals(new byte[0], in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void truncated() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 100)) {
+            out.write(new byte[1000]);
+        }
+        byte[] cut = Arrays.copyOf(compressed.toByteArray(), compressed.size() - 4); // without the end marker
+        try (InputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(cut))) {
+            assertThrows(IOException.class, in::readAllBytes);
+        }
+    }
+
+    @Test
+    public void chunkLengthOutOfRange() throws Exception {
+        for (int length : new int[] {-1, ParallelGzipInputStream.MAX_COMPRESSED_SIZE + 1, Integer.MAX_VALUE}) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            new DataOutputStream(compressed).writeInt(length);
+            try (InputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+                assertThrows(IOException.class, in::readAllBytes);
+            }
+        }
+    }
+}
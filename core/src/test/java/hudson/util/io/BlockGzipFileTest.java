@@ -0,0 +1,154 @@
+package hudson.util.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlockGzipFileTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Several blocks of compressible lines, with some incompressible noise in between.
+     */
+    private static byte[] content() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            b.append("line ").append(i).append(": some build output\n");
+        }
+        byte[] text = b.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] noise = new byte[3 * BlockGzipOutputStream.BLOCK_SIZE];
+        new Random(42).nextBytes(noise);
+        byte[] all = Arrays.copyOf(text, text.length + noise.length + text.length);
+        System.arraycopy(noise, 0, all, text.length, noise.length);
+        System.arraycopy(text, 0, all, text.length + noise.length, text.length);
+        return all;
+    }
+
+    private File write(byte[] content, boolean index) throws Exception {
+        File f = tmp.newFile("log.gz");
+        BlockGzipOutputStream out = new BlockGzipOutputStream(Files.newOutputStream(f.toPath()));
+        out.write(content, 0, 1000);
+        out.flush(); // a short block
+        out.write(content, 1000, content.length - 1000);
+        out.close();
+        if (index) {
+            try (OutputStream os = Files.newOutputStream(BlockGzipFile.indexOf(f).toPath())) {
+                out.writeIndex(os);
+            }
+        }
+        return f;
+    }
+
+    @Test
+    public void readableAsGzip() throws Exception {
+        byte[] content = content();
+        File f = write(content, false);
+        assertTrue(BlockGzipFile.isBlockCompressed(f));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(f.toPath()))) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void seek() throws Exception {
+        byte[] content = content();
+        for (boolean index : new boolean[] {false, true}) {
+            File f = write(content, index);
+            try (BlockGzipFile blocks = new BlockGzipFile(f)) {
+                assertEquals(content.length, blocks.length());
+                for (long position : new long[] {0, 999, 1000, BlockGzipOutputStream.BLOCK_SIZE + 1000, content.length - 1, content.length}) {
+                    try (InputStream in = blocks.open(position)) {
+                        assertArrayEquals("from " + position, Arrays.copyOfRange(content, (int) position, content.length), in.readAllBytes());
+                    }
+                }
+                try (InputStream in = blocks.open(0)) {
+                    assertEquals(content.length - 10, in.skip(content.length - 10));
+                    assertEquals(content[content.length - 10] & 0xff, in.read());
+                    assertEquals(9, in.skip(100));
+                    assertEquals(-1, in.read());
+                }
+                Random random = new Random(1);
+                for (int i = 0; i < 100; i++) {
+                    int position = random.nextInt(content.length);
+                    assertEquals(content[position], blocks.byteAt(position));
+                }
+            }
+            Files.delete(f.toPath());
+            Files.deleteIfExists(BlockGzipFile.indexOf(f).toPath());
+        }
+    }
+
+    @Test
+    public void corruptBlockSize() throws Exception {
+        byte[] content = content();
+        for (boolean index : new boolean[] {false, true}) {
+            File f = write(content, index);
+            byte[] bytes = Files.readAllBytes(f.toPath());
+            // the uncompressed size in the trailer of the first, short block
+            int isize = ((bytes[16] & 0xff) | (bytes[17] & 0xff) << 8) + 1 - 4;
+            bytes[isize] = bytes[isize + 1] = bytes[isize + 2] = bytes[isize + 3] = (byte) 0xff;
+            Files.write(f.toPath(), bytes);
+            if (index) {
+                // only the blocks past the index are scanned, so it is found when reading the block
+                assertTrue(BlockGzipFile.indexOf(f).setLastModified(f.lastModified()));
+                try (BlockGzipFile blocks = new BlockGzipFile(f); InputStream in = blocks.open(0)) {
+                    assertThrows(ZipException.class, in::read);
+                }
+                Files.delete(BlockGzipFile.indexOf(f).toPath());
+            } else {
+                assertThrows(ZipException.class, () -> new BlockGzipFile(f));
+            }
+            Files.delete(f.toPath());
+        }
+    }
+
+    @Test
+    public void convert() throws Exception {
+        byte[] content = content();
+        File log = tmp.newFile("log");
+        Files.write(log.toPath(), content);
+        File gz = BlockGzipFile.convert(log);
+        assertFalse(log.exists());
+        assertTrue(BlockGzipFile.indexOf(gz).isFile());
+        try (BlockGzipFile blocks = new BlockGzipFile(gz); InputStream in = blocks.open(0)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+
+        Files.delete(gz.toPath());
+        Files.delete(BlockGzipFile.indexOf(gz).toPath());
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz.toPath()))) {
+            out.write(content);
+        }
+        assertFalse(BlockGzipFile.isBlockCompressed(gz));
+        assertEquals(gz, BlockGzipFile.convert(log));
+        assertTrue(BlockGzipFile.isBlockCompressed(gz));
+        try (InputStream in = BlockGzipFile.open(gz, 0)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+
+        Files.delete(BlockGzipFile.indexOf(gz).toPath());
+        BlockGzipFile.convert(gz);
+        assertTrue(BlockGzipFile.indexOf(gz).isFile());
+        try (InputStream in = BlockGzipFile.open(gz, 1000)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 1000, content.length), in.readAllBytes());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package hudson.util.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import hudson.Functions;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * What the destination of {@link DeltaSync} does with paths sent by a source it cannot trust, such as an agent.
+ * Synchronizations as such are covered by {@code FilePathTest}.
+ */
+public class DeltaSyncTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void signaturesOutsideOfTheDestination() throws Exception {
+        File base = tmp.newFolder("base");
+        File secret = tmp.newFile("secret");
+        Files.writeString(secret.toPath(), "secret", StandardCharsets.UTF_8);
+        for (String path : new String[] {"../secret", secret.getAbsolutePath(), "a/../../secret"}) {
+            DeltaSync.Sign sign = new DeltaSync.Sign(List.of(new DeltaSync.Entry(path, secret.length(), secret.lastModified(), 0644, null)), "test");
+            assertThrows(path, IOException.class, () -> sign.invoke(base, null));
+        }
+
+        Assume.assumeFalse(Functions.isWindows());
+        Files.createSymbolicLink(new File(base, "link").toPath(), tmp.getRoot().toPath());
+        DeltaSync.Sign sign = new DeltaSync.Sign(List.of(new DeltaSync.Entry("link/secret", secret.length(), secret.lastModified(), 0644, null)), "test");
+        assertTrue(sign.invoke(base, null).isEmpty());
+    }
+
+    @Test
+    public void fileThroughSymlinkOutsideOfTheDestination() throws Exception {
+        Assume.assumeFalse(Functions.isWindows());
+        File base = tmp.newFolder("base");
+        File outside = tmp.newFolder("outside");
+        byte[] content = "written".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(stream))) {
+            out.writeByte('L');
+            out.writeUTF("a");
+            out.writeUTF(outside.getAbsolutePath());
+            out.writeByte('F');
+            out.writeUTF("a/x");
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(0644);
+            out.writeInt(0);
+            out.writeByte('D');
+            out.writeInt(content.length);
+            out.write(content);
+            out.writeByte('X');
+            out.write(DeltaSync.sha256().digest(content));
+            out.writeByte('E');
+        }
+        IOException e = assertThrows(IOException.class,
+                () -> DeltaSync.apply(base, new ByteArrayInputStream(stream.toByteArray()), "test"));
+        assertTrue(e.getMessage(), e.getMessage().contains("a/x"));
+        assertFalse(new File(outside, "x").exists());
+        assertEquals(0, outside.list().length);
+    }
+}
@@ -0,0 +1,194 @@
+package jenkins.fingerprints;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FingerprintLogTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] key(int i) throws Exception {
+        return MessageDigest.getInstance("MD5").digest(Integer.toString(i).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] value(int i, int version) {
+        return ("fingerprint " + i + " version " + version).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void putGetDelete() throws Exception {
+        Path dir = tmp.getRoot().toPath();
+        try (FingerprintLog log = new FingerprintLog(dir, 1024 * 1024)) {
+            for (int i = 0; i < 1000; i++) {
+                log.put(key(i), value(i, 0));
+            }
+            for (int i = 0; i < 1000; i += 2) {
+                log.put(key(i), value(i, 1));
+            }
+            for (int i = 0; i < 1000; i += 3) {
+                log.delete(key(i));
+            }
+            assertEquals(1000 - 334, log.size());
+        }
+        try (FingerprintLog log = new FingerprintLog(dir, 1024 * 1024)) {
+            for (int i = 0; i < 1000; i++) {
+                if (i % 3 == 0) {
+                    assertNull(log.get(key(i)));
+                } else {
+                    assertArrayEquals(value(i, i % 2 == 0 ? 1 : 0), log.get(key(i)));
+                }
+            }
+            Map<String, String> all = new HashMap<>();
+            log.forEach((k, v) -> all.put(new String(k, StandardCharsets.ISO_8859_1), new String(v, StandardCharsets.US_ASCII)));
+            assertEquals(1000 - 334, all.size());
+        }
+    }
+
+    @Test
+    public void compaction() throws Exception {
+        Path dir = tmp.getRoot().toPath();
+        try (FingerprintLog log = new FingerprintLog(dir, 4096)) {
+            for (int version = 0; version < 10; version++) {
+                for (int i = 0; i < 100; i++) {
+                    log.put(key(i), value(i, version));
+                }
+            }
+            // deleted in recent segments, put in old ones: the deletions must survive compaction
+            for (int i = 0; i < 100; i += 10) {
+                log.delete(key(i));
+            }
+            long before = log.totalBytes();
+            assertTrue(log.compact() > 0);
+            assertTrue(log.totalBytes() < before);
+            assertTrue(log.totalBytes() < 2 * log.liveBytes() + 4096);
+        }
+        try (FingerprintLog log = new FingerprintLog(dir, 4096)) {
+            assertEquals(90, log.size());
+            for (int i = 0; i < 100; i++) {
+                if (i % 10 == 0) {
+                    assertNull(log.get(key(i)));
+                } else {
+                    assertArrayEquals(value(i, 9), log.get(key(i)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void incompleteRecord() throws Exception {
+        Path dir = tmp.getRoot().toPath();
+        try (FingerprintLog log = new FingerprintLog(dir, 1024 * 1024)) {
+            log.put(key(1), value(1, 0));
+            log.put(key(2), value(2, 0));
+        }
+        Path segment;
+        try (Stream<Path> s = Files.list(dir)) {
+            segment = s.findFirst().orElseThrow();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(segment.toFile(), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        try (FingerprintLog log = new FingerprintLog(dir, 1024 * 1024)) {
+            assertArrayEquals(value(1, 0), log.get(key(1)));
+            assertFalse(log.contains(key(2)));
+            log.put(key(3), value(3, 0));
+        }
+        try (FingerprintLog log = new FingerprintLog(dir, 1024 * 1024)) {
+            assertEquals(2, log.size());
+            assertArrayEquals(value(3, 0), log.get(key(3)));
+        }
+    }
+
+    @Test
+    public void concurrentPuts() throws Exception {
+        Path dir = tmp.getRoot().toPath();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (FingerprintLog log = new FingerprintLog(dir, 64 * 1024)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = thread; i < 2000; i += 8) {
+                        log.put(key(i), value(i, 0));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+            assertEquals(2000, log.size());
+        } finally {
+            executor.shutdownNow();
+        }
+        try (FingerprintLog log = new FingerprintLog(dir, 64 * 1024)) {
+            for (int i = 0; i < 2000; i++) {
+                assertArrayEquals(value(i, 0), log.get(key(i)));
+            }
+        }
+    }
+
+    @Test
+    public void index() {
+        FingerprintLog.Index index = new FingerprintLog.Index();
+        Random r = new Random(42);
+        Map<Long, Long> expected = new HashMap<>();
+        // few distinct high bits, so that keys collide and removals have to shift clusters back
+        for (int i = 0; i < 100_000; i++) {
+            long k = r.nextInt(5000);
+            if (r.nextInt(3) == 0) {
+                assertEquals(expected.getOrDefault(k, 0L).longValue(), index.remove(k & 0xFF, k));
+                expected.remove(k);
+            } else {
+                long v = i + 1;
+                assertEquals(expected.getOrDefault(k, 0L).longValue(), index.put(k & 0xFF, k, v));
+                expected.put(k, v);
+            }
+        }
+        assertEquals(expected.size(), index.size);
+        for (long k = 0; k < 5000; k++) {
+            assertEquals(expected.getOrDefault(k, 0L).longValue(), index.get(k & 0xFF, k));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedRecord() throws Exception {
+        Path dir = tmp.getRoot().toPath();
+        Path segment;
+        try (FingerprintLog log = new FingerprintLog(dir, 1024 * 1024)) {
+            log.put(key(1), value(1, 0));
+            log.put(key(2), value(2, 0));
+            try (Stream<Path> s = Files.list(dir)) {
+                segment = s.findFirst().orElseThrow();
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(segment.toFile(), "rw")) {
+                raf.seek(30);
+                raf.write('!');
+            }
+            log.get(key(1));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package jenkins.model.lazy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class BuildCacheTest {
+
+    private static final class Referent {
+        final int n;
+
+        Referent(int n) {
+            this.n = n;
+        }
+    }
+
+    @Test
+    public void lru() {
+        BuildCache cache = new BuildCache(2, Long.MAX_VALUE, "lru");
+        Referent one = new Referent(1);
+        Referent two = new Referent(2);
+        BuildReference.Holder<Referent> h1 = cache.make(one);
+        BuildReference.Holder<Referent> h2 = cache.make(two);
+        assertSame(one, h1.get()); // #2 is now the least recently used
+        BuildReference.Holder<Referent> h3 = cache.make(new Referent(3));
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+
+        // evicted, but still reachable from here, so not lost
+        assertSame(two, h2.get());
+        assertEquals(2, cache.getSize());
+        assertEquals(2, cache.getEvictions());
+        assertEquals(2, cache.getHits());
+        assertEquals(3, h3.get().n);
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void lfu() {
+        BuildCache cache = new BuildCache(2, Long.MAX_VALUE, "lfu");
+        BuildReference.Holder<Referent> h1 = cache.make(new Referent(1));
+        BuildReference.Holder<Referent> h2 = cache.make(new Referent(2));
+        h1.get();
+        h1.get();
+        h2.get(); // #1 is the least recently used, but the most frequently used
+        BuildReference.Holder<Referent> h3 = cache.make(new Referent(3));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.getSize());
+        long hits = cache.getHits();
+        assertEquals(1, h1.get().n);
+        assertEquals(3, h3.get().n);
+        assertEquals(hits + 2, cache.getHits());
+    }
+
+    @Test
+    public void bytes() {
+        BuildCache cache = new BuildCache(100, 3 * 4096, "lru");
+        for (int i = 0; i < 10; i++) {
+            cache.make(new Referent(i));
+        }
+        assertEquals(3, cache.getSize());
+        assertEquals(3 * 4096, cache.getEstimatedBytes());
+        assertEquals(7, cache.getEvictions());
+    }
+
+    @Test
+    public void limitsChangedAtRuntime() {
+        int[] maxEntries = {10};
+        BuildCache cache = new BuildCache(() -> maxEntries[0], () -> Long.MAX_VALUE, "lru");
+        for (int i = 0; i < 5; i++) {
+            cache.make(new Referent(i));
+        }
+        assertEquals(5, cache.getSize());
+        maxEntries[0] = 2;
+        cache.make(new Referent(5));
+        assertEquals(2, cache.getSize());
+        assertEquals(4, cache.getEvictions());
+    }
+
+    @Test
+    public void release() {
+        BuildCache cache = new BuildCache(10, Long.MAX_VALUE, "lru");
+        Referent r = new Referent(1);
+        BuildReference.Holder<Referent> h = cache.make(r);
+        ((BuildCache.CachedHolder<Referent>) h).release();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getEstimatedBytes());
+        assertEquals(0, cache.getEvictions());
+        // still reachable, so not lost
+        assertSame(r, h.get());
+    }
+}
@@ -0,0 +1,128 @@
+package jenkins.model.lazy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.Result;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildSummaryIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Rule
+    public FakeMapBuilder builder = new FakeMapBuilder();
+
+    @Before
+    public void enable() {
+        BuildSummaryIndex.ENABLED = true;
+    }
+
+    @After
+    public void disable() {
+        BuildSummaryIndex.ENABLED = false;
+    }
+
+    private static BuildSummary summary(int n, Result result) {
+        return new BuildSummary(n, Integer.toString(n), 1000L * n, 10L * n, result, n == 2 ? "two" : null);
+    }
+
+    @Test
+    public void persistence() throws Exception {
+        File dir = tmp.getRoot();
+        BuildSummaryIndex index = new BuildSummaryIndex(dir);
+        index.put(summary(1, Result.SUCCESS));
+        index.put(summary(2, Result.FAILURE));
+        index.put(summary(3, Result.UNSTABLE));
+        index.remove(1);
+        index.put(summary(3, Result.ABORTED));
+
+        index = new BuildSummaryIndex(dir);
+        assertNull(index.get(1));
+        assertEquals(summary(2, Result.FAILURE), index.get(2));
+        assertEquals("two", index.get(2).getDisplayName());
+        assertEquals(summary(3, Result.ABORTED), index.get(3));
+        assertEquals("#3", index.get(3).getDisplayName());
+    }
+
+    @Test
+    public void truncated() throws Exception {
+        File dir = tmp.getRoot();
+        BuildSummaryIndex index = new BuildSummaryIndex(dir);
+        index.put(summary(1, Result.SUCCESS));
+        // as if the process died while appending a record
+        Files.write(new File(dir, "summaries").toPath(), new byte[] {'P', 0, 0}, StandardOpenOption.APPEND);
+
+        index = new BuildSummaryIndex(dir);
+        assertEquals(summary(1, Result.SUCCESS), index.get(1));
+        index.put(summary(2, Result.SUCCESS));
+        index = new BuildSummaryIndex(dir);
+        assertEquals(summary(1, Result.SUCCESS), index.get(1));
+        assertEquals(summary(2, Result.SUCCESS), index.get(2));
+    }
+
+    @Test
+    public void rebuild() throws Exception {
+        File dir = tmp.getRoot();
+        File build = tmp.newFolder("7");
+        Files.writeString(new File(build, "build.xml").toPath(),
+                "<?xml version='1.1' encoding='UTF-8'?>\n<build>\n  <actions>\n    <hudson.model.CauseAction>\n      <causeBag class=\"linked-hash-map\"/>\n"
+                + "    </hudson.model.CauseAction>\n  </actions>\n  <queueId>3</queueId>\n  <timestamp>1700000000000</timestamp>\n  <startTime>1700000000005</startTime>\n"
+                + "  <result>UNSTABLE</result>\n  <duration>42</duration>\n  <charset>UTF-8</charset>\n  <keepLog>false</keepLog>\n  <displayName>seven</displayName>\n</build>",
+                StandardCharsets.UTF_8);
+        // still running
+        File running = tmp.newFolder("8");
+        Files.writeString(new File(running, "build.xml").toPath(), "<build><timestamp>1700000001000</timestamp></build>", StandardCharsets.UTF_8);
+
+        BuildSummaryIndex index = new BuildSummaryIndex(dir);
+        assertFalse(index.exists());
+        index.rebuild(List.of(7, 8));
+        assertTrue(index.exists());
+
+        index = new BuildSummaryIndex(dir);
+        assertEquals(new BuildSummary(7, "7", 1700000000000L, 42, Result.UNSTABLE, "seven"), index.get(7));
+        assertNull(index.get(8));
+    }
+
+    @Test
+    public void search() throws Exception {
+        builder.add(1).add(3).add(5).add(7);
+        new BuildSummaryIndex(builder.getDir()).rebuild(List.of());
+        List<Integer> loaded = new ArrayList<>();
+        FakeMap map = new FakeMap(builder.getDir()) {
+            @Override
+            protected Build retrieve(File dir) throws IOException {
+                Build b = super.retrieve(dir);
+                loaded.add(b.n);
+                return b;
+            }
+        };
+        map.putSummary(summary(5, Result.FAILURE));
+        map.putSummary(summary(3, Result.FAILURE));
+        map.putSummary(summary(1, Result.SUCCESS));
+        // #7 is not indexed, as if it were still running
+
+        Build b = map.search(7, s -> s.result() == Result.SUCCESS, r -> r.n != 7);
+        assertEquals(1, b.n);
+        assertEquals(List.of(7, 1), loaded);
+        assertEquals(summary(3, Result.FAILURE), map.getSummary(3));
+
+        map.removeValue(map.getByNumber(1));
+        assertNull(map.getSummary(1));
+        assertNull(map.search(7, s -> s.result() == Result.SUCCESS, r -> r.n != 7));
+    }
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import hudson.console.ConsoleNote;
+import hudson.console.HyperlinkNote;
+import hudson.console.PlainTextConsoleOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encoding, decoding and stripping of console notes as found in build logs:
+ * hyperlinks to a few dozen distinct jobs and users, printed over and over.
+ */
+@JmhBenchmark
+public class ConsoleNoteBenchmark {
+    public static class Notes extends JmhBenchmarkState {
+        static final int DISTINCT = 32;
+
+        byte[] encoded;
+        byte[] log;
+        List<String> lines;
+
+        @Override
+        public void setup() throws Exception {
+            encoded = new HyperlinkNote("/job/folder/job/project-0/", 9).encode().getBytes(StandardCharsets.US_ASCII);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            lines = new ArrayList<>();
+            for (int i = 0; out.size() < 4 * 1024 * 1024; i++) {
+                String line = i % 20 == 0
+                        ? "Started by upstream project " + HyperlinkNote.encodeTo("/job/folder/job/project-" + i % DISTINCT + "/", "project-" + i % DISTINCT) + " build number " + i
+                        : "[INFO] Compiling 17 source files to /workspace/module-" + i % 50 + "/target/classes";
+                lines.add(line);
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            log = out.toByteArray();
+        }
+    }
+
+    @Benchmark
+    public void encode(Notes notes, Blackhole blackhole) {
+        int i = ThreadLocalRandom.current().nextInt(Notes.DISTINCT);
+        blackhole.consume(HyperlinkNote.encodeTo("/job/folder/job/project-" + i + "/", "project-" + i));
+    }
+
+    @Benchmark
+    public void decode(Notes notes, Blackhole blackhole) throws Exception {
+        blackhole.consume(ConsoleNote.readFrom(new DataInputStream(new ByteArrayInputStream(notes.encoded))));
+    }
+
+    @Benchmark
+    public void strip(Notes notes) throws Exception {
+        try (OutputStream out = new PlainTextConsoleOutputStream(OutputStream.nullOutputStream())) {
+            out.write(notes.log);
+        }
+    }
+
+    @Benchmark
+    public void removeNotes(Notes notes, Blackhole blackhole) {
+        blackhole.consume(ConsoleNote.removeNotes(notes.lines));
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import hudson.console.AnnotatedLargeText;
+import hudson.console.HyperlinkNote;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.kohsuke.stapler.framework.io.ByteBuffer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Renders a large build log as HTML and as plain text, reporting the throughput in {@link Bytes#bytes}
+ * and, with the GC profiler, the allocations per rendering.
+ */
+@JmhBenchmark
+public class ConsoleRenderingBenchmark {
+    public static class LogState extends JmhBenchmarkState {
+        @Param({"16"})
+        public int megabytes;
+
+        /**
+         * One line in this many carries a console note; 0 for none.
+         */
+        @Param({"0", "100"})
+        public int noteEvery;
+
+        ByteBuffer log;
+
+        @Override
+        public void setup() throws Exception {
+            log = new ByteBuffer();
+            long size = megabytes * 1024L * 1024L;
+            for (int i = 0; log.length() < size; i++) {
+                String line;
+                if (noteEvery > 0 && i % noteEvery == 0) {
+                    line = "Downloading " + HyperlinkNote.encodeTo("https://repo.example.com/artifact-" + i + ".jar", "artifact-" + i + ".jar") + " <42 kB>\n";
+                } else {
+                    line = "[INFO] Compiling 17 source files to /workspace/module-" + (i % 50) + "/target/classes & friends\n";
+                }
+                log.write(line.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Benchmark
+    public void html(LogState state, Bytes counter) throws Exception {
+        counter.bytes += new AnnotatedLargeText<>(state.log, StandardCharsets.UTF_8, true, null).writeHtmlTo(0, Writer.nullWriter());
+    }
+
+    @Benchmark
+    public void plain(LogState state, Bytes counter) throws Exception {
+        counter.bytes += new AnnotatedLargeText<>(state.log, StandardCharsets.UTF_8, true, null).writeLogTo(0, OutputStream.nullOutputStream());
+    }
+}
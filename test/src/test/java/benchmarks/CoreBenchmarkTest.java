@@ -0,0 +1,98 @@
+package benchmarks;
+
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of core with the minimum possible number of iterations, to make sure they keep working.
+ * Raise the iterations locally to get meaningful numbers.
+ */
+public class CoreBenchmarkTest {
+    @Test
+    public void runMaintenanceBenchmark() throws Exception {
+        run(QueueMaintenanceBenchmark.class, false);
+    }
+
+    @Test
+    public void runSnapshotBenchmark() throws Exception {
+        run(QueueSnapshotBenchmark.class, true);
+    }
+
+    @Test
+    public void runLookupBenchmark() throws Exception {
+        run(QueueLookupBenchmark.class, false);
+    }
+
+    @Test
+    public void runXmlFileReadBenchmark() throws Exception {
+        run(XmlFileReadBenchmark.class, true);
+    }
+
+    @Test
+    public void runConsoleRenderingBenchmark() throws Exception {
+        run(ConsoleRenderingBenchmark.class, true);
+    }
+
+    @Test
+    public void runDeltaSyncBenchmark() throws Exception {
+        run(DeltaSyncBenchmark.class, false);
+    }
+
+    @Test
+    public void runFingerprintStorageBenchmark() throws Exception {
+        run(FingerprintStorageBenchmark.class, false);
+    }
+
+    @Test
+    public void runRangeSetBenchmark() throws Exception {
+        run(RangeSetBenchmark.class, true);
+    }
+
+    @Test
+    public void runLogTailBenchmark() throws Exception {
+        run(LogTailBenchmark.class, false);
+    }
+
+    @Test
+    public void runConsoleNoteBenchmark() throws Exception {
+        run(ConsoleNoteBenchmark.class, true);
+    }
+
+    @Test
+    public void runCronTabBenchmark() throws Exception {
+        run(CronTabBenchmark.class, true);
+    }
+
+    private static void run(Class<?> benchmark, boolean profileAllocations) throws Exception {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .mode(Mode.AverageTime)
+                .forks(1)
+                .result("jmh-report.json")
+                .resultFormat(ResultFormatType.JSON)
+                .operationsPerInvocation(1)
+                .threads(1)
+                .warmupForks(0)
+                .warmupIterations(0)
+                .measurementBatchSize(1)
+                .measurementIterations(1)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .shouldFailOnError(true)
+                .include(benchmark.getName() + ".*");
+        if (profileAllocations) {
+            // reports gc.alloc.rate.norm, the bytes allocated per operation
+            options = options.addProfiler(GCProfiler.class);
+        }
+        new Runner(options.build()).run();
+        assertTrue(Files.exists(Paths.get("jmh-report.json")));
+    }
+}
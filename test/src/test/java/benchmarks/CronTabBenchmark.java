@@ -0,0 +1,72 @@
+package benchmarks;
+
+import hudson.scheduler.CronTab;
+import hudson.scheduler.Hash;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Next and previous times of cron tabs as computed for triggers and their form validation,
+ * with {@link Calendar} arithmetic and without.
+ * Does not need Jenkins to be running.
+ */
+@JmhBenchmark
+public class CronTabBenchmark {
+    @State(Scope.Thread)
+    public static class Tab {
+        @Param({"H/15 * * * *", "H H(0-7) * * 1-5", "H H 1,15 * *", "H H 1 1 *"})
+        public String spec;
+
+        CronTab tab;
+        TimeZone timeZone;
+        ZoneId zone;
+        long t;
+
+        @Setup
+        public void setup() {
+            tab = new CronTab(spec, Hash.from("job/folder/project"));
+            timeZone = TimeZone.getTimeZone("Europe/Berlin");
+            zone = timeZone.toZoneId();
+            t = System.currentTimeMillis();
+        }
+
+        /**
+         * A different minute each time, as when polled by the cron thread.
+         */
+        long next() {
+            return t += 60_000;
+        }
+    }
+
+    @Benchmark
+    public long ceilCalendar(Tab tab) {
+        Calendar cal = new GregorianCalendar(tab.timeZone);
+        cal.setTimeInMillis(tab.next());
+        return tab.tab.ceil(cal).getTimeInMillis();
+    }
+
+    @Benchmark
+    public long ceil(Tab tab) {
+        return tab.tab.ceil(tab.next(), tab.zone);
+    }
+
+    @Benchmark
+    public long floorCalendar(Tab tab) {
+        Calendar cal = new GregorianCalendar(tab.timeZone);
+        cal.setTimeInMillis(tab.next());
+        return tab.tab.floor(cal).getTimeInMillis();
+    }
+
+    @Benchmark
+    public long floor(Tab tab) {
+        return tab.tab.floor(tab.next(), tab.zone);
+    }
+}
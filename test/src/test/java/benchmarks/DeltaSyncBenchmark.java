@@ -0,0 +1,150 @@
+package benchmarks;
+
+import hudson.FilePath;
+import hudson.remoting.Channel;
+import hudson.remoting.ChannelBuilder;
+import hudson.remoting.FastPipedInputStream;
+import hudson.remoting.FastPipedOutputStream;
+import hudson.util.DirScanner;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares {@link FilePath#syncRecursiveTo} with {@link FilePath#copyRecursiveTo} when refreshing a directory
+ * from an agent in which a few bytes of each file changed, over a pair of channels within this JVM.
+ * {@link Wire#bytes} is the total traffic over the iteration, both ways.
+ */
+@JmhBenchmark
+public class DeltaSyncBenchmark {
+    public static class DirState extends JmhBenchmarkState {
+        @Param({"20"})
+        public int files;
+
+        @Param({"1048576"})
+        public int size;
+
+        @Param({"copy", "sync"})
+        public String mode;
+
+        final AtomicLong wire = new AtomicLong();
+        private ExecutorService executors;
+        private Channel local;
+        private Channel remote;
+        private final Random random = new Random(42);
+        File src;
+        File dst;
+        FilePath agentSrc;
+
+        @Override
+        public void setup() throws Exception {
+            executors = Executors.newCachedThreadPool();
+            FastPipedInputStream p1i = new FastPipedInputStream();
+            FastPipedInputStream p2i = new FastPipedInputStream();
+            OutputStream p1o = new Counting(new FastPipedOutputStream(p1i), wire);
+            OutputStream p2o = new Counting(new FastPipedOutputStream(p2i), wire);
+            Future<Channel> f1 = executors.submit(() -> new ChannelBuilder("controller", executors).withMode(Channel.Mode.BINARY).build(p1i, p2o));
+            Future<Channel> f2 = executors.submit(() -> new ChannelBuilder("agent", executors).withMode(Channel.Mode.BINARY).build(p2i, p1o));
+            local = f1.get();
+            remote = f2.get();
+
+            src = Files.createTempDirectory("src").toFile();
+            dst = Files.createTempDirectory("dst").toFile();
+            byte[] content = new byte[size];
+            for (int i = 0; i < files; i++) {
+                // incompressible, like most of what is in a cache of dependencies
+                random.nextBytes(content);
+                Files.write(new File(src, "file" + i).toPath(), content);
+            }
+            agentSrc = new FilePath(local, src.getPath());
+            agentSrc.copyRecursiveTo(new FilePath(dst));
+        }
+
+        /**
+         * Changes a few bytes of each file.
+         */
+        @Setup(Level.Invocation)
+        public void edit() throws IOException {
+            for (int i = 0; i < files; i++) {
+                File f = new File(src, "file" + i);
+                try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                    raf.seek(random.nextInt(size - 16));
+                    byte[] b = new byte[16];
+                    random.nextBytes(b);
+                    raf.write(b);
+                }
+                f.setLastModified(f.lastModified() + 2000);
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            try {
+                local.close();
+                local.join();
+                remote.join();
+                FileUtils.deleteDirectory(src);
+                FileUtils.deleteDirectory(dst);
+            } catch (IOException | InterruptedException x) {
+                throw new AssertionError(x);
+            }
+            executors.shutdownNow();
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Wire {
+        public long bytes;
+    }
+
+    @Benchmark
+    public void refresh(DirState state, Wire wire) throws Exception {
+        long before = state.wire.get();
+        if (state.mode.equals("sync")) {
+            state.agentSrc.syncRecursiveTo(new DirScanner.Full(), new FilePath(state.dst), "benchmark");
+        } else {
+            state.agentSrc.copyRecursiveTo(new DirScanner.Full(), new FilePath(state.dst), "benchmark");
+        }
+        wire.bytes += state.wire.get() - before;
+    }
+
+    private static final class Counting extends FilterOutputStream {
+        private final AtomicLong count;
+
+        Counting(OutputStream out, AtomicLong count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count.addAndGet(len);
+        }
+    }
+}
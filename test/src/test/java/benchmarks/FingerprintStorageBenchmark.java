@@ -0,0 +1,70 @@
+package benchmarks;
+
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.model.Fingerprint;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import java.util.concurrent.ThreadLocalRandom;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.fingerprints.FileFingerprintStorage;
+import jenkins.fingerprints.FingerprintStorage;
+import jenkins.fingerprints.GlobalFingerprintConfiguration;
+import jenkins.fingerprints.LogStructuredFingerprintStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link FileFingerprintStorage} with {@link LogStructuredFingerprintStorage}
+ * for loading, saving, and cleaning up fingerprints all of which are still in use.
+ * Saves from several threads ({@code -t}) are where batching shows.
+ */
+@JmhBenchmark
+public class FingerprintStorageBenchmark {
+    public static class StorageState extends JmhBenchmarkState {
+        @Param({"5000"})
+        public int fingerprints;
+
+        @Param({"file", "log"})
+        public String storage;
+
+        Fingerprint[] saved;
+        FingerprintStorage configured;
+
+        @Override
+        public void setup() throws Exception {
+            configured = storage.equals("log") ? new LogStructuredFingerprintStorage() : ExtensionList.lookupSingleton(FileFingerprintStorage.class);
+            GlobalFingerprintConfiguration.get().setStorage(configured);
+            FreeStyleProject p = getJenkins().createProject(FreeStyleProject.class, "p");
+            FreeStyleBuild b = p.scheduleBuild2(0).get();
+            saved = new Fingerprint[fingerprints];
+            for (int i = 0; i < fingerprints; i++) {
+                byte[] md5 = Util.fromHexString(Util.getDigestOf("artifact" + i));
+                saved[i] = new Fingerprint(b, "artifact" + i + ".jar", md5);
+                saved[i].add("downstream", i);
+            }
+        }
+
+        Fingerprint any() {
+            return saved[ThreadLocalRandom.current().nextInt(saved.length)];
+        }
+    }
+
+    @Benchmark
+    public void load(StorageState state, Blackhole blackhole) throws Exception {
+        blackhole.consume(Fingerprint.load(state.any().getHashString()));
+    }
+
+    @Benchmark
+    public void save(StorageState state) throws Exception {
+        state.any().save();
+    }
+
+    @Benchmark
+    public void cleanup(StorageState state) {
+        state.configured.iterateAndCleanupFingerprints(TaskListener.NULL);
+    }
+}
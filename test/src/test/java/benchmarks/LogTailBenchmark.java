@@ -0,0 +1,104 @@
+package benchmarks;
+
+import hudson.util.io.BlockGzipFile;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads the tail of a compressed log, as the console page of a completed build does,
+ * from plain gzip and from {@link BlockGzipFile}.
+ * Does not need Jenkins to be running.
+ */
+@JmhBenchmark
+public class LogTailBenchmark {
+    /**
+     * As shown by default on the console page.
+     */
+    static final int TAIL = 150 * 1024;
+
+    @State(Scope.Benchmark)
+    public static class Logs {
+        @Param({"64"})
+        public int megabytes;
+
+        File dir;
+        File gz;
+        File blocks;
+        long length;
+
+        @Setup
+        public void setup() throws IOException {
+            dir = Files.createTempDirectory("logs").toFile();
+            gz = new File(dir, "plain.gz");
+            File raw = new File(dir, "log");
+            try (OutputStream plain = new GZIPOutputStream(Files.newOutputStream(gz.toPath()));
+                 OutputStream out = Files.newOutputStream(raw.toPath())) {
+                for (int i = 0; length < megabytes * 1024L * 1024L; i++) {
+                    byte[] line = ("[" + i + "] Compiling module " + (i % 97) + " of the project with some more output\n").getBytes(StandardCharsets.UTF_8);
+                    plain.write(line);
+                    out.write(line);
+                    length += line.length;
+                }
+            }
+            blocks = BlockGzipFile.convert(raw);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private static void consume(InputStream in, Blackhole blackhole) throws IOException {
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            blackhole.consume(buf[n - 1]);
+        }
+    }
+
+    @Benchmark
+    public void gzip(Logs logs, Blackhole blackhole) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(logs.gz.toPath()), 65536)) {
+            in.skipNBytes(logs.length - TAIL);
+            consume(in, blackhole);
+        }
+    }
+
+    @Benchmark
+    public void blockCompressed(Logs logs, Blackhole blackhole) throws IOException {
+        try (InputStream in = BlockGzipFile.open(logs.blocks, logs.length - TAIL)) {
+            consume(in, blackhole);
+        }
+    }
+
+    /**
+     * Without an index, which is then built by reading every block header.
+     */
+    @Benchmark
+    public void blockCompressedWithoutIndex(Logs logs, Blackhole blackhole) throws IOException {
+        File index = new File(logs.blocks.getPath() + ".gzi");
+        File moved = new File(logs.dir, "moved.gzi");
+        Files.move(index.toPath(), moved.toPath());
+        try (InputStream in = BlockGzipFile.open(logs.blocks, logs.length - TAIL)) {
+            consume(in, blackhole);
+        } finally {
+            Files.move(moved.toPath(), index.toPath());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Label;
+import hudson.model.Queue;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the indexed {@link Queue} lookups with a linear scan of the same snapshot.
+ */
+@JmhBenchmark
+public class QueueLookupBenchmark {
+    public static class QueueState extends JmhBenchmarkState {
+        @Param({"10000"})
+        public int items;
+
+        FreeStyleProject last;
+        long lastId;
+
+        @Override
+        public void setup() throws Exception {
+            // nothing can run on this label, so all the items stay buildable
+            Label nowhere = Label.get("nowhere");
+            for (int i = 0; i < items; i++) {
+                last = getJenkins().createProject(FreeStyleProject.class, "job" + i);
+                last.setAssignedLabel(nowhere);
+                last.scheduleBuild2(0);
+            }
+            Queue queue = getJenkins().getQueue();
+            queue.maintain();
+            lastId = queue.getItem(last).getId();
+        }
+    }
+
+    @Benchmark
+    public void getItemByTask(QueueState state, Blackhole blackhole) {
+        blackhole.consume(state.getJenkins().getQueue().getItem(state.last));
+    }
+
+    @Benchmark
+    public void getItemById(QueueState state, Blackhole blackhole) {
+        blackhole.consume(state.getJenkins().getQueue().getItem(state.lastId));
+    }
+
+    @Benchmark
+    public void contains(QueueState state, Blackhole blackhole) {
+        blackhole.consume(state.getJenkins().getQueue().contains(state.last));
+    }
+
+    /**
+     * What {@link #getItemByTask} used to do.
+     */
+    @Benchmark
+    public void linearScan(QueueState state, Blackhole blackhole) {
+        for (Queue.Item item : state.getJenkins().getQueue().getBuildableItems()) {
+            if (item.task.equals(state.last)) {
+                blackhole.consume(item);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Label;
+import hudson.model.Queue;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.JNLPLauncher;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Measures the latency of {@link Queue#maintain()} against the number of queued items and agents,
+ * with and without {@link Queue#INCREMENTAL_MAINTENANCE}.
+ * <p>
+ * Agents are never connected, so every item stays buildable and each invocation sees the same queue.
+ * The built-in node has executors, which are parked, but a label no item asks for.
+ */
+@JmhBenchmark
+public class QueueMaintenanceBenchmark {
+    public static class QueueState extends JmhBenchmarkState {
+        @Param({"100", "1000"})
+        public int items;
+
+        @Param({"10", "100"})
+        public int agents;
+
+        @Param({"false", "true"})
+        public boolean incremental;
+
+        @Override
+        public void setup() throws Exception {
+            Queue.INCREMENTAL_MAINTENANCE = incremental;
+            getJenkins().setNumExecutors(4);
+            getJenkins().setLabelString("built-in-only");
+            for (int i = 0; i < agents; i++) {
+                DumbSlave agent = new DumbSlave("agent" + i, "/tmp/agent" + i, new JNLPLauncher());
+                agent.setLabelString("pool" + (i % 10));
+                getJenkins().addNode(agent);
+            }
+            for (int i = 0; i < items; i++) {
+                FreeStyleProject p = getJenkins().createProject(FreeStyleProject.class, "job" + i);
+                p.setAssignedLabel(Label.get("pool" + (i % 10)));
+                p.scheduleBuild2(0);
+            }
+            getJenkins().getQueue().maintain();
+        }
+
+        @Override
+        public void tearDown() {
+            Queue.INCREMENTAL_MAINTENANCE = false;
+        }
+    }
+
+    @Benchmark
+    public void maintain(QueueState state) {
+        state.getJenkins().getQueue().maintain();
+    }
+}
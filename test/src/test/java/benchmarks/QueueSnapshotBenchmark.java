@@ -0,0 +1,51 @@
+package benchmarks;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Label;
+import hudson.model.Queue;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of publishing a new {@link Queue} snapshot on {@code schedule2}/{@code cancel}
+ * while many other items sit in the queue, and of the lock-free reads.
+ * Run with the GC profiler (see {@link CoreBenchmarkTest}) to get the allocation rate per operation.
+ */
+@JmhBenchmark
+public class QueueSnapshotBenchmark {
+    public static class QueueState extends JmhBenchmarkState {
+        @Param({"1000", "5000"})
+        public int items;
+
+        FreeStyleProject probe;
+
+        @Override
+        public void setup() throws Exception {
+            // nothing can run on this label, so all the items stay buildable
+            Label nowhere = Label.get("nowhere");
+            for (int i = 0; i < items; i++) {
+                FreeStyleProject p = getJenkins().createProject(FreeStyleProject.class, "job" + i);
+                p.setAssignedLabel(nowhere);
+                p.scheduleBuild2(0);
+            }
+            getJenkins().getQueue().maintain();
+            probe = getJenkins().createProject(FreeStyleProject.class, "probe");
+        }
+    }
+
+    @Benchmark
+    public void scheduleAndCancel(QueueState state, Blackhole blackhole) {
+        Queue queue = state.getJenkins().getQueue();
+        // stays in the waiting list thanks to the quiet period
+        blackhole.consume(queue.schedule2(state.probe, 3600));
+        blackhole.consume(queue.cancel(state.probe));
+    }
+
+    @Benchmark
+    public void getBuildableItems(QueueState state, Blackhole blackhole) {
+        blackhole.consume(state.getJenkins().getQueue().getBuildableItems());
+    }
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import hudson.model.Fingerprint.RangeSet;
+import java.util.Random;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Operations on the usages of a fingerprint used by most builds of a job, such as a base image:
+ * many ranges, as some builds did not use it.
+ * Does not need Jenkins to be running.
+ */
+@JmhBenchmark
+public class RangeSetBenchmark {
+    @State(Scope.Thread)
+    public static class Usages {
+        @Param({"100", "10000"})
+        public int ranges;
+
+        RangeSet set;
+        String serialized;
+        int next;
+        final Random random = new Random(42);
+
+        @Setup
+        public void setup() {
+            set = new RangeSet();
+            int n = 1;
+            for (int i = 0; i < ranges; i++) {
+                int length = 1 + random.nextInt(20);
+                for (int j = 0; j < length; j++) {
+                    set.add(n++);
+                }
+                n++; // a build which did not use it
+            }
+            serialized = RangeSet.ConverterImpl.serialize(set);
+            next = set.max();
+        }
+    }
+
+    /**
+     * The next build using it, as recorded after each build.
+     */
+    @Benchmark
+    public void add(Usages usages) {
+        usages.set.add(usages.next++);
+    }
+
+    /**
+     * A build which may or may not have used it, as when rendering the fingerprints of a build.
+     */
+    @Benchmark
+    public boolean includes(Usages usages) {
+        return usages.set.includes(usages.random.nextInt(usages.next));
+    }
+
+    @Benchmark
+    public void serialize(Usages usages, Blackhole blackhole) {
+        blackhole.consume(RangeSet.ConverterImpl.serialize(usages.set));
+    }
+
+    @Benchmark
+    public void parse(Usages usages, Blackhole blackhole) {
+        blackhole.consume(RangeSet.fromString(usages.serialized, true));
+    }
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import hudson.XmlFile;
+import hudson.model.FreeStyleProject;
+import hudson.tasks.Shell;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares reading a large {@code config.xml} with and without {@link XmlFile#PARSE_CACHE_BYTES}.
+ * Without the cache every read is cold; with it, all but the first are warm.
+ */
+@JmhBenchmark
+public class XmlFileReadBenchmark {
+    public static class XmlFileState extends JmhBenchmarkState {
+        @Param({"100", "1000"})
+        public int builders;
+
+        @Param({"false", "true"})
+        public boolean cache;
+
+        XmlFile config;
+
+        @Override
+        public void setup() throws Exception {
+            FreeStyleProject p = getJenkins().createProject(FreeStyleProject.class, "large");
+            for (int i = 0; i < builders; i++) {
+                p.getBuildersList().add(new Shell("echo step " + i + "\nmake -C module" + i + " all install"));
+            }
+            p.save();
+            config = p.getConfigFile();
+            XmlFile.PARSE_CACHE_BYTES = cache ? 64 * 1024 * 1024 : 0;
+        }
+
+        @Override
+        public void tearDown() {
+            XmlFile.PARSE_CACHE_BYTES = 0;
+        }
+    }
+
+    @Benchmark
+    public void read(XmlFileState state, Blackhole blackhole) throws Exception {
+        blackhole.consume(state.config.read());
+    }
+}
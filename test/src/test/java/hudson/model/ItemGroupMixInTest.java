@@ -116,6 +116,33 @@ public class ItemGroupMixInTest {
     assertNotNull("Other job in folder should have loaded.", r.jenkins.getItemByFullName("folder/job3"));
   }
 
+  @Test
+  public void parallelLoad() throws Exception {
+    MockFolder folder = r.createFolder("folder");
+    MockFolder sub = folder.createProject(MockFolder.class, "sub");
+    for (int i = 0; i < 20; i++) {
+      folder.createProject(FreeStyleProject.class, "job" + i);
+      sub.createProject(FreeStyleProject.class, "job" + i);
+    }
+    FreeStyleProject before = r.jenkins.getItemByFullName("folder/sub/job7", FreeStyleProject.class);
+
+    ItemGroupMixIn.PARALLEL_LOAD = true;
+    try {
+      r.jenkins.reload();
+    } finally {
+      ItemGroupMixIn.PARALLEL_LOAD = false;
+    }
+
+    MockFolder folder2 = r.jenkins.getItemByFullName("folder", MockFolder.class);
+    assertEquals(21, folder2.getItems().size());
+    MockFolder sub2 = r.jenkins.getItemByFullName("folder/sub", MockFolder.class);
+    assertEquals(20, sub2.getItems().size());
+    FreeStyleProject after = r.jenkins.getItemByFullName("folder/sub/job7", FreeStyleProject.class);
+    assertNotNull(after);
+    assertEquals(before.getFullName(), after.getFullName());
+    assertEquals(sub2, after.getParent());
+  }
+
   /**
    * This test unit makes sure that jobs that contain bad get*Action methods will continue to
    * load the project.
@@ -29,6 +29,8 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.lessThan;
@@ -44,6 +46,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
+import com.google.common.util.concurrent.Uninterruptibles;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.ExtensionList;
 import hudson.Functions;
@@ -86,6 +89,7 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -94,11 +98,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -280,6 +288,193 @@ public class QueueTest {
         r.assertBuildStatusSuccess(r.waitForCompletion(b1));
     }
 
+    @Test public void incrementalMaintenance() throws Exception {
+        Queue.INCREMENTAL_MAINTENANCE = true;
+        try {
+            Queue q = r.jenkins.getQueue();
+            FreeStyleProject stuck = r.createFreeStyleProject();
+            stuck.setAssignedLabel(Label.get("nowhere"));
+            assertNotNull(stuck.scheduleBuild2(0));
+
+            // items with a label no parked executor has must not get in the way of the others
+            r.buildAndAssertSuccess(r.createFreeStyleProject());
+
+            q.scheduleMaintenance().get();
+            assertThat(q.getItem(stuck), instanceOf(Queue.BuildableItem.class));
+
+            // nor must the dispatchers be asked about them while no parked executor can take them
+            IncrementalMaintenanceDispatcher.asked.clear();
+            q.scheduleMaintenance().get();
+            assertThat(q.getItem(stuck), instanceOf(Queue.BuildableItem.class));
+            assertThat(IncrementalMaintenanceDispatcher.asked, not(hasItem(stuck.getName())));
+            assertTrue(q.cancel(stuck));
+        } finally {
+            Queue.INCREMENTAL_MAINTENANCE = false;
+        }
+    }
+
+    @TestExtension("incrementalMaintenance")
+    public static class IncrementalMaintenanceDispatcher extends QueueTaskDispatcher {
+        static final Set<String> asked = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public CauseOfBlockage canRun(Queue.Item item) {
+            asked.add(item.task.getName());
+            return super.canRun(item);
+        }
+    }
+
+    @Test public void asyncIntake() throws Exception {
+        Queue.ASYNC_INTAKE = true;
+        try {
+            Queue q = r.jenkins.getQueue();
+            FreeStyleProject p = r.createFreeStyleProject();
+            CountDownLatch locked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Thread holder = new Thread(() -> Queue.withLock(() -> {
+                locked.countDown();
+                Uninterruptibles.awaitUninterruptibly(release);
+            }));
+            holder.start();
+            locked.await();
+
+            // neither call waits for the lock, nor sees the other one
+            ScheduleResult first = q.schedule2(p, 0);
+            ScheduleResult second = q.schedule2(p, 0);
+            assertTrue(first.isCreated());
+            assertTrue(second.isCreated());
+
+            release.countDown();
+            holder.join();
+            FreeStyleBuild b = (FreeStyleBuild) first.getItem().getFuture().get();
+            assertSame(b, second.getItem().getFuture().get());
+            assertEquals(1, p.getBuilds().size());
+            // the id handed out for the second one leads to the item it was merged into
+            Queue.Item merged = q.getItem(second.getItem().getId());
+            assertThat(merged, instanceOf(Queue.LeftItem.class));
+            assertEquals(first.getItem().getId(), merged.getId());
+            assertSame(b, ((Queue.LeftItem) merged).getExecutable());
+        } finally {
+            Queue.ASYNC_INTAKE = false;
+        }
+    }
+
+    @Test public void asyncIntakeMergedItemId() throws Exception {
+        Queue.ASYNC_INTAKE = true;
+        try {
+            Queue q = r.jenkins.getQueue();
+            r.jenkins.setNumExecutors(0);
+            FreeStyleProject p = r.createFreeStyleProject();
+            CountDownLatch locked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Thread holder = new Thread(() -> Queue.withLock(() -> {
+                locked.countDown();
+                Uninterruptibles.awaitUninterruptibly(release);
+            }));
+            holder.start();
+            locked.await();
+            ScheduleResult first = q.schedule2(p, 0);
+            ScheduleResult second = q.schedule2(p, 0);
+            release.countDown();
+            holder.join();
+            q.maintain();
+
+            long id = second.getItem().getId();
+            assertNotEquals(first.getItem().getId(), id);
+            assertEquals(first.getItem().getId(), q.getItem(id).getId());
+            assertTrue(q.cancel(q.getItem(id)));
+            assertTrue(((Queue.LeftItem) q.getItem(id)).isCancelled());
+            assertTrue(second.getItem().getFuture().isCancelled());
+        } finally {
+            Queue.ASYNC_INTAKE = false;
+        }
+    }
+
+    @Test public void asyncIntakeCancel() throws Exception {
+        Queue.ASYNC_INTAKE = true;
+        try {
+            Queue q = r.jenkins.getQueue();
+            FreeStyleProject p1 = r.createFreeStyleProject("p1");
+            FreeStyleProject p2 = r.createFreeStyleProject("p2");
+            CountDownLatch locked = new CountDownLatch(1);
+            CountDownLatch scheduled = new CountDownLatch(1);
+            AtomicReference<Queue.Item> item = new AtomicReference<>();
+            AtomicBoolean cancelledItem = new AtomicBoolean();
+            AtomicBoolean cancelledTask = new AtomicBoolean();
+            Thread holder = new Thread(() -> Queue.withLock(() -> {
+                locked.countDown();
+                Uninterruptibles.awaitUninterruptibly(scheduled);
+                // still in the intake, which only the lock holder drains
+                cancelledItem.set(q.cancel(item.get()));
+                cancelledTask.set(q.cancel(p2));
+            }));
+            holder.start();
+            locked.await();
+
+            ScheduleResult first = q.schedule2(p1, 0);
+            ScheduleResult second = q.schedule2(p2, 0);
+            long id = first.getItem().getId();
+            // known by its id before it is in the queue
+            assertSame(first.getItem(), q.getItem(id));
+            item.set(first.getItem());
+            scheduled.countDown();
+            holder.join();
+
+            assertTrue(cancelledItem.get());
+            assertTrue(cancelledTask.get());
+            assertTrue(((Queue.LeftItem) q.getItem(id)).isCancelled());
+            assertTrue(second.getItem().getFuture().isCancelled());
+            assertEquals(0, q.getItems().length);
+        } finally {
+            Queue.ASYNC_INTAKE = false;
+        }
+    }
+
+    @Test public void journal() throws Exception {
+        Queue.JOURNAL = true;
+        try {
+            Queue q = r.jenkins.getQueue();
+            r.jenkins.setNumExecutors(0);
+
+            FreeStyleProject p1 = r.createFreeStyleProject("p1");
+            FreeStyleProject p2 = r.createFreeStyleProject("p2");
+            FreeStyleProject p3 = r.createFreeStyleProject("p3");
+            assertNotNull(p1.scheduleBuild2(0));
+            assertNotNull(p2.scheduleBuild2(0));
+            q.save();
+
+            // changes made after the save only make it to the journal
+            assertTrue(q.cancel(p1));
+            assertNotNull(p3.scheduleBuild2(0));
+            long p3id = q.getItem(p3).getId();
+            q.scheduleJournalWrite().get();
+            File root = r.jenkins.getRootDir();
+            File crashed = new File(root, "crashed");
+            assertTrue(crashed.mkdir());
+            for (String name : new String[] {"queue.xml", "queue.journal"}) {
+                Files.copy(new File(root, name).toPath(), new File(crashed, name).toPath());
+            }
+
+            // as if Jenkins died without saving the queue
+            q.clear();
+            q.scheduleJournalWrite().get();
+            for (String name : new String[] {"queue.xml", "queue.journal"}) {
+                Files.copy(new File(crashed, name).toPath(), new File(root, name).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            q.load();
+
+            assertNull(q.getItem(p1));
+            assertNotNull(q.getItem(p2));
+            assertEquals(p3id, q.getItem(p3).getId());
+            // ids are not handed out twice
+            assertNotNull(p1.scheduleBuild2(0));
+            assertThat(q.getItem(p1).getId(), greaterThan(p3id));
+            q.clear();
+        } finally {
+            Queue.JOURNAL = false;
+        }
+    }
+
     @Issue("JENKINS-33467")
     @Test public void foldableCauseAction() throws Exception {
         final OneShotEvent buildStarted = new OneShotEvent();
@@ -3,13 +3,19 @@ package hudson.model.labels;
 import static org.junit.Assert.assertTrue;
 
 import hudson.model.Label;
+import hudson.model.Node;
 import hudson.slaves.DumbSlave;
 import hudson.slaves.JNLPLauncher;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import jenkins.benchmark.jmh.JmhBenchmark;
 import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.model.Jenkins;
 import org.junit.Test;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Mode;
@@ -79,4 +85,62 @@ public class LabelBenchmarkTest {
             blackhole.consume(state.getJenkins().getAssignedLabels());
         }
     }
+
+    /**
+     * Computes the nodes of many label expressions over many agents, as {@link Label#getNodes} does after labels are trimmed,
+     * by matching each node and from a {@link LabelIndex}.
+     */
+    @JmhBenchmark
+    public static class LabelResolutionBenchmark {
+        public static class StateImpl extends JmhBenchmarkState {
+            final List<Label> labels = new ArrayList<>();
+            final LabelIndex index = new LabelIndex();
+
+            @Override
+            public void setup() throws Exception {
+                List<Node> agents = new ArrayList<>();
+                for (int i = 0; i < 2000; i++) {
+                    DumbSlave agent = new DumbSlave("agent" + i, "/tmp/agent" + i, new JNLPLauncher());
+                    agent.setLabelString((i % 2 == 0 ? "linux" : "windows") + " x" + (i % 4) + " pool" + (i % 50) + (i % 7 == 0 ? " docker" : ""));
+                    agents.add(agent);
+                }
+                getJenkins().setNodes(agents);
+                for (int i = 0; i < 200; i++) {
+                    labels.add(Label.parseExpression("pool" + (i % 50) + " && " + (i % 3 == 0 ? "!" : "") + "docker || x" + (i % 4) + " && linux"));
+                }
+                index.rebuild(getJenkins());
+            }
+        }
+
+        @Benchmark
+        public void byMatching(StateImpl state, Blackhole blackhole) {
+            Jenkins jenkins = state.getJenkins();
+            for (Label l : state.labels) {
+                Set<Node> r = new HashSet<>();
+                if (l.matches(jenkins)) {
+                    r.add(jenkins);
+                }
+                for (Node n : jenkins.getNodes()) {
+                    if (l.matches(n)) {
+                        r.add(n);
+                    }
+                }
+                blackhole.consume(r);
+            }
+        }
+
+        @Benchmark
+        public void byIndex(StateImpl state, Blackhole blackhole) {
+            for (Label l : state.labels) {
+                blackhole.consume(state.index.getNodes(l));
+            }
+        }
+
+        @Benchmark
+        public void updateIndex(StateImpl state, Blackhole blackhole) {
+            Jenkins jenkins = state.getJenkins();
+            state.index.update(jenkins, jenkins.getNode("agent0"));
+            blackhole.consume(state.index);
+        }
+    }
 }
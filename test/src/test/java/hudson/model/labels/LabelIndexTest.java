@@ -0,0 +1,124 @@
+package hudson.model.labels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class LabelIndexTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private static final List<String> EXPRESSIONS = List.of(
+            "linux",
+            "missing",
+            "linux && x64",
+            "linux || windows",
+            "!linux",
+            "!missing",
+            "linux && !x64",
+            "(linux || windows) && !docker",
+            "linux -> docker",
+            "linux <-> x64",
+            "missing <-> !linux",
+            "agent1 || windows",
+            "built-in || docker");
+
+    private boolean enabled;
+
+    @Before
+    public void setUp() throws Exception {
+        enabled = LabelIndex.ENABLED;
+        LabelIndex.ENABLED = true;
+        j.createSlave("agent1", "linux x64 docker", null);
+        j.createSlave("agent2", "linux arm", null);
+        j.createSlave("agent3", "windows x64", null);
+        j.createSlave("agent4", "", null);
+        // rebuilds the index
+        j.jenkins.setNodes(j.jenkins.getNodes());
+    }
+
+    @After
+    public void tearDown() {
+        LabelIndex.ENABLED = enabled;
+    }
+
+    private void assertIndexMatches() {
+        LabelIndex index = j.jenkins.getLabelIndex();
+        assertNotNull(index);
+        for (String expression : EXPRESSIONS) {
+            Label l = Label.parseExpression(expression);
+            Set<Node> expected = new HashSet<>();
+            if (l.matches(j.jenkins)) {
+                expected.add(j.jenkins);
+            }
+            for (Node n : j.jenkins.getNodes()) {
+                if (l.matches(n)) {
+                    expected.add(n);
+                }
+            }
+            assertEquals(expression, expected, index.getNodes(l));
+            assertEquals(expression, !expected.isEmpty(), index.matchesAny(l));
+            assertEquals(expression, expected, j.jenkins.getLabel(expression).getNodes());
+        }
+    }
+
+    @Test
+    public void expressions() {
+        assertIndexMatches();
+        assertEquals(Set.of(j.jenkins.getNode("agent1"), j.jenkins.getNode("agent3")),
+                j.jenkins.getLabelIndex().getNodes(Label.parseExpression("x64")));
+    }
+
+    @Test
+    public void nodeChanges() throws Exception {
+        DumbSlave agent2 = (DumbSlave) j.jenkins.getNode("agent2");
+        agent2.setLabelString("windows docker");
+        j.jenkins.updateNode(agent2);
+        assertIndexMatches();
+
+        j.jenkins.removeNode(j.jenkins.getNode("agent1"));
+        assertIndexMatches();
+        j.createSlave("agent5", "linux x64", null);
+        assertIndexMatches();
+
+        // replaced by another node of the same name
+        Node agent3 = j.jenkins.getNode("agent3");
+        j.jenkins.addNode(new DumbSlave("agent3", j.createTmpDir().getPath(), j.createComputerLauncher(null)));
+        assertFalse(j.jenkins.getLabelIndex().contains(agent3));
+        assertTrue(j.jenkins.getLabelIndex().contains(j.jenkins.getNode("agent3")));
+        assertIndexMatches();
+    }
+
+    @Test
+    public void rebuiltInPlace() throws Exception {
+        LabelIndex index = j.jenkins.getLabelIndex();
+        j.jenkins.setNodes(j.jenkins.getNodes());
+        assertSame(index, j.jenkins.getLabelIndex());
+
+        LabelIndex.ENABLED = false;
+        assertNull(j.jenkins.getLabelIndex());
+        j.createSlave("agent5", "linux", null);
+        LabelIndex.ENABLED = true;
+        // not updated meanwhile, so not used until rebuilt
+        assertNull(j.jenkins.getLabelIndex());
+        j.jenkins.setNodes(j.jenkins.getNodes());
+        assertSame(index, j.jenkins.getLabelIndex());
+        assertIndexMatches();
+    }
+}
@@ -0,0 +1,135 @@
+package hudson.triggers;
+
+import static org.junit.Assert.assertEquals;
+
+import hudson.ExtensionList;
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+public class CronSchedulerTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private static Calendar start() {
+        return new GregorianCalendar(2000, Calendar.JANUARY, 1, 0, 0, 0);
+    }
+
+    private static void check(CronScheduler scheduler, Calendar cal, int minutes) {
+        for (int i = 0; i < minutes; i++) {
+            scheduler.check(cal);
+            cal.add(Calendar.MINUTE, 1);
+        }
+    }
+
+    @Test
+    public void runsTriggersWhenTheirTabsMatch() throws Exception {
+        FreeStyleProject quarterly = j.createFreeStyleProject();
+        CountingTrigger every15 = new CountingTrigger("*/15 * * * *");
+        quarterly.addTrigger(every15);
+        FreeStyleProject daily = j.createFreeStyleProject();
+        CountingTrigger at3 = new CountingTrigger("H 3 * * *\n30 18 * * *");
+        daily.addTrigger(at3);
+
+        Calendar cal = start();
+        CronScheduler scheduler = new CronScheduler(cal.getTimeInMillis(), Runnable::run);
+        check(scheduler, cal, 2 * 24 * 60);
+        assertEquals(2, scheduler.size());
+        assertEquals(2 * 24 * 4, every15.runs);
+        assertEquals(2 * 2, at3.runs);
+    }
+
+    @Test
+    public void forgetsReplacedTriggers() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        CountingTrigger before = new CountingTrigger("*/10 * * * *");
+        p.addTrigger(before);
+
+        Calendar cal = start();
+        CronScheduler scheduler = new CronScheduler(cal.getTimeInMillis(), Runnable::run);
+        check(scheduler, cal, 60);
+        assertEquals(6, before.runs);
+
+        CountingTrigger after = new CountingTrigger("*/30 * * * *");
+        p.addTrigger(after); // replaces the other one, without starting this one
+        check(scheduler, cal, 60); // until the items are walked again, at the first of these minutes
+        assertEquals(6, before.runs);
+        assertEquals(2, after.runs);
+        assertEquals(1, scheduler.size());
+    }
+
+    @Test
+    public void schedulesStartedTriggers() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        CronScheduler scheduler = ExtensionList.lookupSingleton(Trigger.Cron.class).getScheduler();
+        int scheduled = scheduler.size();
+        CountingTrigger t = new CountingTrigger("@daily");
+        p.addTrigger(t);
+        CronScheduler.ENABLED = true;
+        try {
+            t.start(p, true);
+        } finally {
+            CronScheduler.ENABLED = false;
+        }
+        assertEquals(scheduled + 1, scheduler.size());
+    }
+
+    @Test
+    public void skipsTriggersStillRunning() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        CountingTrigger t = new CountingTrigger("* * * * *");
+        p.addTrigger(t);
+
+        Calendar cal = start();
+        List<Runnable> pending = new ArrayList<>();
+        CronScheduler scheduler = new CronScheduler(cal.getTimeInMillis(), pending::add);
+        check(scheduler, cal, 3);
+        assertEquals(1, pending.size());
+        pending.remove(0).run();
+        assertEquals(1, t.runs);
+        check(scheduler, cal, 1);
+        assertEquals(1, pending.size());
+    }
+
+    public static class CountingTrigger extends Trigger<Item> {
+
+        /**
+         * Runs by the actual cron thread of this Jenkins are not counted.
+         */
+        private final transient Thread owner = Thread.currentThread();
+        transient int runs;
+
+        @DataBoundConstructor
+        public CountingTrigger(String spec) {
+            super(spec);
+        }
+
+        @Override
+        public void run() {
+            if (Thread.currentThread() == owner) {
+                runs++;
+            }
+        }
+
+        @TestExtension
+        public static class DescriptorImpl extends TriggerDescriptor {
+
+            @Override
+            public boolean isApplicable(Item item) {
+                return true;
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,72 @@
+package jenkins.fingerprints;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.model.Fingerprint;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.util.StreamTaskListener;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class LogStructuredFingerprintStorageTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void saveLoadDelete() throws Exception {
+        LogStructuredFingerprintStorage storage = new LogStructuredFingerprintStorage();
+        GlobalFingerprintConfiguration.get().setStorage(storage);
+        String id = Util.getDigestOf("saveLoadDelete");
+        Fingerprint saved = new Fingerprint(null, "foo.jar", Util.fromHexString(id));
+        saved.add("job", 3);
+
+        Fingerprint loaded = Fingerprint.load(id);
+        assertThat(loaded, is(not(nullValue())));
+        assertThat(loaded.toString(), is(equalTo(saved.toString())));
+        assertThat(loaded.getRangeSet("job").includes(3), is(true));
+        assertThat(new File(j.jenkins.getRootDir(), FileFingerprintStorage.FINGERPRINTS_DIR_NAME).exists(), is(false));
+
+        Fingerprint.delete(id);
+        assertThat(Fingerprint.load(id), is(nullValue()));
+        assertThat(storage.load("not hex"), is(nullValue()));
+    }
+
+    @Test
+    public void cleanupMovesFileFingerprintsAndDeletesObsoleteOnes() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject();
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        String alive = Util.getDigestOf("alive");
+        String obsolete = Util.getDigestOf("obsolete");
+        new Fingerprint(b, "alive.jar", Util.fromHexString(alive));
+        new Fingerprint(null, "obsolete.jar", Util.fromHexString(obsolete));
+        FileFingerprintStorage files = ExtensionList.lookupSingleton(FileFingerprintStorage.class);
+        assertThat(files.load(alive), is(not(nullValue())));
+
+        LogStructuredFingerprintStorage storage = new LogStructuredFingerprintStorage();
+        GlobalFingerprintConfiguration.get().setStorage(storage);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        storage.iterateAndCleanupFingerprints(new StreamTaskListener(out, StandardCharsets.UTF_8));
+        String log = out.toString(StandardCharsets.UTF_8);
+
+        assertThat(log, containsString("Moved 2 records"));
+        assertThat(log, containsString("Cleaned up 1 records"));
+        assertThat(files.isReady(), is(false));
+        assertThat(storage.load(obsolete), is(nullValue()));
+        Fingerprint loaded = storage.load(alive);
+        assertThat(loaded, is(not(nullValue())));
+        assertThat(loaded.getOriginal().getRun(), is(b));
+    }
+}
@@ -0,0 +1,136 @@
+package jenkins.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import hudson.tasks.ArtifactArchiver;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.TestExtension;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+public class ContentAddressedArtifactManagerTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void deduplicate() throws Exception {
+        Assume.assumeFalse(Functions.isWindows());
+        ArtifactManagerConfiguration.get().getArtifactManagerFactories().add(new ContentAddressedArtifactManagerFactory());
+        FreeStyleProject p = r.createFreeStyleProject();
+        p.setAssignedNode(r.createOnlineSlave());
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                FilePath ws = build.getWorkspace();
+                ws.child("same.txt").write("same content", "UTF-8");
+                ws.child("dir/copy.txt").write("same content", "UTF-8");
+                ws.child("changing.txt").write("build " + build.getNumber(), "UTF-8");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new ArtifactArchiver("**/*.txt"));
+
+        FreeStyleBuild b1 = r.buildAndAssertSuccess(p);
+        r.assertLogContains("Transferred 2 of 3 artifacts", b1);
+        FreeStyleBuild b2 = r.buildAndAssertSuccess(p);
+        r.assertLogContains("Transferred 1 of 3 artifacts", b2);
+
+        Path blobs = ContentAddressedArtifactManager.getBlobsDir().toPath();
+        Path same = ContentAddressedArtifactManager.blob(blobs, ContentAddressedArtifactManager.digest(artifact(b1, "same.txt")));
+        Path changing1 = ContentAddressedArtifactManager.blob(blobs, ContentAddressedArtifactManager.digest(artifact(b1, "changing.txt")));
+        // the blob plus one link per artifact with that content
+        assertEquals(5, Files.getAttribute(same, "unix:nlink"));
+        assertEquals(2, Files.getAttribute(changing1, "unix:nlink"));
+        assertEquals("same content", Files.readString(artifact(b2, "dir/copy.txt"), StandardCharsets.UTF_8));
+
+        assertThat(r.createWebClient().goTo("job/" + p.getName() + "/2/artifact/dir/").getWebResponse().getContentAsString(), containsString("copy.txt"));
+        assertEquals("build 2", r.createWebClient().goTo("job/" + p.getName() + "/2/artifact/changing.txt", "text/plain").getWebResponse().getContentAsString());
+
+        b1.delete();
+        assertFalse(Files.exists(changing1));
+        assertEquals(3, Files.getAttribute(same, "unix:nlink"));
+        assertTrue(b2.getHasArtifacts());
+        b2.deleteArtifacts();
+        assertFalse(Files.exists(same));
+        assertFalse(b2.getHasArtifacts());
+    }
+
+    @Test
+    public void wrongProof() throws Exception {
+        Assume.assumeFalse(Functions.isWindows());
+        ArtifactManagerConfiguration.get().getArtifactManagerFactories().add(new ForgingArtifactManager.Factory());
+        FreeStyleProject p = r.createFreeStyleProject();
+        p.setAssignedNode(r.createOnlineSlave());
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                build.getWorkspace().child("same.txt").write("same content", "UTF-8");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new ArtifactArchiver("*.txt"));
+
+        FreeStyleBuild b1 = r.buildAndAssertSuccess(p);
+        r.assertLogContains("Transferred 1 of 1 artifacts", b1);
+        // an agent claiming to have the content of an existing blob without proving it gets it transferred
+        FreeStyleBuild b2 = r.buildAndAssertSuccess(p);
+        r.assertLogContains("Transferred 1 of 1 artifacts", b2);
+        assertEquals("same content", Files.readString(artifact(b2, "same.txt"), StandardCharsets.UTF_8));
+
+        // and still deduplicated, as hashed on the controller
+        Path same = ContentAddressedArtifactManager.blob(ContentAddressedArtifactManager.getBlobsDir().toPath(), ContentAddressedArtifactManager.digest(artifact(b1, "same.txt")));
+        assertEquals(3, Files.getAttribute(same, "unix:nlink"));
+    }
+
+    /**
+     * Stands for an agent which knows the digests of its artifacts, but not their content.
+     */
+    static final class ForgingArtifactManager extends ContentAddressedArtifactManager {
+        ForgingArtifactManager(Run<?, ?> build) {
+            super(build);
+        }
+
+        @Override Map<String, byte[]> prove(FilePath workspace, Map<String, String> artifacts, Map<String, byte[]> nonces) {
+            Map<String, byte[]> proofs = new HashMap<>();
+            nonces.keySet().forEach(path -> proofs.put(path, new byte[32]));
+            return proofs;
+        }
+
+        public static final class Factory extends ArtifactManagerFactory {
+            @DataBoundConstructor public Factory() {}
+
+            @Override public ArtifactManager managerFor(Run<?, ?> build) {
+                return new ForgingArtifactManager(build);
+            }
+
+            @TestExtension("wrongProof") public static final class DescriptorImpl extends ArtifactManagerFactoryDescriptor {}
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Path artifact(FreeStyleBuild b, String path) {
+        return b.getArtifactsDir().toPath().resolve(path);
+    }
+}